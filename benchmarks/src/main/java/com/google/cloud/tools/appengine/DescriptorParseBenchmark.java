@@ -0,0 +1,108 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.appengine;
+
+import com.google.cloud.tools.project.AppYaml;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing of appengine-web.xml with {@link AppEngineDescriptor} and of app.yaml with {@link
+ * AppYaml}, followed by the queries staging and the dev server make.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DescriptorParseBenchmark {
+
+  /** The number of environment variables and system properties in the descriptors. */
+  @Param({"5", "100"})
+  public int properties;
+
+  private byte[] appEngineWebXml;
+  private byte[] appYaml;
+
+  @Setup
+  public void createDescriptors() {
+    StringBuilder xml = new StringBuilder();
+    xml.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n")
+        .append("<appengine-web-app xmlns=\"http://appengine.google.com/ns/1.0\">\n")
+        .append("  <application>my-project</application>\n")
+        .append("  <version>v1</version>\n")
+        .append("  <service>default</service>\n")
+        .append("  <runtime>java8</runtime>\n")
+        .append("  <threadsafe>true</threadsafe>\n")
+        .append("  <env-variables>\n");
+    for (int i = 0; i < properties; i++) {
+      xml.append("    <env-var name=\"ENV_").append(i).append("\" value=\"value").append(i);
+      xml.append("\"/>\n");
+    }
+    xml.append("  </env-variables>\n  <system-properties>\n");
+    for (int i = 0; i < properties; i++) {
+      xml.append("    <property name=\"property.").append(i).append("\" value=\"value");
+      xml.append(i).append("\"/>\n");
+    }
+    xml.append("  </system-properties>\n</appengine-web-app>\n");
+    appEngineWebXml = xml.toString().getBytes(StandardCharsets.UTF_8);
+
+    StringBuilder yaml = new StringBuilder();
+    yaml.append("runtime: java11\n")
+        .append("env: standard\n")
+        .append("service: default\n")
+        .append("entrypoint: java -Xmx64m -jar app.jar\n")
+        .append("env_variables:\n");
+    for (int i = 0; i < properties; i++) {
+      yaml.append("  ENV_").append(i).append(": value").append(i).append('\n');
+    }
+    appYaml = yaml.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public Map<String, String> parseAppEngineWebXml() throws Exception {
+    AppEngineDescriptor descriptor =
+        AppEngineDescriptor.parse(new ByteArrayInputStream(appEngineWebXml));
+    descriptor.getProjectId();
+    descriptor.getRuntime();
+    descriptor.getServiceId();
+    return descriptor.getEnvironment();
+  }
+
+  @Benchmark
+  public Map<String, ?> parseAppYaml() throws Exception {
+    AppYaml yaml = AppYaml.parse(new ByteArrayInputStream(appYaml));
+    yaml.getRuntime();
+    yaml.getEnvironmentType();
+    yaml.getEntrypoint();
+    return yaml.getEnvironmentVariables();
+  }
+}
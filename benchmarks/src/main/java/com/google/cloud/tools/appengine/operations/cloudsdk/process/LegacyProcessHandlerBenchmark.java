@@ -0,0 +1,138 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.appengine.operations.cloudsdk.process;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Line throughput of {@link LegacyProcessHandler}: stdout and stderr of a fake {@link Process} are
+ * split into lines and dispatched to the listeners, reported per line.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LegacyProcessHandlerBenchmark {
+
+  // lines per stream, the operations of each invocation are the lines of both streams
+  private static final int LINES = 20_000;
+
+  /** {@code count} only counts lines, {@code watch} also matches them with an OutputWatcher. */
+  @Param({"count", "watch"})
+  public String listener;
+
+  @Param({"80", "400"})
+  public int lineLength;
+
+  private byte[] output;
+
+  @Setup
+  public void createOutput() {
+    StringBuilder line = new StringBuilder("[INFO] ");
+    while (line.length() < lineLength) {
+      line.append("output ");
+    }
+    line.setLength(lineLength);
+    line.append('\n');
+    StringBuilder text = new StringBuilder(LINES * line.length());
+    for (int i = 0; i < LINES; i++) {
+      text.append(line);
+    }
+    output = text.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(2 * LINES)
+  public long handleProcess() throws Exception {
+    AtomicLong lines = new AtomicLong();
+    ProcessOutputLineListener counter = line -> lines.incrementAndGet();
+    LegacyProcessHandler.Builder builder =
+        LegacyProcessHandler.builder()
+            .addStdOutLineListener(counter)
+            .addStdErrLineListener(counter)
+            .setExitListener(exitCode -> {});
+    if ("watch".equals(listener)) {
+      builder.addOutputWatcher(
+          OutputWatcher.builder()
+              .watch("started", "Dev App Server is now running")
+              .watch("failed", "ERROR:? (.*)")
+              .build());
+    }
+
+    builder.build().handleProcess(new FakeProcess(output));
+    return lines.get();
+  }
+
+  /** A process that has already written its output and exited. */
+  private static class FakeProcess extends Process {
+    private final InputStream stdout;
+    private final InputStream stderr;
+
+    private FakeProcess(byte[] output) {
+      stdout = new ByteArrayInputStream(output);
+      stderr = new ByteArrayInputStream(output);
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+      return new ByteArrayOutputStream();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+      return stdout;
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+      return stderr;
+    }
+
+    @Override
+    public int waitFor() {
+      return 0;
+    }
+
+    @Override
+    public int exitValue() {
+      return 0;
+    }
+
+    @Override
+    public void destroy() {}
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.appengine.operations.cloudsdk.serialization;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing, interning, comparing, sorting and range filtering {@link CloudSdkVersion}s, with and
+ * without pre-releases.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CloudSdkVersionBenchmark {
+
+  private static final String RELEASE = "318.0.0";
+  private static final String PRE_RELEASE = "318.0.0-rc.1.alpha+20201110";
+
+  private CloudSdkVersion release;
+  private CloudSdkVersion otherRelease;
+  private CloudSdkVersion preRelease;
+  private CloudSdkVersion otherPreRelease;
+  private List<CloudSdkVersion> versions;
+  private CloudSdkVersionRange range;
+
+  @Setup
+  public void createVersions() {
+    release = new CloudSdkVersion(RELEASE);
+    otherRelease = new CloudSdkVersion("318.0.1");
+    preRelease = new CloudSdkVersion(PRE_RELEASE);
+    otherPreRelease = new CloudSdkVersion("318.0.0-rc.1.beta");
+    range = new CloudSdkVersionRange(">=186.0.0 <300");
+
+    Random random = new Random(42);
+    versions = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      String version = (150 + random.nextInt(200)) + "." + random.nextInt(3) + "." + random.nextInt(3);
+      if (random.nextInt(4) == 0) {
+        version += "-rc." + random.nextInt(5);
+      }
+      versions.add(new CloudSdkVersion(version));
+    }
+  }
+
+  @Benchmark
+  public CloudSdkVersion parseRelease() {
+    return new CloudSdkVersion(RELEASE);
+  }
+
+  @Benchmark
+  public CloudSdkVersion parsePreRelease() {
+    return new CloudSdkVersion(PRE_RELEASE);
+  }
+
+  @Benchmark
+  public CloudSdkVersion internRelease() {
+    return CloudSdkVersion.of(RELEASE);
+  }
+
+  @Benchmark
+  public int compareReleases() {
+    return release.compareTo(otherRelease);
+  }
+
+  @Benchmark
+  public int comparePreReleases() {
+    return preRelease.compareTo(otherPreRelease);
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public List<CloudSdkVersion> sort() {
+    List<CloudSdkVersion> sorted = new ArrayList<>(versions);
+    Collections.sort(sorted);
+    return sorted;
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public int filterByRange() {
+    int matches = 0;
+    for (CloudSdkVersion version : versions) {
+      if (range.contains(version)) {
+        matches++;
+      }
+    }
+    return matches;
+  }
+}
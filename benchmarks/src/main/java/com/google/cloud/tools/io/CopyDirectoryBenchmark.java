@@ -0,0 +1,144 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.io;
+
+import com.google.cloud.tools.managedcloudsdk.ProgressListener;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link FileUtil#copyDirectory} and {@link FileUtil#copyDirectoryParallel} on a wide tree (few
+ * directories, many files each) and a deep tree (a long chain of directories with a few files
+ * each), with and without excludes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CopyDirectoryBenchmark {
+
+  private static final byte[] CONTENT = new byte[2048];
+
+  private static final ProgressListener NO_PROGRESS =
+      new ProgressListener() {
+        @Override
+        public void start(String message, long totalWork) {}
+
+        @Override
+        public void update(long workDone) {}
+
+        @Override
+        public void update(String message) {}
+
+        @Override
+        public void done() {}
+
+        @Override
+        public ProgressListener newChild(long allocation) {
+          return this;
+        }
+      };
+
+  @Param({"wide", "deep"})
+  public String shape;
+
+  @Param({"false", "true"})
+  public boolean withExcludes;
+
+  private Path workDirectory;
+  private Path source;
+  private Path destination;
+  private List<Path> excludes;
+
+  @Setup(Level.Trial)
+  public void createTree() throws IOException {
+    workDirectory = Files.createTempDirectory("copy-benchmark");
+    source = workDirectory.resolve("source");
+    if ("wide".equals(shape)) {
+      // 10 directories of 200 files
+      for (int i = 0; i < 10; i++) {
+        createFiles(source.resolve("dir" + i), 200);
+      }
+    } else {
+      // 100 nested directories of 5 files
+      Path directory = source;
+      for (int i = 0; i < 100; i++) {
+        directory = directory.resolve("level" + i);
+        createFiles(directory, 5);
+      }
+    }
+    excludes =
+        withExcludes
+            ? ImmutableList.of(source.resolve("dir1"), source.resolve("level0/level1/level2"))
+            : ImmutableList.of();
+  }
+
+  private static void createFiles(Path directory, int count) throws IOException {
+    Files.createDirectories(directory);
+    for (int i = 0; i < count; i++) {
+      Files.write(directory.resolve("file" + i + ".class"), CONTENT);
+    }
+  }
+
+  @Setup(Level.Invocation)
+  public void createDestination() throws IOException {
+    destination = Files.createTempDirectory(workDirectory, "destination");
+  }
+
+  @TearDown(Level.Invocation)
+  public void deleteDestination() throws IOException {
+    MoreFiles.deleteRecursively(destination, RecursiveDeleteOption.ALLOW_INSECURE);
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteTree() throws IOException {
+    MoreFiles.deleteRecursively(workDirectory, RecursiveDeleteOption.ALLOW_INSECURE);
+  }
+
+  @Benchmark
+  public Path copyDirectory() throws IOException {
+    FileUtil.copyDirectory(source, destination, excludes);
+    return destination;
+  }
+
+  @Benchmark
+  public Path copyDirectoryParallel() throws IOException {
+    FileUtil.copyDirectoryParallel(source, destination, excludes, NO_PROGRESS);
+    return destination;
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.managedcloudsdk.install;
+
+import com.google.cloud.tools.managedcloudsdk.ProgressListener;
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Extraction of synthetic Cloud SDK-like archives by {@link TarGzExtractorProvider} and {@link
+ * ZipExtractorProvider}: many small files spread over a few directories.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExtractorBenchmark {
+
+  private static final int DIRECTORIES = 20;
+
+  @Param({"tar.gz", "zip"})
+  public String format;
+
+  @Param({"200", "2000"})
+  public int entries;
+
+  @Param({"4096"})
+  public int entrySize;
+
+  private Path workDirectory;
+  private Path archive;
+  private Path destination;
+
+  @Setup(Level.Trial)
+  public void createArchive() throws IOException {
+    workDirectory = Files.createTempDirectory("extractor-benchmark");
+    archive = workDirectory.resolve("google-cloud-sdk." + format);
+    byte[] content = new byte[entrySize];
+    new Random(42).nextBytes(content);
+
+    try (ArchiveOutputStream out = newArchiveOutputStream(archive)) {
+      for (int i = 0; i < entries; i++) {
+        String name = "google-cloud-sdk/lib/dir" + (i % DIRECTORIES) + "/file" + i + ".py";
+        ArchiveEntry entry;
+        if ("zip".equals(format)) {
+          ZipArchiveEntry zipEntry = new ZipArchiveEntry(name);
+          zipEntry.setSize(content.length);
+          entry = zipEntry;
+        } else {
+          TarArchiveEntry tarEntry = new TarArchiveEntry(name);
+          tarEntry.setSize(content.length);
+          tarEntry.setMode(0644);
+          entry = tarEntry;
+        }
+        out.putArchiveEntry(entry);
+        out.write(content);
+        out.closeArchiveEntry();
+      }
+    }
+  }
+
+  private ArchiveOutputStream newArchiveOutputStream(Path file) throws IOException {
+    OutputStream out = Files.newOutputStream(file);
+    if ("zip".equals(format)) {
+      return new ZipArchiveOutputStream(out);
+    }
+    TarArchiveOutputStream tarOut = new TarArchiveOutputStream(new GzipCompressorOutputStream(out));
+    tarOut.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+    return tarOut;
+  }
+
+  @Setup(Level.Invocation)
+  public void createDestination() throws IOException {
+    destination = Files.createTempDirectory(workDirectory, "extracted");
+  }
+
+  @TearDown(Level.Invocation)
+  public void deleteDestination() throws IOException {
+    MoreFiles.deleteRecursively(destination, RecursiveDeleteOption.ALLOW_INSECURE);
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteArchive() throws IOException {
+    MoreFiles.deleteRecursively(workDirectory, RecursiveDeleteOption.ALLOW_INSECURE);
+  }
+
+  @Benchmark
+  public Path extract() throws Exception {
+    new ExtractorFactory().newExtractor(archive, destination, new NullProgressListener()).extract();
+    return destination;
+  }
+
+  private static class NullProgressListener implements ProgressListener {
+    @Override
+    public void start(String message, long totalWork) {}
+
+    @Override
+    public void update(long workDone) {}
+
+    @Override
+    public void update(String message) {}
+
+    @Override
+    public void done() {}
+
+    @Override
+    public ProgressListener newChild(long allocation) {
+      return new NullProgressListener();
+    }
+  }
+}
@@ -17,29 +17,49 @@
 package com.google.cloud.tools.appengine;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import javax.annotation.Nullable;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import org.w3c.dom.DOMException;
-import org.w3c.dom.Document;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import org.xml.sax.SAXException;
 
-/** Utilities to obtain information from appengine-web.xml. */
+/**
+ * Utilities to obtain information from appengine-web.xml. The descriptor is read in a single
+ * streaming pass that keeps only the values of the known elements, so instances are immutable and
+ * their getters don't parse.
+ */
 public class AppEngineDescriptor {
 
   private static final String APP_ENGINE_NAMESPACE = "http://appengine.google.com/ns/1.0";
-  private final Document document;
+  private static final String ROOT_ELEMENT = "appengine-web-app";
+
+  // configured once, creating readers is thread safe
+  private static final XMLInputFactory INPUT_FACTORY = newInputFactory();
+
+  @Nullable private final String projectId;
+  @Nullable private final String runtime;
+  @Nullable private final String projectVersion;
+  @Nullable private final String service;
+  @Nullable private final String module;
+  private final ImmutableMap<String, String> environment;
+  // an env-var without value, reported when the environment is read
+  @Nullable private final String environmentError;
 
   // private to force use of parse method
-  private AppEngineDescriptor(Document document) {
-    this.document = document;
+  private AppEngineDescriptor(Parser parser) {
+    projectId = parser.projectId;
+    runtime = parser.runtime;
+    projectVersion = parser.projectVersion;
+    service = parser.service;
+    module = parser.module;
+    environment = ImmutableMap.copyOf(parser.environment);
+    environmentError = parser.environmentError;
   }
 
   /**
@@ -53,21 +73,38 @@ public class AppEngineDescriptor {
   public static AppEngineDescriptor parse(InputStream in) throws IOException, SAXException {
     Preconditions.checkNotNull(in, "Null input");
     try {
-      DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
-      documentBuilderFactory.setNamespaceAware(true);
-      return new AppEngineDescriptor(documentBuilderFactory.newDocumentBuilder().parse(in));
-    } catch (ParserConfigurationException exception) {
-      throw new SAXException("Cannot parse appengine-web.xml", exception);
+      XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(in);
+      try {
+        Parser parser = new Parser();
+        parser.parse(reader);
+        return new AppEngineDescriptor(parser);
+      } finally {
+        reader.close();
+      }
+    } catch (XMLStreamException ex) {
+      if (ex.getNestedException() instanceof IOException) {
+        throw (IOException) ex.getNestedException();
+      }
+      throw new SAXException("Cannot parse appengine-web.xml", ex);
     }
   }
 
+  private static XMLInputFactory newInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newFactory();
+    factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+    // appengine-web.xml has no DTD, don't let a descriptor read other files or expand entities
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    return factory;
+  }
+
   /**
    * Returns project ID from the &lt;application&gt; element of the appengine-web.xml or null if it
    * is missing.
    */
   @Nullable
   public String getProjectId() throws AppEngineException {
-    return getText(getNode(document, "appengine-web-app", "application"));
+    return projectId;
   }
 
   /**
@@ -75,9 +112,8 @@ public class AppEngineDescriptor {
    * when it is missing.
    */
   public String getRuntime() throws AppEngineException {
-    String runtime = getText(getNode(document, "appengine-web-app", "runtime"));
     if (runtime == null) {
-      runtime = "java7"; // the default runtime when not specified.
+      return "java7"; // the default runtime when not specified.
     }
     return runtime;
   }
@@ -88,7 +124,7 @@ public class AppEngineDescriptor {
    */
   @Nullable
   public String getProjectVersion() throws AppEngineException {
-    return getText(getNode(document, "appengine-web-app", "version"));
+    return projectVersion;
   }
 
   /**
@@ -97,16 +133,14 @@ public class AppEngineDescriptor {
    */
   @Nullable
   public String getServiceId() throws AppEngineException {
-    String serviceId = getText(getNode(document, "appengine-web-app", "service"));
-    if (serviceId != null) {
-      return serviceId;
+    if (service != null) {
+      return service;
     }
-    return getText(getNode(document, "appengine-web-app", "module"));
+    return module;
   }
 
   /** Returns true if the runtime read from appengine-web.xml is Java8. */
   public boolean isJava8() throws AppEngineException {
-    String runtime = getRuntime();
     return "java8".equals(runtime) || "java8g".equals(runtime);
   }
 
@@ -115,7 +149,7 @@ public class AppEngineDescriptor {
    * Java7 runtime).
    */
   public boolean isSandboxEnforced() throws AppEngineException {
-    return "java7".equals(getRuntime());
+    return runtime == null || "java7".equals(runtime);
   }
 
   /**
@@ -129,75 +163,175 @@ public class AppEngineDescriptor {
    *
    * <p>This will construct a map of the form {[key, value], ...}.
    *
-   * @return a map representing the environment variable settings in the appengine-web.xml
+   * @return an immutable map representing the environment variable settings in the
+   *     appengine-web.xml
+   * @throws AppEngineException if an environment variable has no value
    */
   public Map<String, String> getEnvironment() throws AppEngineException {
-    Node environmentParentNode = getNode(document, "appengine-web-app", "env-variables");
-    if (environmentParentNode != null) {
-      return getAttributeMap(environmentParentNode, "env-var", "name", "value");
+    if (environmentError != null) {
+      throw new AppEngineException(environmentError);
     }
-    return new HashMap<>();
+    return environment;
   }
 
-  @Nullable
-  private static String getText(@Nullable Node node) throws AppEngineException {
-    if (node != null) {
-      try {
-        return node.getTextContent();
-      } catch (DOMException ex) {
-        throw new AppEngineException(
-            "Failed to parse text content from node " + node.getNodeName(), ex);
+  /**
+   * Collects the known elements of appengine-web.xml. Like a DOM lookup, the first {@code
+   * appengine-web-app} element in the App Engine namespace is the root, the first of its children
+   * with a given name wins, and the text of an element includes the text of its descendants.
+   */
+  private static class Parser {
+    @Nullable private String projectId;
+    @Nullable private String runtime;
+    @Nullable private String projectVersion;
+    @Nullable private String service;
+    @Nullable private String module;
+    private boolean hasEnvironment;
+    private final Map<String, String> environment = new LinkedHashMap<>();
+    @Nullable private String environmentError;
+
+    private void parse(XMLStreamReader reader) throws XMLStreamException {
+      boolean rootFound = false;
+      while (reader.hasNext()) {
+        if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+          continue;
+        }
+        if (!rootFound
+            && APP_ENGINE_NAMESPACE.equals(reader.getNamespaceURI())
+            && ROOT_ELEMENT.equals(reader.getLocalName())) {
+          rootFound = true;
+          parseRoot(reader);
+        }
       }
     }
 
-    return null;
-  }
+    /** Reads the children of the root, up to and including its end tag. */
+    private void parseRoot(XMLStreamReader reader) throws XMLStreamException {
+      while (true) {
+        int event = reader.next();
+        if (event == XMLStreamConstants.END_ELEMENT) {
+          return;
+        }
+        if (event != XMLStreamConstants.START_ELEMENT) {
+          continue;
+        }
+        switch (qualifiedName(reader.getPrefix(), reader.getLocalName())) {
+          case "application":
+            projectId = firstText(reader, projectId);
+            break;
+          case "runtime":
+            runtime = firstText(reader, runtime);
+            break;
+          case "version":
+            projectVersion = firstText(reader, projectVersion);
+            break;
+          case "service":
+            service = firstText(reader, service);
+            break;
+          case "module":
+            module = firstText(reader, module);
+            break;
+          case "env-variables":
+            if (hasEnvironment) {
+              skipElement(reader);
+            } else {
+              hasEnvironment = true;
+              readEnvironment(reader);
+            }
+            break;
+          default:
+            skipElement(reader);
+        }
+      }
+    }
 
-  /** Returns a map formed from the attributes of the nodes contained within the parent node. */
-  private static Map<String, String> getAttributeMap(
-      Node parent, String nodeName, String keyAttributeName, String valueAttributeName)
-      throws AppEngineException {
-
-    Map<String, String> nameValueAttributeMap = new HashMap<>();
-    if (parent.hasChildNodes()) {
-      for (int i = 0; i < parent.getChildNodes().getLength(); i++) {
-        Node child = parent.getChildNodes().item(i);
-        NamedNodeMap attributeMap = child.getAttributes();
-
-        if (nodeName.equals(child.getNodeName()) && attributeMap != null) {
-          Node keyNode = attributeMap.getNamedItem(keyAttributeName);
-
-          if (keyNode != null) {
-            Node valueNode = attributeMap.getNamedItem(valueAttributeName);
-            try {
-              nameValueAttributeMap.put(keyNode.getTextContent(), valueNode.getTextContent());
-            } catch (DOMException ex) {
-              throw new AppEngineException(
-                  "Failed to parse value from attribute node " + keyNode.getNodeName(), ex);
+    /** Reads the env-var children of env-variables, up to and including its end tag. */
+    private void readEnvironment(XMLStreamReader reader) throws XMLStreamException {
+      while (true) {
+        int event = reader.next();
+        if (event == XMLStreamConstants.END_ELEMENT) {
+          return;
+        }
+        if (event != XMLStreamConstants.START_ELEMENT) {
+          continue;
+        }
+        if ("env-var".equals(qualifiedName(reader.getPrefix(), reader.getLocalName()))) {
+          String name = getAttribute(reader, "name");
+          if (name != null) {
+            String value = getAttribute(reader, "value");
+            if (value != null) {
+              environment.put(name, value);
+            } else if (environmentError == null) {
+              environmentError = "Environment variable " + name + " has no value";
             }
           }
         }
+        skipElement(reader);
       }
     }
 
-    return nameValueAttributeMap;
-  }
+    /**
+     * Returns {@code first} if an earlier element had the text already, or the text of this one.
+     */
+    private static String firstText(XMLStreamReader reader, @Nullable String first)
+        throws XMLStreamException {
+      if (first != null) {
+        skipElement(reader);
+        return first;
+      }
+      return readText(reader);
+    }
 
-  /** Returns the first node found matching the given name contained within the parent node. */
-  @Nullable
-  private static Node getNode(Document doc, String parentNodeName, String targetNodeName) {
-    NodeList parentElements = doc.getElementsByTagNameNS(APP_ENGINE_NAMESPACE, parentNodeName);
-    if (parentElements.getLength() > 0) {
-      Node parent = parentElements.item(0);
-      if (parent.hasChildNodes()) {
-        for (int i = 0; i < parent.getChildNodes().getLength(); i++) {
-          Node child = parent.getChildNodes().item(i);
-          if (child.getNodeName().equals(targetNodeName)) {
-            return child;
-          }
+    /** Returns the text of the current element and its descendants, ending on its end tag. */
+    private static String readText(XMLStreamReader reader) throws XMLStreamException {
+      StringBuilder text = new StringBuilder();
+      int depth = 1;
+      while (depth > 0) {
+        switch (reader.next()) {
+          case XMLStreamConstants.START_ELEMENT:
+            depth++;
+            break;
+          case XMLStreamConstants.END_ELEMENT:
+            depth--;
+            break;
+          case XMLStreamConstants.CHARACTERS:
+          case XMLStreamConstants.CDATA:
+          case XMLStreamConstants.SPACE:
+            text.append(reader.getText());
+            break;
+          default:
+            break;
         }
       }
+      return text.toString();
+    }
+
+    /** Skips the current element and its descendants, ending on its end tag. */
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+      int depth = 1;
+      while (depth > 0) {
+        int event = reader.next();
+        if (event == XMLStreamConstants.START_ELEMENT) {
+          depth++;
+        } else if (event == XMLStreamConstants.END_ELEMENT) {
+          depth--;
+        }
+      }
+    }
+
+    /** Returns the attribute of the current element with the qualified name, or null. */
+    @Nullable
+    private static String getAttribute(XMLStreamReader reader, String name) {
+      for (int i = 0; i < reader.getAttributeCount(); i++) {
+        if (name.equals(
+            qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)))) {
+          return reader.getAttributeValue(i);
+        }
+      }
+      return null;
+    }
+
+    private static String qualifiedName(@Nullable String prefix, String localName) {
+      return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
     }
-    return null;
   }
 }
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.appengine;
+
+import com.google.cloud.tools.project.AppYaml;
+import com.google.common.base.Preconditions;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+import org.xml.sax.SAXException;
+
+/**
+ * Caches parsed {@code appengine-web.xml} and {@code app.yaml} files, so repeated operations on an
+ * unchanged project don't parse them again. An entry is reused as long as its file keeps the same
+ * size, modification time and file key (e.g. the inode, which changes when a file is replaced); use
+ * {@link #invalidate(Path)} after changes that keep all three. The least recently used entries are
+ * evicted beyond the maximum size. Failures are never cached. Thread safe.
+ *
+ * <p>Some file systems only keep modification times to the second or two (HFS+, FAT, some NFS
+ * mounts), so a same-size edit right after a parse could keep the same stamp. Like git does for
+ * "racy" index entries, files modified within the last {@link #RACY_WINDOW} are parsed but not
+ * cached.
+ *
+ * <p>Parsed files are shared between callers, so their maps, e.g. {@link
+ * AppEngineDescriptor#getEnvironment()} and {@code AppYaml.getEnvironmentVariables()}, are
+ * unmodifiable; copy them before making changes.
+ */
+public class DescriptorCache {
+
+  /** The maximum number of entries of the {@link #getInstance() process-wide cache}. */
+  public static final int DEFAULT_MAX_ENTRIES = 256;
+
+  /** Files modified this recently are not cached, their modification time may not change yet. */
+  public static final Duration RACY_WINDOW = Duration.ofSeconds(2);
+
+  private static final DescriptorCache INSTANCE = new DescriptorCache(DEFAULT_MAX_ENTRIES);
+
+  private final int maxEntries;
+  // guarded by itself, in access order for LRU eviction
+  private final LinkedHashMap<Path, CachedModel> entries;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  /**
+   * Creates a cache of at most {@code maxEntries} parsed files.
+   *
+   * @param maxEntries the maximum number of entries, at least 1
+   */
+  public DescriptorCache(int maxEntries) {
+    Preconditions.checkArgument(maxEntries > 0, "maxEntries must be positive");
+    this.maxEntries = maxEntries;
+    this.entries =
+        new LinkedHashMap<Path, CachedModel>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<Path, CachedModel> eldest) {
+            if (size() > DescriptorCache.this.maxEntries) {
+              evictions.incrementAndGet();
+              return true;
+            }
+            return false;
+          }
+        };
+  }
+
+  /** Returns the process-wide cache. */
+  public static DescriptorCache getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Returns the parsed {@code appengine-web.xml} at {@code file}, parsing it only if it changed
+   * since it was last parsed.
+   *
+   * @throws IOException if the file cannot be read
+   * @throws SAXException malformed XML
+   */
+  public AppEngineDescriptor getAppEngineDescriptor(Path file) throws IOException, SAXException {
+    Path key = key(file);
+    FileStamp stamp = FileStamp.of(key);
+    AppEngineDescriptor cached = getCached(key, stamp, AppEngineDescriptor.class);
+    if (cached != null) {
+      return cached;
+    }
+    AppEngineDescriptor descriptor;
+    try (InputStream input = Files.newInputStream(key)) {
+      descriptor = AppEngineDescriptor.parse(input);
+    }
+    put(key, stamp, descriptor);
+    return descriptor;
+  }
+
+  /**
+   * Returns the parsed {@code app.yaml} at {@code file}, parsing it only if it changed since it was
+   * last parsed.
+   *
+   * @throws IOException if the file cannot be read
+   * @throws AppEngineException malformed YAML
+   */
+  public AppYaml getAppYaml(Path file) throws IOException, AppEngineException {
+    Path key = key(file);
+    FileStamp stamp = FileStamp.of(key);
+    AppYaml cached = getCached(key, stamp, AppYaml.class);
+    if (cached != null) {
+      return cached;
+    }
+    AppYaml appYaml;
+    try (InputStream input = Files.newInputStream(key)) {
+      appYaml = AppYaml.parse(input);
+    }
+    put(key, stamp, appYaml);
+    return appYaml;
+  }
+
+  @Nullable
+  private <T> T getCached(Path key, FileStamp stamp, Class<T> type) {
+    CachedModel entry;
+    synchronized (entries) {
+      entry = entries.get(key);
+    }
+    if (entry != null && entry.stamp.equals(stamp) && type.isInstance(entry.model)) {
+      hits.incrementAndGet();
+      return type.cast(entry.model);
+    }
+    misses.incrementAndGet();
+    return null;
+  }
+
+  // the stamp is read before the file, so a change while parsing is parsed again next time
+  private void put(Path key, FileStamp stamp, Object model) {
+    if (stamp.isRacy()) {
+      return;
+    }
+    synchronized (entries) {
+      entries.put(key, new CachedModel(stamp, model));
+    }
+  }
+
+  /** Forgets the parsed file. */
+  public void invalidate(Path file) {
+    synchronized (entries) {
+      entries.remove(key(file));
+    }
+  }
+
+  /** Forgets all parsed files. The statistics are kept. */
+  public void invalidateAll() {
+    synchronized (entries) {
+      entries.clear();
+    }
+  }
+
+  /** Returns the current statistics of the cache. */
+  public Stats getStats() {
+    int size;
+    synchronized (entries) {
+      size = entries.size();
+    }
+    return new Stats(hits.get(), misses.get(), evictions.get(), size);
+  }
+
+  private static Path key(Path file) {
+    return file.toAbsolutePath().normalize();
+  }
+
+  /** Counts of the lookups of a cache since it was created. */
+  public static class Stats {
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final int size;
+
+    private Stats(long hits, long misses, long evictions, int size) {
+      this.hits = hits;
+      this.misses = misses;
+      this.evictions = evictions;
+      this.size = size;
+    }
+
+    /** Lookups answered from the cache. */
+    public long getHits() {
+      return hits;
+    }
+
+    /** Lookups that parsed the file, including failed parses. */
+    public long getMisses() {
+      return misses;
+    }
+
+    /** Entries removed to stay within the maximum size. */
+    public long getEvictions() {
+      return evictions;
+    }
+
+    /** Entries currently cached. */
+    public int getSize() {
+      return size;
+    }
+
+    @Override
+    public String toString() {
+      return "hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + ", size=" + size;
+    }
+  }
+
+  private static class CachedModel {
+    private final FileStamp stamp;
+    private final Object model;
+
+    private CachedModel(FileStamp stamp, Object model) {
+      this.stamp = stamp;
+      this.model = model;
+    }
+  }
+
+  /** The size, modification time and file key of a file. */
+  private static class FileStamp {
+    private final long size;
+    private final FileTime lastModified;
+    @Nullable private final Object fileKey;
+
+    private FileStamp(long size, FileTime lastModified, @Nullable Object fileKey) {
+      this.size = size;
+      this.lastModified = lastModified;
+      this.fileKey = fileKey;
+    }
+
+    private static FileStamp of(Path file) throws IOException {
+      BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+      return new FileStamp(attributes.size(), attributes.lastModifiedTime(), attributes.fileKey());
+    }
+
+    /** Returns true if the file may still change without changing its modification time. */
+    private boolean isRacy() {
+      long age = System.currentTimeMillis() - lastModified.toMillis();
+      // also covers modification times in the future
+      return age < RACY_WINDOW.toMillis();
+    }
+
+    @Override
+    public boolean equals(@Nullable Object other) {
+      if (!(other instanceof FileStamp)) {
+        return false;
+      }
+      FileStamp that = (FileStamp) other;
+      return size == that.size
+          && lastModified.equals(that.lastModified)
+          && Objects.equals(fileKey, that.fileKey);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(size, lastModified, fileKey);
+    }
+  }
+}
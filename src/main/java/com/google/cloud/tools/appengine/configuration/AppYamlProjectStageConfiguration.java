@@ -33,17 +33,29 @@ public class AppYamlProjectStageConfiguration {
   @Nullable private final List<Path> extraFilesDirectories;
   private final Path artifact;
   private final Path stagingDirectory;
+  @Nullable private final Boolean incremental;
+  @Nullable private final Boolean compareContentHashes;
+  @Nullable private final StagingStrategy stagingStrategy;
+  @Nullable private final Boolean gcloudIgnore;
 
   private AppYamlProjectStageConfiguration(
       Path appEngineDirectory,
       @Nullable Path dockerDirectory,
       @Nullable List<Path> extraFilesDirectories,
       Path artifact,
-      Path stagingDirectory) {
+      Path stagingDirectory,
+      @Nullable Boolean incremental,
+      @Nullable Boolean compareContentHashes,
+      @Nullable StagingStrategy stagingStrategy,
+      @Nullable Boolean gcloudIgnore) {
     this.appEngineDirectory = appEngineDirectory;
     this.dockerDirectory = dockerDirectory;
     this.artifact = artifact;
     this.stagingDirectory = stagingDirectory;
+    this.incremental = incremental;
+    this.compareContentHashes = compareContentHashes;
+    this.stagingStrategy = stagingStrategy;
+    this.gcloudIgnore = gcloudIgnore;
     this.extraFilesDirectories =
         (extraFilesDirectories == null) ? null : ImmutableList.copyOf(extraFilesDirectories);
   }
@@ -78,6 +90,41 @@ public class AppYamlProjectStageConfiguration {
     return stagingDirectory;
   }
 
+  /**
+   * Reuse the files of the previous staging to the same staging directory: only new and changed
+   * files are copied and files whose source disappeared are deleted. The sources of the staged
+   * files are recorded in a manifest next to the staging directory.
+   */
+  @Nullable
+  public Boolean getIncremental() {
+    return incremental;
+  }
+
+  /**
+   * With incremental staging, also compare the SHA-256 of sources whose modification time changed
+   * but size did not, so files that were rebuilt with the same content are not copied again.
+   */
+  @Nullable
+  public Boolean getCompareContentHashes() {
+    return compareContentHashes;
+  }
+
+  /** How files are put into the staging directory, {@link StagingStrategy#COPY} by default. */
+  @Nullable
+  public StagingStrategy getStagingStrategy() {
+    return stagingStrategy;
+  }
+
+  /**
+   * Leave out of the docker and extra files directories the files that gcloud would not deploy, as
+   * excluded by a {@code .gcloudignore} in the App Engine directory or at the root of the copied
+   * directory.
+   */
+  @Nullable
+  public Boolean getGcloudIgnore() {
+    return gcloudIgnore;
+  }
+
   public static Builder builder() {
     return new Builder();
   }
@@ -102,6 +149,10 @@ public class AppYamlProjectStageConfiguration {
     @Nullable private List<Path> extraFilesDirectories;
     @Nullable private Path artifact;
     @Nullable private Path stagingDirectory;
+    @Nullable private Boolean incremental;
+    @Nullable private Boolean compareContentHashes;
+    @Nullable private StagingStrategy stagingStrategy;
+    @Nullable private Boolean gcloudIgnore;
 
     private Builder() {}
 
@@ -132,6 +183,28 @@ public class AppYamlProjectStageConfiguration {
       return this;
     }
 
+    public AppYamlProjectStageConfiguration.Builder incremental(@Nullable Boolean incremental) {
+      this.incremental = incremental;
+      return this;
+    }
+
+    public AppYamlProjectStageConfiguration.Builder compareContentHashes(
+        @Nullable Boolean compareContentHashes) {
+      this.compareContentHashes = compareContentHashes;
+      return this;
+    }
+
+    public AppYamlProjectStageConfiguration.Builder stagingStrategy(
+        @Nullable StagingStrategy stagingStrategy) {
+      this.stagingStrategy = stagingStrategy;
+      return this;
+    }
+
+    public AppYamlProjectStageConfiguration.Builder gcloudIgnore(@Nullable Boolean gcloudIgnore) {
+      this.gcloudIgnore = gcloudIgnore;
+      return this;
+    }
+
     /** Build a {@link AppYamlProjectStageConfiguration}. */
     @SuppressWarnings("NullAway")
     public AppYamlProjectStageConfiguration build() {
@@ -144,7 +217,11 @@ public class AppYamlProjectStageConfiguration {
           this.dockerDirectory,
           this.extraFilesDirectories,
           this.artifact,
-          this.stagingDirectory);
+          this.stagingDirectory,
+          this.incremental,
+          this.compareContentHashes,
+          this.stagingStrategy,
+          this.gcloudIgnore);
     }
   }
 }
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.appengine.configuration;
+
+/** How staging puts the files of an application into the staging directory. */
+public enum StagingStrategy {
+
+  /** Copy the bytes of every file. */
+  COPY,
+
+  /**
+   * Hard link files into the staging directory, falling back to copying where linking is not
+   * possible, e.g. across file systems. Staged files share their content with the source files, so
+   * modifying a staged file in place also modifies its source.
+   */
+  HARDLINK,
+
+  /**
+   * On Linux, clone files with a copy-on-write reflink where the file system supports it (e.g.
+   * Btrfs, XFS), falling back to copying. Reflinked files share storage with their sources until
+   * either is modified. Elsewhere, same as {@link #COPY}.
+   */
+  REFLINK
+}
@@ -17,7 +17,9 @@
 package com.google.cloud.tools.appengine.operations;
 
 import com.google.cloud.tools.appengine.operations.cloudsdk.process.ProcessHandler;
+import com.google.cloud.tools.trace.TraceRecorder;
 import com.google.common.annotations.VisibleForTesting;
+import javax.annotation.Nullable;
 
 /** Operations that use appcfg. */
 public class AppCfg {
@@ -34,6 +36,17 @@ public class AppCfg {
     return new AppEngineWebXmlProjectStaging(getRunner(processHandler));
   }
 
+  /**
+   * Creates a stager that records the appcfg staging run as a span of the trace.
+   *
+   * @param processHandler handler of the appcfg process
+   * @param trace the recorder to add spans to
+   */
+  public AppEngineWebXmlProjectStaging newStaging(
+      ProcessHandler processHandler, TraceRecorder trace) {
+    return new AppEngineWebXmlProjectStaging(getRunner(processHandler), trace);
+  }
+
   @VisibleForTesting
   AppCfgRunner getRunner(ProcessHandler processHandler) {
     return appCfgRunnerFactory.newRunner(sdk, processHandler);
@@ -46,6 +59,7 @@ public class AppCfg {
   public static class Builder {
     private final CloudSdk sdk;
     private final AppCfgRunner.Factory runnerFactory;
+    @Nullable private Boolean inProcess;
 
     @VisibleForTesting
     Builder(CloudSdk sdk, AppCfgRunner.Factory runnerFactory) {
@@ -53,9 +67,21 @@ public class AppCfg {
       this.runnerFactory = runnerFactory;
     }
 
+    /**
+     * Run appcfg inside this JVM, loading the App Engine tools jar in a class loader that is reused
+     * by later runs, instead of starting a JVM for every command. Appcfg still runs in a new JVM
+     * when it cannot run in this one, e.g. on Java 18 and later, where its {@code System.exit}
+     * cannot be trapped. Defaults to false.
+     */
+    public Builder inProcess(@Nullable Boolean inProcess) {
+      this.inProcess = inProcess;
+      return this;
+    }
+
     /** Build an immutable AppCfg instance. */
     public AppCfg build() {
-      return new AppCfg(sdk, runnerFactory);
+      return new AppCfg(
+          sdk, Boolean.TRUE.equals(inProcess) ? runnerFactory.inProcess() : runnerFactory);
     }
   }
 }
@@ -21,11 +21,15 @@ import com.google.cloud.tools.appengine.operations.cloudsdk.InvalidJavaSdkExcept
 import com.google.cloud.tools.appengine.operations.cloudsdk.internal.process.ProcessBuilderFactory;
 import com.google.cloud.tools.appengine.operations.cloudsdk.process.ProcessHandler;
 import com.google.cloud.tools.appengine.operations.cloudsdk.process.ProcessHandlerException;
+import com.google.cloud.tools.appengine.operations.cloudsdk.process.ProcessMetrics;
 import com.google.common.base.Joiner;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
 
 public class AppCfgRunner {
 
@@ -34,16 +38,27 @@ public class AppCfgRunner {
   private final CloudSdk sdk;
   private final ProcessBuilderFactory processBuilderFactory;
   private final ProcessHandler processHandler;
+  @Nullable private final InProcessAppCfg inProcessAppCfg;
 
   AppCfgRunner(
       CloudSdk sdk, ProcessBuilderFactory processBuilderFactory, ProcessHandler processHandler) {
+    this(sdk, processBuilderFactory, processHandler, null);
+  }
+
+  AppCfgRunner(
+      CloudSdk sdk,
+      ProcessBuilderFactory processBuilderFactory,
+      ProcessHandler processHandler,
+      @Nullable InProcessAppCfg inProcessAppCfg) {
     this.sdk = sdk;
     this.processBuilderFactory = processBuilderFactory;
     this.processHandler = processHandler;
+    this.inProcessAppCfg = inProcessAppCfg;
   }
 
   /**
-   * Executes an App Engine SDK CLI command.
+   * Executes an App Engine SDK CLI command, in this JVM if the runner was created to run in process
+   * and AppCfg can run here, otherwise in a new JVM.
    *
    * @throws AppEngineJavaComponentsNotInstalledException when the App Engine Java components are
    *     not installed in the Cloud SDK
@@ -55,15 +70,24 @@ public class AppCfgRunner {
     sdk.validateAppEngineJavaComponents();
     sdk.validateJdk();
 
-    // App Engine Java Sdk requires this system property to be set.
-    // TODO: perhaps we should send this in directly to the command instead of changing the global
-    // state here (see DevAppServerRunner)
-    System.setProperty("appengine.sdk.root", sdk.getAppEngineSdkForJavaPath().toString());
+    Path sdkRoot = sdk.getAppEngineSdkForJavaPath();
+    Path toolsJar = sdk.getAppEngineToolsJar();
+    if (inProcessAppCfg != null) {
+      logger.info("running appcfg in process: " + Joiner.on(" ").join(args));
+      Process process = inProcessAppCfg.run(toolsJar, sdkRoot, args);
+      if (process != null) {
+        processHandler.handleProcess(process);
+        return;
+      }
+      logger.info("appcfg cannot run in this JVM, forking it instead");
+    }
 
     List<String> command = new ArrayList<>();
     command.add(sdk.getJavaExecutablePath().toString());
+    // App Engine Java Sdk requires this system property to be set.
+    command.add("-Dappengine.sdk.root=" + sdkRoot);
     command.add("-cp");
-    command.add(sdk.getAppEngineToolsJar().toString());
+    command.add(toolsJar.toString());
     command.add("com.google.appengine.tools.admin.AppCfg");
     command.addAll(args);
 
@@ -71,23 +95,38 @@ public class AppCfgRunner {
 
     ProcessBuilder processBuilder = processBuilderFactory.newProcessBuilder();
     processBuilder.command(command);
-    Process process = processBuilder.start();
+    // appcfg options precede the action, e.g. 'appcfg --enable_jar_splitting stage'
+    List<String> action =
+        args.stream().filter(arg -> !arg.startsWith("-")).limit(1).collect(Collectors.toList());
+    Process process = ProcessMetrics.getInstance().start(processBuilder, "appcfg", action);
     processHandler.handleProcess(process);
   }
 
   static class Factory {
     private final ProcessBuilderFactory processBuilderFactory;
+    @Nullable private final InProcessAppCfg inProcessAppCfg;
 
     Factory() {
       this(new ProcessBuilderFactory());
     }
 
     Factory(ProcessBuilderFactory processBuilderFactory) {
+      this(processBuilderFactory, null);
+    }
+
+    Factory(
+        ProcessBuilderFactory processBuilderFactory, @Nullable InProcessAppCfg inProcessAppCfg) {
       this.processBuilderFactory = processBuilderFactory;
+      this.inProcessAppCfg = inProcessAppCfg;
+    }
+
+    /** Returns a factory of runners that run AppCfg in this JVM when possible. */
+    Factory inProcess() {
+      return new Factory(processBuilderFactory, InProcessAppCfg.getInstance());
     }
 
     AppCfgRunner newRunner(CloudSdk sdk, ProcessHandler processHandler) {
-      return new AppCfgRunner(sdk, processBuilderFactory, processHandler);
+      return new AppCfgRunner(sdk, processBuilderFactory, processHandler, inProcessAppCfg);
     }
   }
 }
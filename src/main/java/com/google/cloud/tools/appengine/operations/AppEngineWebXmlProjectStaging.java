@@ -20,6 +20,8 @@ import com.google.cloud.tools.appengine.AppEngineException;
 import com.google.cloud.tools.appengine.configuration.AppEngineWebXmlProjectStageConfiguration;
 import com.google.cloud.tools.appengine.operations.cloudsdk.internal.args.AppCfgArgs;
 import com.google.cloud.tools.appengine.operations.cloudsdk.process.ProcessHandlerException;
+import com.google.cloud.tools.trace.TraceRecorder;
+import com.google.cloud.tools.trace.TraceSpan;
 import com.google.common.base.Preconditions;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
@@ -34,9 +36,15 @@ import java.util.List;
 public class AppEngineWebXmlProjectStaging {
 
   private AppCfgRunner runner;
+  private final TraceRecorder trace;
 
   AppEngineWebXmlProjectStaging(AppCfgRunner runner) {
+    this(runner, TraceRecorder.NO_OP);
+  }
+
+  AppEngineWebXmlProjectStaging(AppCfgRunner runner, TraceRecorder trace) {
     this.runner = runner;
+    this.trace = trace;
   }
 
   /**
@@ -73,6 +81,8 @@ public class AppEngineWebXmlProjectStaging {
 
     Path dockerfile = config.getDockerfile();
 
+    TraceSpan span =
+        trace.startSpan("Stage " + config.getSourceDirectory().getFileName(), "staging");
     try {
 
       if (dockerfile != null && Files.exists(dockerfile)) {
@@ -95,6 +105,8 @@ public class AppEngineWebXmlProjectStaging {
 
     } catch (IOException | ProcessHandlerException e) {
       throw new AppEngineException(e);
+    } finally {
+      span.close();
     }
   }
 }
@@ -16,24 +16,42 @@
 
 package com.google.cloud.tools.appengine.operations;
 
-import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
-
 import com.google.cloud.tools.appengine.AppEngineException;
+import com.google.cloud.tools.appengine.DescriptorCache;
 import com.google.cloud.tools.appengine.configuration.AppYamlProjectStageConfiguration;
+import com.google.cloud.tools.appengine.configuration.StagingStrategy;
+import com.google.cloud.tools.io.ArchiveWriter;
+import com.google.cloud.tools.io.ExclusionMatcher;
 import com.google.cloud.tools.io.FileUtil;
+import com.google.cloud.tools.jfr.FlightRecorderEvent;
+import com.google.cloud.tools.jfr.FlightRecorderEventType;
 import com.google.cloud.tools.project.AppYaml;
+import com.google.cloud.tools.trace.TraceRecorder;
+import com.google.cloud.tools.trace.TraceSpan;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
-import com.google.common.base.Splitter;
-import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.jar.Attributes;
-import java.util.jar.JarFile;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.Logger;
 import javax.annotation.Nullable;
 
@@ -43,11 +61,44 @@ public class AppYamlProjectStaging {
   private static final Logger log = Logger.getLogger(AppYamlProjectStaging.class.getName());
 
   private static final String APP_YAML = "app.yaml";
+  private static final String GCLOUD_IGNORE = ".gcloudignore";
 
   @VisibleForTesting
   static final ImmutableList<String> OTHER_YAMLS =
       ImmutableList.of("cron.yaml", "dos.yaml", "dispatch.yaml", "index.yaml", "queue.yaml");
 
+  private static final FlightRecorderEventType STAGE_EVENT =
+      FlightRecorderEventType.builder("com.google.cloud.tools.appengine.StageArchive")
+          .setLabel("App Engine app.yaml Staging")
+          .setThreshold(Duration.ofMillis(20))
+          .addStringField("stagingDirectory", "Staging Directory")
+          .addStringField("artifact", "Artifact")
+          .addStringField("env", "Environment")
+          .addStringField("runtime", "Runtime")
+          .build();
+
+  private static final String TRACE_CATEGORY = "staging";
+
+  private static final String MANIFEST_SUFFIX = ".staging-manifest.json";
+
+  // copies of Class-Path jars in flight, beyond this the disk rather than latency limits them
+  private static final int MAX_CLASSPATH_COPIES = 8;
+
+  private final TraceRecorder trace;
+
+  public AppYamlProjectStaging() {
+    this(TraceRecorder.NO_OP);
+  }
+
+  /**
+   * Creates a stager that records the staging steps as spans of the trace.
+   *
+   * @param trace the recorder to add spans to
+   */
+  public AppYamlProjectStaging(TraceRecorder trace) {
+    this.trace = Preconditions.checkNotNull(trace);
+  }
+
   /**
    * Stages an app.yaml based App Engine project for deployment. Copies app.yaml, the project
    * artifact and any user defined extra files. Will also copy the Docker directory for flex
@@ -59,7 +110,79 @@ public class AppYamlProjectStaging {
   public void stageArchive(AppYamlProjectStageConfiguration config) throws AppEngineException {
     Preconditions.checkNotNull(config);
     Path stagingDirectory = config.getStagingDirectory();
+    checkStagingDirectory(stagingDirectory);
 
+    FlightRecorderEvent event =
+        STAGE_EVENT
+            .begin()
+            .set("stagingDirectory", stagingDirectory.toString())
+            .set("artifact", config.getArtifact().toString());
+    try {
+      AppYaml appYaml = parseAppYaml(config);
+      String runtime = appYaml.getRuntime();
+      event.set("env", appYaml.getEnvironmentType()).set("runtime", runtime);
+      switch (StagingPlan.selectMode(appYaml, config.getArtifact())) {
+        case FLEXIBLE:
+          stageFlexibleArchive(config, runtime);
+          break;
+        case STANDARD_JAR:
+          stageStandardArchive(config);
+          break;
+        case STANDARD_BINARY:
+          stageStandardBinary(config);
+          break;
+        default:
+          throw new AssertionError();
+      }
+    } catch (IOException ex) {
+      throw new AppEngineException(ex);
+    } finally {
+      event.commit();
+    }
+  }
+
+  /**
+   * Plans the staging of an app.yaml based App Engine project without touching the staging
+   * directory, for a {@link StagingPlan#dryRun() dry run} or a parallel {@link
+   * StagingPlan#execute(java.util.concurrent.Executor) execution}.
+   *
+   * @param config Specifies artifacts and staging destination
+   * @throws AppEngineException When the project cannot be staged
+   */
+  public StagingPlan plan(AppYamlProjectStageConfiguration config) throws AppEngineException {
+    Preconditions.checkNotNull(config);
+    checkStagingDirectory(config.getStagingDirectory());
+    try {
+      return StagingPlan.create(config, parseAppYaml(config));
+    } catch (IOException ex) {
+      throw new AppEngineException(ex);
+    }
+  }
+
+  /**
+   * Stages an app.yaml based App Engine project straight into a deterministic archive, without
+   * writing the staging directory, which only names the root of the staged layout. The staging
+   * strategy and incremental options don't apply.
+   *
+   * @param config Specifies artifacts and staging destination
+   * @param output receives the archive, it is closed once the archive is written
+   * @param format the format of the archive
+   * @throws AppEngineException When staging fails
+   */
+  public void stageToArchive(
+      AppYamlProjectStageConfiguration config, OutputStream output, ArchiveWriter.Format format)
+      throws AppEngineException {
+    Preconditions.checkNotNull(config);
+    StagingPlan plan;
+    try {
+      plan = StagingPlan.create(config, parseAppYaml(config));
+    } catch (IOException ex) {
+      throw new AppEngineException(ex);
+    }
+    plan.writeArchive(output, format);
+  }
+
+  private static void checkStagingDirectory(Path stagingDirectory) throws AppEngineException {
     if (!Files.exists(stagingDirectory)) {
       throw new AppEngineException(
           "Staging directory does not exist. Location: " + stagingDirectory);
@@ -68,81 +191,128 @@ public class AppYamlProjectStaging {
       throw new AppEngineException(
           "Staging location is not a directory. Location: " + stagingDirectory);
     }
-
-    try {
-      String env = findEnv(config);
-      String runtime = findRuntime(config);
-      if ("flex".equals(env)) {
-        stageFlexibleArchive(config, runtime);
-        return;
-      }
-      if ("java11".equals(runtime)) {
-        boolean isJar = config.getArtifact().getFileName().toString().endsWith(".jar");
-        if (isJar) {
-          stageStandardArchive(config);
-          return;
-        }
-        if (hasCustomEntrypoint(config)) {
-          stageStandardBinary(config);
-          return;
-        }
-        // I cannot deploy non-jars without custom entrypoints
-        throw new AppEngineException(
-            "Cannot process application with runtime: java11."
-                + " A custom entrypoint must be defined in your app.yaml for non-jar artifact: "
-                + config.getArtifact().toString());
-      }
-      // I don't know how to deploy this
-      throw new AppEngineException(
-          "Cannot process application with runtime: "
-              + runtime
-              + (Strings.isNullOrEmpty(env) ? "" : " and env: " + env));
-    } catch (IOException ex) {
-      throw new AppEngineException(ex);
-    }
   }
 
   @VisibleForTesting
   void stageFlexibleArchive(AppYamlProjectStageConfiguration config, @Nullable String runtime)
       throws IOException, AppEngineException {
-    CopyService copyService = new CopyService();
-    copyDockerContext(config, copyService, runtime);
-    copyExtraFiles(config, copyService);
-    copyAppEngineContext(config, copyService);
-    copyArtifact(config, copyService);
+    TraceSpan span = startStageSpan("Stage flexible app", config);
+    try {
+      CopyService copyService = newCopyService(config);
+      traced("Copy Docker context", () -> copyDockerContext(config, copyService, runtime));
+      traced("Copy extra files", () -> copyExtraFiles(config, copyService));
+      traced("Copy App Engine context", () -> copyAppEngineContext(config, copyService));
+      traced("Copy artifact", () -> copyArtifact(config, copyService));
+      traced("Finish staging", copyService::finish);
+    } finally {
+      span.close();
+    }
   }
 
   @VisibleForTesting
   void stageStandardArchive(AppYamlProjectStageConfiguration config)
       throws IOException, AppEngineException {
-    CopyService copyService = new CopyService();
-    copyExtraFiles(config, copyService);
-    copyAppEngineContext(config, copyService);
-    copyArtifact(config, copyService);
-    copyArtifactJarClasspath(config, copyService);
+    TraceSpan span = startStageSpan("Stage standard jar app", config);
+    try {
+      CopyService copyService = newCopyService(config);
+      traced("Copy extra files", () -> copyExtraFiles(config, copyService));
+      traced("Copy App Engine context", () -> copyAppEngineContext(config, copyService));
+      traced("Copy artifact", () -> copyArtifact(config, copyService));
+      traced("Copy Class-Path jars", () -> copyClasspathConcurrently(config, copyService));
+      traced("Finish staging", copyService::finish);
+    } finally {
+      span.close();
+    }
+  }
+
+  private static void copyClasspathConcurrently(
+      AppYamlProjectStageConfiguration config, CopyService copyService) throws IOException {
+    ForkJoinPool pool =
+        new ForkJoinPool(
+            Math.min(MAX_CLASSPATH_COPIES, Runtime.getRuntime().availableProcessors()));
+    try {
+      copyArtifactJarClasspath(config, copyService, pool);
+    } finally {
+      pool.shutdown();
+    }
   }
 
   @VisibleForTesting
   void stageStandardBinary(AppYamlProjectStageConfiguration config)
       throws IOException, AppEngineException {
-    CopyService copyService = new CopyService();
-    copyExtraFiles(config, copyService);
-    copyAppEngineContext(config, copyService);
-    copyArtifact(config, copyService);
+    TraceSpan span = startStageSpan("Stage standard binary app", config);
+    try {
+      CopyService copyService = newCopyService(config);
+      traced("Copy extra files", () -> copyExtraFiles(config, copyService));
+      traced("Copy App Engine context", () -> copyAppEngineContext(config, copyService));
+      traced("Copy artifact", () -> copyArtifact(config, copyService));
+      traced("Finish staging", copyService::finish);
+    } finally {
+      span.close();
+    }
+  }
+
+  @VisibleForTesting
+  static CopyService newCopyService(AppYamlProjectStageConfiguration config) {
+    StagingFileTransfer transfer = newFileTransfer(config);
+    if (Boolean.TRUE.equals(config.getIncremental())) {
+      Path stagingDirectory = config.getStagingDirectory();
+      return new IncrementalCopyService(
+          transfer,
+          stagingDirectory,
+          getManifestFile(stagingDirectory),
+          Boolean.TRUE.equals(config.getCompareContentHashes()));
+    }
+    return new CopyService(transfer);
+  }
+
+  static StagingFileTransfer newFileTransfer(AppYamlProjectStageConfiguration config) {
+    StagingStrategy strategy = config.getStagingStrategy();
+    return new StagingFileTransfer(strategy != null ? strategy : StagingStrategy.COPY);
+  }
+
+  /**
+   * Returns the manifest of incremental staging, which is kept next to the staging directory so
+   * that it isn't deployed with the app.
+   */
+  @VisibleForTesting
+  static Path getManifestFile(Path stagingDirectory) {
+    Path absolute = stagingDirectory.toAbsolutePath().normalize();
+    Path parent = absolute.getParent();
+    Path name = absolute.getFileName();
+    if (parent == null || name == null) {
+      return absolute.resolve(MANIFEST_SUFFIX);
+    }
+    return parent.resolve(name + MANIFEST_SUFFIX);
+  }
+
+  private TraceSpan startStageSpan(String name, AppYamlProjectStageConfiguration config) {
+    return trace
+        .startSpan(name, TRACE_CATEGORY)
+        .setArg("artifact", config.getArtifact().toString())
+        .setArg("stagingDirectory", config.getStagingDirectory().toString());
+  }
+
+  private void traced(String step, StagingStep action) throws IOException, AppEngineException {
+    TraceSpan span = trace.startSpan(step, TRACE_CATEGORY);
+    try {
+      action.run();
+    } finally {
+      span.close();
+    }
+  }
+
+  /** A step of staging, recorded as a span of the trace. */
+  @FunctionalInterface
+  private interface StagingStep {
+    void run() throws IOException, AppEngineException;
   }
 
   @VisibleForTesting
   @Nullable
   static String findEnv(AppYamlProjectStageConfiguration config)
       throws AppEngineException, IOException {
-    Path appEngineDirectory = config.getAppEngineDirectory();
-    if (appEngineDirectory == null) {
-      throw new AppEngineException("Invalid Staging Configuration: missing App Engine directory");
-    }
-    Path appYaml = appEngineDirectory.resolve(APP_YAML);
-    try (InputStream input = Files.newInputStream(appYaml)) {
-      return AppYaml.parse(input).getEnvironmentType();
-    }
+    return parseAppYaml(config).getEnvironmentType();
   }
 
   @VisibleForTesting
@@ -150,14 +320,16 @@ public class AppYamlProjectStaging {
   static String findRuntime(AppYamlProjectStageConfiguration config)
       throws IOException, AppEngineException {
     // verify that app.yaml that contains runtime:java
+    return parseAppYaml(config).getRuntime();
+  }
+
+  static AppYaml parseAppYaml(AppYamlProjectStageConfiguration config)
+      throws IOException, AppEngineException {
     Path appEngineDirectory = config.getAppEngineDirectory();
     if (appEngineDirectory == null) {
       throw new AppEngineException("Invalid Staging Configuration: missing App Engine directory");
     }
-    Path appYaml = appEngineDirectory.resolve(APP_YAML);
-    try (InputStream input = Files.newInputStream(appYaml)) {
-      return AppYaml.parse(input).getRuntime();
-    }
+    return DescriptorCache.getInstance().getAppYaml(appEngineDirectory.resolve(APP_YAML));
   }
 
   @VisibleForTesting
@@ -180,7 +352,8 @@ public class AppYamlProjectStaging {
                 "Docker directory " + dockerDirectory + " does not contain Dockerfile.");
           } else {
             Path stagingDirectory = config.getStagingDirectory();
-            copyService.copyDirectory(dockerDirectory, stagingDirectory);
+            copyService.copyDirectory(
+                dockerDirectory, stagingDirectory, getIgnoreRules(config, dockerDirectory));
           }
         }
       }
@@ -215,11 +388,39 @@ public class AppYamlProjectStaging {
             "Extra files location is not a directory. Location: " + extraFilesDirectory);
       }
       Path stagingDirectory = config.getStagingDirectory();
-      copyService.copyDirectory(extraFilesDirectory, stagingDirectory);
+      copyService.copyDirectory(
+          extraFilesDirectory, stagingDirectory, getIgnoreRules(config, extraFilesDirectory));
     }
   }
 
-  private static void copyArtifact(AppYamlProjectStageConfiguration config, CopyService copyService)
+  /**
+   * Returns the rules of the {@code .gcloudignore} files that apply to a directory copied to the
+   * root of the staging directory: the one of the App Engine directory, then the one of the copied
+   * directory, which gcloud would find in the staging directory.
+   */
+  @VisibleForTesting
+  static ExclusionMatcher getIgnoreRules(AppYamlProjectStageConfiguration config, Path directory)
+      throws IOException {
+    if (!Boolean.TRUE.equals(config.getGcloudIgnore())) {
+      return ExclusionMatcher.NONE;
+    }
+    ExclusionMatcher.Builder rules = ExclusionMatcher.builder(directory);
+    Path appEngineIgnore = config.getAppEngineDirectory().resolve(GCLOUD_IGNORE);
+    boolean hasAppEngineIgnore = Files.isRegularFile(appEngineIgnore);
+    if (hasAppEngineIgnore) {
+      rules.addIgnoreFile(appEngineIgnore);
+    }
+    Path directoryIgnore = directory.resolve(GCLOUD_IGNORE);
+    boolean hasDirectoryIgnore =
+        Files.isRegularFile(directoryIgnore)
+            && !(hasAppEngineIgnore && Files.isSameFile(directoryIgnore, appEngineIgnore));
+    if (hasDirectoryIgnore) {
+      rules.addIgnoreFile(directoryIgnore);
+    }
+    return hasAppEngineIgnore || hasDirectoryIgnore ? rules.build() : ExclusionMatcher.NONE;
+  }
+
+  static void copyArtifact(AppYamlProjectStageConfiguration config, CopyService copyService)
       throws IOException, AppEngineException {
     Path artifact = config.getArtifact();
     if (Files.exists(artifact)) {
@@ -237,36 +438,63 @@ public class AppYamlProjectStaging {
   // directory.
   static void copyArtifactJarClasspath(
       AppYamlProjectStageConfiguration config, CopyService copyService) throws IOException {
+    copyArtifactJarClasspath(config, copyService, Runnable::run);
+  }
+
+  /**
+   * Copies the jars referenced in "Class-Path" of the artifact's MANIFEST.MF, and transitively of
+   * theirs, to the target directory, concurrently on {@code executor}.
+   */
+  @VisibleForTesting
+  static void copyArtifactJarClasspath(
+      AppYamlProjectStageConfiguration config, CopyService copyService, Executor executor)
+      throws IOException {
     Path artifact = config.getArtifact();
     Path targetDirectory = config.getStagingDirectory();
-    try (JarFile jarFile = new JarFile(artifact.toFile())) {
-      String jarClassPath =
-          jarFile.getManifest().getMainAttributes().getValue(Attributes.Name.CLASS_PATH);
-      if (jarClassPath == null) {
-        return;
+    ClassPathResolver.Result closure =
+        ClassPathResolver.resolve(artifact, targetDirectory.resolve(artifact.getFileName()));
+    for (Path missing : closure.getMissing()) {
+      log.warning("Could not copy 'Class-Path' jar: " + missing + " referenced in MANIFEST.MF");
+    }
+    for (ClassPathResolver.ClassPathJar conflict : closure.getConflicts()) {
+      log.warning(
+          "Could not copy 'Class-Path' jar: "
+              + conflict.getSource()
+              + " referenced in MANIFEST.MF, a different jar is copied to "
+              + conflict.getTarget());
+    }
+
+    List<CompletableFuture<Void>> copies = new ArrayList<>();
+    for (ClassPathResolver.ClassPathJar jar : closure.getJars()) {
+      Path jarSrc = jar.getSource();
+      Path jarTarget = jar.getTarget();
+      if (Files.exists(jarTarget)) {
+        log.fine(
+            "Overwriting 'Class-Path' jar: "
+                + jarTarget
+                + " with "
+                + jarSrc
+                + " referenced in MANIFEST.MF");
       }
-      Iterable<String> classpathEntries = Splitter.onPattern("\\s+").split(jarClassPath.trim());
-      for (String classpathEntry : classpathEntries) {
-        // classpath entries are relative to artifact's position and relativeness should be
-        // preserved
-        // in the target directory
-        Path jarSrc = artifact.getParent().resolve(classpathEntry);
-        if (!Files.isRegularFile(jarSrc)) {
-          log.warning("Could not copy 'Class-Path' jar: " + jarSrc + " referenced in MANIFEST.MF");
-          continue;
-        }
-        Path jarTarget = targetDirectory.resolve(classpathEntry);
-
-        if (Files.exists(jarTarget)) {
-          log.fine(
-              "Overwriting 'Class-Path' jar: "
-                  + jarTarget
-                  + " with "
-                  + jarSrc
-                  + " referenced in MANIFEST.MF");
-        }
-        copyService.copyFileAndReplace(jarSrc, jarTarget);
+      copies.add(
+          CompletableFuture.runAsync(
+              () -> {
+                try {
+                  copyService.copyFileAndReplace(jarSrc, jarTarget);
+                } catch (IOException ex) {
+                  throw new UncheckedIOException(ex);
+                }
+              },
+              executor));
+    }
+    try {
+      CompletableFuture.allOf(copies.toArray(new CompletableFuture<?>[0])).join();
+    } catch (CompletionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof UncheckedIOException) {
+        throw ((UncheckedIOException) cause).getCause();
       }
+      throw ex;
     }
   }
 
@@ -275,30 +503,287 @@ public class AppYamlProjectStaging {
   static boolean hasCustomEntrypoint(AppYamlProjectStageConfiguration config)
       throws IOException, AppEngineException {
     // verify that app.yaml that contains entrypoint:
-    if (config.getAppEngineDirectory() == null) {
-      throw new AppEngineException("Invalid Staging Configuration: missing App Engine directory");
-    }
-    Path appYamlFile = config.getAppEngineDirectory().resolve(APP_YAML);
-    try (InputStream input = Files.newInputStream(appYamlFile)) {
-      return AppYaml.parse(input).getEntrypoint() != null;
-    }
+    return parseAppYaml(config).getEntrypoint() != null;
   }
 
   @VisibleForTesting
   static class CopyService {
-    void copyDirectory(Path src, Path dest, List<Path> excludes) throws IOException {
-      FileUtil.copyDirectory(src, dest, excludes);
+    final StagingFileTransfer transfer;
+
+    CopyService() {
+      this(new StagingFileTransfer(StagingStrategy.COPY));
+    }
+
+    CopyService(StagingFileTransfer transfer) {
+      this.transfer = transfer;
+    }
+
+    void copyDirectory(Path src, Path dest, ExclusionMatcher excludes) throws IOException {
+      if (transfer.isCopy()) {
+        FileUtil.copyDirectory(src, dest, excludes);
+        return;
+      }
+      // same as FileUtil.copyDirectory, but files are linked where possible
+      Files.walkFileTree(
+          src,
+          new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+                throws IOException {
+              if (dir.equals(src)) {
+                return FileVisitResult.CONTINUE;
+              }
+              if (excludes.isExcluded(dir, true)) {
+                return FileVisitResult.SKIP_SUBTREE;
+              }
+              Files.copy(
+                  dir, dest.resolve(src.relativize(dir)), StandardCopyOption.COPY_ATTRIBUTES);
+              return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+                throws IOException {
+              if (!excludes.isExcluded(file, attrs.isDirectory())) {
+                transfer.transfer(file, dest.resolve(src.relativize(file)), false, true);
+              }
+              return FileVisitResult.CONTINUE;
+            }
+          });
     }
 
     void copyDirectory(Path src, Path dest) throws IOException {
-      FileUtil.copyDirectory(src, dest);
+      copyDirectory(src, dest, ExclusionMatcher.NONE);
     }
 
     void copyFileAndReplace(Path src, Path dest) throws IOException {
       if (!Files.exists(dest.getParent())) {
         Files.createDirectories(dest.getParent());
       }
-      Files.copy(src, dest, REPLACE_EXISTING);
+      transfer.transfer(src, dest, true, false);
+    }
+
+    /**
+     * Copies a file of a {@link StagingPlan} whose parent directory exists. Thread safe, so plans
+     * can copy files concurrently.
+     *
+     * @param replace whether to replace an existing file, like {@link #copyFileAndReplace}, rather
+     *     than fail, like {@link #copyDirectory}
+     */
+    void copyPlannedFile(Path src, Path dest, boolean replace) throws IOException {
+      transfer.transfer(src, dest, replace, !replace);
+    }
+
+    /** Called once all files are copied. */
+    void finish() throws IOException {}
+  }
+
+  /**
+   * Copies only files whose source is new or changed since the previous staging, as recorded by the
+   * {@link StagingManifest}, and on {@link #finish()} deletes the staged files whose source is
+   * gone. Files of the staging directory that were not staged by this class are left alone. Files
+   * may be copied concurrently, the manifest and counters are guarded by this service.
+   */
+  @VisibleForTesting
+  static class IncrementalCopyService extends CopyService {
+    private final Path stagingDirectory;
+    private final Path manifestFile;
+    private final boolean compareContentHashes;
+    private final StagingManifest previous;
+    private final StagingManifest current = new StagingManifest();
+    private int staged;
+    private int skipped;
+    private int deleted;
+
+    IncrementalCopyService(
+        StagingFileTransfer transfer,
+        Path stagingDirectory,
+        Path manifestFile,
+        boolean compareContentHashes) {
+      super(transfer);
+      this.stagingDirectory = stagingDirectory.toAbsolutePath().normalize();
+      this.manifestFile = manifestFile;
+      this.compareContentHashes = compareContentHashes;
+      previous = StagingManifest.load(manifestFile);
+    }
+
+    @Override
+    void copyDirectory(Path src, Path dest, ExclusionMatcher excludes) throws IOException {
+      Files.walkFileTree(
+          src,
+          new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+                throws IOException {
+              if (dir.equals(src)) {
+                return FileVisitResult.CONTINUE;
+              }
+              if (excludes.isExcluded(dir, true)) {
+                return FileVisitResult.SKIP_SUBTREE;
+              }
+              Path target = dest.resolve(src.relativize(dir));
+              if (!Files.isDirectory(target)) {
+                Files.copy(dir, target, StandardCopyOption.COPY_ATTRIBUTES);
+              }
+              return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+                throws IOException {
+              if (!excludes.isExcluded(file, attrs.isDirectory())) {
+                stage(file, attrs, dest.resolve(src.relativize(file)), false);
+              }
+              return FileVisitResult.CONTINUE;
+            }
+          });
+    }
+
+    @Override
+    void copyDirectory(Path src, Path dest) throws IOException {
+      copyDirectory(src, dest, ExclusionMatcher.NONE);
+    }
+
+    @Override
+    void copyFileAndReplace(Path src, Path dest) throws IOException {
+      stage(src, Files.readAttributes(src, BasicFileAttributes.class), dest, true);
+    }
+
+    @Override
+    void copyPlannedFile(Path src, Path dest, boolean replace) throws IOException {
+      stage(src, Files.readAttributes(src, BasicFileAttributes.class), dest, replace);
+    }
+
+    private void stage(Path src, BasicFileAttributes attrs, Path dest, boolean replace)
+        throws IOException {
+      Path absoluteDest = dest.toAbsolutePath().normalize();
+      if (!absoluteDest.startsWith(stagingDirectory)) {
+        // not part of the staging directory, nothing to track
+        super.copyFileAndReplace(src, dest);
+        return;
+      }
+      String path = toManifestPath(stagingDirectory.relativize(absoluteDest));
+      StagingManifest.Entry old = previous.get(path);
+      if (!replace && (isStaged(path) || (old == null && Files.exists(absoluteDest)))) {
+        // same as FileUtil.copyDirectory, which doesn't overwrite
+        throw new FileAlreadyExistsException(dest.toString());
+      }
+
+      String source = src.toAbsolutePath().normalize().toString();
+      long size = attrs.size();
+      long lastModified = attrs.lastModifiedTime().toMillis();
+      // an edit to the staged file changes its modification time, even if not its size
+      if (old != null
+          && old.getSource().equals(source)
+          && old.getSize() == size
+          && Files.isRegularFile(absoluteDest)
+          && Files.size(absoluteDest) == size
+          && Files.getLastModifiedTime(absoluteDest).toMillis() == old.getStagedLastModified()) {
+        if (old.getLastModified() == lastModified) {
+          record(path, old, false);
+          return;
+        }
+        String oldHash = old.getSha256();
+        if (compareContentHashes && oldHash != null) {
+          String hash = sha256(src);
+          if (hash.equals(oldHash)) {
+            record(
+                path,
+                new StagingManifest.Entry(
+                    source, size, lastModified, old.getStagedLastModified(), hash),
+                false);
+            return;
+          }
+        }
+      }
+
+      Path parent = absoluteDest.getParent();
+      if (parent != null) {
+        Files.createDirectories(parent);
+      }
+      // only files this service staged before, or that the caller asked to replace
+      transfer.transfer(src, absoluteDest, true, true);
+      long stagedLastModified = Files.getLastModifiedTime(absoluteDest).toMillis();
+      String hash = compareContentHashes ? sha256(src) : null;
+      record(
+          path,
+          new StagingManifest.Entry(source, size, lastModified, stagedLastModified, hash),
+          true);
+    }
+
+    private synchronized boolean isStaged(String path) {
+      return current.contains(path);
+    }
+
+    private synchronized void record(String path, StagingManifest.Entry entry, boolean copied) {
+      current.put(path, entry);
+      if (copied) {
+        staged++;
+      } else {
+        skipped++;
+      }
+    }
+
+    @Override
+    synchronized void finish() throws IOException {
+      for (String path : previous.getPaths()) {
+        if (current.contains(path)) {
+          continue;
+        }
+        Path file = stagingDirectory.resolve(path);
+        if (Files.deleteIfExists(file)) {
+          deleted++;
+        }
+        deleteEmptyParents(file);
+      }
+      current.save(manifestFile);
+      log.info(
+          "Staged "
+              + staged
+              + " files, skipped "
+              + skipped
+              + " unchanged files, deleted "
+              + deleted
+              + " files in "
+              + stagingDirectory);
+    }
+
+    private void deleteEmptyParents(Path file) throws IOException {
+      Path directory = file.getParent();
+      while (directory != null
+          && !directory.equals(stagingDirectory)
+          && directory.startsWith(stagingDirectory)) {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+          if (entries.iterator().hasNext()) {
+            return;
+          }
+        } catch (NoSuchFileException ex) {
+          // already gone
+        }
+        Files.deleteIfExists(directory);
+        directory = directory.getParent();
+      }
+    }
+
+    private static String toManifestPath(Path relativePath) {
+      // the same manifest works for any file system separator
+      return relativePath.toString().replace(relativePath.getFileSystem().getSeparator(), "/");
+    }
+
+    private static String sha256(Path file) throws IOException {
+      return MoreFiles.asByteSource(file).hash(Hashing.sha256()).toString();
+    }
+
+    synchronized int getStaged() {
+      return staged;
+    }
+
+    synchronized int getSkipped() {
+      return skipped;
+    }
+
+    synchronized int getDeleted() {
+      return deleted;
     }
   }
 }
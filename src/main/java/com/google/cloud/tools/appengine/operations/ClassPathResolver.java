@@ -0,0 +1,223 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.appengine.operations;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.logging.Logger;
+
+/**
+ * Resolves the jars that the {@code Class-Path} manifest attribute of a jar references,
+ * transitively: the jars it references and the jars they reference in turn, breadth first and in
+ * manifest order, each jar once even if references form a cycle. Entries are relative to the jar
+ * that references them, and keep their relative location in the staging directory.
+ *
+ * <p>When different jars would be staged at the same place, the first one wins; the others are
+ * dropped silently if their content is the same, and reported as conflicts otherwise.
+ *
+ * <p>The {@code Class-Path} of each jar is cached by path, size and modification time, so staging
+ * the same application again doesn't open unchanged jars.
+ */
+class ClassPathResolver {
+
+  private static final Logger log = Logger.getLogger(ClassPathResolver.class.getName());
+
+  // cleared when full, staging rarely sees more distinct jars than this
+  private static final int MAX_CACHED_MANIFESTS = 4096;
+
+  private static final Map<Path, CachedClassPath> classPathCache = new ConcurrentHashMap<>();
+
+  private ClassPathResolver() {}
+
+  /**
+   * Resolves the {@code Class-Path} closure of a jar.
+   *
+   * @param artifact the jar to resolve
+   * @param targetDirectory where the artifact is staged, the jars are staged relative to it
+   * @throws IOException if the artifact can't be read
+   */
+  static Result resolve(Path artifact, Path targetDirectory) throws IOException {
+    Result result = new Result();
+    Set<Path> visited = new HashSet<>();
+    visited.add(normalize(artifact));
+    Map<Path, ClassPathJar> byTarget = new HashMap<>();
+    Queue<ClassPathJar> queue = new ArrayDeque<>();
+    enqueue(artifact, targetDirectory, readClassPath(artifact), queue);
+
+    while (!queue.isEmpty()) {
+      ClassPathJar jar = queue.remove();
+      if (!visited.add(normalize(jar.source))) {
+        continue;
+      }
+      if (!Files.isRegularFile(jar.source)) {
+        result.missing.add(jar.source);
+        continue;
+      }
+      Path target = normalize(jar.target);
+      ClassPathJar staged = byTarget.get(target);
+      if (staged != null) {
+        if (!sha256(staged.source).equals(sha256(jar.source))) {
+          result.conflicts.add(jar);
+        }
+        continue;
+      }
+      byTarget.put(target, jar);
+      result.jars.add(jar);
+
+      List<String> nested;
+      try {
+        nested = readClassPath(jar.source);
+      } catch (IOException ex) {
+        // not a jar, nothing to follow
+        log.fine("Could not read 'Class-Path' of " + jar.source + ": " + ex.getMessage());
+        continue;
+      }
+      enqueue(jar.source, jar.target, nested, queue);
+    }
+    return result;
+  }
+
+  private static void enqueue(
+      Path source, Path target, List<String> classPath, Queue<ClassPathJar> queue) {
+    Path sourceDirectory = source.getParent();
+    Path targetDirectory = target.getParent();
+    for (String entry : classPath) {
+      Path entrySource =
+          sourceDirectory == null ? source.resolveSibling(entry) : sourceDirectory.resolve(entry);
+      Path entryTarget =
+          targetDirectory == null ? target.resolveSibling(entry) : targetDirectory.resolve(entry);
+      queue.add(new ClassPathJar(entrySource, entryTarget));
+    }
+  }
+
+  /** Returns the {@code Class-Path} entries of a jar, from the cache if the jar didn't change. */
+  @VisibleForTesting
+  static List<String> readClassPath(Path jar) throws IOException {
+    Path key = normalize(jar);
+    BasicFileAttributes attributes = Files.readAttributes(jar, BasicFileAttributes.class);
+    CachedClassPath cached = classPathCache.get(key);
+    if (cached != null
+        && cached.size == attributes.size()
+        && cached.lastModified.equals(attributes.lastModifiedTime())) {
+      return cached.entries;
+    }
+
+    List<String> entries = ImmutableList.of();
+    try (JarFile jarFile = new JarFile(jar.toFile())) {
+      Manifest manifest = jarFile.getManifest();
+      String classPath =
+          manifest == null
+              ? null
+              : manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH);
+      if (classPath != null && !classPath.trim().isEmpty()) {
+        entries = ImmutableList.copyOf(Splitter.onPattern("\\s+").split(classPath.trim()));
+      }
+    }
+    if (classPathCache.size() >= MAX_CACHED_MANIFESTS) {
+      classPathCache.clear();
+    }
+    classPathCache.put(
+        key, new CachedClassPath(attributes.size(), attributes.lastModifiedTime(), entries));
+    return entries;
+  }
+
+  @VisibleForTesting
+  static void clearCache() {
+    classPathCache.clear();
+  }
+
+  private static Path normalize(Path path) {
+    return path.toAbsolutePath().normalize();
+  }
+
+  private static String sha256(Path file) throws IOException {
+    return MoreFiles.asByteSource(file).hash(Hashing.sha256()).toString();
+  }
+
+  /** A jar to stage. */
+  static class ClassPathJar {
+    private final Path source;
+    private final Path target;
+
+    private ClassPathJar(Path source, Path target) {
+      this.source = source;
+      this.target = target;
+    }
+
+    Path getSource() {
+      return source;
+    }
+
+    Path getTarget() {
+      return target;
+    }
+  }
+
+  /** The closure of a jar. */
+  static class Result {
+    private final List<ClassPathJar> jars = new ArrayList<>();
+    private final List<Path> missing = new ArrayList<>();
+    private final List<ClassPathJar> conflicts = new ArrayList<>();
+
+    /** The jars to stage, breadth first. */
+    List<ClassPathJar> getJars() {
+      return jars;
+    }
+
+    /** Referenced paths that are not files. */
+    List<Path> getMissing() {
+      return missing;
+    }
+
+    /** Jars that are not staged because a different jar is staged at the same place. */
+    List<ClassPathJar> getConflicts() {
+      return conflicts;
+    }
+  }
+
+  private static class CachedClassPath {
+    private final long size;
+    private final FileTime lastModified;
+    private final List<String> entries;
+
+    private CachedClassPath(long size, FileTime lastModified, List<String> entries) {
+      this.size = size;
+      this.lastModified = lastModified;
+      this.entries = entries;
+    }
+  }
+}
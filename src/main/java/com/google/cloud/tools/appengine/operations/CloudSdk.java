@@ -19,11 +19,13 @@ package com.google.cloud.tools.appengine.operations;
 import com.google.cloud.tools.appengine.operations.cloudsdk.AppEngineJavaComponentsNotInstalledException;
 import com.google.cloud.tools.appengine.operations.cloudsdk.CloudSdkNotFoundException;
 import com.google.cloud.tools.appengine.operations.cloudsdk.CloudSdkOutOfDateException;
+import com.google.cloud.tools.appengine.operations.cloudsdk.CloudSdkRegistry;
 import com.google.cloud.tools.appengine.operations.cloudsdk.CloudSdkResolver;
 import com.google.cloud.tools.appengine.operations.cloudsdk.CloudSdkVersionFileException;
 import com.google.cloud.tools.appengine.operations.cloudsdk.CloudSdkVersionFileNotFoundException;
 import com.google.cloud.tools.appengine.operations.cloudsdk.CloudSdkVersionFileParseException;
 import com.google.cloud.tools.appengine.operations.cloudsdk.InvalidJavaSdkException;
+import com.google.cloud.tools.appengine.operations.cloudsdk.ParallelSdkDiscovery;
 import com.google.cloud.tools.appengine.operations.cloudsdk.PathResolver;
 import com.google.cloud.tools.appengine.operations.cloudsdk.serialization.CloudSdkVersion;
 import com.google.common.annotations.VisibleForTesting;
@@ -41,6 +43,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.ServiceLoader;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.annotation.Nonnull;
@@ -65,10 +68,12 @@ public class CloudSdk {
   private final Map<String, Path> jarLocations = new HashMap<>();
   private final Path sdkPath;
   private final Path javaHomePath;
+  private final CloudSdkRegistry registry;
 
-  private CloudSdk(Path sdkPath, Path javaHomePath) {
+  private CloudSdk(Path sdkPath, Path javaHomePath, CloudSdkRegistry registry) {
     this.sdkPath = Preconditions.checkNotNull(sdkPath);
     this.javaHomePath = javaHomePath;
+    this.registry = registry;
 
     // Populate jar locations.
     jarLocations.put(
@@ -80,9 +85,14 @@ public class CloudSdk {
 
   /**
    * Returns the version of the Cloud SDK installation. Version is determined by reading the VERSION
-   * file located in the Cloud SDK directory.
+   * file located in the Cloud SDK directory, the parsed version is cached in the {@link
+   * CloudSdkRegistry} until the file changes.
    */
   public CloudSdkVersion getVersion() throws CloudSdkVersionFileException {
+    return registry.getVersion(sdkPath, this::readVersion);
+  }
+
+  private CloudSdkVersion readVersion() throws CloudSdkVersionFileException {
     Path versionFile = getPath().resolve(VERSION_FILE_NAME);
 
     if (!Files.isRegularFile(versionFile)) {
@@ -97,7 +107,7 @@ public class CloudSdk {
         // expect only a single line
         contents = lines.get(0);
       }
-      return new CloudSdkVersion(contents);
+      return CloudSdkVersion.of(contents);
     } catch (IOException ex) {
       throw new CloudSdkVersionFileException(ex);
     } catch (IllegalArgumentException ex) {
@@ -178,7 +188,8 @@ public class CloudSdk {
   }
 
   /**
-   * Checks whether the Cloud SDK path and version are valid.
+   * Checks whether the Cloud SDK path and version are valid. A successful validation is cached in
+   * the {@link CloudSdkRegistry} until the VERSION file of the Cloud SDK changes.
    *
    * @throws CloudSdkNotFoundException when Cloud SDK is not installed where expected
    * @throws CloudSdkOutOfDateException when Cloud SDK is out of date
@@ -186,8 +197,12 @@ public class CloudSdk {
    */
   public void validateCloudSdk()
       throws CloudSdkNotFoundException, CloudSdkOutOfDateException, CloudSdkVersionFileException {
-    validateCloudSdkLocation();
-    validateCloudSdkVersion();
+    registry.validate(
+        sdkPath,
+        () -> {
+          validateCloudSdkLocation();
+          validateCloudSdkVersion();
+        });
   }
 
   private void validateCloudSdkVersion()
@@ -269,6 +284,9 @@ public class CloudSdk {
     @Nullable private Path sdkPath;
     @Nullable private List<CloudSdkResolver> resolvers;
     private Path javaHomePath = Paths.get(System.getProperty("java.home"));
+    private CloudSdkRegistry registry = CloudSdkRegistry.getInstance();
+    private boolean cacheDiscovery;
+    @Nullable private ParallelSdkDiscovery parallelDiscovery;
 
     /**
      * The home directory of Google Cloud SDK.
@@ -289,6 +307,34 @@ public class CloudSdk {
       return this;
     }
 
+    /**
+     * Sets the registry that caches SDK versions and validation, and opts in to caching the SDK
+     * path found by the default resolvers in it. Without a registry set here, versions and
+     * validation are cached in the process-wide {@link CloudSdkRegistry#getInstance()}, but every
+     * build searches for the SDK again.
+     *
+     * <p>A cached path is reused while it exists and the class loader, {@code PATH}, {@code
+     * GOOGLE_CLOUD_SDK_HOME} and {@code user.home} are unchanged. Resolvers contributed through
+     * {@link ServiceLoader}, e.g. IDE plugins that return a user-configured SDK, are not asked
+     * again, so only opt in if their answer doesn't change, or call {@link
+     * CloudSdkRegistry#refresh()} when it does.
+     */
+    public Builder registry(CloudSdkRegistry registry) {
+      this.registry = Preconditions.checkNotNull(registry);
+      this.cacheDiscovery = true;
+      return this;
+    }
+
+    /**
+     * Runs the SDK resolvers concurrently when searching for the SDK, instead of one after the
+     * other. The path of the best ranked resolver is still preferred, but resolvers that did not
+     * answer within {@code timeout} are skipped. Has no effect if {@code sdkPath} is set.
+     */
+    public Builder parallelDiscovery(long timeout, TimeUnit unit) {
+      this.parallelDiscovery = new ParallelSdkDiscovery(timeout, unit);
+      return this;
+    }
+
     /**
      * Create a new instance of {@link CloudSdk}. If {@code sdkPath} is not set, this method looks
      * for the SDK in known install locations.
@@ -297,10 +343,25 @@ public class CloudSdk {
 
       // Default SDK path
       if (sdkPath == null) {
-        sdkPath = discoverSdkPath();
+        if (resolvers == null && cacheDiscovery) {
+          // the default resolvers search the same places until the environment changes
+          sdkPath = registry.discoverSdkPath(getDiscoveryKey(), this::discoverSdkPath);
+        } else {
+          sdkPath = discoverSdkPath();
+        }
       }
 
-      return new CloudSdk(sdkPath, javaHomePath);
+      return new CloudSdk(sdkPath, javaHomePath, registry);
+    }
+
+    private String getDiscoveryKey() {
+      return System.identityHashCode(getClass().getClassLoader())
+          + "|"
+          + System.getenv("PATH")
+          + "|"
+          + System.getenv("GOOGLE_CLOUD_SDK_HOME")
+          + "|"
+          + System.getProperty("user.home");
     }
 
     /**
@@ -311,6 +372,14 @@ public class CloudSdk {
      */
     @Nonnull
     private Path discoverSdkPath() throws CloudSdkNotFoundException {
+      ParallelSdkDiscovery parallelDiscovery = this.parallelDiscovery;
+      if (parallelDiscovery != null) {
+        Path discoveredSdkPath = parallelDiscovery.discover(getResolvers());
+        if (discoveredSdkPath != null) {
+          return discoveredSdkPath;
+        }
+        throw newSdkNotFoundException();
+      }
       for (CloudSdkResolver resolver : getResolvers()) {
         try {
           Path discoveredSdkPath = resolver.getCloudSdkPath();
@@ -326,7 +395,11 @@ public class CloudSdk {
               ex);
         }
       }
-      throw new CloudSdkNotFoundException(
+      throw newSdkNotFoundException();
+    }
+
+    private CloudSdkNotFoundException newSdkNotFoundException() {
+      return new CloudSdkNotFoundException(
           "The Google Cloud SDK could not be found in the customary"
               + " locations and no path was provided.");
     }
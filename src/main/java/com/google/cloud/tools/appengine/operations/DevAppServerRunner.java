@@ -21,11 +21,13 @@ import com.google.cloud.tools.appengine.operations.cloudsdk.InvalidJavaSdkExcept
 import com.google.cloud.tools.appengine.operations.cloudsdk.internal.process.ProcessBuilderFactory;
 import com.google.cloud.tools.appengine.operations.cloudsdk.process.ProcessHandler;
 import com.google.cloud.tools.appengine.operations.cloudsdk.process.ProcessHandlerException;
+import com.google.cloud.tools.appengine.operations.cloudsdk.process.ProcessMetrics;
 import com.google.common.base.Joiner;
 import com.google.common.collect.Maps;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
@@ -92,7 +94,9 @@ public class DevAppServerRunner {
       processBuilder.directory(workingDirectory.toFile());
     }
     processBuilder.environment().putAll(devServerEnvironment);
-    Process process = processBuilder.start();
+    Process process =
+        ProcessMetrics.getInstance()
+            .start(processBuilder, "devappserver", Collections.<String>emptyList());
 
     processHandler.handleProcess(process);
   }
@@ -18,6 +18,7 @@ package com.google.cloud.tools.appengine.operations;
 
 import com.google.cloud.tools.appengine.AppEngineDescriptor;
 import com.google.cloud.tools.appengine.AppEngineException;
+import com.google.cloud.tools.appengine.DescriptorCache;
 import com.google.cloud.tools.appengine.configuration.RunConfiguration;
 import com.google.cloud.tools.appengine.configuration.StopConfiguration;
 import com.google.cloud.tools.appengine.operations.cloudsdk.CloudSdkNotFoundException;
@@ -27,16 +28,26 @@ import com.google.cloud.tools.appengine.operations.cloudsdk.process.ProcessHandl
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 import javax.annotation.Nullable;
 import org.xml.sax.SAXException;
@@ -46,21 +57,66 @@ public class DevServer {
 
   private static final Logger log = Logger.getLogger(DevServer.class.getName());
 
+  // bounded, the threads only read small files; idle threads time out so the pool costs nothing
+  // between runs
+  private static final int DESCRIPTOR_THREADS = 8;
+  private static final ExecutorService DEFAULT_DESCRIPTOR_EXECUTOR = newDescriptorExecutor();
+
   private final CloudSdk sdk;
   private final DevAppServerRunner runner;
+  private final DescriptorCache descriptorCache;
+  private final ExecutorService descriptorExecutor;
 
   private static final String DEFAULT_HOST = "localhost";
   private static final int DEFAULT_PORT = 8080;
 
   public DevServer(CloudSdk sdk, DevAppServerRunner runner) {
+    this(sdk, runner, DescriptorCache.getInstance());
+  }
+
+  /**
+   * Creates a dev server that reads the appengine-web.xml of the services through {@code
+   * descriptorCache}.
+   */
+  public DevServer(CloudSdk sdk, DevAppServerRunner runner, DescriptorCache descriptorCache) {
+    this(sdk, runner, descriptorCache, DEFAULT_DESCRIPTOR_EXECUTOR);
+  }
+
+  @VisibleForTesting
+  DevServer(
+      CloudSdk sdk,
+      DevAppServerRunner runner,
+      DescriptorCache descriptorCache,
+      ExecutorService descriptorExecutor) {
     this.sdk = Preconditions.checkNotNull(sdk);
     this.runner = Preconditions.checkNotNull(runner);
+    this.descriptorCache = Preconditions.checkNotNull(descriptorCache);
+    this.descriptorExecutor = Preconditions.checkNotNull(descriptorExecutor);
+  }
+
+  private static ExecutorService newDescriptorExecutor() {
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(
+            DESCRIPTOR_THREADS,
+            DESCRIPTOR_THREADS,
+            10,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("appengine-web-xml-reader-%d")
+                .build());
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
   }
 
   /**
    * Starts the local development server, synchronously or asynchronously.
    *
-   * @throws AppEngineException I/O error in the Java dev server
+   * <p>The appengine-web.xml files of all services are read concurrently.
+   *
+   * @throws AppEngineException I/O error in the Java dev server, an unreadable appengine-web.xml,
+   *     or services that define the same environment variable with different values
    * @throws CloudSdkNotFoundException when the Cloud SDK is not installed where expected
    * @throws CloudSdkOutOfDateException when the installed Cloud SDK is too old
    */
@@ -90,7 +146,8 @@ public class DevServer {
       arguments.addAll(additionalArguments);
     }
 
-    boolean isSandboxEnforced = isSandboxEnforced(config.getServices());
+    List<AppEngineDescriptor> descriptors = loadDescriptors(config.getServices());
+    boolean isSandboxEnforced = isSandboxEnforced(descriptors);
 
     if (!isSandboxEnforced) {
       jvmArguments.add("-Duse_jetty9_runtime=true");
@@ -110,7 +167,7 @@ public class DevServer {
     }
 
     Map<String, String> appEngineEnvironment =
-        getAllAppEngineWebXmlEnvironmentVariables(config.getServices());
+        getAllAppEngineWebXmlEnvironmentVariables(config.getServices(), descriptors);
     if (!appEngineEnvironment.isEmpty()) {
       log.info(
           "Setting appengine-web.xml configured environment variables: "
@@ -188,18 +245,18 @@ public class DevServer {
    */
   @VisibleForTesting
   boolean isSandboxEnforced(List<Path> services) throws AppEngineException {
+    return isSandboxEnforced(loadDescriptors(services));
+  }
+
+  private static boolean isSandboxEnforced(Iterable<AppEngineDescriptor> descriptors)
+      throws AppEngineException {
     boolean relaxSandbox = false;
     boolean enforceSandbox = false;
-    for (Path serviceDirectory : services) {
-      Path appengineWebXml = serviceDirectory.resolve("WEB-INF/appengine-web.xml");
-      try (InputStream is = Files.newInputStream(appengineWebXml)) {
-        if (AppEngineDescriptor.parse(is).isSandboxEnforced()) {
-          enforceSandbox = true;
-        } else {
-          relaxSandbox = true;
-        }
-      } catch (IOException | SAXException ex) {
-        throw new AppEngineException(ex);
+    for (AppEngineDescriptor descriptor : descriptors) {
+      if (descriptor.isSandboxEnforced()) {
+        enforceSandbox = true;
+      } else {
+        relaxSandbox = true;
       }
     }
     if (relaxSandbox && enforceSandbox) {
@@ -208,24 +265,102 @@ public class DevServer {
     return !relaxSandbox;
   }
 
-  private static Map<String, String> getAllAppEngineWebXmlEnvironmentVariables(List<Path> services)
-      throws AppEngineException {
-    Map<String, String> allAppEngineEnvironment = Maps.newHashMap();
-    for (Path serviceDirectory : services) {
-      Path appengineWebXml = serviceDirectory.resolve("WEB-INF/appengine-web.xml");
-      try (InputStream is = Files.newInputStream(appengineWebXml)) {
-        AppEngineDescriptor appEngineDescriptor = AppEngineDescriptor.parse(is);
-        Map<String, String> appEngineEnvironment = appEngineDescriptor.getEnvironment();
-        if (appEngineEnvironment != null) {
-          checkAndWarnDuplicateEnvironmentVariables(
-              appEngineEnvironment, allAppEngineEnvironment, appEngineDescriptor.getServiceId());
-
-          allAppEngineEnvironment.putAll(appEngineEnvironment);
+  /**
+   * Reads the appengine-web.xml of every service concurrently.
+   *
+   * @return the descriptors, in the order of {@code services}
+   * @throws AppEngineException if any appengine-web.xml cannot be read or parsed; the failure of
+   *     the first such service is reported
+   */
+  @VisibleForTesting
+  List<AppEngineDescriptor> loadDescriptors(List<Path> services) throws AppEngineException {
+    if (services.size() == 1) {
+      return ImmutableList.of(loadDescriptor(services.get(0)));
+    }
+    List<Future<AppEngineDescriptor>> futures = new ArrayList<>(services.size());
+    try {
+      for (Path service : services) {
+        futures.add(descriptorExecutor.submit(() -> loadDescriptor(service)));
+      }
+      ImmutableList.Builder<AppEngineDescriptor> descriptors = ImmutableList.builder();
+      for (Future<AppEngineDescriptor> future : futures) {
+        descriptors.add(future.get());
+      }
+      return descriptors.build();
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof AppEngineException) {
+        throw (AppEngineException) cause;
+      }
+      throw new AppEngineException(cause != null ? cause : ex);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new AppEngineException("Interrupted while reading appengine-web.xml files", ex);
+    } finally {
+      for (Future<AppEngineDescriptor> future : futures) {
+        future.cancel(true);
+      }
+    }
+  }
+
+  private AppEngineDescriptor loadDescriptor(Path serviceDirectory) throws AppEngineException {
+    Path appengineWebXml = serviceDirectory.resolve("WEB-INF/appengine-web.xml");
+    try {
+      return descriptorCache.getAppEngineDescriptor(appengineWebXml);
+    } catch (IOException | SAXException ex) {
+      throw new AppEngineException(ex);
+    }
+  }
+
+  /**
+   * Merges the environment variables of all services, in service order. A variable may be defined
+   * by several services as long as they all give it the same value.
+   *
+   * @throws AppEngineException listing every variable that services define with different values
+   */
+  private static Map<String, String> getAllAppEngineWebXmlEnvironmentVariables(
+      List<Path> services, List<AppEngineDescriptor> descriptors) throws AppEngineException {
+    Map<String, String> allAppEngineEnvironment = new LinkedHashMap<>();
+    // variable -> service directory -> value, for every variable defined more than once
+    Map<String, Map<Path, String>> definitions = new LinkedHashMap<>();
+    Map<String, Path> definedBy = new HashMap<>();
+    Set<String> conflicts = new HashSet<>();
+    for (int i = 0; i < services.size(); i++) {
+      Path service = services.get(i);
+      for (Map.Entry<String, String> variable : descriptors.get(i).getEnvironment().entrySet()) {
+        String key = variable.getKey();
+        String value = variable.getValue();
+        Path firstService = definedBy.putIfAbsent(key, service);
+        if (firstService == null) {
+          allAppEngineEnvironment.put(key, value);
+          continue;
+        }
+        Map<Path, String> keyDefinitions =
+            definitions.computeIfAbsent(key, unused -> new LinkedHashMap<>());
+        keyDefinitions.putIfAbsent(firstService, allAppEngineEnvironment.get(key));
+        keyDefinitions.put(service, value);
+        if (!value.equals(allAppEngineEnvironment.get(key))) {
+          conflicts.add(key);
         }
-      } catch (IOException | SAXException ex) {
-        throw new AppEngineException(ex);
       }
     }
+    if (!conflicts.isEmpty()) {
+      StringBuilder message =
+          new StringBuilder(
+              "Services define environment variables with different values in appengine-web.xml:");
+      for (Map.Entry<String, Map<Path, String>> keyDefinitions : definitions.entrySet()) {
+        if (!conflicts.contains(keyDefinitions.getKey())) {
+          continue;
+        }
+        List<String> values = new ArrayList<>();
+        for (Map.Entry<Path, String> definition : keyDefinitions.getValue().entrySet()) {
+          values.add("'" + definition.getValue() + "' in " + definition.getKey());
+        }
+        message.append("\n  ").append(keyDefinitions.getKey()).append(": ");
+        Joiner.on(", ").appendTo(message, values);
+      }
+      throw new AppEngineException(message.toString());
+    }
     return allAppEngineEnvironment;
   }
 
@@ -257,19 +392,4 @@ public class DevServer {
   static String getGaeRuntimeJava(boolean isSandboxEnforced) {
     return isSandboxEnforced ? "java8" : "java7";
   }
-
-  private static void checkAndWarnDuplicateEnvironmentVariables(
-      Map<String, String> newEnvironment,
-      Map<String, String> existingEnvironment,
-      @Nullable String service) {
-    for (String key : newEnvironment.keySet()) {
-      if (existingEnvironment.containsKey(key)) {
-        log.warning(
-            String.format(
-                "Found duplicate environment variable key '%s' across "
-                    + "appengine-web.xml files in the following service: %s",
-                key, service));
-      }
-    }
-  }
 }
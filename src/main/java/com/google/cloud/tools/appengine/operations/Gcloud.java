@@ -19,11 +19,13 @@ package com.google.cloud.tools.appengine.operations;
 import com.google.cloud.tools.appengine.operations.cloudsdk.CloudSdkNotFoundException;
 import com.google.cloud.tools.appengine.operations.cloudsdk.CloudSdkOutOfDateException;
 import com.google.cloud.tools.appengine.operations.cloudsdk.CloudSdkVersionFileException;
+import com.google.cloud.tools.appengine.operations.cloudsdk.GcloudResultCache;
 import com.google.cloud.tools.appengine.operations.cloudsdk.internal.args.GcloudArgs;
 import com.google.cloud.tools.appengine.operations.cloudsdk.internal.process.ExitCodeRecorderProcessExitListener;
 import com.google.cloud.tools.appengine.operations.cloudsdk.process.LegacyProcessHandler;
 import com.google.cloud.tools.appengine.operations.cloudsdk.process.ProcessHandler;
 import com.google.cloud.tools.appengine.operations.cloudsdk.process.ProcessHandlerException;
+import com.google.cloud.tools.appengine.operations.cloudsdk.process.ProcessMetrics;
 import com.google.cloud.tools.appengine.operations.cloudsdk.process.StringBuilderProcessOutputLineListener;
 import com.google.cloud.tools.appengine.operations.cloudsdk.serialization.CloudSdkComponent;
 import com.google.cloud.tools.appengine.operations.cloudsdk.serialization.CloudSdkConfig;
@@ -33,6 +35,7 @@ import com.google.gson.JsonSyntaxException;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Optional;
 import java.util.logging.Logger;
 import javax.annotation.Nullable;
 
@@ -47,6 +50,7 @@ public class Gcloud {
   @Nullable private final String outputFormat;
   @Nullable private final String showStructuredLogs;
   @Nullable private final String verbosity;
+  @Nullable private final GcloudResultCache resultCache;
 
   private Gcloud(
       CloudSdk sdk,
@@ -57,7 +61,8 @@ public class Gcloud {
       @Nullable List<Path> flagsFiles,
       @Nullable String outputFormat,
       @Nullable String showStructuredLogs,
-      @Nullable String verbosity) {
+      @Nullable String verbosity,
+      @Nullable GcloudResultCache resultCache) {
     this.gcloudRunnerFactory = gcloudRunnerFactory;
     this.sdk = sdk;
     this.metricsEnvironment = metricsEnvironment;
@@ -67,6 +72,7 @@ public class Gcloud {
     this.outputFormat = outputFormat;
     this.showStructuredLogs = showStructuredLogs;
     this.verbosity = verbosity;
+    this.resultCache = resultCache;
   }
 
   public Deployment newDeployment(ProcessHandler processHandler) {
@@ -132,7 +138,8 @@ public class Gcloud {
   }
 
   /**
-   * Run short lived gcloud commands.
+   * Run short lived gcloud commands. If a {@link GcloudResultCache} is configured and the command
+   * is read-only, the output may come from the cache.
    *
    * @param args the arguments to gcloud command (not including 'gcloud')
    * @return standard out collected as a single string
@@ -141,12 +148,6 @@ public class Gcloud {
       throws CloudSdkNotFoundException, IOException, ProcessHandlerException {
     sdk.validateCloudSdkLocation();
 
-    StringBuilderProcessOutputLineListener stdOutListener =
-        StringBuilderProcessOutputLineListener.newListener();
-    StringBuilderProcessOutputLineListener stdErrListener =
-        StringBuilderProcessOutputLineListener.newListenerWithNewlines();
-    ExitCodeRecorderProcessExitListener exitListener = new ExitCodeRecorderProcessExitListener();
-
     // build and run the command
     List<String> command =
         new ImmutableList.Builder<String>()
@@ -154,7 +155,40 @@ public class Gcloud {
             .addAll(args)
             .build();
 
-    Process process = new ProcessBuilder(command).start();
+    GcloudResultCache cache = resultCache;
+    GcloudResultCache.Key key = null;
+    if (cache != null && GcloudResultCache.isReadOnly(args)) {
+      key = cache.newKey(command, null);
+      Optional<String> cached = cache.get(key);
+      if (cached.isPresent()) {
+        return cached.get();
+      }
+    }
+
+    try {
+      String result = execute(command);
+      if (cache != null && key != null) {
+        cache.put(key, result);
+      }
+      return result;
+    } finally {
+      if (GcloudResultCache.invalidates(args)) {
+        GcloudResultCache.invalidateAll();
+      }
+    }
+  }
+
+  private String execute(List<String> command) throws IOException, ProcessHandlerException {
+
+    StringBuilderProcessOutputLineListener stdOutListener =
+        StringBuilderProcessOutputLineListener.newListener();
+    StringBuilderProcessOutputLineListener stdErrListener =
+        StringBuilderProcessOutputLineListener.newListenerWithNewlines();
+    ExitCodeRecorderProcessExitListener exitListener = new ExitCodeRecorderProcessExitListener();
+
+    Process process =
+        ProcessMetrics.getInstance()
+            .start(new ProcessBuilder(command), "gcloud", command.subList(1, command.size()));
     LegacyProcessHandler.builder()
         .addStdOutLineListener(stdOutListener)
         .addStdErrLineListener(stdErrListener)
@@ -202,6 +236,7 @@ public class Gcloud {
     @Nullable private String outputFormat;
     @Nullable private String showStructuredLogs;
     @Nullable private String verbosity;
+    @Nullable private GcloudResultCache resultCache;
 
     private Builder(CloudSdk sdk) {
       this(sdk, new GcloudRunner.Factory());
@@ -261,6 +296,16 @@ public class Gcloud {
       return this;
     }
 
+    /**
+     * Memoize the output of read-only commands such as {@code components list} and {@code config
+     * list} in {@code resultCache}, see {@link Gcloud#getComponents()} and {@link
+     * Gcloud#getConfig()}.
+     */
+    public Builder setResultCache(GcloudResultCache resultCache) {
+      this.resultCache = resultCache;
+      return this;
+    }
+
     /** Build an immutable Gcloud instance. */
     public Gcloud build() {
       return new Gcloud(
@@ -272,7 +317,8 @@ public class Gcloud {
           flagsFiles,
           outputFormat,
           showStructuredLogs,
-          verbosity);
+          verbosity,
+          resultCache);
     }
   }
 }
@@ -19,15 +19,21 @@ package com.google.cloud.tools.appengine.operations;
 import com.google.cloud.tools.appengine.operations.cloudsdk.CloudSdkNotFoundException;
 import com.google.cloud.tools.appengine.operations.cloudsdk.CloudSdkOutOfDateException;
 import com.google.cloud.tools.appengine.operations.cloudsdk.CloudSdkVersionFileException;
+import com.google.cloud.tools.appengine.operations.cloudsdk.GcloudResultCache;
 import com.google.cloud.tools.appengine.operations.cloudsdk.internal.args.GcloudArgs;
 import com.google.cloud.tools.appengine.operations.cloudsdk.internal.process.ProcessBuilderFactory;
+import com.google.cloud.tools.appengine.operations.cloudsdk.process.ProcessCommandInfo;
 import com.google.cloud.tools.appengine.operations.cloudsdk.process.ProcessHandler;
 import com.google.cloud.tools.appengine.operations.cloudsdk.process.ProcessHandlerException;
+import com.google.cloud.tools.appengine.operations.cloudsdk.process.ProcessMetrics;
+import com.google.cloud.tools.jfr.FlightRecorderEvent;
+import com.google.cloud.tools.jfr.FlightRecorderEventType;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.collect.Maps;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -38,6 +44,14 @@ public class GcloudRunner {
 
   private static final Logger logger = Logger.getLogger(GcloudRunner.class.getName());
 
+  private static final FlightRecorderEventType GCLOUD_EVENT =
+      FlightRecorderEventType.builder("com.google.cloud.tools.appengine.GcloudRun")
+          .setLabel("gcloud Command")
+          .setDescription("Validating the Cloud SDK and running a gcloud command to completion")
+          .setThreshold(Duration.ofMillis(10))
+          .addStringField("command", "Command")
+          .build();
+
   private final CloudSdk sdk;
   @Nullable private final String metricsEnvironment;
   @Nullable private final String metricsEnvironmentVersion;
@@ -80,7 +94,21 @@ public class GcloudRunner {
   void run(List<String> arguments, @Nullable Path workingDirectory)
       throws ProcessHandlerException, CloudSdkNotFoundException, CloudSdkOutOfDateException,
           CloudSdkVersionFileException, IOException {
+    FlightRecorderEvent event = GCLOUD_EVENT.begin();
+    if (event.isRecording()) {
+      // only the subcommand path, arguments may contain secrets
+      event.set("command", ProcessCommandInfo.of("gcloud", arguments).getName());
+    }
+    try {
+      runGcloud(arguments, workingDirectory);
+    } finally {
+      event.commit();
+    }
+  }
 
+  private void runGcloud(List<String> arguments, @Nullable Path workingDirectory)
+      throws ProcessHandlerException, CloudSdkNotFoundException, CloudSdkOutOfDateException,
+          CloudSdkVersionFileException, IOException {
     sdk.validateCloudSdk();
 
     List<String> command = new ArrayList<>();
@@ -113,8 +141,15 @@ public class GcloudRunner {
       processBuilder.directory(workingDirectory.toFile());
     }
     processBuilder.environment().putAll(getGcloudCommandEnvironment());
-    Process process = processBuilder.start();
-    processHandler.handleProcess(process);
+    Process process = ProcessMetrics.getInstance().start(processBuilder, "gcloud", arguments);
+    try {
+      processHandler.handleProcess(process);
+    } finally {
+      // e.g. 'auth login' changes what cached 'auth list' results would report
+      if (GcloudResultCache.invalidates(arguments)) {
+        GcloudResultCache.invalidateAll();
+      }
+    }
   }
 
   @VisibleForTesting
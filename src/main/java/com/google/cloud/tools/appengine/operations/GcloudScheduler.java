@@ -0,0 +1,613 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.appengine.operations;
+
+import com.google.cloud.tools.appengine.operations.cloudsdk.GcloudResultCache;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nullable;
+
+/**
+ * Runs gcloud work submitted from many threads with bounded concurrency, globally and per project,
+ * so fan-out workloads (e.g. deploying dozens of services) don't start an unbounded number of
+ * gcloud processes at once. Queued work is started in {@link Priority} order, first-in first-out
+ * within a priority. Identical read-only commands submitted through {@link #runCommand} while one
+ * is already queued or running share its result instead of starting another process.
+ *
+ * <pre>{@code
+ * GcloudScheduler scheduler =
+ *     GcloudScheduler.builder().setMaxConcurrency(8).setMaxConcurrencyPerProject(2).build();
+ * scheduler.submit("my-project", Priority.HIGH, () -> {
+ *   gcloud.newDeployment(handler).deploy(config);
+ *   return null;
+ * });
+ * }</pre>
+ *
+ * <p>Cancelling a returned future removes the work from the queue if it hasn't started yet; work
+ * that is already running is not interrupted. A coalesced read command is only cancelled once all
+ * the callers sharing it have cancelled their futures.
+ */
+public class GcloudScheduler {
+
+  /** The order in which queued work is started. */
+  public enum Priority {
+    HIGH,
+    NORMAL,
+    LOW
+  }
+
+  /** Subcommand verbs that never change state, in addition to the result cache's allowlist. */
+  private static final ImmutableSet<String> READ_VERBS =
+      ImmutableSet.of("list", "describe", "get-value", "get-iam-policy");
+
+  /**
+   * Command groups that may precede a read verb. The command is the first token after the groups,
+   * later tokens are positional arguments that may happen to be named like a verb.
+   */
+  private static final ImmutableSet<String> COMMAND_GROUPS =
+      ImmutableSet.of(
+          "alpha",
+          "beta",
+          "app",
+          "services",
+          "versions",
+          "instances",
+          "domain-mappings",
+          "firewall-rules",
+          "ssl-certificates",
+          "operations",
+          "regions",
+          "logs",
+          "projects",
+          "organizations",
+          "iam",
+          "service-accounts",
+          "roles",
+          "auth",
+          "config",
+          "configurations",
+          "components",
+          "repositories");
+
+  // work without an explicit project runs against gcloud's default project
+  private static final String DEFAULT_PROJECT = "";
+
+  private final int maxConcurrency;
+  private final int maxConcurrencyPerProject;
+  private final Executor executor;
+  private final Ticker ticker;
+
+  private final Object lock = new Object();
+  private final NavigableSet<Task<?>> queue =
+      new TreeSet<>(
+          Comparator.<Task<?>, Priority>comparing(task -> task.priority)
+              .thenComparingLong(task -> task.sequence));
+  private final Map<String, Integer> runningPerProject = new HashMap<>();
+  private final Map<CommandKey, Task<String>> inFlightReads = new HashMap<>();
+  private int running;
+  private long nextSequence;
+
+  private final LongAdder submitted = new LongAdder();
+  private final LongAdder coalesced = new LongAdder();
+  private final LongAdder succeeded = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private final AtomicLong totalQueueWaitNanos = new AtomicLong();
+  private final LongAccumulator maxQueueWaitNanos = new LongAccumulator(Math::max, 0);
+  private final AtomicLong totalRunNanos = new AtomicLong();
+  private final LongAccumulator maxRunNanos = new LongAccumulator(Math::max, 0);
+
+  @VisibleForTesting
+  GcloudScheduler(
+      int maxConcurrency, int maxConcurrencyPerProject, Executor executor, Ticker ticker) {
+    this.maxConcurrency = maxConcurrency;
+    this.maxConcurrencyPerProject = maxConcurrencyPerProject;
+    this.executor = executor;
+    this.ticker = ticker;
+  }
+
+  /**
+   * Queues work that runs gcloud for a project.
+   *
+   * @param projectId the project the work targets, or null for gcloud's configured project
+   * @param priority the order in which queued work is started
+   * @param work the work, typically a call to {@link Deployment}, {@link Versions} or {@link
+   *     Gcloud#runCommand}
+   * @return a future that completes with the result of the work, or exceptionally with whatever it
+   *     threw
+   */
+  public <T> CompletableFuture<T> submit(
+      @Nullable String projectId, Priority priority, Callable<T> work) {
+    Preconditions.checkNotNull(priority);
+    Preconditions.checkNotNull(work);
+    Task<T> task;
+    synchronized (lock) {
+      task = enqueue(projectId, priority, work, null);
+    }
+    schedule(task);
+    return task.future;
+  }
+
+  /**
+   * Queues {@link Gcloud#runCommand}. Read-only commands are coalesced: if the same {@code gcloud}
+   * instance is already queued or running the same arguments, the returned future completes with
+   * that result. The project is taken from the {@code --project} flag, if present.
+   *
+   * @param args the arguments to gcloud command (not including 'gcloud')
+   */
+  public CompletableFuture<String> runCommand(Gcloud gcloud, List<String> args, Priority priority) {
+    String projectId = getProjectFlag(args);
+    if (!isReadCommand(args)) {
+      return submit(projectId, priority, () -> gcloud.runCommand(args));
+    }
+
+    CommandKey key = new CommandKey(gcloud, args);
+    Task<String> shared;
+    boolean created = false;
+    synchronized (lock) {
+      shared = inFlightReads.get(key);
+      if (shared == null) {
+        shared = enqueue(projectId, priority, () -> gcloud.runCommand(key.args), key);
+        inFlightReads.put(key, shared);
+        created = true;
+      } else {
+        coalesced.increment();
+      }
+      shared.views++;
+    }
+    if (created) {
+      schedule(shared);
+    }
+    // callers cancel their own view, the shared command is cancelled with the last view
+    Task<String> task = shared;
+    CompletableFuture<String> view = task.future.thenApply(result -> result);
+    view.exceptionally(
+        ex -> {
+          if (view.isCancelled()) {
+            cancelView(task);
+          }
+          return null;
+        });
+    return view;
+  }
+
+  private void cancelView(Task<?> task) {
+    synchronized (lock) {
+      if (--task.views > 0) {
+        return;
+      }
+      // later reads start a new command rather than share the cancelled one
+      forgetRead(task);
+    }
+    // outside the lock, cancelling runs the callers' callbacks
+    task.future.cancel(false);
+  }
+
+  /** Adds a task to the queue, the caller holds the lock. */
+  private <T> Task<T> enqueue(
+      @Nullable String projectId,
+      Priority priority,
+      Callable<T> work,
+      @Nullable CommandKey readKey) {
+    submitted.increment();
+    Task<T> task =
+        new Task<>(
+            projectId == null ? DEFAULT_PROJECT : projectId,
+            priority,
+            nextSequence++,
+            work,
+            readKey,
+            ticker.read());
+    queue.add(task);
+    return task;
+  }
+
+  private void schedule(Task<?> task) {
+    // drop the work from the queue if the caller gives up on it
+    task.future.exceptionally(
+        ex -> {
+          synchronized (lock) {
+            if (task.future.isCancelled()) {
+              queue.remove(task);
+            }
+            forgetRead(task);
+          }
+          return null;
+        });
+    dispatch();
+  }
+
+  /** Stops coalescing with a finished read command, the caller holds the lock. */
+  private void forgetRead(Task<?> task) {
+    if (task.readKey != null) {
+      inFlightReads.remove(task.readKey, task);
+    }
+  }
+
+  /**
+   * Returns true if the command only reads state: either the result cache considers it read-only,
+   * or its command, the first token after its command groups, is a read verb.
+   */
+  @VisibleForTesting
+  static boolean isReadCommand(List<String> args) {
+    if (GcloudResultCache.isReadOnly(args)) {
+      return true;
+    }
+    for (String arg : args) {
+      if (arg.startsWith("-") || !COMMAND_GROUPS.contains(arg)) {
+        // the verb may be followed by positional arguments, e.g. 'app services describe default'
+        return READ_VERBS.contains(arg);
+      }
+    }
+    return false;
+  }
+
+  @VisibleForTesting
+  @Nullable
+  static String getProjectFlag(List<String> args) {
+    for (int i = 0; i < args.size(); i++) {
+      String arg = args.get(i);
+      if (arg.startsWith("--project=")) {
+        return arg.substring("--project=".length());
+      }
+      if (arg.equals("--project") && i + 1 < args.size()) {
+        return args.get(i + 1);
+      }
+    }
+    return null;
+  }
+
+  /** Starts as much queued work as the limits allow. */
+  private void dispatch() {
+    List<Task<?>> started = new ArrayList<>();
+    synchronized (lock) {
+      Iterator<Task<?>> iterator = queue.iterator();
+      while (running < maxConcurrency && iterator.hasNext()) {
+        Task<?> task = iterator.next();
+        if (task.future.isDone()) {
+          iterator.remove();
+          continue;
+        }
+        int projectRunning = runningPerProject.getOrDefault(task.projectId, 0);
+        if (projectRunning >= maxConcurrencyPerProject) {
+          // skip to work for other projects, this one is saturated
+          continue;
+        }
+        iterator.remove();
+        running++;
+        runningPerProject.put(task.projectId, projectRunning + 1);
+        started.add(task);
+      }
+    }
+    // outside the lock, the executor may run work inline
+    for (Task<?> task : started) {
+      try {
+        executor.execute(task::run);
+      } catch (RuntimeException ex) {
+        release(task);
+        task.future.completeExceptionally(ex);
+      }
+    }
+  }
+
+  private void release(Task<?> task) {
+    synchronized (lock) {
+      // later reads start a new command once this one's result is being delivered
+      forgetRead(task);
+      running--;
+      int projectRunning = runningPerProject.getOrDefault(task.projectId, 1) - 1;
+      if (projectRunning == 0) {
+        runningPerProject.remove(task.projectId);
+      } else {
+        runningPerProject.put(task.projectId, projectRunning);
+      }
+    }
+  }
+
+  /** Returns a snapshot of the scheduler's counters and timings. */
+  public Metrics getMetrics() {
+    int queued;
+    int currentlyRunning;
+    synchronized (lock) {
+      queued = queue.size();
+      currentlyRunning = running;
+    }
+    return new Metrics(
+        submitted.sum(),
+        coalesced.sum(),
+        succeeded.sum(),
+        failed.sum(),
+        queued,
+        currentlyRunning,
+        Duration.ofNanos(totalQueueWaitNanos.get()),
+        Duration.ofNanos(maxQueueWaitNanos.get()),
+        Duration.ofNanos(totalRunNanos.get()),
+        Duration.ofNanos(maxRunNanos.get()));
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  private class Task<T> {
+    private final String projectId;
+    private final Priority priority;
+    private final long sequence;
+    private final Callable<T> work;
+    // set for coalesced read commands
+    @Nullable private final CommandKey readKey;
+    private final long submittedNanos;
+    private final CompletableFuture<T> future = new CompletableFuture<>();
+    // the callers sharing a read command that haven't cancelled, guarded by the lock
+    private int views;
+
+    private Task(
+        String projectId,
+        Priority priority,
+        long sequence,
+        Callable<T> work,
+        @Nullable CommandKey readKey,
+        long submittedNanos) {
+      this.projectId = projectId;
+      this.priority = priority;
+      this.sequence = sequence;
+      this.work = work;
+      this.readKey = readKey;
+      this.submittedNanos = submittedNanos;
+    }
+
+    private void run() {
+      long startNanos = ticker.read();
+      long queueWait = startNanos - submittedNanos;
+      totalQueueWaitNanos.addAndGet(queueWait);
+      maxQueueWaitNanos.accumulate(queueWait);
+      T result = null;
+      Throwable failure = null;
+      boolean ran = false;
+      try {
+        if (!future.isDone()) {
+          ran = true;
+          result = work.call();
+        }
+      } catch (Throwable ex) {
+        // errors too, the future must not be left incomplete
+        failure = ex;
+      } finally {
+        long runTime = ticker.read() - startNanos;
+        totalRunNanos.addAndGet(runTime);
+        maxRunNanos.accumulate(runTime);
+        // release the slot before completing, so callers observe consistent metrics
+        release(this);
+      }
+      if (failure != null) {
+        failed.increment();
+        future.completeExceptionally(failure);
+      } else if (ran) {
+        succeeded.increment();
+        future.complete(result);
+      }
+      dispatch();
+      if (failure instanceof Error) {
+        throw (Error) failure;
+      }
+    }
+  }
+
+  /** Identifies a read-only command of a particular {@link Gcloud} instance. */
+  private static class CommandKey {
+    private final Gcloud gcloud;
+    private final List<String> args;
+
+    private CommandKey(Gcloud gcloud, List<String> args) {
+      this.gcloud = gcloud;
+      this.args = ImmutableList.copyOf(args);
+    }
+
+    @Override
+    public boolean equals(@Nullable Object other) {
+      if (this == other) {
+        return true;
+      }
+      if (!(other instanceof CommandKey)) {
+        return false;
+      }
+      CommandKey that = (CommandKey) other;
+      return gcloud == that.gcloud && args.equals(that.args);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(System.identityHashCode(gcloud), args);
+    }
+  }
+
+  /** Point in time counters and timings of a {@link GcloudScheduler}. */
+  public static class Metrics {
+    private final long submittedCount;
+    private final long coalescedCount;
+    private final long succeededCount;
+    private final long failedCount;
+    private final int queuedCount;
+    private final int runningCount;
+    private final Duration totalQueueWait;
+    private final Duration maxQueueWait;
+    private final Duration totalRunTime;
+    private final Duration maxRunTime;
+
+    private Metrics(
+        long submittedCount,
+        long coalescedCount,
+        long succeededCount,
+        long failedCount,
+        int queuedCount,
+        int runningCount,
+        Duration totalQueueWait,
+        Duration maxQueueWait,
+        Duration totalRunTime,
+        Duration maxRunTime) {
+      this.submittedCount = submittedCount;
+      this.coalescedCount = coalescedCount;
+      this.succeededCount = succeededCount;
+      this.failedCount = failedCount;
+      this.queuedCount = queuedCount;
+      this.runningCount = runningCount;
+      this.totalQueueWait = totalQueueWait;
+      this.maxQueueWait = maxQueueWait;
+      this.totalRunTime = totalRunTime;
+      this.maxRunTime = maxRunTime;
+    }
+
+    /** Work queued via {@link #submit}, including read commands that were not coalesced. */
+    public long getSubmittedCount() {
+      return submittedCount;
+    }
+
+    /** Read commands that shared the result of an identical in-flight command. */
+    public long getCoalescedCount() {
+      return coalescedCount;
+    }
+
+    public long getSucceededCount() {
+      return succeededCount;
+    }
+
+    public long getFailedCount() {
+      return failedCount;
+    }
+
+    public int getQueuedCount() {
+      return queuedCount;
+    }
+
+    public int getRunningCount() {
+      return runningCount;
+    }
+
+    /** Time started work spent waiting in the queue, summed over all work. */
+    public Duration getTotalQueueWait() {
+      return totalQueueWait;
+    }
+
+    public Duration getMaxQueueWait() {
+      return maxQueueWait;
+    }
+
+    /** Time spent running work, summed over all work. */
+    public Duration getTotalRunTime() {
+      return totalRunTime;
+    }
+
+    public Duration getMaxRunTime() {
+      return maxRunTime;
+    }
+
+    @Override
+    public String toString() {
+      return "submitted="
+          + submittedCount
+          + " coalesced="
+          + coalescedCount
+          + " succeeded="
+          + succeededCount
+          + " failed="
+          + failedCount
+          + " queued="
+          + queuedCount
+          + " running="
+          + runningCount
+          + " queueWait(total="
+          + totalQueueWait
+          + " max="
+          + maxQueueWait
+          + ") runTime(total="
+          + totalRunTime
+          + " max="
+          + maxRunTime
+          + ")";
+    }
+  }
+
+  public static class Builder {
+    private int maxConcurrency = Runtime.getRuntime().availableProcessors();
+    private int maxConcurrencyPerProject = Integer.MAX_VALUE;
+    @Nullable private Executor executor;
+
+    private Builder() {}
+
+    /** Sets the maximum number of gcloud commands running at once. Defaults to the CPU count. */
+    public Builder setMaxConcurrency(int maxConcurrency) {
+      Preconditions.checkArgument(maxConcurrency > 0, "maxConcurrency must be positive");
+      this.maxConcurrency = maxConcurrency;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of gcloud commands running at once against a single project, to stay
+     * within per-project API quotas. Unlimited by default.
+     */
+    public Builder setMaxConcurrencyPerProject(int maxConcurrencyPerProject) {
+      Preconditions.checkArgument(
+          maxConcurrencyPerProject > 0, "maxConcurrencyPerProject must be positive");
+      this.maxConcurrencyPerProject = maxConcurrencyPerProject;
+      return this;
+    }
+
+    /**
+     * Sets the executor that runs the work. Defaults to a pool of daemon threads, which never grows
+     * beyond the maximum concurrency.
+     */
+    public Builder setExecutor(Executor executor) {
+      this.executor = executor;
+      return this;
+    }
+
+    /** Build a GcloudScheduler. */
+    public GcloudScheduler build() {
+      Executor actualExecutor = executor;
+      if (actualExecutor == null) {
+        actualExecutor =
+            Executors.newCachedThreadPool(
+                new ThreadFactoryBuilder()
+                    .setDaemon(true)
+                    .setNameFormat("gcloud-scheduler-%d")
+                    .build());
+      }
+      return new GcloudScheduler(
+          maxConcurrency, maxConcurrencyPerProject, actualExecutor, Ticker.systemTicker());
+    }
+  }
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.appengine.operations;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.Permission;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * Runs AppCfg inside this JVM instead of forking a JVM per command. {@code appengine-tools-api.jar}
+ * is loaded in an isolated class loader that is cached until the jar changes, so repeated runs also
+ * reuse its loaded and compiled classes. A run captures what AppCfg prints, traps its {@code
+ * System.exit} to get the exit code, and is returned as an exited {@link Process} for the usual
+ * process handlers. Runs are serialized because they redirect the JVM wide standard streams.
+ *
+ * <p>Trapping exits needs a security manager, so AppCfg cannot run in a JVM that already has one or
+ * that no longer allows installing one (Java 18 and later). {@link #run} then returns null and the
+ * caller forks AppCfg instead.
+ */
+class InProcessAppCfg {
+
+  private static final Logger logger = Logger.getLogger(InProcessAppCfg.class.getName());
+
+  static final String APPCFG_CLASS = "com.google.appengine.tools.admin.AppCfg";
+  private static final String SDK_ROOT_PROPERTY = "appengine.sdk.root";
+
+  private static final InProcessAppCfg INSTANCE = new InProcessAppCfg();
+
+  // the run of the thread running AppCfg and of the threads it starts, which may outlive the run
+  private static final InheritableThreadLocal<Run> currentRun = new InheritableThreadLocal<>();
+
+  private final Map<Path, CachedClassLoader> classLoaders = new HashMap<>();
+  private boolean unsupported;
+
+  @VisibleForTesting
+  InProcessAppCfg() {}
+
+  /** Returns the process-wide runner, which shares its class loaders across all AppCfg users. */
+  static InProcessAppCfg getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Runs AppCfg with {@code args} and waits for it to finish.
+   *
+   * @param toolsJar the {@code appengine-tools-api.jar} to load AppCfg from
+   * @param sdkRoot the App Engine Java SDK, set as {@code appengine.sdk.root} during the run
+   * @return the exited AppCfg run, or null if AppCfg cannot run in this JVM
+   */
+  @Nullable
+  synchronized Process run(Path toolsJar, Path sdkRoot, List<String> args) throws IOException {
+    if (unsupported || System.getSecurityManager() != null) {
+      return null;
+    }
+    ClassLoader classLoader = getClassLoader(toolsJar);
+
+    ExitTrap exitTrap = new ExitTrap();
+    try {
+      System.setSecurityManager(exitTrap);
+    } catch (UnsupportedOperationException | SecurityException ex) {
+      logger.info("Cannot trap the exit of appcfg in this JVM: " + ex);
+      unsupported = true;
+      return null;
+    }
+
+    Thread thread = Thread.currentThread();
+    ClassLoader contextClassLoader = thread.getContextClassLoader();
+    PrintStream systemOut = System.out;
+    PrintStream systemErr = System.err;
+    String systemSdkRoot = System.getProperty(SDK_ROOT_PROPERTY);
+    ByteArrayOutputStream stdOut = new ByteArrayOutputStream();
+    ByteArrayOutputStream stdErr = new ByteArrayOutputStream();
+    PrintStream capturedErr = newCapturingStream(stdErr, systemErr);
+    int exitCode = 0;
+    Run run = new Run();
+    try {
+      currentRun.set(run);
+      System.setOut(newCapturingStream(stdOut, systemOut));
+      System.setErr(capturedErr);
+      System.setProperty(SDK_ROOT_PROPERTY, sdkRoot.toString());
+      thread.setContextClassLoader(classLoader);
+
+      Method main =
+          Class.forName(APPCFG_CLASS, true, classLoader).getMethod("main", String[].class);
+      main.invoke(null, (Object) args.toArray(new String[0]));
+    } catch (InvocationTargetException ex) {
+      Throwable cause = ex.getCause();
+      if (!(cause instanceof ExitException)) {
+        (cause != null ? cause : ex).printStackTrace(capturedErr);
+        exitCode = 1;
+      }
+    } catch (ReflectiveOperationException | LinkageError ex) {
+      ex.printStackTrace(capturedErr);
+      exitCode = 1;
+    } finally {
+      thread.setContextClassLoader(contextClassLoader);
+      if (systemSdkRoot == null) {
+        System.clearProperty(SDK_ROOT_PROPERTY);
+      } else {
+        System.setProperty(SDK_ROOT_PROPERTY, systemSdkRoot);
+      }
+      System.setOut(systemOut);
+      System.setErr(systemErr);
+      // threads AppCfg started still see this run, but no longer as capturing
+      run.active = false;
+      currentRun.remove();
+      System.setSecurityManager(null);
+    }
+
+    // AppCfg may catch the exception that stopped its exit, the exit it asked for still counts
+    Integer exitStatus = exitTrap.getExitStatus();
+    if (exitStatus != null) {
+      exitCode = exitStatus;
+    }
+    return new ExitedProcess(stdOut.toByteArray(), stdErr.toByteArray(), exitCode);
+  }
+
+  /** Closes the cached class loaders, the next runs load the tools jar again. */
+  synchronized void clearCache() throws IOException {
+    for (CachedClassLoader cached : classLoaders.values()) {
+      cached.classLoader.close();
+    }
+    classLoaders.clear();
+  }
+
+  private ClassLoader getClassLoader(Path toolsJar) throws IOException {
+    Path key = toolsJar.toAbsolutePath().normalize();
+    BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+    CachedClassLoader cached = classLoaders.get(key);
+    if (cached != null
+        && cached.lastModified.equals(attributes.lastModifiedTime())
+        && cached.size == attributes.size()) {
+      return cached.classLoader;
+    }
+    if (cached != null) {
+      cached.classLoader.close();
+    }
+    // the parent only sees the JDK, not the classes of this library or of the build tool
+    URLClassLoader classLoader =
+        new URLClassLoader(
+            new URL[] {key.toUri().toURL()}, ClassLoader.getSystemClassLoader().getParent());
+    classLoaders.put(
+        key, new CachedClassLoader(classLoader, attributes.lastModifiedTime(), attributes.size()));
+    return classLoader;
+  }
+
+  /** Prints to {@code captured} on the AppCfg threads and to {@code other} on all other threads. */
+  private static PrintStream newCapturingStream(OutputStream captured, OutputStream other) {
+    OutputStream routing =
+        new OutputStream() {
+          @Override
+          public void write(int b) throws IOException {
+            target().write(b);
+          }
+
+          @Override
+          public void write(byte[] bytes, int offset, int length) throws IOException {
+            target().write(bytes, offset, length);
+          }
+
+          @Override
+          public void flush() throws IOException {
+            target().flush();
+          }
+
+          private OutputStream target() {
+            return isCapturing() ? captured : other;
+          }
+        };
+    try {
+      return new PrintStream(routing, true, StandardCharsets.UTF_8.name());
+    } catch (UnsupportedEncodingException ex) {
+      throw new AssertionError(ex);
+    }
+  }
+
+  /** Returns true on the AppCfg threads of the current run. */
+  private static boolean isCapturing() {
+    Run run = currentRun.get();
+    return run != null && run.active;
+  }
+
+  /** Marks the threads of one AppCfg run. */
+  private static class Run {
+    private volatile boolean active = true;
+  }
+
+  private static class CachedClassLoader {
+    private final URLClassLoader classLoader;
+    private final FileTime lastModified;
+    private final long size;
+
+    private CachedClassLoader(URLClassLoader classLoader, FileTime lastModified, long size) {
+      this.classLoader = classLoader;
+      this.lastModified = lastModified;
+      this.size = size;
+    }
+  }
+
+  /** Stops {@code System.exit} on the AppCfg threads and remembers the first exit status. */
+  private static class ExitTrap extends SecurityManager {
+    @Nullable private volatile Integer exitStatus;
+
+    @Override
+    public void checkExit(int status) {
+      if (isCapturing()) {
+        synchronized (this) {
+          if (exitStatus == null) {
+            exitStatus = status;
+          }
+        }
+        throw new ExitException(status);
+      }
+    }
+
+    @Override
+    public void checkPermission(Permission permission) {}
+
+    @Override
+    public void checkPermission(Permission permission, Object context) {}
+
+    @Nullable
+    private Integer getExitStatus() {
+      return exitStatus;
+    }
+  }
+
+  private static class ExitException extends SecurityException {
+    private static final long serialVersionUID = 1L;
+
+    private ExitException(int status) {
+      super("appcfg exited with " + status);
+    }
+  }
+
+  /** An AppCfg run that has already written its output and exited. */
+  private static class ExitedProcess extends Process {
+    private final InputStream stdOut;
+    private final InputStream stdErr;
+    private final int exitCode;
+
+    private ExitedProcess(byte[] stdOut, byte[] stdErr, int exitCode) {
+      this.stdOut = new ByteArrayInputStream(stdOut);
+      this.stdErr = new ByteArrayInputStream(stdErr);
+      this.exitCode = exitCode;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+      return new ByteArrayOutputStream();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+      return stdOut;
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+      return stdErr;
+    }
+
+    @Override
+    public int waitFor() {
+      return exitCode;
+    }
+
+    @Override
+    public int exitValue() {
+      return exitCode;
+    }
+
+    @Override
+    public void destroy() {}
+  }
+}
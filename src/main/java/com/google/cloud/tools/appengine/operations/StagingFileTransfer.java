@@ -0,0 +1,196 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.appengine.operations;
+
+import com.google.cloud.tools.appengine.configuration.StagingStrategy;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.CopyOption;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Puts files into the staging directory according to a {@link StagingStrategy}. Links and reflinks
+ * fall back to copying, so every strategy stages every file.
+ */
+class StagingFileTransfer {
+
+  private static final Logger log = Logger.getLogger(StagingFileTransfer.class.getName());
+
+  private static final boolean IS_LINUX = System.getProperty("os.name").startsWith("Linux");
+
+  // below this size, starting cp costs more than copying the bytes
+  @VisibleForTesting static final long MIN_REFLINK_SIZE = 1024 * 1024;
+
+  /** Creates a hard link at {@code link} to the existing file {@code target}. */
+  @VisibleForTesting
+  interface HardLinker {
+    void link(Path link, Path target) throws IOException;
+  }
+
+  /** Clones {@code source} to {@code destination}, returning false if cloning isn't supported. */
+  @VisibleForTesting
+  interface Reflinker {
+    boolean reflink(Path source, Path destination, boolean copyAttributes) throws IOException;
+  }
+
+  private final StagingStrategy strategy;
+  private final HardLinker hardLinker;
+  private final Reflinker reflinker;
+  private volatile boolean reflinkUnsupported;
+
+  StagingFileTransfer(StagingStrategy strategy) {
+    this(
+        strategy,
+        (link, target) -> Files.createLink(link, target),
+        StagingFileTransfer::reflinkWithCp);
+  }
+
+  @VisibleForTesting
+  StagingFileTransfer(StagingStrategy strategy, HardLinker hardLinker, Reflinker reflinker) {
+    this.strategy = Preconditions.checkNotNull(strategy);
+    this.hardLinker = hardLinker;
+    this.reflinker = reflinker;
+    // nothing to try elsewhere
+    reflinkUnsupported = strategy == StagingStrategy.REFLINK && !IS_LINUX;
+  }
+
+  /** Returns whether this transfer only ever copies bytes. */
+  boolean isCopy() {
+    return strategy == StagingStrategy.COPY
+        || (strategy == StagingStrategy.REFLINK && reflinkUnsupported);
+  }
+
+  /**
+   * Stages {@code source} at {@code destination}.
+   *
+   * @param replace whether to replace an existing destination, otherwise throws {@link
+   *     FileAlreadyExistsException}
+   * @param copyAttributes whether copies keep the attributes of the source, links always share them
+   */
+  void transfer(Path source, Path destination, boolean replace, boolean copyAttributes)
+      throws IOException {
+    if (!replace && Files.exists(destination, LinkOption.NOFOLLOW_LINKS)) {
+      throw new FileAlreadyExistsException(destination.toString());
+    }
+    switch (strategy) {
+      case HARDLINK:
+        if (hardLink(source, destination, replace)) {
+          return;
+        }
+        break;
+      case REFLINK:
+        if (reflink(source, destination, replace, copyAttributes)) {
+          return;
+        }
+        break;
+      default:
+        break;
+    }
+    copy(source, destination, replace, copyAttributes);
+  }
+
+  private boolean hardLink(Path source, Path destination, boolean replace) throws IOException {
+    if (replace) {
+      Files.deleteIfExists(destination);
+    }
+    try {
+      hardLinker.link(destination, source);
+      return true;
+    } catch (FileAlreadyExistsException ex) {
+      throw ex;
+    } catch (IOException | UnsupportedOperationException ex) {
+      // linking across file systems fails quickly, so there's nothing to remember
+      log.fine("Copying " + source + ", cannot hard link it: " + ex);
+      return false;
+    }
+  }
+
+  private boolean reflink(Path source, Path destination, boolean replace, boolean copyAttributes)
+      throws IOException {
+    if (reflinkUnsupported || Files.size(source) < MIN_REFLINK_SIZE) {
+      return false;
+    }
+    if (replace) {
+      // cp would write into the existing file, which may be a hard link to a source
+      Files.deleteIfExists(destination);
+    }
+    if (reflinker.reflink(source, destination, copyAttributes)) {
+      return true;
+    }
+    // don't start a process for every file of a file system without reflinks
+    log.fine("Reflinks not supported for " + destination + ", copying instead");
+    reflinkUnsupported = true;
+    return false;
+  }
+
+  private static void copy(Path source, Path destination, boolean replace, boolean copyAttributes)
+      throws IOException {
+    List<CopyOption> options = new ArrayList<>();
+    if (replace) {
+      options.add(StandardCopyOption.REPLACE_EXISTING);
+    }
+    if (copyAttributes) {
+      options.add(StandardCopyOption.COPY_ATTRIBUTES);
+    }
+    Files.copy(source, destination, options.toArray(new CopyOption[0]));
+  }
+
+  /** Java has no reflink API, {@code cp} from GNU coreutils does it with an ioctl. */
+  private static boolean reflinkWithCp(Path source, Path destination, boolean copyAttributes)
+      throws IOException {
+    List<String> command = new ArrayList<>();
+    command.add("cp");
+    command.add("--reflink=always");
+    if (copyAttributes) {
+      command.add("--preserve=mode,timestamps");
+    }
+    command.add("--");
+    command.add(source.toString());
+    command.add(destination.toString());
+
+    Process process;
+    try {
+      process = new ProcessBuilder(command).redirectErrorStream(true).start();
+    } catch (IOException ex) {
+      // no cp
+      return false;
+    }
+    try (InputStream output = process.getInputStream()) {
+      ByteStreams.exhaust(output);
+      if (process.waitFor() == 0) {
+        return true;
+      }
+    } catch (InterruptedException ex) {
+      process.destroy();
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while cloning " + source, ex);
+    }
+    // cp leaves an empty file behind when the clone fails
+    Files.deleteIfExists(destination);
+    return false;
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.appengine.operations;
+
+import com.google.common.base.Preconditions;
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonSyntaxException;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * Record of the files of a staging directory, by path relative to the staging directory, and the
+ * source files they were copied from, as of when they were copied. Incremental staging compares it
+ * with the sources and the staged files to find the files that need to be copied again.
+ */
+class StagingManifest {
+
+  private static final Logger logger = Logger.getLogger(StagingManifest.class.getName());
+
+  private static final Gson GSON = new Gson();
+  private static final int FORMAT_VERSION = 2;
+
+  // Don't change the field names because Gson uses them for persistence.
+  private int version = FORMAT_VERSION;
+  private final TreeMap<String, Entry> files = new TreeMap<>();
+
+  /** Loads a manifest, returning an empty one if the file is missing or unreadable. */
+  static StagingManifest load(Path file) {
+    if (!Files.isRegularFile(file)) {
+      return new StagingManifest();
+    }
+    try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      StagingManifest manifest = GSON.fromJson(reader, StagingManifest.class);
+      if (manifest != null && manifest.version == FORMAT_VERSION && manifest.files != null) {
+        manifest.files.values().removeIf(entry -> entry == null || entry.source == null);
+        return manifest;
+      }
+    } catch (IOException | JsonIOException | JsonSyntaxException ex) {
+      logger.log(Level.WARNING, "Ignoring unreadable staging manifest " + file, ex);
+    }
+    return new StagingManifest();
+  }
+
+  /** Writes the manifest, replacing the file atomically. */
+  void save(Path file) throws IOException {
+    Path parent = Preconditions.checkNotNull(file.toAbsolutePath().getParent());
+    Files.createDirectories(parent);
+    Path temporary = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+    try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+      GSON.toJson(this, writer);
+    }
+    Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  @Nullable
+  Entry get(String path) {
+    return files.get(path);
+  }
+
+  void put(String path, Entry entry) {
+    files.put(path, entry);
+  }
+
+  boolean contains(String path) {
+    return files.containsKey(path);
+  }
+
+  Set<String> getPaths() {
+    return Collections.unmodifiableSet(files.keySet());
+  }
+
+  /**
+   * A staged file: its source, the source's size and modification time when it was copied, and the
+   * staged file's modification time right after it was copied.
+   */
+  static class Entry {
+    // Don't change the field names because Gson uses them for persistence.
+    private final String source;
+    private final long size;
+    private final long lastModified;
+    private final long stagedLastModified;
+    @Nullable private final String sha256;
+
+    Entry(
+        String source,
+        long size,
+        long lastModified,
+        long stagedLastModified,
+        @Nullable String sha256) {
+      this.source = source;
+      this.size = size;
+      this.lastModified = lastModified;
+      this.stagedLastModified = stagedLastModified;
+      this.sha256 = sha256;
+    }
+
+    String getSource() {
+      return source;
+    }
+
+    long getSize() {
+      return size;
+    }
+
+    long getLastModified() {
+      return lastModified;
+    }
+
+    long getStagedLastModified() {
+      return stagedLastModified;
+    }
+
+    @Nullable
+    String getSha256() {
+      return sha256;
+    }
+  }
+}
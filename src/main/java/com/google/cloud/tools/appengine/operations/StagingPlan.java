@@ -0,0 +1,482 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.appengine.operations;
+
+import com.google.cloud.tools.appengine.AppEngineException;
+import com.google.cloud.tools.appengine.configuration.AppYamlProjectStageConfiguration;
+import com.google.cloud.tools.appengine.operations.AppYamlProjectStaging.CopyService;
+import com.google.cloud.tools.io.ArchiveWriter;
+import com.google.cloud.tools.io.ExclusionMatcher;
+import com.google.cloud.tools.io.FileUtil;
+import com.google.cloud.tools.project.AppYaml;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * Every file and directory that staging an app.yaml based project puts into the staging directory,
+ * computed from a single parse of {@code app.yaml} and a single walk of the copied directories.
+ *
+ * <p>The plan runs the same steps as {@link AppYamlProjectStaging#stageArchive}, with the same
+ * validation, but records the copies instead of making them. Conflicts are resolved the same way,
+ * in the order of the steps: a file copied from a directory must not collide with a file planned
+ * before it, and app.yaml, the artifact and the {@code Class-Path} jars replace what was planned
+ * before them at the same destination. Directories of different copies are merged.
+ *
+ * <p>A plan doesn't change after it is created; if the project changes, plan again.
+ */
+public class StagingPlan {
+
+  private static final Logger log = Logger.getLogger(StagingPlan.class.getName());
+
+  // enough files per task to amortize scheduling, few enough to balance the load
+  private static final int BATCH_SIZE = 16;
+
+  /** How the project is staged, decided by {@code app.yaml} and the artifact. */
+  public enum Mode {
+    /** App Engine flexible environment, with the Docker context. */
+    FLEXIBLE,
+    /** Java 11 standard environment with a jar and its {@code Class-Path} jars. */
+    STANDARD_JAR,
+    /** Java 11 standard environment with another artifact and a custom entrypoint. */
+    STANDARD_BINARY
+  }
+
+  private final AppYamlProjectStageConfiguration config;
+  private final Mode mode;
+  private final ImmutableList<Directory> directories;
+  private final ImmutableList<FileCopy> files;
+  private final long totalBytes;
+
+  private StagingPlan(
+      AppYamlProjectStageConfiguration config,
+      Mode mode,
+      List<Directory> directories,
+      List<FileCopy> files) {
+    this.config = config;
+    this.mode = mode;
+    this.directories = ImmutableList.copyOf(directories);
+    this.files = ImmutableList.copyOf(files);
+    long bytes = 0;
+    for (FileCopy file : files) {
+      bytes += file.size;
+    }
+    this.totalBytes = bytes;
+  }
+
+  static StagingPlan create(AppYamlProjectStageConfiguration config, AppYaml appYaml)
+      throws IOException, AppEngineException {
+    Mode mode = selectMode(appYaml, config.getArtifact());
+    PlanningCopyService planner = new PlanningCopyService(config.getStagingDirectory());
+    switch (mode) {
+      case FLEXIBLE:
+        AppYamlProjectStaging.copyDockerContext(config, planner, appYaml.getRuntime());
+        AppYamlProjectStaging.copyExtraFiles(config, planner);
+        AppYamlProjectStaging.copyAppEngineContext(config, planner);
+        AppYamlProjectStaging.copyArtifact(config, planner);
+        break;
+      case STANDARD_JAR:
+        AppYamlProjectStaging.copyExtraFiles(config, planner);
+        AppYamlProjectStaging.copyAppEngineContext(config, planner);
+        AppYamlProjectStaging.copyArtifact(config, planner);
+        AppYamlProjectStaging.copyArtifactJarClasspath(config, planner);
+        break;
+      case STANDARD_BINARY:
+        AppYamlProjectStaging.copyExtraFiles(config, planner);
+        AppYamlProjectStaging.copyAppEngineContext(config, planner);
+        AppYamlProjectStaging.copyArtifact(config, planner);
+        break;
+      default:
+        throw new AssertionError();
+    }
+    return new StagingPlan(
+        config,
+        mode,
+        new ArrayList<>(planner.directories.values()),
+        new ArrayList<>(planner.files.values()));
+  }
+
+  /**
+   * Decides how a project is staged.
+   *
+   * @throws AppEngineException if the runtime or artifact can't be staged
+   */
+  static Mode selectMode(AppYaml appYaml, Path artifact) throws AppEngineException {
+    String env = appYaml.getEnvironmentType();
+    String runtime = appYaml.getRuntime();
+    if ("flex".equals(env)) {
+      return Mode.FLEXIBLE;
+    }
+    if ("java11".equals(runtime)) {
+      boolean isJar = artifact.getFileName().toString().endsWith(".jar");
+      if (isJar) {
+        return Mode.STANDARD_JAR;
+      }
+      if (appYaml.getEntrypoint() != null) {
+        return Mode.STANDARD_BINARY;
+      }
+      // I cannot deploy non-jars without custom entrypoints
+      throw new AppEngineException(
+          "Cannot process application with runtime: java11."
+              + " A custom entrypoint must be defined in your app.yaml for non-jar artifact: "
+              + artifact.toString());
+    }
+    // I don't know how to deploy this
+    throw new AppEngineException(
+        "Cannot process application with runtime: "
+            + runtime
+            + (Strings.isNullOrEmpty(env) ? "" : " and env: " + env));
+  }
+
+  public Mode getMode() {
+    return mode;
+  }
+
+  /** Files to copy, in the order of the staging steps. */
+  public List<FileCopy> getFiles() {
+    return files;
+  }
+
+  /** Directories to create, parents first. */
+  public List<Directory> getDirectories() {
+    return directories;
+  }
+
+  /** Bytes of all files to copy. */
+  public long getTotalBytes() {
+    return totalBytes;
+  }
+
+  /**
+   * Logs what staging would do, without touching the staging directory.
+   *
+   * @return the totals staging would copy
+   */
+  public Totals dryRun() {
+    for (Directory directory : directories) {
+      log.info("Create directory " + directory.getDestination());
+    }
+    for (FileCopy file : files) {
+      log.info(
+          (file.isReplace() ? "Copy and replace " : "Copy ")
+              + file.getSource()
+              + " to "
+              + file.getDestination()
+              + " ("
+              + file.getSize()
+              + " bytes)");
+    }
+    Totals totals = new Totals(files.size(), directories.size(), totalBytes);
+    log.info(
+        "Staging would copy "
+            + totals.getFiles()
+            + " files ("
+            + totals.getBytes()
+            + " bytes) and create "
+            + totals.getDirectories()
+            + " directories in "
+            + config.getStagingDirectory());
+    return totals;
+  }
+
+  /**
+   * Stages the project: creates the directories, then copies the files concurrently on {@code
+   * executor}, with the {@link AppYamlProjectStageConfiguration#getStagingStrategy() strategy} and
+   * {@link AppYamlProjectStageConfiguration#getIncremental() incremental} mode of the
+   * configuration. If copying a file fails, no more files are copied and the first failure is
+   * thrown once the copies in progress complete.
+   *
+   * @param executor runs the file copies
+   * @return the totals that were staged
+   * @throws AppEngineException When staging fails
+   */
+  public Totals execute(Executor executor) throws AppEngineException {
+    Preconditions.checkNotNull(executor);
+    try {
+      CopyService copyService = AppYamlProjectStaging.newCopyService(config);
+      for (Directory directory : directories) {
+        directory.create();
+      }
+      copyFiles(copyService, executor);
+      copyService.finish();
+    } catch (IOException ex) {
+      throw new AppEngineException(ex);
+    }
+    return new Totals(files.size(), directories.size(), totalBytes);
+  }
+
+  /**
+   * Writes the staged layout into an archive instead of the staging directory, streaming the files
+   * from their sources. The archive is deterministic: the same plan with the same file contents
+   * always produces the same bytes. The staging directory is only the root of the layout, it
+   * doesn't have to exist.
+   *
+   * @param output receives the archive, it is closed once the archive is written
+   * @param format the format of the archive
+   * @return the totals that were written
+   * @throws AppEngineException if a file is staged outside the staging directory, or writing fails
+   */
+  public Totals writeArchive(OutputStream output, ArchiveWriter.Format format)
+      throws AppEngineException {
+    Preconditions.checkNotNull(output);
+    Preconditions.checkNotNull(format);
+    Path root = config.getStagingDirectory().toAbsolutePath().normalize();
+    for (FileCopy file : files) {
+      if (!file.destination.startsWith(root)) {
+        throw new AppEngineException(
+            "Cannot archive " + file.source + ", it is staged outside the staging directory.");
+      }
+    }
+    try (ArchiveWriter archive = new ArchiveWriter(output, format)) {
+      for (Directory directory : directories) {
+        if (directory.destination.startsWith(root)) {
+          archive.addDirectory(FileUtil.toEntryName(root.relativize(directory.destination)));
+        }
+      }
+      for (FileCopy file : files) {
+        archive.addFile(FileUtil.toEntryName(root.relativize(file.destination)), file.source, true);
+      }
+    } catch (IOException ex) {
+      throw new AppEngineException(ex);
+    }
+    return new Totals(files.size(), directories.size(), totalBytes);
+  }
+
+  private void copyFiles(CopyService copyService, Executor executor) throws IOException {
+    AtomicReference<IOException> failure = new AtomicReference<>();
+    CountDownLatch remaining = new CountDownLatch((files.size() + BATCH_SIZE - 1) / BATCH_SIZE);
+    for (int start = 0; start < files.size(); start += BATCH_SIZE) {
+      List<FileCopy> batch = files.subList(start, Math.min(start + BATCH_SIZE, files.size()));
+      try {
+        executor.execute(
+            () -> {
+              try {
+                for (FileCopy file : batch) {
+                  if (failure.get() != null) {
+                    return;
+                  }
+                  copyService.copyPlannedFile(file.source, file.destination, file.replace);
+                }
+              } catch (IOException ex) {
+                failure.compareAndSet(null, ex);
+              } catch (RuntimeException ex) {
+                failure.compareAndSet(null, new IOException("Failed to stage files", ex));
+              } finally {
+                remaining.countDown();
+              }
+            });
+      } catch (RejectedExecutionException ex) {
+        failure.compareAndSet(null, new IOException("Copy task rejected by executor", ex));
+        remaining.countDown();
+      }
+    }
+    try {
+      remaining.await();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      failure.compareAndSet(null, new InterruptedIOException("Interrupted while staging files"));
+    }
+    IOException exception = failure.get();
+    if (exception != null) {
+      throw exception;
+    }
+  }
+
+  /** A file copy of the plan. */
+  public static class FileCopy {
+    private final Path source;
+    private final Path destination;
+    private final long size;
+    private final boolean replace;
+
+    private FileCopy(Path source, Path destination, long size, boolean replace) {
+      this.source = source;
+      this.destination = destination;
+      this.size = size;
+      this.replace = replace;
+    }
+
+    public Path getSource() {
+      return source;
+    }
+
+    public Path getDestination() {
+      return destination;
+    }
+
+    public long getSize() {
+      return size;
+    }
+
+    /** Whether the copy replaces an existing file, otherwise it fails if the file exists. */
+    public boolean isReplace() {
+      return replace;
+    }
+  }
+
+  /** A directory of the plan. */
+  public static class Directory {
+    @Nullable private final Path source;
+    private final Path destination;
+
+    private Directory(@Nullable Path source, Path destination) {
+      this.source = source;
+      this.destination = destination;
+    }
+
+    /** The directory whose attributes are copied, null for parents of single files. */
+    @Nullable
+    public Path getSource() {
+      return source;
+    }
+
+    public Path getDestination() {
+      return destination;
+    }
+
+    void create() throws IOException {
+      if (Files.isDirectory(destination)) {
+        return;
+      }
+      if (source != null) {
+        Files.copy(source, destination, StandardCopyOption.COPY_ATTRIBUTES);
+      } else {
+        Files.createDirectories(destination);
+      }
+    }
+  }
+
+  /** What a plan copies. */
+  public static class Totals {
+    private final int files;
+    private final int directories;
+    private final long bytes;
+
+    @VisibleForTesting
+    Totals(int files, int directories, long bytes) {
+      this.files = files;
+      this.directories = directories;
+      this.bytes = bytes;
+    }
+
+    public int getFiles() {
+      return files;
+    }
+
+    public int getDirectories() {
+      return directories;
+    }
+
+    public long getBytes() {
+      return bytes;
+    }
+  }
+
+  /** Records the copies of the staging steps instead of making them. */
+  private static class PlanningCopyService extends CopyService {
+    private final Path stagingDirectory;
+    private final Map<Path, Directory> directories = new LinkedHashMap<>();
+    private final Map<Path, FileCopy> files = new LinkedHashMap<>();
+
+    private PlanningCopyService(Path stagingDirectory) {
+      this.stagingDirectory = stagingDirectory.toAbsolutePath().normalize();
+    }
+
+    @Override
+    void copyDirectory(Path src, Path dest, ExclusionMatcher excludes) throws IOException {
+      Files.walkFileTree(
+          src,
+          new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+              if (dir.equals(src)) {
+                return FileVisitResult.CONTINUE;
+              }
+              if (excludes.isExcluded(dir, true)) {
+                return FileVisitResult.SKIP_SUBTREE;
+              }
+              Path target = normalize(dest.resolve(src.relativize(dir)));
+              directories.putIfAbsent(target, new Directory(dir, target));
+              return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+                throws IOException {
+              if (!excludes.isExcluded(file, attrs.isDirectory())) {
+                Path target = normalize(dest.resolve(src.relativize(file)));
+                if (files.containsKey(target)) {
+                  // same as FileUtil.copyDirectory, which doesn't overwrite
+                  throw new FileAlreadyExistsException(target.toString());
+                }
+                files.put(target, new FileCopy(file, target, attrs.size(), false));
+              }
+              return FileVisitResult.CONTINUE;
+            }
+          });
+    }
+
+    @Override
+    void copyFileAndReplace(Path src, Path dest) throws IOException {
+      Path target = normalize(dest);
+      addParents(target);
+      // the last copy wins, in the order it is made
+      files.remove(target);
+      files.put(target, new FileCopy(src, target, Files.size(src), true));
+    }
+
+    private void addParents(Path target) {
+      List<Path> parents = new ArrayList<>();
+      for (Path parent = target.getParent();
+          parent != null && !parent.equals(stagingDirectory) && !directories.containsKey(parent);
+          parent = parent.getParent()) {
+        if (Files.isDirectory(parent) && !parent.startsWith(stagingDirectory)) {
+          break;
+        }
+        parents.add(0, parent);
+      }
+      for (Path parent : parents) {
+        directories.put(parent, new Directory(null, parent));
+      }
+    }
+
+    private static Path normalize(Path path) {
+      return path.toAbsolutePath().normalize();
+    }
+  }
+}
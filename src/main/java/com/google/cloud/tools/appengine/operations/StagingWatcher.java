@@ -0,0 +1,429 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.appengine.operations;
+
+import com.google.cloud.tools.appengine.AppEngineException;
+import com.google.cloud.tools.appengine.configuration.AppYamlProjectStageConfiguration;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * Keeps the staging directory of an app.yaml based project up to date while the project is edited.
+ * {@link #start()} stages the project, then watches the App Engine directory, the extra files and
+ * Docker directories, the artifact and the {@code Class-Path} jars. After a burst of changes has
+ * settled, the project is {@link StagingPlan planned} again and only the difference to what is
+ * staged is applied: new and changed files are copied, files that are no longer staged are deleted.
+ * Listeners are notified once the staging directory matches the project again.
+ *
+ * <p>Changes are detected with a {@link WatchService}, which may be slow or coarse on some
+ * platforms. Since every update compares the whole plan with the staged files, missed events only
+ * delay an update until the next change. While an update fails, e.g. because the build is rewriting
+ * the artifact, it is retried every second.
+ */
+public class StagingWatcher implements Closeable {
+
+  private static final Logger log = Logger.getLogger(StagingWatcher.class.getName());
+
+  private static final Duration DEFAULT_DEBOUNCE = Duration.ofMillis(200);
+  private static final long RETRY_MILLIS = 1000;
+
+  /** Notified on the watcher thread about the updates of the staging directory. */
+  public interface Listener {
+
+    /** Called once the staging directory matches the project, after the initial stage too. */
+    void staged(Update update);
+
+    /**
+     * Called when updating the staging directory failed. Not called again until an update succeeds.
+     */
+    default void failed(AppEngineException ex) {}
+  }
+
+  private final AppYamlProjectStaging staging;
+  private final AppYamlProjectStageConfiguration config;
+  private final ImmutableList<Listener> listeners;
+  private final long debounceMillis;
+  private final StagingFileTransfer transfer;
+
+  // staged files by destination, with the source they were staged from
+  private final Map<Path, SourceStamp> stagedFiles = new HashMap<>();
+  private final Set<Path> stagedDirectories = new HashSet<>();
+  private final Map<Path, WatchKey> watchKeys = new HashMap<>();
+
+  @Nullable private WatchService watchService;
+  @Nullable private Thread thread;
+  private volatile boolean closed;
+
+  @VisibleForTesting
+  StagingWatcher(
+      AppYamlProjectStaging staging,
+      AppYamlProjectStageConfiguration config,
+      List<Listener> listeners,
+      Duration debounce) {
+    this.staging = staging;
+    this.config = config;
+    this.listeners = ImmutableList.copyOf(listeners);
+    this.debounceMillis = debounce.toMillis();
+    this.transfer = AppYamlProjectStaging.newFileTransfer(config);
+  }
+
+  public static Builder builder(AppYamlProjectStageConfiguration config) {
+    return new Builder(Preconditions.checkNotNull(config));
+  }
+
+  /**
+   * Stages the project and starts watching it on a daemon thread.
+   *
+   * @throws AppEngineException When the initial staging fails
+   */
+  public synchronized void start() throws AppEngineException {
+    Preconditions.checkState(thread == null && !closed, "watcher was already started");
+    StagingPlan plan = staging.plan(config);
+    Map<Path, SourceStamp> stamps = new LinkedHashMap<>();
+    try {
+      // stamped before copying, so a change during the copy is copied by the next update
+      for (StagingPlan.FileCopy file : plan.getFiles()) {
+        stamps.put(file.getDestination(), SourceStamp.of(file.getSource()));
+      }
+    } catch (IOException ex) {
+      throw new AppEngineException(ex);
+    }
+    plan.execute(Runnable::run);
+    stagedFiles.putAll(stamps);
+    for (StagingPlan.Directory directory : plan.getDirectories()) {
+      stagedDirectories.add(directory.getDestination());
+    }
+
+    WatchService newWatchService;
+    try {
+      newWatchService = config.getAppEngineDirectory().getFileSystem().newWatchService();
+      watchService = newWatchService;
+      updateWatches(newWatchService, plan);
+    } catch (IOException ex) {
+      throw new AppEngineException(ex);
+    }
+    notifyStaged(new Update(true, new ArrayList<>(stamps.keySet()), ImmutableList.of()));
+
+    Thread watcher = new Thread(() -> watch(newWatchService), "staging-watcher");
+    watcher.setDaemon(true);
+    watcher.start();
+    thread = watcher;
+  }
+
+  /** Stops watching, waiting for an update in progress to complete. */
+  @Override
+  public void close() throws IOException {
+    Thread watcher;
+    synchronized (this) {
+      closed = true;
+      watcher = thread;
+      if (watchService != null) {
+        watchService.close();
+      }
+    }
+    if (watcher != null && watcher != Thread.currentThread()) {
+      try {
+        watcher.join();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private void watch(WatchService watchService) {
+    boolean failing = false;
+    try {
+      while (!closed) {
+        WatchKey key =
+            failing ? watchService.poll(RETRY_MILLIS, TimeUnit.MILLISECONDS) : watchService.take();
+        // wait until no more events arrive for the debounce time
+        while (key != null) {
+          key.pollEvents();
+          key.reset();
+          key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS);
+        }
+        if (closed) {
+          return;
+        }
+        try {
+          Update update = update(watchService);
+          failing = false;
+          notifyStaged(update);
+        } catch (AppEngineException ex) {
+          if (!failing) {
+            notifyFailed(ex);
+          }
+          failing = true;
+        }
+      }
+    } catch (ClosedWatchServiceException ex) {
+      // closed
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** Applies the difference between the current plan of the project and the staged files. */
+  @VisibleForTesting
+  Update update(WatchService watchService) throws AppEngineException {
+    StagingPlan plan = staging.plan(config);
+    List<Path> copied = new ArrayList<>();
+    List<Path> deleted = new ArrayList<>();
+    try {
+      Set<Path> plannedFiles = new HashSet<>();
+      for (StagingPlan.FileCopy file : plan.getFiles()) {
+        plannedFiles.add(file.getDestination());
+      }
+      for (Path destination : new ArrayList<>(stagedFiles.keySet())) {
+        if (!plannedFiles.contains(destination)) {
+          if (Files.deleteIfExists(destination)) {
+            deleted.add(destination);
+          }
+          stagedFiles.remove(destination);
+        }
+      }
+
+      Set<Path> plannedDirectories = new LinkedHashSet<>();
+      for (StagingPlan.Directory directory : plan.getDirectories()) {
+        plannedDirectories.add(directory.getDestination());
+      }
+      // children first, and only if nothing else was put into them
+      for (Path directory : new TreeSet<>(stagedDirectories).descendingSet()) {
+        if (!plannedDirectories.contains(directory)) {
+          try {
+            if (Files.deleteIfExists(directory)) {
+              deleted.add(directory);
+            }
+          } catch (DirectoryNotEmptyException ex) {
+            log.fine("Not deleting directory with unstaged files " + directory);
+          }
+          stagedDirectories.remove(directory);
+        }
+      }
+      for (StagingPlan.Directory directory : plan.getDirectories()) {
+        directory.create();
+        stagedDirectories.add(directory.getDestination());
+      }
+
+      for (StagingPlan.FileCopy file : plan.getFiles()) {
+        SourceStamp stamp = SourceStamp.of(file.getSource());
+        if (!stamp.equals(stagedFiles.get(file.getDestination()))) {
+          transfer.transfer(file.getSource(), file.getDestination(), true, !file.isReplace());
+          stagedFiles.put(file.getDestination(), stamp);
+          copied.add(file.getDestination());
+        }
+      }
+
+      updateWatches(watchService, plan);
+    } catch (IOException ex) {
+      throw new AppEngineException(ex);
+    }
+    return new Update(false, copied, deleted);
+  }
+
+  /** Watches the directories that hold the sources of the plan, and no others. */
+  private void updateWatches(WatchService watchService, StagingPlan plan) throws IOException {
+    Set<Path> directories = new HashSet<>();
+    directories.add(config.getAppEngineDirectory());
+    List<Path> extraFilesDirectories = config.getExtraFilesDirectory();
+    if (extraFilesDirectories != null) {
+      directories.addAll(extraFilesDirectories);
+    }
+    Path dockerDirectory = config.getDockerDirectory();
+    if (dockerDirectory != null) {
+      directories.add(dockerDirectory);
+    }
+    for (StagingPlan.Directory directory : plan.getDirectories()) {
+      Path source = directory.getSource();
+      if (source != null) {
+        directories.add(source);
+      }
+    }
+    for (StagingPlan.FileCopy file : plan.getFiles()) {
+      Path parent = file.getSource().getParent();
+      if (parent != null) {
+        directories.add(parent);
+      }
+    }
+
+    Set<Path> watched = new HashSet<>();
+    for (Path directory : directories) {
+      watched.add(directory.toAbsolutePath().normalize());
+    }
+    Iterator<Map.Entry<Path, WatchKey>> keys = watchKeys.entrySet().iterator();
+    while (keys.hasNext()) {
+      Map.Entry<Path, WatchKey> key = keys.next();
+      if (!watched.contains(key.getKey()) || !key.getValue().isValid()) {
+        key.getValue().cancel();
+        keys.remove();
+      }
+    }
+    for (Path directory : watched) {
+      if (!watchKeys.containsKey(directory) && Files.isDirectory(directory)) {
+        watchKeys.put(
+            directory,
+            directory.register(
+                watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE,
+                StandardWatchEventKinds.ENTRY_MODIFY));
+      }
+    }
+  }
+
+  private void notifyStaged(Update update) {
+    for (Listener listener : listeners) {
+      try {
+        listener.staged(update);
+      } catch (RuntimeException ex) {
+        log.log(Level.WARNING, "Staging listener failed", ex);
+      }
+    }
+  }
+
+  private void notifyFailed(AppEngineException failure) {
+    log.log(Level.WARNING, "Failed to update the staging directory", failure);
+    for (Listener listener : listeners) {
+      try {
+        listener.failed(failure);
+      } catch (RuntimeException ex) {
+        log.log(Level.WARNING, "Staging listener failed", ex);
+      }
+    }
+  }
+
+  /** What an update changed in the staging directory. */
+  public static class Update {
+    private final boolean initial;
+    private final ImmutableList<Path> copied;
+    private final ImmutableList<Path> deleted;
+
+    private Update(boolean initial, List<Path> copied, List<Path> deleted) {
+      this.initial = initial;
+      this.copied = ImmutableList.copyOf(copied);
+      this.deleted = ImmutableList.copyOf(deleted);
+    }
+
+    /** Whether this is the initial stage of {@link #start()}. */
+    public boolean isInitial() {
+      return initial;
+    }
+
+    /** Staged files that were copied. */
+    public List<Path> getCopied() {
+      return copied;
+    }
+
+    /** Staged files and directories that were deleted. */
+    public List<Path> getDeleted() {
+      return deleted;
+    }
+  }
+
+  /** The source of a staged file, as it was when it was staged. */
+  private static class SourceStamp {
+    private final Path source;
+    private final FileTime lastModified;
+    private final long size;
+
+    private SourceStamp(Path source, FileTime lastModified, long size) {
+      this.source = source;
+      this.lastModified = lastModified;
+      this.size = size;
+    }
+
+    private static SourceStamp of(Path source) throws IOException {
+      BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+      return new SourceStamp(source, attributes.lastModifiedTime(), attributes.size());
+    }
+
+    @Override
+    public boolean equals(@Nullable Object other) {
+      if (!(other instanceof SourceStamp)) {
+        return false;
+      }
+      SourceStamp that = (SourceStamp) other;
+      return source.equals(that.source)
+          && lastModified.equals(that.lastModified)
+          && size == that.size;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(source, lastModified, size);
+    }
+  }
+
+  public static class Builder {
+    private final AppYamlProjectStageConfiguration config;
+    private final List<Listener> listeners = new ArrayList<>();
+    @Nullable private Duration debounce;
+
+    private Builder(AppYamlProjectStageConfiguration config) {
+      this.config = config;
+    }
+
+    /** Notify {@code listener} about the updates of the staging directory. */
+    public Builder addListener(Listener listener) {
+      listeners.add(Preconditions.checkNotNull(listener));
+      return this;
+    }
+
+    /** How long changes must settle before the staging directory is updated, 200ms by default. */
+    public Builder setDebounce(Duration debounce) {
+      Preconditions.checkArgument(!debounce.isNegative(), "debounce must not be negative");
+      this.debounce = debounce;
+      return this;
+    }
+
+    public StagingWatcher build() {
+      return new StagingWatcher(
+          new AppYamlProjectStaging(),
+          config,
+          listeners,
+          debounce != null ? debounce : DEFAULT_DEBOUNCE);
+    }
+  }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.appengine.operations.cloudsdk;
+
+import com.google.cloud.tools.appengine.operations.cloudsdk.serialization.CloudSdkVersion;
+import com.google.common.annotations.VisibleForTesting;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nullable;
+
+/**
+ * Caches what the library learns about Cloud SDK installations, so repeated operations skip the
+ * file system work: the SDK path found by the default resolvers (if a {@code CloudSdk.Builder} opts
+ * in through {@code registry(..)}), and per SDK root, the parsed {@code VERSION} file and whether
+ * the installation validated. Entries of an SDK root are reused as long as its {@code VERSION} file
+ * keeps the same modification time and size, which changes whenever the SDK is installed or
+ * updated; use {@link #refresh()} after other changes. Failures are never cached. Thread safe.
+ */
+public class CloudSdkRegistry {
+
+  private static final String VERSION_FILE_NAME = "VERSION";
+
+  private static final CloudSdkRegistry INSTANCE = new CloudSdkRegistry();
+
+  private final Map<Path, Entry> entries = new ConcurrentHashMap<>();
+  private final Map<String, Path> discoveredPaths = new ConcurrentHashMap<>();
+
+  @VisibleForTesting
+  CloudSdkRegistry() {}
+
+  /** Returns the process-wide registry. */
+  public static CloudSdkRegistry getInstance() {
+    return INSTANCE;
+  }
+
+  /** Loads and parses the {@code VERSION} file of an SDK. */
+  public interface VersionLoader {
+    CloudSdkVersion load() throws CloudSdkVersionFileException;
+  }
+
+  /** Checks an SDK installation, throwing if it is unusable. */
+  public interface Validator {
+    void validate()
+        throws CloudSdkNotFoundException, CloudSdkOutOfDateException, CloudSdkVersionFileException;
+  }
+
+  /** Searches the system for an SDK installation. */
+  public interface Discovery {
+    Path discover() throws CloudSdkNotFoundException;
+  }
+
+  /**
+   * Returns the version of the SDK at {@code sdkRoot}, loading it only if its {@code VERSION} file
+   * changed since it was last loaded.
+   */
+  public CloudSdkVersion getVersion(Path sdkRoot, VersionLoader loader)
+      throws CloudSdkVersionFileException {
+    VersionStamp stamp = VersionStamp.of(sdkRoot);
+    Entry entry = entries.get(key(sdkRoot));
+    if (stamp != null && entry != null && entry.stamp.equals(stamp) && entry.version != null) {
+      return entry.version;
+    }
+    CloudSdkVersion version = loader.load();
+    if (stamp != null) {
+      boolean validated = entry != null && entry.stamp.equals(stamp) && entry.validated;
+      entries.put(key(sdkRoot), new Entry(stamp, version, validated));
+    }
+    return version;
+  }
+
+  /**
+   * Validates the SDK at {@code sdkRoot}, running the validator only if the SDK did not validate
+   * since its {@code VERSION} file last changed.
+   */
+  public void validate(Path sdkRoot, Validator validator)
+      throws CloudSdkNotFoundException, CloudSdkOutOfDateException, CloudSdkVersionFileException {
+    VersionStamp stamp = VersionStamp.of(sdkRoot);
+    Entry entry = entries.get(key(sdkRoot));
+    if (stamp != null && entry != null && entry.stamp.equals(stamp) && entry.validated) {
+      return;
+    }
+    validator.validate();
+    // don't cache if the SDK was updated while it was validated
+    VersionStamp validatedStamp = VersionStamp.of(sdkRoot);
+    if (validatedStamp != null && validatedStamp.equals(stamp)) {
+      CloudSdkVersion version = entry != null && entry.stamp.equals(stamp) ? entry.version : null;
+      entries.put(key(sdkRoot), new Entry(validatedStamp, version, true));
+    }
+  }
+
+  /**
+   * Returns the SDK path found by a search of the system, reusing the path found by an earlier
+   * search with the same key while it is still a directory.
+   *
+   * @param discoveryKey identifies the search configuration, e.g. the resolvers and {@code PATH}
+   * @param discovery the search
+   */
+  public Path discoverSdkPath(String discoveryKey, Discovery discovery)
+      throws CloudSdkNotFoundException {
+    Path cached = discoveredPaths.get(discoveryKey);
+    if (cached != null && Files.isDirectory(cached)) {
+      return cached;
+    }
+    Path discovered = discovery.discover();
+    discoveredPaths.put(discoveryKey, discovered);
+    return discovered;
+  }
+
+  /** Forgets everything, e.g. after installing or moving SDKs without touching their VERSION. */
+  public void refresh() {
+    entries.clear();
+    discoveredPaths.clear();
+  }
+
+  /** Forgets the version and validation of one SDK. */
+  public void refresh(Path sdkRoot) {
+    entries.remove(key(sdkRoot));
+  }
+
+  private static Path key(Path sdkRoot) {
+    return sdkRoot.toAbsolutePath().normalize();
+  }
+
+  private static class Entry {
+    private final VersionStamp stamp;
+    @Nullable private final CloudSdkVersion version;
+    private final boolean validated;
+
+    private Entry(VersionStamp stamp, @Nullable CloudSdkVersion version, boolean validated) {
+      this.stamp = stamp;
+      this.version = version;
+      this.validated = validated;
+    }
+  }
+
+  /** The modification time and size of a VERSION file. */
+  private static class VersionStamp {
+    private final FileTime lastModified;
+    private final long size;
+
+    private VersionStamp(FileTime lastModified, long size) {
+      this.lastModified = lastModified;
+      this.size = size;
+    }
+
+    /** Returns the stamp of the VERSION file of the SDK, or null if it cannot be read. */
+    @Nullable
+    private static VersionStamp of(Path sdkRoot) {
+      try {
+        BasicFileAttributes attributes =
+            Files.readAttributes(sdkRoot.resolve(VERSION_FILE_NAME), BasicFileAttributes.class);
+        if (!attributes.isRegularFile()) {
+          return null;
+        }
+        return new VersionStamp(attributes.lastModifiedTime(), attributes.size());
+      } catch (IOException ex) {
+        return null;
+      }
+    }
+
+    @Override
+    public boolean equals(@Nullable Object other) {
+      if (!(other instanceof VersionStamp)) {
+        return false;
+      }
+      VersionStamp that = (VersionStamp) other;
+      return lastModified.equals(that.lastModified) && size == that.size;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(lastModified, size);
+    }
+  }
+}
@@ -0,0 +1,372 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.appengine.operations.cloudsdk;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * Opt-in memoization of the output of read-only gcloud commands such as {@code components list} and
+ * {@code config list}, each of which otherwise forks a Python process.
+ *
+ * <p>Results are keyed by the command line, the {@code CLOUDSDK_*} environment, and a fingerprint
+ * of the Cloud SDK installation (its {@code VERSION} file and installed component manifests) and of
+ * the active gcloud configuration, so changes made outside this library invalidate entries too.
+ * Entries expire after a TTL, and {@link #invalidateAll()} discards every cached result in the JVM;
+ * the library calls it when it updates the SDK, installs components or changes gcloud config.
+ *
+ * <p>Not all cached output depends only on local state: without {@code --only-local-state}, {@code
+ * components list} fetches the latest component snapshot to report available updates. A cached
+ * result does not see a release published after it was cached, for up to the TTL.
+ */
+public class GcloudResultCache {
+
+  private static final Logger logger = Logger.getLogger(GcloudResultCache.class.getName());
+
+  private static final Gson GSON = new Gson();
+  private static final Type ENTRIES_TYPE = new TypeToken<Map<String, Entry>>() {}.getType();
+
+  /**
+   * Subcommand paths that only read state. Their output depends on local state and the inputs of
+   * the key, except for the update check of {@code components list}.
+   */
+  private static final ImmutableSet<ImmutableList<String>> READ_ONLY_COMMANDS =
+      ImmutableSet.of(
+          ImmutableList.of("components", "list"),
+          ImmutableList.of("config", "list"),
+          ImmutableList.of("config", "get"),
+          ImmutableList.of("config", "get-value"),
+          ImmutableList.of("config", "configurations", "list"),
+          ImmutableList.of("config", "configurations", "describe"),
+          ImmutableList.of("auth", "list"),
+          ImmutableList.of("info"),
+          ImmutableList.of("version"));
+
+  /** Command groups whose other commands change state that cached results depend on. */
+  private static final ImmutableSet<String> STATEFUL_GROUPS =
+      ImmutableSet.of("components", "config", "auth", "init");
+
+  private static final boolean IS_WINDOWS = System.getProperty("os.name").contains("Windows");
+
+  private static final AtomicLong generation = new AtomicLong();
+
+  private final Duration ttl;
+  @Nullable private final Path persistenceFile;
+  private final Clock clock;
+  private final Map<String, String> systemEnvironment;
+  private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+  @VisibleForTesting
+  GcloudResultCache(
+      Duration ttl,
+      @Nullable Path persistenceFile,
+      Clock clock,
+      Map<String, String> systemEnvironment) {
+    this.ttl = ttl;
+    this.persistenceFile = persistenceFile;
+    this.clock = clock;
+    this.systemEnvironment = systemEnvironment;
+    if (persistenceFile != null) {
+      load(persistenceFile);
+    }
+  }
+
+  /** Creates a cache that holds results in memory for {@code ttl}. */
+  public static GcloudResultCache inMemory(Duration ttl) {
+    return new GcloudResultCache(ttl, null, Clock.systemUTC(), System.getenv());
+  }
+
+  /**
+   * Creates a cache that holds results for {@code ttl} and persists them to {@code file}, so they
+   * can be reused by later builds. Unreadable files are ignored.
+   */
+  public static GcloudResultCache persistent(Path file, Duration ttl) {
+    return new GcloudResultCache(ttl, file, Clock.systemUTC(), System.getenv());
+  }
+
+  /**
+   * Returns true if the gcloud command only reads state and so may be cached.
+   *
+   * @param gcloudArgs the arguments to gcloud (not including 'gcloud')
+   */
+  public static boolean isReadOnly(List<String> gcloudArgs) {
+    List<String> path = subcommandPath(gcloudArgs);
+    for (int length = 1; length <= path.size(); length++) {
+      if (READ_ONLY_COMMANDS.contains(ImmutableList.copyOf(path.subList(0, length)))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns true if running the gcloud command may change the results of read-only commands, e.g.
+   * {@code config set} or {@code components install}.
+   *
+   * @param gcloudArgs the arguments to gcloud (not including 'gcloud')
+   */
+  public static boolean invalidates(List<String> gcloudArgs) {
+    List<String> path = subcommandPath(gcloudArgs);
+    return !path.isEmpty() && STATEFUL_GROUPS.contains(path.get(0)) && !isReadOnly(gcloudArgs);
+  }
+
+  private static List<String> subcommandPath(List<String> gcloudArgs) {
+    List<String> path = new ArrayList<>();
+    for (String arg : gcloudArgs) {
+      if (arg.startsWith("-")) {
+        break;
+      }
+      path.add(arg);
+    }
+    return path;
+  }
+
+  /** Discards the results held by every cache in this JVM. */
+  public static void invalidateAll() {
+    generation.incrementAndGet();
+  }
+
+  /**
+   * Computes the key for a command. Create the key before running the command, so a result is not
+   * cached if the cache is invalidated while the command runs.
+   *
+   * @param command the full command line, starting with the path to gcloud
+   * @param environment environment variables passed to the process, in addition to the inherited
+   *     environment
+   */
+  public Key newKey(List<String> command, @Nullable Map<String, String> environment) {
+    Map<String, String> cloudSdkEnvironment = new TreeMap<>();
+    putCloudSdkVariables(cloudSdkEnvironment, systemEnvironment);
+    if (environment != null) {
+      putCloudSdkVariables(cloudSdkEnvironment, environment);
+    }
+
+    Hasher hasher = Hashing.sha256().newHasher();
+    for (String arg : command) {
+      hasher.putString(arg, StandardCharsets.UTF_8).putByte((byte) 0);
+    }
+    for (Map.Entry<String, String> variable : cloudSdkEnvironment.entrySet()) {
+      hasher
+          .putString(variable.getKey(), StandardCharsets.UTF_8)
+          .putByte((byte) '=')
+          .putString(variable.getValue(), StandardCharsets.UTF_8)
+          .putByte((byte) 0);
+    }
+    if (!command.isEmpty()) {
+      putSdkFingerprint(hasher, command.get(0));
+    }
+    putConfigFingerprint(hasher, cloudSdkEnvironment.get("CLOUDSDK_CONFIG"));
+    return new Key(hasher.hash().toString(), generation.get());
+  }
+
+  private static void putCloudSdkVariables(
+      Map<String, String> cloudSdkEnvironment, Map<String, String> environment) {
+    for (Map.Entry<String, String> variable : environment.entrySet()) {
+      if (variable.getKey().startsWith("CLOUDSDK_")) {
+        cloudSdkEnvironment.put(variable.getKey(), variable.getValue());
+      }
+    }
+  }
+
+  private static void putSdkFingerprint(Hasher hasher, String gcloud) {
+    Path sdkRoot;
+    try {
+      Path bin = Paths.get(gcloud).toAbsolutePath().getParent();
+      sdkRoot = bin == null ? null : bin.getParent();
+    } catch (InvalidPathException ex) {
+      return;
+    }
+    if (sdkRoot == null) {
+      return;
+    }
+    Path versionFile = sdkRoot.resolve("VERSION");
+    try {
+      hasher.putBytes(Files.readAllBytes(versionFile));
+    } catch (IOException ex) {
+      // no VERSION file, rely on the other inputs
+    }
+    putModifiedTime(hasher, versionFile);
+    // component installs and updates rewrite the manifests in here
+    putModifiedTime(hasher, sdkRoot.resolve(".install"));
+  }
+
+  private void putConfigFingerprint(Hasher hasher, @Nullable String cloudSdkConfig) {
+    Path configDirectory;
+    String appData = systemEnvironment.get("APPDATA");
+    if (cloudSdkConfig != null) {
+      configDirectory = Paths.get(cloudSdkConfig);
+    } else if (IS_WINDOWS && appData != null) {
+      configDirectory = Paths.get(appData, "gcloud");
+    } else {
+      configDirectory = Paths.get(System.getProperty("user.home"), ".config", "gcloud");
+    }
+    putModifiedTime(hasher, configDirectory);
+    putModifiedTime(hasher, configDirectory.resolve("active_config"));
+    Path configurations = configDirectory.resolve("configurations");
+    putModifiedTime(hasher, configurations);
+    try {
+      String activeConfig =
+          new String(
+                  Files.readAllBytes(configDirectory.resolve("active_config")),
+                  StandardCharsets.UTF_8)
+              .trim();
+      putModifiedTime(hasher, configurations.resolve("config_" + activeConfig));
+    } catch (IOException | InvalidPathException ex) {
+      putModifiedTime(hasher, configurations.resolve("config_default"));
+    }
+  }
+
+  private static void putModifiedTime(Hasher hasher, Path path) {
+    try {
+      hasher.putLong(Files.getLastModifiedTime(path).toMillis());
+    } catch (IOException ex) {
+      hasher.putLong(-1);
+    }
+  }
+
+  /** Returns the cached result for the key, if present and not expired or invalidated. */
+  public Optional<String> get(Key key) {
+    Entry entry = entries.get(key.digest);
+    if (entry == null) {
+      return Optional.empty();
+    }
+    if (entry.generation != generation.get()
+        || clock.millis() - entry.createdMillis >= ttl.toMillis()) {
+      entries.remove(key.digest, entry);
+      return Optional.empty();
+    }
+    return Optional.of(entry.value);
+  }
+
+  /** Caches the result of a successful command. */
+  public void put(Key key, String result) {
+    if (key.generation != generation.get()) {
+      // invalidated while the command ran
+      return;
+    }
+    entries.put(key.digest, new Entry(result, clock.millis(), key.generation));
+    if (persistenceFile != null) {
+      save(persistenceFile);
+    }
+  }
+
+  /** Removes all entries held by this cache. */
+  public void clear() {
+    entries.clear();
+    if (persistenceFile != null) {
+      save(persistenceFile);
+    }
+  }
+
+  private void load(Path file) {
+    if (!Files.isRegularFile(file)) {
+      return;
+    }
+    try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      Map<String, Entry> persisted = GSON.fromJson(reader, ENTRIES_TYPE);
+      if (persisted == null) {
+        return;
+      }
+      long currentGeneration = generation.get();
+      for (Map.Entry<String, Entry> persistedEntry : persisted.entrySet()) {
+        Entry entry = persistedEntry.getValue();
+        if (entry != null && entry.value != null) {
+          entries.put(
+              persistedEntry.getKey(),
+              new Entry(entry.value, entry.createdMillis, currentGeneration));
+        }
+      }
+    } catch (IOException | JsonIOException | JsonSyntaxException ex) {
+      logger.log(Level.WARNING, "Ignoring unreadable gcloud result cache " + file, ex);
+    }
+  }
+
+  private synchronized void save(Path file) {
+    try {
+      Path parent = file.toAbsolutePath().getParent();
+      if (parent != null) {
+        Files.createDirectories(parent);
+      }
+      Path temporary = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+      try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+        GSON.toJson(new TreeMap<>(entries), ENTRIES_TYPE, writer);
+      }
+      Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException ex) {
+      logger.log(Level.WARNING, "Unable to persist gcloud result cache to " + file, ex);
+    }
+  }
+
+  /** Identifies a command invocation, see {@link #newKey}. */
+  public static class Key {
+    private final String digest;
+    private final long generation;
+
+    private Key(String digest, long generation) {
+      this.digest = digest;
+      this.generation = generation;
+    }
+
+    @Override
+    public String toString() {
+      return digest;
+    }
+  }
+
+  private static class Entry {
+    // Don't change the field names because Gson uses them for persistence.
+    private final String value;
+    private final long createdMillis;
+    private final transient long generation;
+
+    private Entry(String value, long createdMillis, long generation) {
+      this.value = value;
+      this.createdMillis = createdMillis;
+      this.generation = generation;
+    }
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.appengine.operations.cloudsdk;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * Runs {@link CloudSdkResolver}s concurrently, so one resolver stalled on a slow home directory or
+ * settings file does not hold up the others. The result is the same as asking the resolvers one
+ * after the other in rank order, except that a resolver that has not answered by the deadline is
+ * treated as if it found nothing: the path of a resolver is returned once every better ranked
+ * resolver found nothing, failed or timed out. After the deadline, paths that lower ranked
+ * resolvers already found are still used.
+ */
+public class ParallelSdkDiscovery {
+
+  private static final Logger logger = Logger.getLogger(ParallelSdkDiscovery.class.getName());
+
+  // shared so resolvers stuck past their deadline don't pile up threads per discovery
+  private static final ExecutorService DEFAULT_EXECUTOR =
+      Executors.newCachedThreadPool(
+          new ThreadFactoryBuilder()
+              .setDaemon(true)
+              .setNameFormat("cloud-sdk-resolver-%d")
+              .build());
+
+  private final ExecutorService executor;
+  private final long timeoutNanos;
+
+  /**
+   * Creates a discovery that waits at most {@code timeout} for the resolvers.
+   *
+   * @param timeout the deadline for the resolvers, counted from the start of a discovery
+   * @param unit the unit of {@code timeout}
+   */
+  public ParallelSdkDiscovery(long timeout, TimeUnit unit) {
+    this(DEFAULT_EXECUTOR, timeout, unit);
+  }
+
+  @VisibleForTesting
+  ParallelSdkDiscovery(ExecutorService executor, long timeout, TimeUnit unit) {
+    Preconditions.checkArgument(timeout >= 0, "timeout must not be negative");
+    this.executor = executor;
+    this.timeoutNanos = unit.toNanos(timeout);
+  }
+
+  /**
+   * Returns the path found by the best ranked resolver that answered in time.
+   *
+   * @param resolvers the resolvers, sorted from best to worst rank
+   * @return the path to the Google Cloud SDK, or null if no resolver found it in time
+   */
+  @Nullable
+  public Path discover(List<CloudSdkResolver> resolvers) {
+    long deadline = System.nanoTime() + timeoutNanos;
+    List<Future<Path>> futures = new ArrayList<>(resolvers.size());
+    for (CloudSdkResolver resolver : resolvers) {
+      futures.add(executor.submit(resolver::getCloudSdkPath));
+    }
+    try {
+      for (int i = 0; i < resolvers.size(); i++) {
+        Path path = await(resolvers.get(i), futures.get(i), deadline);
+        if (path != null) {
+          return path;
+        }
+      }
+      return null;
+    } finally {
+      for (Future<Path> future : futures) {
+        future.cancel(true);
+      }
+    }
+  }
+
+  @Nullable
+  private static Path await(CloudSdkResolver resolver, Future<Path> future, long deadline) {
+    try {
+      long remaining = deadline - System.nanoTime();
+      if (remaining > 0) {
+        return future.get(remaining, TimeUnit.NANOSECONDS);
+      }
+      return future.isDone() ? future.get() : null;
+    } catch (TimeoutException ex) {
+      logger.warning(
+          resolver.getClass().getName() + ": timed out searching for Google Cloud SDK, skipped");
+      return null;
+    } catch (ExecutionException ex) {
+      // prevent interference from exceptions in other resolvers
+      logger.log(
+          Level.SEVERE,
+          resolver.getClass().getName() + ": exception thrown when searching for Google Cloud SDK",
+          ex.getCause());
+      return null;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return null;
+    }
+  }
+}
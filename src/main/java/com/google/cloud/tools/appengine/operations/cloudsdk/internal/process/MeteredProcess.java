@@ -0,0 +1,222 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.appengine.operations.cloudsdk.internal.process;
+
+import com.google.common.base.Ticker;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link Process} that reports the first output, the volume of output read and the exit of the
+ * process it wraps. The exit is reported when it is first observed through {@link #waitFor}, {@link
+ * #exitValue} or {@link #isAlive}, so it is only reported if something waits for the process.
+ *
+ * <p>Use {@link #wrap} to create one: on Java 9 and newer it returns a subclass that also forwards
+ * {@code toHandle()}, {@code pid()} and the other {@code ProcessHandle} methods.
+ */
+public class MeteredProcess extends Process {
+
+  /** Receives the events of a metered process. */
+  public interface Events {
+    void onFirstOutput(Duration sinceStart);
+
+    void onBytesRead(long bytes, boolean stderr);
+
+    void onExit(int exitCode, Duration wallTime);
+  }
+
+  private static final Logger logger = Logger.getLogger(MeteredProcess.class.getName());
+
+  // the Java 9 subclass is only built on JDK 9+, and can only be loaded on Java 9+
+  @Nullable private static final Constructor<? extends MeteredProcess> JAVA9_CONSTRUCTOR;
+
+  static {
+    Constructor<? extends MeteredProcess> constructor = null;
+    try {
+      Class.forName("java.lang.ProcessHandle");
+      constructor =
+          Class.forName(MeteredProcess.class.getPackage().getName() + ".Java9MeteredProcess")
+              .asSubclass(MeteredProcess.class)
+              .getDeclaredConstructor(Process.class, Ticker.class, long.class, Events.class);
+    } catch (ReflectiveOperationException | LinkageError ex) {
+      // Java 8, or built on JDK 8
+    }
+    JAVA9_CONSTRUCTOR = constructor;
+  }
+
+  private final Process delegate;
+  private final Ticker ticker;
+  private final long startNanos;
+  private final Events events;
+  private final InputStream inputStream;
+  private final InputStream errorStream;
+  private final AtomicBoolean firstOutputReported = new AtomicBoolean();
+  private final AtomicBoolean exitReported = new AtomicBoolean();
+
+  /**
+   * Wraps a started process, forwarding the {@code ProcessHandle} methods when running on Java 9 or
+   * newer.
+   *
+   * @param startNanos the ticker reading taken just before the process was started
+   */
+  public static MeteredProcess wrap(
+      Process delegate, Ticker ticker, long startNanos, Events events) {
+    if (JAVA9_CONSTRUCTOR != null) {
+      try {
+        return JAVA9_CONSTRUCTOR.newInstance(delegate, ticker, startNanos, events);
+      } catch (ReflectiveOperationException ex) {
+        logger.log(Level.FINE, "Unable to forward process handle methods", ex);
+      }
+    }
+    return new MeteredProcess(delegate, ticker, startNanos, events);
+  }
+
+  /**
+   * Wraps a started process. Prefer {@link #wrap}, this class does not forward the Java 9 {@code
+   * ProcessHandle} methods.
+   *
+   * @param startNanos the ticker reading taken just before the process was started
+   */
+  public MeteredProcess(Process delegate, Ticker ticker, long startNanos, Events events) {
+    this.delegate = delegate;
+    this.ticker = ticker;
+    this.startNanos = startNanos;
+    this.events = events;
+    this.inputStream = new CountingInputStream(delegate.getInputStream(), false);
+    this.errorStream = new CountingInputStream(delegate.getErrorStream(), true);
+  }
+
+  /** Returns the wrapped process. */
+  public Process getDelegate() {
+    return delegate;
+  }
+
+  @Override
+  public OutputStream getOutputStream() {
+    return delegate.getOutputStream();
+  }
+
+  @Override
+  public InputStream getInputStream() {
+    return inputStream;
+  }
+
+  @Override
+  public InputStream getErrorStream() {
+    return errorStream;
+  }
+
+  @Override
+  public int waitFor() throws InterruptedException {
+    int exitCode = delegate.waitFor();
+    reportExit(exitCode);
+    return exitCode;
+  }
+
+  @Override
+  public boolean waitFor(long timeout, TimeUnit unit) throws InterruptedException {
+    boolean exited = delegate.waitFor(timeout, unit);
+    if (exited) {
+      reportExit(delegate.exitValue());
+    }
+    return exited;
+  }
+
+  @Override
+  public int exitValue() {
+    int exitCode = delegate.exitValue();
+    reportExit(exitCode);
+    return exitCode;
+  }
+
+  @Override
+  public boolean isAlive() {
+    boolean alive = delegate.isAlive();
+    if (!alive) {
+      reportExit(delegate.exitValue());
+    }
+    return alive;
+  }
+
+  @Override
+  public void destroy() {
+    delegate.destroy();
+  }
+
+  @Override
+  public Process destroyForcibly() {
+    delegate.destroyForcibly();
+    return this;
+  }
+
+  private void reportExit(int exitCode) {
+    if (exitReported.compareAndSet(false, true)) {
+      events.onExit(exitCode, Duration.ofNanos(ticker.read() - startNanos));
+    }
+  }
+
+  private void reportRead(long bytes, boolean stderr) {
+    if (bytes <= 0) {
+      return;
+    }
+    if (firstOutputReported.compareAndSet(false, true)) {
+      events.onFirstOutput(Duration.ofNanos(ticker.read() - startNanos));
+    }
+    events.onBytesRead(bytes, stderr);
+  }
+
+  private class CountingInputStream extends FilterInputStream {
+    private final boolean stderr;
+
+    private CountingInputStream(InputStream in, boolean stderr) {
+      super(in);
+      this.stderr = stderr;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int read = super.read();
+      if (read >= 0) {
+        reportRead(1, stderr);
+      }
+      return read;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      int read = super.read(buffer, offset, length);
+      reportRead(read, stderr);
+      return read;
+    }
+
+    @Override
+    public long skip(long count) throws IOException {
+      long skipped = super.skip(count);
+      reportRead(skipped, stderr);
+      return skipped;
+    }
+  }
+}
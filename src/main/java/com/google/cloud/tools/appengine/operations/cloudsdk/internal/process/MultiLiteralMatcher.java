@@ -0,0 +1,104 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.appengine.operations.cloudsdk.internal.process;
+
+import com.google.common.base.Preconditions;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Aho-Corasick automaton over groups of literals. A single left-to-right scan of the input reports
+ * every group that has at least one literal occurring in it. Immutable and thread safe once built.
+ */
+public class MultiLiteralMatcher {
+
+  private final List<Map<Character, Integer>> transitions = new ArrayList<>();
+  private final List<BitSet> outputs = new ArrayList<>();
+  private final int[] failure;
+
+  /**
+   * Builds the automaton.
+   *
+   * @param literalGroups the literals for each group, the index in this list is the group id
+   *     reported by {@link #match}
+   */
+  public MultiLiteralMatcher(List<? extends Collection<String>> literalGroups) {
+    newState();
+    for (int group = 0; group < literalGroups.size(); group++) {
+      for (String literal : literalGroups.get(group)) {
+        Preconditions.checkArgument(!literal.isEmpty(), "literals must not be empty");
+        int state = 0;
+        for (int i = 0; i < literal.length(); i++) {
+          Integer next = transitions.get(state).get(literal.charAt(i));
+          if (next == null) {
+            next = newState();
+            transitions.get(state).put(literal.charAt(i), next);
+          }
+          state = next;
+        }
+        outputs.get(state).set(group);
+      }
+    }
+
+    // breadth first construction of failure links, merging outputs along them
+    failure = new int[transitions.size()];
+    Queue<Integer> queue = new ArrayDeque<>(transitions.get(0).values());
+    while (!queue.isEmpty()) {
+      int state = queue.remove();
+      for (Map.Entry<Character, Integer> transition : transitions.get(state).entrySet()) {
+        int child = transition.getValue();
+        int fallback = failure[state];
+        while (fallback != 0 && !transitions.get(fallback).containsKey(transition.getKey())) {
+          fallback = failure[fallback];
+        }
+        Integer target = transitions.get(fallback).get(transition.getKey());
+        failure[child] = target == null || target == child ? 0 : target;
+        outputs.get(child).or(outputs.get(failure[child]));
+        queue.add(child);
+      }
+    }
+  }
+
+  private int newState() {
+    transitions.add(new HashMap<>());
+    outputs.add(new BitSet());
+    return transitions.size() - 1;
+  }
+
+  /** Returns the ids of all groups with a literal that occurs in {@code text}. */
+  public BitSet match(CharSequence text) {
+    BitSet matched = new BitSet();
+    int state = 0;
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      Integer next = transitions.get(state).get(c);
+      while (next == null && state != 0) {
+        state = failure[state];
+        next = transitions.get(state).get(c);
+      }
+      state = next == null ? 0 : next;
+      matched.or(outputs.get(state));
+    }
+    return matched;
+  }
+}
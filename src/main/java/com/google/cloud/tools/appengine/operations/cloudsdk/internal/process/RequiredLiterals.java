@@ -0,0 +1,277 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.appengine.operations.cloudsdk.internal.process;
+
+import com.google.common.collect.ImmutableSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+
+/**
+ * Derives, from a regular expression, a set of literal strings at least one of which must occur in
+ * any input the expression can match. Lines that contain none of the literals can be rejected
+ * without running the regex. The analysis is deliberately conservative: any construct it does not
+ * fully understand yields no literals, which disables prefiltering for that pattern.
+ */
+public class RequiredLiterals {
+
+  private static final String METACHARACTERS = ".^$|?*+()[]{}\\";
+
+  private RequiredLiterals() {}
+
+  /**
+   * Returns the required literals for the pattern, or empty if none can be safely derived.
+   * Case-insensitive and other flagged patterns are never prefiltered.
+   */
+  public static Optional<ImmutableSet<String>> of(Pattern pattern) {
+    if (pattern.flags() != 0) {
+      return Optional.empty();
+    }
+    return of(pattern.pattern());
+  }
+
+  /** Returns the required literals for the regex, or empty if none can be safely derived. */
+  public static Optional<ImmutableSet<String>> of(String regex) {
+    for (int i = regex.indexOf("(?"); i >= 0; i = regex.indexOf("(?", i + 2)) {
+      if (!regex.startsWith("(?:", i)) {
+        // inline flags, lookarounds and named groups are not analyzed
+        return Optional.empty();
+      }
+    }
+    if (regex.contains("\\Q")) {
+      return Optional.empty();
+    }
+    return alternation(stripUnanchoredWildcards(regex));
+  }
+
+  private static Optional<ImmutableSet<String>> alternation(String regex) {
+    String unwrapped = unwrapGroup(regex);
+    if (!unwrapped.equals(regex)) {
+      return alternation(stripUnanchoredWildcards(unwrapped));
+    }
+    List<String> alternatives = splitTopLevel(regex);
+    if (alternatives == null) {
+      return Optional.empty();
+    }
+    ImmutableSet.Builder<String> literals = ImmutableSet.builder();
+    for (String alternative : alternatives) {
+      Optional<String> literal = longestLiteralRun(alternative);
+      if (!literal.isPresent()) {
+        return Optional.empty();
+      }
+      literals.add(literal.get());
+    }
+    return Optional.of(literals.build());
+  }
+
+  private static String stripUnanchoredWildcards(String regex) {
+    String result = regex;
+    if (result.startsWith("^")) {
+      result = result.substring(1);
+    }
+    if (result.endsWith("$") && !result.endsWith("\\$")) {
+      result = result.substring(0, result.length() - 1);
+    }
+    if (result.startsWith(".*")) {
+      result = result.substring(2);
+    }
+    if (result.endsWith(".*") && !result.endsWith("\\.*")) {
+      result = result.substring(0, result.length() - 2);
+    }
+    return result;
+  }
+
+  /** Removes one pair of enclosing parentheses if they wrap the whole expression. */
+  private static String unwrapGroup(String regex) {
+    if (!regex.startsWith("(") || !regex.endsWith(")") || regex.endsWith("\\)")) {
+      return regex;
+    }
+    int depth = 0;
+    for (int i = 0; i < regex.length(); i++) {
+      char c = regex.charAt(i);
+      if (c == '\\') {
+        i = escapeEnd(regex, i);
+        if (i < 0) {
+          return regex;
+        }
+      } else if (c == '(') {
+        depth++;
+      } else if (c == ')') {
+        depth--;
+        if (depth == 0 && i != regex.length() - 1) {
+          return regex;
+        }
+      }
+    }
+    String inner = regex.substring(1, regex.length() - 1);
+    return inner.startsWith("?:") ? inner.substring(2) : inner;
+  }
+
+  /** Splits on top-level '|', or returns null if the expression is malformed. */
+  @Nullable
+  private static List<String> splitTopLevel(String regex) {
+    List<String> parts = new ArrayList<>();
+    int depth = 0;
+    boolean inClass = false;
+    int start = 0;
+    for (int i = 0; i < regex.length(); i++) {
+      char c = regex.charAt(i);
+      if (c == '\\') {
+        i = escapeEnd(regex, i);
+        if (i < 0) {
+          return null;
+        }
+      } else if (inClass) {
+        if (c == '[') {
+          // nested classes and intersections, e.g. [a[bc]] or [a-z&&[^e]]
+          return null;
+        }
+        if (c == ']') {
+          inClass = false;
+        }
+      } else if (c == '[') {
+        inClass = true;
+      } else if (c == '(') {
+        depth++;
+      } else if (c == ')') {
+        depth--;
+      } else if (c == '|' && depth == 0) {
+        parts.add(regex.substring(start, i));
+        start = i + 1;
+      }
+    }
+    if (depth != 0 || inClass) {
+      return null;
+    }
+    parts.add(regex.substring(start));
+    return parts;
+  }
+
+  /**
+   * Returns the longest run of literal characters that every match of this sequence (which has no
+   * top-level alternation) must contain.
+   */
+  private static Optional<String> longestLiteralRun(String sequence) {
+    String longest = "";
+    StringBuilder run = new StringBuilder();
+    int depth = 0;
+    boolean inClass = false;
+    for (int i = 0; i < sequence.length(); i++) {
+      char c = sequence.charAt(i);
+      Character literal = null;
+      if (c == '\\') {
+        int end = escapeEnd(sequence, i);
+        if (end < 0) {
+          return Optional.empty();
+        }
+        char escaped = sequence.charAt(i + 1);
+        if (depth == 0 && !inClass && !Character.isLetterOrDigit(escaped)) {
+          literal = escaped;
+        }
+        i = end;
+      } else if (inClass) {
+        if (c == '[') {
+          // a nested class, the first ']' may not end the outer one
+          return Optional.empty();
+        }
+        inClass = c != ']';
+      } else if (c == '{') {
+        // the bounds of a quantifier are not literals
+        i = sequence.indexOf('}', i);
+        if (i < 0) {
+          return Optional.empty();
+        }
+      } else if (c == '[') {
+        inClass = true;
+      } else if (c == '(') {
+        depth++;
+      } else if (c == ')') {
+        depth--;
+      } else if (depth == 0 && METACHARACTERS.indexOf(c) < 0) {
+        literal = c;
+      }
+
+      if (literal == null) {
+        longest = longer(longest, run);
+        run.setLength(0);
+        continue;
+      }
+      char next = i + 1 < sequence.length() ? sequence.charAt(i + 1) : 0;
+      if (next == '?' || next == '*' || next == '{') {
+        // the literal is optional, it cannot be part of a required run
+        longest = longer(longest, run);
+        run.setLength(0);
+      } else if (next == '+') {
+        run.append(literal);
+        longest = longer(longest, run);
+        run.setLength(0);
+      } else {
+        run.append(literal);
+      }
+    }
+    longest = longer(longest, run);
+    return longest.isEmpty() ? Optional.empty() : Optional.of(longest);
+  }
+
+  /**
+   * Returns the index of the last character of the escape sequence that starts with the backslash
+   * at {@code start}, or -1 if it is cut off. Arguments such as the hex digits of {@code \\x41} or
+   * the property of {@code \\p{Alpha}} belong to the escape sequence, they are not literals.
+   */
+  private static int escapeEnd(String regex, int start) {
+    int i = start + 1;
+    if (i >= regex.length()) {
+      return -1;
+    }
+    char escaped = regex.charAt(i);
+    int end = i;
+    switch (escaped) {
+      case 'p':
+      case 'P':
+      case 'N':
+      case 'x':
+        if (i + 1 < regex.length() && regex.charAt(i + 1) == '{') {
+          return regex.indexOf('}', i + 1);
+        }
+        end = i + (escaped == 'x' ? 2 : 1);
+        break;
+      case 'u':
+        end = i + 4;
+        break;
+      case 'c':
+        end = i + 1;
+        break;
+      case 'k':
+        return regex.indexOf('>', i);
+      default:
+        // octal escapes and back references, the digits are consumed greedily
+        while (Character.isDigit(escaped)
+            && end + 1 < regex.length()
+            && Character.isDigit(regex.charAt(end + 1))) {
+          end++;
+        }
+        break;
+    }
+    return end < regex.length() ? end : -1;
+  }
+
+  private static String longer(String longest, StringBuilder run) {
+    return run.length() > longest.length() ? run.toString() : longest;
+  }
+}
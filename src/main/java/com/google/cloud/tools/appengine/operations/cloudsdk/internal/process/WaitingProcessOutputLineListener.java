@@ -19,8 +19,10 @@ package com.google.cloud.tools.appengine.operations.cloudsdk.internal.process;
 import com.google.cloud.tools.appengine.operations.cloudsdk.process.ProcessExitListener;
 import com.google.cloud.tools.appengine.operations.cloudsdk.process.ProcessHandlerException;
 import com.google.cloud.tools.appengine.operations.cloudsdk.process.ProcessOutputLineListener;
+import com.google.common.collect.ImmutableSet;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
 /**
  * Provides a mechanism to wait for a successful start of a process by monitoring the process output
@@ -29,6 +31,8 @@ import java.util.concurrent.TimeUnit;
 public class WaitingProcessOutputLineListener
     implements ProcessOutputLineListener, ProcessExitListener {
   private final String message;
+  private final Pattern pattern;
+  private final ImmutableSet<String> requiredLiterals;
   private final int timeoutSeconds;
   private CountDownLatch waitLatch;
   private volatile boolean exited;
@@ -44,6 +48,8 @@ public class WaitingProcessOutputLineListener
    */
   public WaitingProcessOutputLineListener(String message, int timeoutSeconds) {
     this.message = message;
+    this.pattern = Pattern.compile(message);
+    this.requiredLiterals = RequiredLiterals.of(pattern).orElse(ImmutableSet.of());
     this.timeoutSeconds = timeoutSeconds;
     this.waitLatch = new CountDownLatch(1);
   }
@@ -80,11 +86,24 @@ public class WaitingProcessOutputLineListener
   /** Monitors the output of the process to check whether the wait condition is satisfied. */
   @Override
   public void onOutputLine(String line) {
-    if (waitLatch.getCount() > 0 && message != null && line.matches(message)) {
+    if (waitLatch.getCount() > 0 && mayMatch(line) && pattern.matcher(line).matches()) {
       waitLatch.countDown();
     }
   }
 
+  /** Cheap rejection of lines that contain none of the literals the pattern requires. */
+  private boolean mayMatch(String line) {
+    if (requiredLiterals.isEmpty()) {
+      return true;
+    }
+    for (String literal : requiredLiterals) {
+      if (line.contains(literal)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   @Override
   public void onExit(int exitCode) {
     this.exited = true;
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.tools.appengine.operations.cloudsdk.process;
+
+import com.google.cloud.tools.appengine.operations.cloudsdk.serialization.GcloudStructuredLog;
+import com.google.cloud.tools.appengine.operations.cloudsdk.serialization.GcloudStructuredLog.GcloudError;
+import java.util.Locale;
+import javax.annotation.Nullable;
+
+/** A typed {@code gcloud} structured log record, see {@link GcloudStructuredLogLineListener}. */
+public class GcloudStructuredLogEvent {
+
+  /** Coarse classification of a structured log record. */
+  public enum Type {
+    /** Debug and info records that report what the command is doing. */
+    PROGRESS,
+    WARNING,
+    /** Error, critical and exception records, or any record carrying error details. */
+    ERROR
+  }
+
+  private final Type type;
+  private final GcloudStructuredLog log;
+
+  GcloudStructuredLogEvent(GcloudStructuredLog log) {
+    this.log = log;
+    this.type = classify(log);
+  }
+
+  private static Type classify(GcloudStructuredLog log) {
+    if (log.getError() != null) {
+      return Type.ERROR;
+    }
+    String verbosity = log.getVerbosity();
+    if (verbosity == null) {
+      return Type.PROGRESS;
+    }
+    switch (verbosity.toLowerCase(Locale.ROOT)) {
+      case "warn":
+      case "warning":
+        return Type.WARNING;
+      case "error":
+      case "critical":
+      case "exception":
+        return Type.ERROR;
+      default:
+        return Type.PROGRESS;
+    }
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  /** The decoded record. */
+  public GcloudStructuredLog getLog() {
+    return log;
+  }
+
+  public String getMessage() {
+    return log.getMessage();
+  }
+
+  /** Returns the stacktrace of the error carried by this record, if any. */
+  @Nullable
+  public String getStacktrace() {
+    GcloudError error = log.getError();
+    return error == null ? null : error.getStacktrace();
+  }
+
+  @Override
+  public String toString() {
+    return type + ": " + log.getMessage();
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.tools.appengine.operations.cloudsdk.process;
+
+import com.google.cloud.tools.appengine.operations.cloudsdk.JsonParseException;
+import com.google.cloud.tools.appengine.operations.cloudsdk.serialization.GcloudStructuredLog;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * Decodes {@code gcloud} structured log records (enabled with {@code
+ * CLOUDSDK_CORE_SHOW_STRUCTURED_LOGS}, see {@code Gcloud.Builder#setShowStructuredLogs}) from
+ * stderr into {@link GcloudStructuredLogEvent}s and publishes them to subscribers as they arrive.
+ * Lines that are not JSON records are rejected by their first character without being parsed and
+ * can be forwarded to another listener.
+ */
+public class GcloudStructuredLogLineListener implements ProcessOutputLineListener {
+
+  private static final Logger logger =
+      Logger.getLogger(GcloudStructuredLogLineListener.class.getName());
+
+  private final List<GcloudStructuredLogEventListener> subscribers = new CopyOnWriteArrayList<>();
+  @Nullable private final ProcessOutputLineListener plainLineListener;
+
+  /** Creates a listener that drops lines that are not structured log records. */
+  public GcloudStructuredLogLineListener() {
+    this(null);
+  }
+
+  /**
+   * Creates a listener.
+   *
+   * @param plainLineListener receives lines that are not structured log records, may be null
+   */
+  public GcloudStructuredLogLineListener(@Nullable ProcessOutputLineListener plainLineListener) {
+    this.plainLineListener = plainLineListener;
+  }
+
+  /** Adds a subscriber, it receives events for lines read after this call. */
+  public GcloudStructuredLogLineListener subscribe(GcloudStructuredLogEventListener subscriber) {
+    subscribers.add(subscriber);
+    return this;
+  }
+
+  public void unsubscribe(GcloudStructuredLogEventListener subscriber) {
+    subscribers.remove(subscriber);
+  }
+
+  @Override
+  public void onOutputLine(String line) {
+    GcloudStructuredLog log = null;
+    if (!line.isEmpty() && line.charAt(0) == '{') {
+      try {
+        log = GcloudStructuredLog.parse(line);
+      } catch (JsonParseException ex) {
+        logger.log(Level.FINE, "Not a structured log record: " + line, ex);
+      }
+    }
+
+    if (log == null) {
+      if (plainLineListener != null) {
+        plainLineListener.onOutputLine(line);
+      }
+      return;
+    }
+
+    GcloudStructuredLogEvent event = new GcloudStructuredLogEvent(log);
+    for (GcloudStructuredLogEventListener subscriber : subscribers) {
+      subscriber.onEvent(event);
+    }
+  }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.appengine.operations.cloudsdk.process;
+
+import com.google.common.base.Preconditions;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link ProcessMetricsListener} that aggregates per-command histograms in memory, to find the
+ * commands that dominate build time. Register it with {@link ProcessMetrics#addListener}, or list
+ * it in {@code META-INF/services} and retrieve it with {@link ProcessMetrics#getListener}.
+ */
+public class InMemoryProcessMetrics implements ProcessMetricsListener {
+
+  private final ConcurrentMap<String, CommandStats> stats = new ConcurrentHashMap<>();
+
+  private CommandStats statsFor(ProcessCommandInfo command) {
+    return stats.computeIfAbsent(command.getName(), CommandStats::new);
+  }
+
+  @Override
+  public void onStart(ProcessCommandInfo command, Duration spawnTime) {
+    CommandStats commandStats = statsFor(command);
+    commandStats.started.increment();
+    commandStats.spawnTime.record(spawnTime);
+  }
+
+  @Override
+  public void onFirstOutput(ProcessCommandInfo command, Duration sinceStart) {
+    statsFor(command).firstOutput.record(sinceStart);
+  }
+
+  @Override
+  public void onBytesRead(ProcessCommandInfo command, long bytes, boolean stderr) {
+    CommandStats commandStats = statsFor(command);
+    (stderr ? commandStats.stderrBytes : commandStats.stdoutBytes).add(bytes);
+  }
+
+  @Override
+  public void onExit(ProcessCommandInfo command, int exitCode, Duration wallTime) {
+    CommandStats commandStats = statsFor(command);
+    commandStats.wallTime.record(wallTime);
+    if (exitCode != 0) {
+      commandStats.failed.increment();
+    }
+  }
+
+  /** Returns the statistics of each command, ordered by total wall time, most expensive first. */
+  public List<CommandStats> getStats() {
+    List<CommandStats> sorted = new ArrayList<>(stats.values());
+    sorted.sort(
+        Comparator.comparing((CommandStats commandStats) -> commandStats.wallTime.getTotal())
+            .reversed()
+            .thenComparing(CommandStats::getName));
+    return sorted;
+  }
+
+  /** Discards all recorded statistics. */
+  public void reset() {
+    stats.clear();
+  }
+
+  /** Returns a human readable table of {@link #getStats()}. */
+  public String report() {
+    StringBuilder report = new StringBuilder();
+    for (CommandStats commandStats : getStats()) {
+      report.append(commandStats).append('\n');
+    }
+    return report.toString();
+  }
+
+  /** Aggregated statistics of one command, e.g. {@code gcloud app deploy}. */
+  public static class CommandStats {
+    private final String name;
+    private final LongAdder started = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder stdoutBytes = new LongAdder();
+    private final LongAdder stderrBytes = new LongAdder();
+    private final Histogram spawnTime = new Histogram();
+    private final Histogram firstOutput = new Histogram();
+    private final Histogram wallTime = new Histogram();
+
+    private CommandStats(String name) {
+      this.name = name;
+    }
+
+    /** The tool and subcommand path, see {@link ProcessCommandInfo#getName()}. */
+    public String getName() {
+      return name;
+    }
+
+    public long getStartedCount() {
+      return started.sum();
+    }
+
+    /** Processes that exited with a non-zero exit code. */
+    public long getFailedCount() {
+      return failed.sum();
+    }
+
+    public long getStdoutBytes() {
+      return stdoutBytes.sum();
+    }
+
+    public long getStderrBytes() {
+      return stderrBytes.sum();
+    }
+
+    /** Time taken to spawn the process. */
+    public Histogram getSpawnTime() {
+      return spawnTime;
+    }
+
+    /** Time from spawning the process to its first output. */
+    public Histogram getFirstOutputTime() {
+      return firstOutput;
+    }
+
+    /** Time from spawning the process to its exit. */
+    public Histogram getWallTime() {
+      return wallTime;
+    }
+
+    @Override
+    public String toString() {
+      return name
+          + ": started="
+          + getStartedCount()
+          + " failed="
+          + getFailedCount()
+          + " wall["
+          + wallTime
+          + "] spawn["
+          + spawnTime
+          + "] firstOutput["
+          + firstOutput
+          + "] stdout="
+          + getStdoutBytes()
+          + "B stderr="
+          + getStderrBytes()
+          + "B";
+    }
+  }
+
+  /**
+   * A lock-free histogram of durations with power-of-two millisecond buckets. Percentiles are
+   * reported as the upper bound of the bucket they fall in, which is accurate to within a factor of
+   * two and plenty to rank commands.
+   */
+  public static class Histogram {
+    // bucket i holds durations in [2^(i-1), 2^i) ms, bucket 0 holds durations under 1ms
+    private static final int BUCKETS = 40;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    void record(Duration duration) {
+      long nanos = Math.max(0, duration.toNanos());
+      long millis = nanos / 1_000_000;
+      int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(millis));
+      counts.incrementAndGet(bucket);
+      count.increment();
+      totalNanos.add(nanos);
+      maxNanos.accumulate(nanos);
+    }
+
+    public long getCount() {
+      return count.sum();
+    }
+
+    public Duration getTotal() {
+      return Duration.ofNanos(totalNanos.sum());
+    }
+
+    public Duration getMax() {
+      return Duration.ofNanos(maxNanos.get());
+    }
+
+    public Duration getMean() {
+      long samples = getCount();
+      return samples == 0 ? Duration.ZERO : Duration.ofNanos(totalNanos.sum() / samples);
+    }
+
+    /**
+     * Returns an upper bound of the given percentile, never more than the maximum recorded value.
+     *
+     * @param percentile a value in (0, 100]
+     */
+    public Duration getPercentile(double percentile) {
+      Preconditions.checkArgument(
+          percentile > 0 && percentile <= 100, "percentile must be in (0, 100]");
+      long samples = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+        samples += counts.get(i);
+      }
+      if (samples == 0) {
+        return Duration.ZERO;
+      }
+      long rank = (long) Math.ceil(samples * percentile / 100);
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+        seen += counts.get(i);
+        if (seen >= rank) {
+          Duration upperBound = Duration.ofMillis(1L << i);
+          Duration max = getMax();
+          return upperBound.compareTo(max) < 0 ? upperBound : max;
+        }
+      }
+      return getMax();
+    }
+
+    @Override
+    public String toString() {
+      return "n="
+          + getCount()
+          + " total="
+          + getTotal().toMillis()
+          + "ms mean="
+          + getMean().toMillis()
+          + "ms p50<="
+          + getPercentile(50).toMillis()
+          + "ms p90<="
+          + getPercentile(90).toMillis()
+          + "ms max="
+          + getMax().toMillis()
+          + "ms";
+    }
+  }
+}
@@ -79,7 +79,7 @@ public class LegacyProcessHandler implements ProcessHandler {
       if (async) {
         asyncRun(process, stdOutHandler, stdErrHandler);
       } else {
-        shutdownProcessHook(process);
+        ProcessRegistry.getInstance().register(process);
         syncRun(process, stdOutHandler, stdErrHandler);
       }
 
@@ -132,6 +132,7 @@ public class LegacyProcessHandler implements ProcessHandler {
       Process process, @Nullable Thread stdOutThread, @Nullable Thread stdErrThread)
       throws InterruptedException, AppEngineException {
     int exitCode = process.waitFor();
+    ProcessRegistry.getInstance().deregister(process);
     // https://github.com/GoogleCloudPlatform/appengine-plugins-core/issues/269
     if (stdOutThread != null) {
       stdOutThread.join();
@@ -175,19 +176,6 @@ public class LegacyProcessHandler implements ProcessHandler {
     }
   }
 
-  private static void shutdownProcessHook(final Process process) {
-    Runtime.getRuntime()
-        .addShutdownHook(
-            new Thread("destroy-process") {
-              @Override
-              public void run() {
-                if (process != null) {
-                  process.destroy();
-                }
-              }
-            });
-  }
-
   public static Builder builder() {
     return new Builder();
   }
@@ -198,6 +186,7 @@ public class LegacyProcessHandler implements ProcessHandler {
     private final List<ProcessExitListener> exitListeners;
     private final List<ProcessStartListener> startListeners;
     private final DevAppServerAsyncOutputWatcherFactory devAppServerAsyncOutputWatcherFactory;
+    private final List<OutputWatcher> outputWatchers = new ArrayList<>();
 
     private boolean async;
 
@@ -234,10 +223,23 @@ public class LegacyProcessHandler implements ProcessHandler {
       return this;
     }
 
-    /** Set/override exit listener configuration. */
+    /**
+     * Watch both stdout and stderr with an {@link OutputWatcher}. The watcher is also notified of
+     * the process exit, so futures of patterns that never matched fail instead of hanging.
+     */
+    public Builder addOutputWatcher(OutputWatcher watcher) {
+      stdOutLineListeners.add(watcher);
+      stdErrLineListeners.add(watcher);
+      exitListeners.add(watcher);
+      outputWatchers.add(watcher);
+      return this;
+    }
+
+    /** Set/override exit listener configuration, output watchers are still notified. */
     public Builder setExitListener(ProcessExitListener listener) {
       exitListeners.clear();
       exitListeners.add(listener);
+      exitListeners.addAll(outputWatchers);
       return this;
     }
 
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.tools.appengine.operations.cloudsdk.process;
+
+import java.util.regex.MatchResult;
+
+/** A line of process output that matched a pattern registered with an {@link OutputWatcher}. */
+public class OutputMatch {
+
+  private final String name;
+  private final String line;
+  private final MatchResult matchResult;
+
+  OutputMatch(String name, String line, MatchResult matchResult) {
+    this.name = name;
+    this.line = line;
+    this.matchResult = matchResult;
+  }
+
+  /** The name the pattern was registered under. */
+  public String getName() {
+    return name;
+  }
+
+  /** The full output line. */
+  public String getLine() {
+    return line;
+  }
+
+  /** The regex match, for access to capturing groups. */
+  public MatchResult getMatchResult() {
+    return matchResult;
+  }
+
+  @Override
+  public String toString() {
+    return name + ": " + line;
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.tools.appengine.operations.cloudsdk.process;
+
+import com.google.cloud.tools.appengine.operations.cloudsdk.internal.process.MultiLiteralMatcher;
+import com.google.cloud.tools.appengine.operations.cloudsdk.internal.process.RequiredLiterals;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+
+/**
+ * Watches process output for many named patterns at once. Patterns are compiled once, and a single
+ * multi-literal scan of each line selects which regular expressions can possibly match before any
+ * of them run, so chatty processes stay cheap to watch.
+ *
+ * <p>Each pattern exposes a future of its first match and, optionally, a listener called for every
+ * match. Futures of patterns that never matched complete exceptionally with a {@link
+ * ProcessHandlerException} when the process exits.
+ */
+public class OutputWatcher implements ProcessOutputLineListener, ProcessExitListener {
+
+  private final ImmutableList<WatchedPattern> patterns;
+  private final Map<String, WatchedPattern> patternsByName;
+  private final MultiLiteralMatcher prefilter;
+  private final BitSet unfiltered;
+
+  private OutputWatcher(List<WatchedPattern> patterns) {
+    this.patterns = ImmutableList.copyOf(patterns);
+    this.patternsByName = new LinkedHashMap<>();
+    this.unfiltered = new BitSet();
+    List<ImmutableSet<String>> literalGroups = new ArrayList<>();
+    for (int i = 0; i < patterns.size(); i++) {
+      WatchedPattern watched = patterns.get(i);
+      patternsByName.put(watched.name, watched);
+      Optional<ImmutableSet<String>> literals = RequiredLiterals.of(watched.pattern);
+      if (literals.isPresent()) {
+        literalGroups.add(literals.get());
+      } else {
+        literalGroups.add(ImmutableSet.of());
+        unfiltered.set(i);
+      }
+    }
+    this.prefilter = new MultiLiteralMatcher(literalGroups);
+  }
+
+  /**
+   * Returns a future of the first line matching the named pattern.
+   *
+   * @throws IllegalArgumentException if no pattern was registered under {@code name}
+   */
+  public CompletableFuture<OutputMatch> firstMatch(String name) {
+    WatchedPattern watched = patternsByName.get(name);
+    if (watched == null) {
+      throw new IllegalArgumentException("No pattern registered as '" + name + "'");
+    }
+    return watched.firstMatch;
+  }
+
+  @Override
+  public void onOutputLine(String line) {
+    BitSet candidates = prefilter.match(line);
+    candidates.or(unfiltered);
+    for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+      WatchedPattern watched = patterns.get(i);
+      if (watched.listener == null && watched.firstMatch.isDone()) {
+        continue;
+      }
+      Matcher matcher = watched.pattern.matcher(line);
+      if (matcher.find()) {
+        OutputMatch match = new OutputMatch(watched.name, line, matcher.toMatchResult());
+        watched.firstMatch.complete(match);
+        if (watched.listener != null) {
+          watched.listener.onMatch(match);
+        }
+      }
+    }
+  }
+
+  @Override
+  public void onExit(int exitCode) {
+    for (WatchedPattern watched : patterns) {
+      watched.firstMatch.completeExceptionally(
+          new ProcessHandlerException(
+              "Process exited with code "
+                  + exitCode
+                  + " before output matched '"
+                  + watched.name
+                  + "'"));
+    }
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  private static class WatchedPattern {
+    private final String name;
+    private final Pattern pattern;
+    @Nullable private final OutputMatchListener listener;
+    private final CompletableFuture<OutputMatch> firstMatch = new CompletableFuture<>();
+
+    private WatchedPattern(String name, Pattern pattern, @Nullable OutputMatchListener listener) {
+      this.name = name;
+      this.pattern = pattern;
+      this.listener = listener;
+    }
+  }
+
+  public static class Builder {
+    private final Map<String, WatchedPattern> patterns = new LinkedHashMap<>();
+
+    private Builder() {}
+
+    /**
+     * Watch for lines containing a match of {@code regex}.
+     *
+     * @param name unique name of the pattern, e.g. "ready" or "port-in-use"
+     * @param regex the regular expression, searched for anywhere in the line
+     */
+    public Builder watch(String name, String regex) {
+      return watch(name, Pattern.compile(regex), null);
+    }
+
+    /**
+     * Watch for lines containing a match of {@code regex}, calling {@code listener} for each one.
+     */
+    public Builder watch(String name, String regex, OutputMatchListener listener) {
+      return watch(name, Pattern.compile(regex), listener);
+    }
+
+    /** Watch for lines containing a match of a precompiled pattern. */
+    public Builder watch(String name, Pattern pattern, @Nullable OutputMatchListener listener) {
+      Preconditions.checkArgument(
+          !patterns.containsKey(name), "Pattern '%s' is already registered", name);
+      patterns.put(name, new WatchedPattern(name, pattern, listener));
+      return this;
+    }
+
+    public OutputWatcher build() {
+      return new OutputWatcher(new ArrayList<>(patterns.values()));
+    }
+  }
+}
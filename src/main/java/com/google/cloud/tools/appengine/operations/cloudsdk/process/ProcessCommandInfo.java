@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.appengine.operations.cloudsdk.process;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Identifies a process reported to {@link ProcessMetricsListener}s. Only the tool name and the
+ * leading subcommand path are kept (e.g. {@code gcloud app deploy}); flags, their values, file
+ * paths and anything else that could carry credentials are never included.
+ */
+public class ProcessCommandInfo {
+
+  // subcommands are lowercase words, anything else (paths, emails, keys) ends the path
+  private static final Pattern SUBCOMMAND = Pattern.compile("[a-z][a-z0-9_-]*");
+  private static final int MAX_SUBCOMMAND_DEPTH = 4;
+
+  private static final AtomicLong nextId = new AtomicLong();
+
+  private final long id;
+  private final String tool;
+  private final ImmutableList<String> subcommand;
+
+  private ProcessCommandInfo(long id, String tool, ImmutableList<String> subcommand) {
+    this.id = id;
+    this.tool = tool;
+    this.subcommand = subcommand;
+  }
+
+  /**
+   * Describes a new process.
+   *
+   * @param tool a short name for the executable, e.g. {@code gcloud}
+   * @param args the arguments to the tool; only the leading subcommand words are retained
+   */
+  public static ProcessCommandInfo of(String tool, List<String> args) {
+    ImmutableList.Builder<String> path = ImmutableList.builder();
+    int depth = 0;
+    for (String arg : args) {
+      if (depth == MAX_SUBCOMMAND_DEPTH || !SUBCOMMAND.matcher(arg).matches()) {
+        break;
+      }
+      path.add(arg);
+      depth++;
+    }
+    return new ProcessCommandInfo(nextId.incrementAndGet(), tool, path.build());
+  }
+
+  /** A JVM-unique id, to correlate the events of one process. */
+  public long getId() {
+    return id;
+  }
+
+  /** The short name of the executable, e.g. {@code gcloud}, {@code appcfg}. */
+  public String getTool() {
+    return tool;
+  }
+
+  /** The subcommand path, e.g. {@code [app, deploy]}. */
+  public List<String> getSubcommand() {
+    return subcommand;
+  }
+
+  /** The tool and subcommand path joined with spaces, e.g. {@code gcloud app deploy}. */
+  public String getName() {
+    return subcommand.isEmpty() ? tool : tool + " " + Joiner.on(' ').join(subcommand);
+  }
+
+  @Override
+  public String toString() {
+    return getName() + " #" + id;
+  }
+}
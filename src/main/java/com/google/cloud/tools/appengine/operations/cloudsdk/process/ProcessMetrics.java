@@ -0,0 +1,143 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.appengine.operations.cloudsdk.process;
+
+import com.google.cloud.tools.appengine.operations.cloudsdk.internal.process.MeteredProcess;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Starts processes on behalf of the library's runners and reports them to the registered {@link
+ * ProcessMetricsListener}s. Listeners are discovered with {@link ServiceLoader} the first time the
+ * instance is used, and may also be added programmatically. When no listener is registered
+ * processes are returned unwrapped, so metrics cost nothing unless they are used.
+ */
+public class ProcessMetrics {
+
+  private static final Logger logger = Logger.getLogger(ProcessMetrics.class.getName());
+
+  private static class LazyHolder {
+    private static final ProcessMetrics INSTANCE = new ProcessMetrics(Ticker.systemTicker());
+
+    static {
+      // Explicitly specify classloader rather than use the Thread Context Class Loader
+      for (ProcessMetricsListener listener :
+          ServiceLoader.load(ProcessMetricsListener.class, ProcessMetrics.class.getClassLoader())) {
+        INSTANCE.addListener(listener);
+      }
+    }
+  }
+
+  private final List<ProcessMetricsListener> listeners = new CopyOnWriteArrayList<>();
+  private final Ticker ticker;
+
+  @VisibleForTesting
+  ProcessMetrics(Ticker ticker) {
+    this.ticker = ticker;
+  }
+
+  /** Returns the process-wide instance, with the listeners found by {@link ServiceLoader}. */
+  public static ProcessMetrics getInstance() {
+    return LazyHolder.INSTANCE;
+  }
+
+  public void addListener(ProcessMetricsListener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeListener(ProcessMetricsListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Returns the first registered listener of the given type, e.g. to read the statistics of an
+   * {@link InMemoryProcessMetrics} that was discovered with {@link ServiceLoader}.
+   */
+  public <T extends ProcessMetricsListener> Optional<T> getListener(Class<T> type) {
+    for (ProcessMetricsListener listener : listeners) {
+      if (type.isInstance(listener)) {
+        return Optional.of(type.cast(listener));
+      }
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Starts the process and reports it to the registered listeners.
+   *
+   * @param processBuilder the configured process builder
+   * @param tool a short name for the executable, e.g. {@code gcloud}
+   * @param args the arguments to the tool, only its subcommand path is reported, see {@link
+   *     ProcessCommandInfo}
+   * @return the started process, wrapped to observe its output and exit if there are listeners
+   */
+  public Process start(ProcessBuilder processBuilder, String tool, List<String> args)
+      throws IOException {
+    if (listeners.isEmpty()) {
+      return processBuilder.start();
+    }
+    ProcessCommandInfo command = ProcessCommandInfo.of(tool, args);
+    long startNanos = ticker.read();
+    Process process = processBuilder.start();
+    Duration spawnTime = Duration.ofNanos(ticker.read() - startNanos);
+    notifyListeners(listener -> listener.onStart(command, spawnTime));
+    return MeteredProcess.wrap(process, ticker, startNanos, new Events(command));
+  }
+
+  private void notifyListeners(Consumer<ProcessMetricsListener> event) {
+    for (ProcessMetricsListener listener : listeners) {
+      try {
+        event.accept(listener);
+      } catch (RuntimeException ex) {
+        logger.log(Level.WARNING, "Process metrics listener " + listener + " failed", ex);
+      }
+    }
+  }
+
+  /** Forwards the events of one process to the listeners. */
+  private class Events implements MeteredProcess.Events {
+    private final ProcessCommandInfo command;
+
+    private Events(ProcessCommandInfo command) {
+      this.command = command;
+    }
+
+    @Override
+    public void onFirstOutput(Duration sinceStart) {
+      notifyListeners(listener -> listener.onFirstOutput(command, sinceStart));
+    }
+
+    @Override
+    public void onBytesRead(long bytes, boolean stderr) {
+      notifyListeners(listener -> listener.onBytesRead(command, bytes, stderr));
+    }
+
+    @Override
+    public void onExit(int exitCode, Duration wallTime) {
+      notifyListeners(listener -> listener.onExit(command, exitCode, wallTime));
+    }
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.appengine.operations.cloudsdk.process;
+
+import java.time.Duration;
+
+/**
+ * Receives timing and volume events for every process started by the library's runners. Implement
+ * this interface and list the implementation in {@code
+ * META-INF/services/com.google.cloud.tools.appengine.operations.cloudsdk.process.ProcessMetricsListener}
+ * to have it discovered, or register it with {@link ProcessMetrics#addListener}.
+ *
+ * <p>Events are delivered on the threads that start, read and wait for the process, so
+ * implementations must be thread safe and fast. Exceptions thrown by listeners are logged and
+ * ignored.
+ */
+public interface ProcessMetricsListener {
+
+  /**
+   * Called after the process has been spawned.
+   *
+   * @param command identifies the process
+   * @param spawnTime how long it took the operating system to start the process
+   */
+  default void onStart(ProcessCommandInfo command, Duration spawnTime) {}
+
+  /**
+   * Called when the process writes its first byte to stdout or stderr.
+   *
+   * @param sinceStart time since the process was spawned
+   */
+  default void onFirstOutput(ProcessCommandInfo command, Duration sinceStart) {}
+
+  /**
+   * Called each time output is read from the process.
+   *
+   * @param bytes the number of bytes read by this read
+   * @param stderr true if the bytes were read from stderr, false for stdout
+   */
+  default void onBytesRead(ProcessCommandInfo command, long bytes, boolean stderr) {}
+
+  /**
+   * Called once the process exit is observed by whoever waits for the process.
+   *
+   * @param exitCode the exit code of the process
+   * @param wallTime time from before the process was spawned until its exit was observed
+   */
+  default void onExit(ProcessCommandInfo command, int exitCode, Duration wallTime) {}
+}
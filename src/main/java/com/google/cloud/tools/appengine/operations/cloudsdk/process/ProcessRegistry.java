@@ -0,0 +1,106 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.appengine.operations.cloudsdk.process;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.MapMaker;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Tracks child processes that must not outlive the JVM, and cleanup tasks to run on exit, behind a
+ * single shutdown hook. Processes are held weakly and should be deregistered once they exit, so
+ * long-running hosts (IDEs, build daemons) that run many commands don't accumulate hook threads or
+ * retain finished processes.
+ */
+public class ProcessRegistry {
+
+  private static final Logger logger = Logger.getLogger(ProcessRegistry.class.getName());
+
+  private static final ProcessRegistry INSTANCE =
+      new ProcessRegistry(hook -> Runtime.getRuntime().addShutdownHook(hook));
+
+  private final Set<Process> liveProcesses =
+      Collections.newSetFromMap(new MapMaker().weakKeys().<Process, Boolean>makeMap());
+  private final Queue<Runnable> shutdownTasks = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean hookInstalled = new AtomicBoolean();
+  private final Consumer<Thread> shutdownHookInstaller;
+
+  @VisibleForTesting
+  ProcessRegistry(Consumer<Thread> shutdownHookInstaller) {
+    this.shutdownHookInstaller = shutdownHookInstaller;
+  }
+
+  /** Returns the process-wide registry. */
+  public static ProcessRegistry getInstance() {
+    return INSTANCE;
+  }
+
+  /** Registers a process to be destroyed if it is still alive when the JVM shuts down. */
+  public void register(Process process) {
+    installShutdownHook();
+    liveProcesses.add(process);
+  }
+
+  /** Removes a process from the registry, typically after it has exited. */
+  public void deregister(Process process) {
+    liveProcesses.remove(process);
+  }
+
+  /** Registers a task to run once when the JVM shuts down, e.g. deleting temporary files. */
+  public void addShutdownTask(Runnable task) {
+    installShutdownHook();
+    shutdownTasks.add(task);
+  }
+
+  /** Returns the number of registered processes that are still alive, for diagnostics. */
+  public int getLiveProcessCount() {
+    liveProcesses.removeIf(process -> !process.isAlive());
+    return liveProcesses.size();
+  }
+
+  private void installShutdownHook() {
+    if (hookInstalled.compareAndSet(false, true)) {
+      shutdownHookInstaller.accept(new Thread(this::shutdown, "destroy-processes"));
+    }
+  }
+
+  @VisibleForTesting
+  void shutdown() {
+    List<Process> processes = new ArrayList<>(liveProcesses);
+    liveProcesses.clear();
+    for (Process process : processes) {
+      process.destroy();
+    }
+    Runnable task;
+    while ((task = shutdownTasks.poll()) != null) {
+      try {
+        task.run();
+      } catch (RuntimeException ex) {
+        logger.log(Level.WARNING, "Shutdown task failed", ex);
+      }
+    }
+  }
+}
@@ -18,26 +18,42 @@ package com.google.cloud.tools.appengine.operations.cloudsdk.serialization;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.ImmutableList;
-import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.annotation.Nullable;
 
 /**
  * Version of the Cloud SDK, which follows the <a href="http://semver.org/spec/v2.0.0.html">Semantic
  * Version 2.0.0 spec</a>.
+ *
+ * <p>Versions are parsed once: the major, minor and patch versions are packed into a single {@code
+ * long} and the pre-release segments are pre-classified, so comparisons don't allocate. Use {@link
+ * #of(String)} to share instances of frequently seen versions.
  */
 public final class CloudSdkVersion implements Comparable<CloudSdkVersion> {
 
-  private static final Pattern SEMVER_PATTERN = Pattern.compile(getSemVerRegex());
+  private static final String HEAD = "HEAD";
+
+  // versions whose components fit in 21 bits, i.e. all real ones, compare as a single long
+  private static final int PACKED_BITS = 21;
+  private static final int PACKED_MAX = (1 << PACKED_BITS) - 1;
+  private static final long NOT_PACKED = -1;
+
+  // the interning cache is dropped when full rather than evicting single entries, it only ever
+  // holds the handful of versions seen in an SDK inventory
+  private static final int MAX_INTERNED = 4096;
+  private static final Map<String, CloudSdkVersion> interned = new ConcurrentHashMap<>();
 
   private final String version;
   @VisibleForTesting final int majorVersion;
   @VisibleForTesting final int minorVersion;
   @VisibleForTesting final int patchVersion;
 
+  private final boolean head;
+  private final long packed;
+  private final int hashCode;
+
   @Nullable
   private final CloudSdkVersionPreRelease preRelease; // optional pre-release component of version
 
@@ -53,57 +69,67 @@ public final class CloudSdkVersion implements Comparable<CloudSdkVersion> {
     Preconditions.checkNotNull(version, "Null version");
     Preconditions.checkArgument(!version.isEmpty(), "empty version");
 
-    if ("HEAD".equals(version)) {
+    if (HEAD.equals(version)) {
+      head = true;
       majorVersion = -1;
       minorVersion = -1;
       patchVersion = -1;
       preRelease = null;
       buildIdentifier = null;
     } else {
-      Matcher matcher = SEMVER_PATTERN.matcher(version);
-      if (!matcher.matches()) {
-        throw new IllegalArgumentException(
-            String.format("Pattern \"%s\" is not a valid CloudSdkVersion.", version));
-      }
+      head = false;
+      Parser parser = new Parser(version);
+      majorVersion = parser.number();
+      parser.expect('.');
+      minorVersion = parser.number();
+      parser.expect('.');
+      patchVersion = parser.number();
 
-      majorVersion = Integer.parseInt(matcher.group("major"));
-      minorVersion = Integer.parseInt(matcher.group("minor"));
-      patchVersion = Integer.parseInt(matcher.group("patch"));
+      String preReleaseString = null;
+      if (parser.accept('-')) {
+        preReleaseString = parser.identifiers(true);
+      }
+      String build = null;
+      if (parser.accept('+')) {
+        build = parser.identifiers(false);
+      }
+      parser.expectEnd();
 
       preRelease =
-          matcher.group("prerelease") != null
-              ? new CloudSdkVersionPreRelease(matcher.group("prerelease"))
-              : null;
-      buildIdentifier = matcher.group("build");
+          preReleaseString != null ? new CloudSdkVersionPreRelease(preReleaseString) : null;
+      buildIdentifier = build;
     }
     this.version = version;
+    packed = pack(majorVersion, minorVersion, patchVersion);
+    hashCode = Objects.hash(majorVersion, minorVersion, patchVersion, preRelease, buildIdentifier);
+  }
+
+  /**
+   * Returns the CloudSdkVersion for a version string, reusing the instance from an earlier call
+   * with the same string.
+   *
+   * @param version the semantic version string
+   * @throws IllegalArgumentException if the argument is not a valid semantic version string
+   */
+  public static CloudSdkVersion of(String version) {
+    Preconditions.checkNotNull(version, "Null version");
+    CloudSdkVersion cached = interned.get(version);
+    if (cached != null) {
+      return cached;
+    }
+    CloudSdkVersion parsed = new CloudSdkVersion(version);
+    if (interned.size() >= MAX_INTERNED) {
+      interned.clear();
+    }
+    CloudSdkVersion previous = interned.putIfAbsent(version, parsed);
+    return previous != null ? previous : parsed;
   }
 
-  private static String getSemVerRegex() {
-    // Only digits, with no leading zeros.
-    String digits = "(?:0|[1-9][0-9]*)";
-    // Digits, letters and dashes
-    String alphaNum = "[-0-9A-Za-z]+";
-    // This is an alphanumeric string that must have at least one letter (or else it would be
-    // considered digits).
-    String strictAlphaNum = "[-0-9A-Za-z]*[-A-Za-z]+[-0-9A-Za-z]*";
-
-    String preReleaseIdentifier = "(?:" + digits + "|" + strictAlphaNum + ")";
-    String preRelease = "(?:" + preReleaseIdentifier + "(?:\\." + preReleaseIdentifier + ")*)";
-    String build = "(?:" + alphaNum + "(?:\\." + alphaNum + ")*)";
-
-    return "^(?<major>"
-        + digits
-        + ")\\.(?<minor>"
-        + digits
-        + ")\\.(?<patch>"
-        + digits
-        + ")"
-        + "(?:\\-(?<prerelease>"
-        + preRelease
-        + "))?(?:\\+(?<build>"
-        + build
-        + "))?$";
+  private static long pack(int major, int minor, int patch) {
+    if (major < 0 || major > PACKED_MAX || minor > PACKED_MAX || patch > PACKED_MAX) {
+      return NOT_PACKED;
+    }
+    return ((long) major << (2 * PACKED_BITS)) | ((long) minor << PACKED_BITS) | patch;
   }
 
   @Override
@@ -121,33 +147,38 @@ public final class CloudSdkVersion implements Comparable<CloudSdkVersion> {
   public int compareTo(CloudSdkVersion other) {
     Preconditions.checkNotNull(other);
 
-    if ("HEAD".equals(version) && !"HEAD".equals(other.version)) {
-      return 1;
-    } else if (!"HEAD".equals(version) && "HEAD".equals(other.version)) {
-      return -1;
+    if (head != other.head) {
+      return head ? 1 : -1;
     }
 
     // First, compare required fields
-    List<Integer> mine = ImmutableList.of(majorVersion, minorVersion, patchVersion);
-    List<Integer> others =
-        ImmutableList.of(other.majorVersion, other.minorVersion, other.patchVersion);
-    for (int i = 0; i < mine.size(); i++) {
-      int result = mine.get(i).compareTo(others.get(i));
-      if (result != 0) {
-        return result;
+    int result;
+    if (packed != NOT_PACKED && other.packed != NOT_PACKED) {
+      result = Long.compare(packed, other.packed);
+    } else {
+      result = Integer.compare(majorVersion, other.majorVersion);
+      if (result == 0) {
+        result = Integer.compare(minorVersion, other.minorVersion);
+      }
+      if (result == 0) {
+        result = Integer.compare(patchVersion, other.patchVersion);
       }
     }
+    if (result != 0) {
+      return result;
+    }
 
     // Compare pre-release components
-    if (preRelease != null && other.getPreRelease() != null) {
-      return preRelease.compareTo(other.getPreRelease());
+    CloudSdkVersionPreRelease otherPreRelease = other.preRelease;
+    if (preRelease != null && otherPreRelease != null) {
+      return preRelease.compareTo(otherPreRelease);
     }
 
     // A SemVer with a pre-release string has lower precedence than one without.
-    if (preRelease == null && other.getPreRelease() != null) {
+    if (preRelease == null && otherPreRelease != null) {
       return 1;
     }
-    if (preRelease != null && other.getPreRelease() == null) {
+    if (preRelease != null && otherPreRelease == null) {
       return -1;
     }
 
@@ -156,7 +187,7 @@ public final class CloudSdkVersion implements Comparable<CloudSdkVersion> {
 
   @Override
   public int hashCode() {
-    return Objects.hash(majorVersion, minorVersion, patchVersion, preRelease, buildIdentifier);
+    return hashCode;
   }
 
   /**
@@ -177,9 +208,9 @@ public final class CloudSdkVersion implements Comparable<CloudSdkVersion> {
     }
     CloudSdkVersion otherVersion = (CloudSdkVersion) obj;
 
-    return Objects.equals(majorVersion, otherVersion.majorVersion)
-        && Objects.equals(minorVersion, otherVersion.minorVersion)
-        && Objects.equals(patchVersion, otherVersion.patchVersion)
+    return majorVersion == otherVersion.majorVersion
+        && minorVersion == otherVersion.minorVersion
+        && patchVersion == otherVersion.patchVersion
         && Objects.equals(preRelease, otherVersion.preRelease)
         && Objects.equals(buildIdentifier, otherVersion.buildIdentifier);
   }
@@ -198,4 +229,94 @@ public final class CloudSdkVersion implements Comparable<CloudSdkVersion> {
   public String getBuildIdentifier() {
     return buildIdentifier;
   }
+
+  /**
+   * Hand-written scanner for the semantic version grammar, which is much cheaper than matching a
+   * regular expression with named groups.
+   */
+  private static class Parser {
+    private final String version;
+    private int position;
+
+    private Parser(String version) {
+      this.version = version;
+    }
+
+    /** Reads digits with no leading zeros. */
+    private int number() {
+      int start = position;
+      long value = 0;
+      while (position < version.length() && isDigit(version.charAt(position))) {
+        value = value * 10 + (version.charAt(position) - '0');
+        if (value > Integer.MAX_VALUE) {
+          throw invalid();
+        }
+        position++;
+      }
+      if (position == start || (version.charAt(start) == '0' && position - start > 1)) {
+        throw invalid();
+      }
+      return (int) value;
+    }
+
+    /**
+     * Reads dot-separated identifiers up to the next {@code +} or the end.
+     *
+     * @param preRelease if numeric identifiers must not have leading zeros
+     */
+    private String identifiers(boolean preRelease) {
+      int start = position;
+      while (true) {
+        int identifierStart = position;
+        boolean numeric = true;
+        while (position < version.length() && isIdentifierChar(version.charAt(position))) {
+          numeric &= isDigit(version.charAt(position));
+          position++;
+        }
+        int length = position - identifierStart;
+        if (length == 0) {
+          throw invalid();
+        }
+        if (preRelease && numeric && length > 1 && version.charAt(identifierStart) == '0') {
+          throw invalid();
+        }
+        if (!accept('.')) {
+          return version.substring(start, position);
+        }
+      }
+    }
+
+    private boolean accept(char expected) {
+      if (position < version.length() && version.charAt(position) == expected) {
+        position++;
+        return true;
+      }
+      return false;
+    }
+
+    private void expect(char expected) {
+      if (!accept(expected)) {
+        throw invalid();
+      }
+    }
+
+    private void expectEnd() {
+      if (position != version.length()) {
+        throw invalid();
+      }
+    }
+
+    private IllegalArgumentException invalid() {
+      return new IllegalArgumentException(
+          String.format("Pattern \"%s\" is not a valid CloudSdkVersion.", version));
+    }
+
+    private static boolean isDigit(char c) {
+      return c >= '0' && c <= '9';
+    }
+
+    private static boolean isIdentifierChar(char c) {
+      return isDigit(c) || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '-';
+    }
+  }
 }
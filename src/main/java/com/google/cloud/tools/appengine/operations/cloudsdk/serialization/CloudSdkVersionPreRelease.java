@@ -19,7 +19,7 @@ package com.google.cloud.tools.appengine.operations.cloudsdk.serialization;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
-import java.util.ArrayList;
+import java.math.BigInteger;
 import java.util.List;
 import java.util.Objects;
 
@@ -33,19 +33,19 @@ import java.util.Objects;
  */
 final class CloudSdkVersionPreRelease implements Comparable<CloudSdkVersionPreRelease> {
 
-  private List<PreReleaseSegment> segments;
+  private final PreReleaseSegment[] segments;
   private final String preRelease;
 
   /** Constructs a new CloudSdkVersionPreRelease from a string representation. */
   CloudSdkVersionPreRelease(String preRelease) {
     Preconditions.checkArgument(!Strings.isNullOrEmpty(preRelease));
 
-    this.segments = new ArrayList<>();
     this.preRelease = preRelease;
 
-    Iterable<String> segmentParts = Splitter.on('.').split(preRelease);
-    for (String segment : segmentParts) {
-      segments.add(new PreReleaseSegment(segment));
+    List<String> segmentParts = Splitter.on('.').splitToList(preRelease);
+    segments = new PreReleaseSegment[segmentParts.size()];
+    for (int i = 0; i < segments.length; i++) {
+      segments[i] = new PreReleaseSegment(segmentParts.get(i));
     }
   }
 
@@ -65,8 +65,8 @@ final class CloudSdkVersionPreRelease implements Comparable<CloudSdkVersionPreRe
     // Compare segments from left to right. A smaller number of pre-release segments comes before a
     // higher number, if all preceding segments are equal.
     int index = 0;
-    while (index < this.segments.size() && index < other.segments.size()) {
-      int result = this.segments.get(index).compareTo(other.segments.get(index));
+    while (index < this.segments.length && index < other.segments.length) {
+      int result = this.segments[index].compareTo(other.segments[index]);
       if (result != 0) {
         return result;
       }
@@ -74,12 +74,7 @@ final class CloudSdkVersionPreRelease implements Comparable<CloudSdkVersionPreRe
     }
 
     // If we've reached this point, the smaller list comes first.
-    if (this.segments.size() < other.segments.size()) {
-      return -1;
-    } else if (this.segments.size() > other.segments.size()) {
-      return 1;
-    }
-    return 0;
+    return Integer.compare(this.segments.length, other.segments.length);
   }
 
   @Override
@@ -107,15 +102,27 @@ final class CloudSdkVersionPreRelease implements Comparable<CloudSdkVersionPreRe
     return preRelease;
   }
 
-  /** Represents a dot-separated segment of the pre-release string. */
+  /**
+   * Represents a dot-separated segment of the pre-release string. Numeric segments are parsed on
+   * construction, so comparing them doesn't.
+   */
   private static class PreReleaseSegment implements Comparable<PreReleaseSegment> {
 
+    // numeric segments longer than this may not fit in a long
+    private static final int MAX_LONG_DIGITS = 18;
+    private static final long NOT_A_LONG = -1;
+
     private final String segment;
     private final boolean isNumericOnly;
+    private final long numericValue;
 
     public PreReleaseSegment(String segment) {
       this.segment = segment;
       this.isNumericOnly = isNumericOnly(segment);
+      this.numericValue =
+          isNumericOnly && segment.length() <= MAX_LONG_DIGITS
+              ? Long.parseLong(segment)
+              : NOT_A_LONG;
     }
 
     @Override
@@ -167,13 +174,23 @@ final class CloudSdkVersionPreRelease implements Comparable<CloudSdkVersionPreRe
     }
 
     private static int compareNumericOnly(PreReleaseSegment first, PreReleaseSegment second) {
-      Integer firstInt = Integer.parseInt(first.segment);
-      Integer secondInt = Integer.parseInt(second.segment);
-      return firstInt.compareTo(secondInt);
+      if (first.numericValue != NOT_A_LONG && second.numericValue != NOT_A_LONG) {
+        return Long.compare(first.numericValue, second.numericValue);
+      }
+      return new BigInteger(first.segment).compareTo(new BigInteger(second.segment));
     }
 
     private static boolean isNumericOnly(String num) {
-      return num.matches("[0-9]+");
+      if (num.isEmpty()) {
+        return false;
+      }
+      for (int i = 0; i < num.length(); i++) {
+        char c = num.charAt(i);
+        if (c < '0' || c > '9') {
+          return false;
+        }
+      }
+      return true;
     }
   }
 }
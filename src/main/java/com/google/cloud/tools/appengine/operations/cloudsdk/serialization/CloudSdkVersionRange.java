@@ -0,0 +1,193 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.appengine.operations.cloudsdk.serialization;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * A compiled set of constraints on {@link CloudSdkVersion}s, such as {@code ">=186.0.0 <300"}.
+ *
+ * <p>A range is one or more comparator sets separated by {@code ||}; a version is in the range if
+ * it satisfies every comparator of any set. Comparators are a version preceded by {@code >=},
+ * {@code >}, {@code <=}, {@code <}, {@code =} or nothing, which means {@code =}. Missing minor and
+ * patch versions are zero, so {@code <300} is {@code <300.0.0}. The range {@code *} contains every
+ * version. Versions are compared with {@link CloudSdkVersion#compareTo}, so pre-releases sort
+ * before their release, and {@code HEAD} after every other version.
+ */
+public final class CloudSdkVersionRange implements Predicate<CloudSdkVersion> {
+
+  private static final String ANY = "*";
+
+  private final String range;
+  private final Comparator[][] comparatorSets;
+
+  /**
+   * Compiles a version range.
+   *
+   * @param range the range, e.g. {@code ">=186.0.0 <300"}
+   * @throws IllegalArgumentException if the argument is not a valid version range
+   */
+  public CloudSdkVersionRange(String range) {
+    Preconditions.checkNotNull(range, "Null range");
+    this.range = range;
+
+    List<String> sets = Splitter.on("||").trimResults().splitToList(range);
+    comparatorSets = new Comparator[sets.size()][];
+    for (int i = 0; i < comparatorSets.length; i++) {
+      comparatorSets[i] = parseComparators(sets.get(i));
+    }
+  }
+
+  /** Returns whether {@code version} is in this range. */
+  public boolean contains(CloudSdkVersion version) {
+    Preconditions.checkNotNull(version);
+    for (Comparator[] comparators : comparatorSets) {
+      if (matchesAll(comparators, version)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Same as {@link #contains}. */
+  @Override
+  public boolean test(CloudSdkVersion version) {
+    return contains(version);
+  }
+
+  @Override
+  public String toString() {
+    return range;
+  }
+
+  private static boolean matchesAll(Comparator[] comparators, CloudSdkVersion version) {
+    for (Comparator comparator : comparators) {
+      if (!comparator.matches(version)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private Comparator[] parseComparators(String set) {
+    List<String> tokens = Splitter.on(' ').omitEmptyStrings().splitToList(set);
+    if (tokens.size() == 1 && ANY.equals(tokens.get(0))) {
+      return new Comparator[0];
+    }
+    if (tokens.isEmpty()) {
+      throw invalid();
+    }
+
+    List<Comparator> comparators = new ArrayList<>();
+    for (int i = 0; i < tokens.size(); i++) {
+      String token = tokens.get(i);
+      Operator operator = Operator.prefixOf(token);
+      String version = token.substring(operator.symbol.length());
+      // allow a space between the operator and the version
+      if (version.isEmpty() && i + 1 < tokens.size()) {
+        version = tokens.get(++i);
+      }
+      comparators.add(new Comparator(operator, parseBound(version)));
+    }
+    return comparators.toArray(new Comparator[0]);
+  }
+
+  private CloudSdkVersion parseBound(String version) {
+    // pad partial versions like "300" or "300.1" with zeros
+    String bound = version;
+    int dots = 0;
+    boolean numeric = !version.isEmpty();
+    for (int i = 0; i < version.length(); i++) {
+      char c = version.charAt(i);
+      if (c == '.') {
+        dots++;
+      } else if (c < '0' || c > '9') {
+        numeric = false;
+      }
+    }
+    if (numeric && dots == 0) {
+      bound = version + ".0.0";
+    } else if (numeric && dots == 1) {
+      bound = version + ".0";
+    }
+    try {
+      return CloudSdkVersion.of(bound);
+    } catch (IllegalArgumentException ex) {
+      throw invalid();
+    }
+  }
+
+  private IllegalArgumentException invalid() {
+    return new IllegalArgumentException(
+        String.format("\"%s\" is not a valid CloudSdkVersion range.", range));
+  }
+
+  private enum Operator {
+    // longer symbols first, so ">=" isn't read as ">"
+    GREATER_OR_EQUAL(">="),
+    LESS_OR_EQUAL("<="),
+    GREATER(">"),
+    LESS("<"),
+    EQUAL("="),
+    IMPLICIT_EQUAL("");
+
+    private final String symbol;
+
+    Operator(String symbol) {
+      this.symbol = symbol;
+    }
+
+    private static Operator prefixOf(String token) {
+      for (Operator operator : values()) {
+        if (token.startsWith(operator.symbol)) {
+          return operator;
+        }
+      }
+      throw new AssertionError("IMPLICIT_EQUAL matches every token");
+    }
+  }
+
+  private static class Comparator {
+    private final Operator operator;
+    private final CloudSdkVersion bound;
+
+    private Comparator(Operator operator, CloudSdkVersion bound) {
+      this.operator = operator;
+      this.bound = bound;
+    }
+
+    private boolean matches(CloudSdkVersion version) {
+      int result = version.compareTo(bound);
+      switch (operator) {
+        case GREATER_OR_EQUAL:
+          return result >= 0;
+        case LESS_OR_EQUAL:
+          return result <= 0;
+        case GREATER:
+          return result > 0;
+        case LESS:
+          return result < 0;
+        default:
+          return result == 0;
+      }
+    }
+  }
+}
@@ -25,6 +25,9 @@ import javax.annotation.Nullable;
 /** Holds de-serialized JSON of a single instance of structured log output from {@code gcloud}. */
 public class GcloudStructuredLog {
 
+  // Gson is thread safe, share one instance rather than rebuilding its adapters for every line.
+  private static final Gson GSON = new Gson();
+
   public static class GcloudError {
     // Don't change the field names because Gson uses them for automatic de-serialization.
     @Nullable private String type;
@@ -98,7 +101,7 @@ public class GcloudStructuredLog {
   public static GcloudStructuredLog parse(String jsonString) throws JsonParseException {
     Preconditions.checkNotNull(jsonString);
     try {
-      GcloudStructuredLog log = new Gson().fromJson(jsonString, GcloudStructuredLog.class);
+      GcloudStructuredLog log = GSON.fromJson(jsonString, GcloudStructuredLog.class);
       if (log == null) {
         throw new JsonParseException("Empty input: \"" + jsonString + "\"");
       }
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.io;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Preconditions;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.GZIPOutputStream;
+import javax.annotation.Nullable;
+import org.apache.commons.compress.archivers.ArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+
+/**
+ * Writes files into a zip or tar.gz archive that only depends on their names and contents: entries
+ * are sorted by name, parent directories are added for every file, and timestamps, owners and
+ * permissions are normalized, so the same files always produce the same bytes.
+ *
+ * <p>Entries are collected by name and written when the writer is closed, streaming the contents of
+ * each file from its source, so no intermediate copy is made. The sources must not change until
+ * then.
+ */
+@Beta
+public class ArchiveWriter implements Closeable {
+
+  /** Format of the archive. */
+  public enum Format {
+    ZIP,
+    TAR_GZ
+  }
+
+  // the earliest time zip entries can represent, also used for tar entries
+  private static final LocalDateTime ENTRY_TIME = LocalDateTime.of(1980, 1, 1, 0, 0);
+
+  // file type bits of unix modes, as used in zip and tar entries
+  private static final int DIRECTORY_TYPE = 040000;
+  private static final int FILE_TYPE = 0100000;
+
+  private static final int FILE_MODE = 0644;
+  private static final int EXECUTABLE_MODE = 0755;
+  private static final int DIRECTORY_MODE = 0755;
+
+  private final OutputStream output;
+  private final Format format;
+  private final Map<String, Path> entries = new HashMap<>();
+  private final Set<String> directories = new HashSet<>();
+  private boolean closed;
+
+  /**
+   * Creates a writer.
+   *
+   * @param output receives the archive, it is closed with the writer
+   * @param format the format of the archive
+   */
+  public ArchiveWriter(OutputStream output, Format format) {
+    this.output = Preconditions.checkNotNull(output);
+    this.format = Preconditions.checkNotNull(format);
+  }
+
+  /**
+   * Adds a file.
+   *
+   * @param name the path of the file in the archive, with {@code /} separators
+   * @param source the file to read the contents from
+   * @param replace whether to replace a file added before with the same name, otherwise fail
+   * @throws FileAlreadyExistsException if a file of that name was added and {@code replace} is
+   *     false, or a directory of that name was added
+   */
+  public void addFile(String name, Path source, boolean replace) throws IOException {
+    Preconditions.checkState(!closed, "archive is closed");
+    String normalized = normalize(name);
+    if (directories.contains(normalized) || (!replace && entries.containsKey(normalized))) {
+      throw new FileAlreadyExistsException(normalized);
+    }
+    Preconditions.checkArgument(Files.isRegularFile(source), "Not a file: %s", source);
+    entries.put(normalized, source);
+    addParents(normalized);
+  }
+
+  /**
+   * Adds a directory, needed only for empty directories since parents of files are added.
+   *
+   * @param name the path of the directory in the archive, with {@code /} separators
+   * @throws FileAlreadyExistsException if a file of that name was added
+   */
+  public void addDirectory(String name) throws IOException {
+    Preconditions.checkState(!closed, "archive is closed");
+    String normalized = normalize(name);
+    if (entries.containsKey(normalized)) {
+      throw new FileAlreadyExistsException(normalized);
+    }
+    directories.add(normalized);
+    addParents(normalized);
+  }
+
+  /** Returns the number of files added. */
+  public int getFileCount() {
+    return entries.size();
+  }
+
+  private void addParents(String name) throws IOException {
+    for (int slash = name.lastIndexOf('/'); slash > 0; slash = name.lastIndexOf('/', slash - 1)) {
+      String parent = name.substring(0, slash);
+      if (entries.containsKey(parent)) {
+        throw new FileAlreadyExistsException(parent);
+      }
+      if (!directories.add(parent)) {
+        return;
+      }
+    }
+  }
+
+  private static String normalize(String name) {
+    String normalized = name.replace('\\', '/');
+    while (normalized.startsWith("/")) {
+      normalized = normalized.substring(1);
+    }
+    while (normalized.endsWith("/")) {
+      normalized = normalized.substring(0, normalized.length() - 1);
+    }
+    Preconditions.checkArgument(!normalized.isEmpty(), "Empty entry name: '%s'", name);
+    for (String segment : normalized.split("/", -1)) {
+      Preconditions.checkArgument(
+          !segment.isEmpty() && !".".equals(segment) && !"..".equals(segment),
+          "Entry name is not a normalized relative path: '%s'",
+          name);
+    }
+    return normalized;
+  }
+
+  /** Writes the archive and closes the output. */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    // directories sort before their contents since "a/" < "a/..."
+    Map<String, Path> sorted = new TreeMap<>();
+    for (String directory : directories) {
+      sorted.put(directory + "/", null);
+    }
+    sorted.putAll(entries);
+
+    // directory entries have null sources
+    try (ArchiveOutputStream archive = open()) {
+      for (Map.Entry<String, Path> entry : sorted.entrySet()) {
+        writeEntry(archive, entry.getKey(), entry.getValue());
+      }
+      archive.finish();
+    }
+  }
+
+  private ArchiveOutputStream open() throws IOException {
+    if (format == Format.ZIP) {
+      return new ZipArchiveOutputStream(output);
+    }
+    // the JDK writes a gzip header without time or file name
+    TarArchiveOutputStream tar = new TarArchiveOutputStream(new GZIPOutputStream(output));
+    tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+    tar.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+    tar.setAddPaxHeadersForNonAsciiNames(true);
+    return tar;
+  }
+
+  private void writeEntry(ArchiveOutputStream archive, String name, @Nullable Path source)
+      throws IOException {
+    boolean directory = source == null;
+    long size = directory ? 0 : Files.size(source);
+    int mode =
+        directory ? DIRECTORY_MODE : Files.isExecutable(source) ? EXECUTABLE_MODE : FILE_MODE;
+    if (format == Format.ZIP) {
+      ZipArchiveEntry entry = new ZipArchiveEntry(name);
+      // zip times are local, this is the same time in any time zone
+      entry.setTime(ENTRY_TIME.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+      entry.setUnixMode((directory ? DIRECTORY_TYPE : FILE_TYPE) | mode);
+      if (!directory) {
+        entry.setSize(size);
+      }
+      archive.putArchiveEntry(entry);
+    } else {
+      TarArchiveEntry entry = new TarArchiveEntry(name);
+      entry.setModTime(Date.from(ENTRY_TIME.atZone(ZoneId.of("UTC")).toInstant()));
+      entry.setIds(0, 0);
+      entry.setNames("", "");
+      entry.setMode((directory ? DIRECTORY_TYPE : FILE_TYPE) | mode);
+      entry.setSize(size);
+      archive.putArchiveEntry(entry);
+    }
+    if (source != null) {
+      long copied = Files.copy(source, archive);
+      if (copied != size) {
+        throw new IOException("File changed while archiving: " + source);
+      }
+    }
+    archive.closeArchiveEntry();
+  }
+}
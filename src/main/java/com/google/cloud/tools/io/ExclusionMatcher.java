@@ -0,0 +1,412 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.io;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+
+/**
+ * Decides which files and directories a directory copy leaves out, compiled once from exact paths
+ * and from patterns in {@code .gitignore} syntax, which {@code .gcloudignore} files also use.
+ *
+ * <p>Patterns are relative to a base directory and are applied in order, the last matching pattern
+ * wins:
+ *
+ * <ul>
+ *   <li>blank lines and lines starting with {@code #} are ignored, {@code \#} and {@code \!} escape
+ *       a leading {@code #} or {@code !}
+ *   <li>a leading {@code !} re-includes what earlier patterns excluded, but not inside an excluded
+ *       directory
+ *   <li>a trailing {@code /} only matches directories
+ *   <li>a pattern with a {@code /} other than a trailing one is relative to the base directory,
+ *       otherwise it matches names at any depth
+ *   <li>{@code *}, {@code ?} and {@code [...]} match within a name, {@code **} matches any number
+ *       of directories
+ * </ul>
+ *
+ * <p>In a {@code .gcloudignore} file, {@code #!include:FILE} includes the patterns of another file
+ * of the same directory, e.g. {@code #!include:.gitignore}.
+ *
+ * <p>Exact paths are looked up in a hash set. Patterns without wildcards in their leading names are
+ * stored in a trie of those names, so only patterns whose leading names match a path are evaluated,
+ * and patterns that match names at any depth are looked up by name when they have no wildcards.
+ * Contents of an excluded directory are excluded too; copies skip the whole subtree when they visit
+ * the directory.
+ */
+@Beta
+public class ExclusionMatcher {
+
+  /** Excludes nothing. */
+  public static final ExclusionMatcher NONE = builder(null).build();
+
+  private static final String INCLUDE_DIRECTIVE = "#!include:";
+
+  @Nullable private final Path baseDirectory;
+  private final ImmutableSet<Path> exactPaths;
+  private final TrieNode anchoredRules;
+  private final Map<String, List<Rule>> rulesByName;
+  private final List<Rule> unanchoredGlobRules;
+  private final boolean hasRules;
+
+  private ExclusionMatcher(Builder builder) {
+    baseDirectory = builder.baseDirectory;
+    exactPaths = ImmutableSet.copyOf(builder.exactPaths);
+    anchoredRules = builder.anchoredRules;
+    rulesByName = builder.rulesByName;
+    unanchoredGlobRules = builder.unanchoredGlobRules;
+    hasRules = builder.ruleCount > 0;
+  }
+
+  /** Returns a matcher that excludes exactly the given paths. */
+  public static ExclusionMatcher of(Collection<Path> paths) {
+    Builder builder = builder(null);
+    for (Path path : paths) {
+      builder.addPath(path);
+    }
+    return builder.build();
+  }
+
+  /**
+   * Returns a builder.
+   *
+   * @param baseDirectory the directory patterns are relative to, may be null if only exact paths
+   *     are added
+   */
+  public static Builder builder(@Nullable Path baseDirectory) {
+    return new Builder(baseDirectory);
+  }
+
+  /**
+   * Returns whether a path is excluded, not considering whether one of its parent directories is.
+   *
+   * @param path the path, in the base directory for patterns to apply
+   * @param directory whether the path is a directory
+   */
+  public boolean isExcluded(Path path, boolean directory) {
+    if (exactPaths.contains(path)) {
+      return true;
+    }
+    Path baseDirectory = this.baseDirectory;
+    if (!hasRules || baseDirectory == null || !path.startsWith(baseDirectory)) {
+      return false;
+    }
+    Path relativePath = baseDirectory.relativize(path);
+    int count = relativePath.getNameCount();
+    if (count == 0 || relativePath.toString().isEmpty()) {
+      return false;
+    }
+    String[] names = new String[count];
+    for (int i = 0; i < count; i++) {
+      names[i] = relativePath.getName(i).toString();
+    }
+
+    Rule winner = null;
+    // patterns relative to the base directory, following their literal leading names
+    TrieNode node = anchoredRules;
+    for (int depth = 0; node != null; depth++) {
+      winner = latestMatch(node.rules, names, depth, directory, winner);
+      if (depth == names.length) {
+        break;
+      }
+      node = node.children.get(names[depth]);
+    }
+    // patterns matching names at any depth
+    List<Rule> named = rulesByName.get(names[count - 1]);
+    if (named != null) {
+      winner = latestMatch(named, names, count - 1, directory, winner);
+    }
+    winner = latestMatch(unanchoredGlobRules, names, count - 1, directory, winner);
+
+    return winner != null && !winner.negated;
+  }
+
+  @Nullable
+  private static Rule latestMatch(
+      List<Rule> rules, String[] names, int start, boolean directory, @Nullable Rule winner) {
+    Rule latest = winner;
+    for (Rule rule : rules) {
+      if ((latest == null || rule.order > latest.order)
+          && (!rule.directoryOnly || directory)
+          && rule.matches(names, start)) {
+        latest = rule;
+      }
+    }
+    return latest;
+  }
+
+  /** Builder for {@link ExclusionMatcher}. */
+  public static class Builder {
+    @Nullable private final Path baseDirectory;
+    private final List<Path> exactPaths = new ArrayList<>();
+    private final TrieNode anchoredRules = new TrieNode();
+    private final Map<String, List<Rule>> rulesByName = new HashMap<>();
+    private final List<Rule> unanchoredGlobRules = new ArrayList<>();
+    private int ruleCount;
+
+    private Builder(@Nullable Path baseDirectory) {
+      this.baseDirectory = baseDirectory;
+    }
+
+    /** Excludes exactly this path, as it is passed to {@link #isExcluded}. */
+    public Builder addPath(Path path) {
+      exactPaths.add(Preconditions.checkNotNull(path));
+      return this;
+    }
+
+    /**
+     * Adds a pattern in {@code .gitignore} syntax.
+     *
+     * @throws IllegalStateException if the builder has no base directory
+     */
+    public Builder addPattern(String pattern) {
+      Preconditions.checkState(baseDirectory != null, "patterns need a base directory");
+      String line = trimTrailingSpaces(pattern);
+      if (line.isEmpty() || line.startsWith("#")) {
+        return this;
+      }
+      boolean negated = false;
+      if (line.startsWith("!")) {
+        negated = true;
+        line = line.substring(1);
+      } else if (line.startsWith("\\#") || line.startsWith("\\!")) {
+        line = line.substring(1);
+      }
+      boolean directoryOnly = false;
+      if (line.endsWith("/")) {
+        directoryOnly = true;
+        line = line.substring(0, line.length() - 1);
+      }
+      // a slash anywhere but at the end anchors the pattern to the base directory
+      boolean anchored = line.contains("/");
+      if (line.startsWith("/")) {
+        line = line.substring(1);
+      }
+      if (line.isEmpty()) {
+        return this;
+      }
+
+      List<Segment> segments = new ArrayList<>();
+      for (String name : line.split("/", -1)) {
+        if (!name.isEmpty()) {
+          segments.add(Segment.compile(name));
+        }
+      }
+      Rule rule = new Rule(ruleCount++, segments, negated, directoryOnly);
+      if (anchored) {
+        TrieNode node = anchoredRules;
+        int literalPrefix = 0;
+        // the last name stays in the rule, so every rule has something to match
+        while (literalPrefix < segments.size() - 1) {
+          String literal = segments.get(literalPrefix).literal;
+          if (literal == null) {
+            break;
+          }
+          node = node.child(literal);
+          literalPrefix++;
+        }
+        rule.trimPrefix(literalPrefix);
+        node.rules.add(rule);
+      } else if (segments.get(0).literal != null) {
+        rulesByName.computeIfAbsent(segments.get(0).literal, name -> new ArrayList<>()).add(rule);
+      } else {
+        unanchoredGlobRules.add(rule);
+      }
+      return this;
+    }
+
+    /** Adds every pattern of a list, in order. */
+    public Builder addPatterns(List<String> patterns) {
+      for (String pattern : patterns) {
+        addPattern(pattern);
+      }
+      return this;
+    }
+
+    /**
+     * Adds the patterns of an ignore file, such as {@code .gcloudignore} or {@code .gitignore},
+     * following {@code #!include:} directives.
+     */
+    public Builder addIgnoreFile(Path ignoreFile) throws IOException {
+      return addIgnoreFile(ignoreFile, new ArrayList<>());
+    }
+
+    private Builder addIgnoreFile(Path ignoreFile, List<Path> including) throws IOException {
+      Path normalized = ignoreFile.toAbsolutePath().normalize();
+      if (including.contains(normalized)) {
+        throw new IOException("Ignore file includes itself: " + ignoreFile);
+      }
+      including.add(normalized);
+      for (String line : Files.readAllLines(ignoreFile, StandardCharsets.UTF_8)) {
+        if (line.startsWith(INCLUDE_DIRECTIVE)) {
+          String included = line.substring(INCLUDE_DIRECTIVE.length()).trim();
+          if (included.contains("/")) {
+            throw new IOException(
+                "Ignore file " + ignoreFile + " can only include files of its directory: " + line);
+          }
+          Path includedFile = normalized.resolveSibling(included);
+          if (Files.isRegularFile(includedFile)) {
+            addIgnoreFile(includedFile, including);
+          }
+        } else {
+          addPattern(line);
+        }
+      }
+      including.remove(normalized);
+      return this;
+    }
+
+    public ExclusionMatcher build() {
+      return new ExclusionMatcher(this);
+    }
+
+    private static String trimTrailingSpaces(String line) {
+      int end = line.length();
+      while (end > 0 && line.charAt(end - 1) == ' ' && (end < 2 || line.charAt(end - 2) != '\\')) {
+        end--;
+      }
+      String trimmed = line.substring(0, end);
+      return trimmed.endsWith("\\ ") ? trimmed.substring(0, end - 2) + " " : trimmed;
+    }
+  }
+
+  private static class TrieNode {
+    private final Map<String, TrieNode> children = new HashMap<>();
+    private final List<Rule> rules = new ArrayList<>();
+
+    private TrieNode child(String name) {
+      return children.computeIfAbsent(name, key -> new TrieNode());
+    }
+  }
+
+  private static class Rule {
+    private final int order;
+    private List<Segment> segments;
+    private final boolean negated;
+    private final boolean directoryOnly;
+
+    private Rule(int order, List<Segment> segments, boolean negated, boolean directoryOnly) {
+      this.order = order;
+      this.segments = segments;
+      this.negated = negated;
+      this.directoryOnly = directoryOnly;
+    }
+
+    private void trimPrefix(int count) {
+      segments = new ArrayList<>(segments.subList(count, segments.size()));
+    }
+
+    /** Returns whether the segments match all of {@code names} from {@code start}. */
+    private boolean matches(String[] names, int start) {
+      return matches(0, names, start);
+    }
+
+    private boolean matches(int segment, String[] names, int name) {
+      if (segment == segments.size()) {
+        return name == names.length;
+      }
+      Segment current = segments.get(segment);
+      if (current.isAnyDirectories()) {
+        // zero or more names, but a trailing ** only matches what is inside a directory
+        int first = segment == segments.size() - 1 ? name + 1 : name;
+        for (int next = first; next <= names.length; next++) {
+          if (matches(segment + 1, names, next)) {
+            return true;
+          }
+        }
+        return false;
+      }
+      return name < names.length
+          && current.matches(names[name])
+          && matches(segment + 1, names, name + 1);
+    }
+  }
+
+  /** A name of a pattern: a literal name, a glob within a name, or {@code **}. */
+  private static class Segment {
+    private static final Segment ANY_DIRECTORIES = new Segment(null, null);
+
+    @Nullable private final String literal;
+    @Nullable private final Pattern glob;
+
+    private Segment(@Nullable String literal, @Nullable Pattern glob) {
+      this.literal = literal;
+      this.glob = glob;
+    }
+
+    private static Segment compile(String name) {
+      if ("**".equals(name)) {
+        return ANY_DIRECTORIES;
+      }
+      StringBuilder regex = new StringBuilder();
+      StringBuilder literal = new StringBuilder();
+      boolean isLiteral = true;
+      for (int i = 0; i < name.length(); i++) {
+        char c = name.charAt(i);
+        if (c == '\\' && i + 1 < name.length()) {
+          char escaped = name.charAt(++i);
+          literal.append(escaped);
+          regex.append(Pattern.quote(String.valueOf(escaped)));
+        } else if (c == '*') {
+          isLiteral = false;
+          regex.append(".*");
+        } else if (c == '?') {
+          isLiteral = false;
+          regex.append('.');
+        } else if (c == '[' && name.indexOf(']', i + 2) > 0) {
+          isLiteral = false;
+          int end = name.indexOf(']', i + 2);
+          String characters = name.substring(i + 1, end);
+          if (characters.startsWith("!")) {
+            characters = "^" + characters.substring(1);
+          }
+          regex
+              .append('[')
+              .append(characters.replace("\\", "\\\\").replace("[", "\\["))
+              .append(']');
+          i = end;
+        } else {
+          literal.append(c);
+          regex.append(Pattern.quote(String.valueOf(c)));
+        }
+      }
+      return isLiteral
+          ? new Segment(literal.toString(), null)
+          : new Segment(null, Pattern.compile(regex.toString(), Pattern.DOTALL));
+    }
+
+    private boolean isAnyDirectories() {
+      return this == ANY_DIRECTORIES;
+    }
+
+    private boolean matches(String name) {
+      Pattern glob = this.glob;
+      return glob != null ? glob.matcher(name).matches() : name.equals(literal);
+    }
+  }
+}
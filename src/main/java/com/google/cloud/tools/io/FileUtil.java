@@ -16,9 +16,13 @@
 
 package com.google.cloud.tools.io;
 
+import com.google.cloud.tools.jfr.FlightRecorderEvent;
+import com.google.cloud.tools.jfr.FlightRecorderEventType;
+import com.google.cloud.tools.managedcloudsdk.ProgressListener;
 import com.google.common.annotations.Beta;
 import com.google.common.base.Preconditions;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.file.CopyOption;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
@@ -26,13 +30,32 @@ import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /** File utilities. */
 @Beta
 public class FileUtil {
 
+  private static final FlightRecorderEventType COPY_DIRECTORY_EVENT =
+      FlightRecorderEventType.builder("com.google.cloud.tools.io.CopyDirectory")
+          .setLabel("Copy Directory")
+          .setThreshold(Duration.ofMillis(20))
+          .addStringField("source", "Source")
+          .addStringField("destination", "Destination")
+          .addLongField("files", "Files Copied")
+          .addLongField("directories", "Directories Copied")
+          .addLongField("bytes", "Bytes Copied")
+          .build();
+
   /**
    * Implementation of recursive directory copy, does NOT overwrite.
    *
@@ -56,48 +79,356 @@ public class FileUtil {
    */
   public static void copyDirectory(final Path source, final Path destination, List<Path> excludes)
       throws IOException {
+    copyDirectory(source, destination, ExclusionMatcher.of(excludes));
+  }
+
+  /**
+   * Implementation of recursive directory copy, does NOT overwrite. Excluded directories are
+   * skipped with all their contents.
+   *
+   * @param source an existing source directory to copy from
+   * @param destination an existing destination directory to copy to
+   * @param excludes decides which paths in "source" to exclude
+   * @throws IllegalArgumentException if source directory is same destination directory, either
+   *     source or destination is not a directory, or destination is inside source
+   */
+  public static void copyDirectory(
+      final Path source, final Path destination, ExclusionMatcher excludes) throws IOException {
+    checkCopyArguments(source, destination);
+    Preconditions.checkNotNull(excludes);
+
+    FlightRecorderEvent event =
+        COPY_DIRECTORY_EVENT
+            .begin()
+            .set("source", source.toString())
+            .set("destination", destination.toString());
+    CopyingVisitor visitor = new CopyingVisitor(source, destination, excludes);
+    try {
+      Files.walkFileTree(source, visitor);
+    } finally {
+      event
+          .set("files", visitor.files)
+          .set("directories", visitor.directories)
+          .set("bytes", visitor.bytes)
+          .commit();
+    }
+  }
+
+  /**
+   * Adds a directory to an archive instead of copying it, does NOT overwrite: files are added with
+   * their path relative to "source", and the archive must not have files of those names yet.
+   * Excluded directories are skipped with all their contents.
+   *
+   * @param source an existing source directory to add
+   * @param archive the archive to add the files to
+   * @param excludes decides which paths in "source" to exclude
+   * @throws IllegalArgumentException if source is not a directory
+   */
+  public static void archiveDirectory(Path source, ArchiveWriter archive, ExclusionMatcher excludes)
+      throws IOException {
     Preconditions.checkNotNull(source);
-    Preconditions.checkNotNull(destination);
+    Preconditions.checkNotNull(archive);
+    Preconditions.checkNotNull(excludes);
     Preconditions.checkArgument(Files.isDirectory(source), "Source is not a directory");
-    Preconditions.checkArgument(Files.isDirectory(destination), "Destination is not a directory");
-    Preconditions.checkArgument(
-        !Files.isSameFile(source, destination), "Source and destination are the same");
-    Preconditions.checkArgument(
-        !destination.toAbsolutePath().startsWith(source.toAbsolutePath()),
-        "destination is child of source");
 
     Files.walkFileTree(
         source,
         new SimpleFileVisitor<Path>() {
-          final CopyOption[] copyOptions = new CopyOption[] {StandardCopyOption.COPY_ATTRIBUTES};
-
           @Override
           public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
               throws IOException {
-
             if (dir.equals(source)) {
               return FileVisitResult.CONTINUE;
             }
-
-            if (excludes.contains(dir)) {
+            if (excludes.isExcluded(dir, true)) {
               return FileVisitResult.SKIP_SUBTREE;
             }
-
-            Files.copy(dir, destination.resolve(source.relativize(dir)), copyOptions);
+            archive.addDirectory(toEntryName(source.relativize(dir)));
             return FileVisitResult.CONTINUE;
           }
 
           @Override
           public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
               throws IOException {
-
-            if (excludes.contains(file)) {
-              return FileVisitResult.CONTINUE;
+            if (!excludes.isExcluded(file, attrs.isDirectory())) {
+              archive.addFile(toEntryName(source.relativize(file)), file, false);
             }
-
-            Files.copy(file, destination.resolve(source.relativize(file)), copyOptions);
             return FileVisitResult.CONTINUE;
           }
         });
   }
+
+  /** Returns a relative path as an archive entry name, with {@code /} separators. */
+  public static String toEntryName(Path relativePath) {
+    Preconditions.checkArgument(
+        !relativePath.isAbsolute(), "Not a relative path: %s", relativePath);
+    StringBuilder name = new StringBuilder();
+    for (Path segment : relativePath) {
+      if (name.length() > 0) {
+        name.append('/');
+      }
+      name.append(segment);
+    }
+    return name.toString();
+  }
+
+  /**
+   * Recursive directory copy that copies files concurrently, does NOT overwrite. Directories are
+   * created first, in a single pass over the source, then files are copied by a {@link
+   * ForkJoinPool} with one thread per processor. Copying many small files is dominated by per file
+   * latency rather than bandwidth on SSDs, so concurrent copies finish much faster.
+   *
+   * @param source an existing source directory to copy from
+   * @param destination an existing destination directory to copy to
+   * @param excludes a list of paths in "source" to exclude
+   * @param progressListener receives the number of bytes copied
+   * @throws IllegalArgumentException if source directory is same destination directory, either
+   *     source or destination is not a directory, or destination is inside source
+   */
+  public static void copyDirectoryParallel(
+      Path source, Path destination, List<Path> excludes, ProgressListener progressListener)
+      throws IOException {
+    ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    try {
+      copyDirectoryParallel(source, destination, excludes, pool, progressListener);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Recursive directory copy that copies files concurrently on {@code executor}, does NOT
+   * overwrite. Same as {@link #copyDirectory(Path, Path, List)}, except for the order in which
+   * files are copied. If copying a file fails, no more files are copied and the first failure is
+   * thrown once the copies in progress complete.
+   *
+   * @param source an existing source directory to copy from
+   * @param destination an existing destination directory to copy to
+   * @param excludes a list of paths in "source" to exclude
+   * @param executor runs the file copies
+   * @param progressListener receives the number of bytes copied
+   * @throws IllegalArgumentException if source directory is same destination directory, either
+   *     source or destination is not a directory, or destination is inside source
+   */
+  public static void copyDirectoryParallel(
+      Path source,
+      Path destination,
+      List<Path> excludes,
+      Executor executor,
+      ProgressListener progressListener)
+      throws IOException {
+    copyDirectoryParallel(
+        source, destination, ExclusionMatcher.of(excludes), executor, progressListener);
+  }
+
+  /**
+   * Recursive directory copy that copies files concurrently on {@code executor}, does NOT
+   * overwrite. Same as {@link #copyDirectory(Path, Path, ExclusionMatcher)}, except for the order
+   * in which files are copied.
+   *
+   * @param source an existing source directory to copy from
+   * @param destination an existing destination directory to copy to
+   * @param excludes decides which paths in "source" to exclude
+   * @param executor runs the file copies
+   * @param progressListener receives the number of bytes copied
+   * @throws IllegalArgumentException if source directory is same destination directory, either
+   *     source or destination is not a directory, or destination is inside source
+   */
+  public static void copyDirectoryParallel(
+      Path source,
+      Path destination,
+      ExclusionMatcher excludes,
+      Executor executor,
+      ProgressListener progressListener)
+      throws IOException {
+    checkCopyArguments(source, destination);
+    Preconditions.checkNotNull(excludes);
+    Preconditions.checkNotNull(executor);
+    Preconditions.checkNotNull(progressListener);
+
+    FlightRecorderEvent event =
+        COPY_DIRECTORY_EVENT
+            .begin()
+            .set("source", source.toString())
+            .set("destination", destination.toString());
+    ParallelCopier copier = new ParallelCopier(source, destination, excludes);
+    try {
+      Files.walkFileTree(source, copier);
+      copier.copyFiles(executor, progressListener);
+    } finally {
+      event
+          .set("files", copier.filesCopied.get())
+          .set("directories", copier.directories)
+          .set("bytes", copier.bytesCopied.get())
+          .commit();
+    }
+  }
+
+  private static void checkCopyArguments(Path source, Path destination) throws IOException {
+    Preconditions.checkNotNull(source);
+    Preconditions.checkNotNull(destination);
+    Preconditions.checkArgument(Files.isDirectory(source), "Source is not a directory");
+    Preconditions.checkArgument(Files.isDirectory(destination), "Destination is not a directory");
+    Preconditions.checkArgument(
+        !Files.isSameFile(source, destination), "Source and destination are the same");
+    Preconditions.checkArgument(
+        !destination.toAbsolutePath().startsWith(source.toAbsolutePath()),
+        "destination is child of source");
+  }
+
+  /**
+   * Creates the directories while visiting the source, and collects the files, which are then
+   * copied concurrently in batches.
+   */
+  private static class ParallelCopier extends SimpleFileVisitor<Path> {
+    // enough files per task to amortize scheduling, few enough to balance the load
+    private static final int BATCH_SIZE = 32;
+
+    private final CopyOption[] copyOptions = new CopyOption[] {StandardCopyOption.COPY_ATTRIBUTES};
+    private final Path source;
+    private final Path destination;
+    private final ExclusionMatcher excludes;
+    private final List<Path> files = new ArrayList<>();
+    private final List<Long> sizes = new ArrayList<>();
+    private long directories;
+    private long totalBytes;
+    private final AtomicLong filesCopied = new AtomicLong();
+    private final AtomicLong bytesCopied = new AtomicLong();
+
+    private ParallelCopier(Path source, Path destination, ExclusionMatcher excludes) {
+      this.source = source;
+      this.destination = destination;
+      this.excludes = excludes;
+    }
+
+    @Override
+    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+        throws IOException {
+      if (dir.equals(source)) {
+        return FileVisitResult.CONTINUE;
+      }
+      if (excludes.isExcluded(dir, true)) {
+        return FileVisitResult.SKIP_SUBTREE;
+      }
+      Files.copy(dir, destination.resolve(source.relativize(dir)), copyOptions);
+      directories++;
+      return FileVisitResult.CONTINUE;
+    }
+
+    @Override
+    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+      if (!excludes.isExcluded(file, attrs.isDirectory())) {
+        files.add(file);
+        sizes.add(attrs.size());
+        totalBytes += attrs.size();
+      }
+      return FileVisitResult.CONTINUE;
+    }
+
+    private void copyFiles(Executor executor, ProgressListener progressListener)
+        throws IOException {
+      progressListener.start("Copying " + files.size() + " files to " + destination, totalBytes);
+      AtomicReference<IOException> failure = new AtomicReference<>();
+      int batches = (files.size() + BATCH_SIZE - 1) / BATCH_SIZE;
+      CountDownLatch remaining = new CountDownLatch(batches);
+      for (int start = 0; start < files.size(); start += BATCH_SIZE) {
+        int from = start;
+        int to = Math.min(start + BATCH_SIZE, files.size());
+        try {
+          executor.execute(
+              () -> {
+                try {
+                  copyBatch(from, to, failure, progressListener);
+                } finally {
+                  remaining.countDown();
+                }
+              });
+        } catch (RejectedExecutionException ex) {
+          failure.compareAndSet(null, new IOException("Copy task rejected by executor", ex));
+          remaining.countDown();
+        }
+      }
+      try {
+        remaining.await();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        failure.compareAndSet(null, new InterruptedIOException("Interrupted while copying files"));
+      }
+      IOException exception = failure.get();
+      if (exception != null) {
+        throw exception;
+      }
+      progressListener.done();
+    }
+
+    private void copyBatch(
+        int from, int to, AtomicReference<IOException> failure, ProgressListener progressListener) {
+      for (int i = from; i < to; i++) {
+        if (failure.get() != null) {
+          return;
+        }
+        Path file = files.get(i);
+        try {
+          Files.copy(file, destination.resolve(source.relativize(file)), copyOptions);
+          long size = sizes.get(i);
+          filesCopied.incrementAndGet();
+          bytesCopied.addAndGet(size);
+          // listeners aren't required to be thread safe
+          synchronized (progressListener) {
+            progressListener.update(size);
+          }
+        } catch (IOException ex) {
+          failure.compareAndSet(null, ex);
+        } catch (RuntimeException ex) {
+          failure.compareAndSet(null, new IOException("Failed to copy " + file, ex));
+        }
+      }
+    }
+  }
+
+  private static class CopyingVisitor extends SimpleFileVisitor<Path> {
+    private final CopyOption[] copyOptions = new CopyOption[] {StandardCopyOption.COPY_ATTRIBUTES};
+    private final Path source;
+    private final Path destination;
+    private final ExclusionMatcher excludes;
+    private long files;
+    private long directories;
+    private long bytes;
+
+    private CopyingVisitor(Path source, Path destination, ExclusionMatcher excludes) {
+      this.source = source;
+      this.destination = destination;
+      this.excludes = excludes;
+    }
+
+    @Override
+    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+        throws IOException {
+
+      if (dir.equals(source)) {
+        return FileVisitResult.CONTINUE;
+      }
+
+      if (excludes.isExcluded(dir, true)) {
+        return FileVisitResult.SKIP_SUBTREE;
+      }
+
+      Files.copy(dir, destination.resolve(source.relativize(dir)), copyOptions);
+      directories++;
+      return FileVisitResult.CONTINUE;
+    }
+
+    @Override
+    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+
+      if (excludes.isExcluded(file, attrs.isDirectory())) {
+        return FileVisitResult.CONTINUE;
+      }
+
+      Files.copy(file, destination.resolve(source.relativize(file)), copyOptions);
+      files++;
+      bytes += attrs.size();
+      return FileVisitResult.CONTINUE;
+    }
+  }
 }
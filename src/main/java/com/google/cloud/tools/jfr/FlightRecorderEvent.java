@@ -0,0 +1,65 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.jfr;
+
+import javax.annotation.Nullable;
+
+/**
+ * A timed Java Flight Recorder event started with {@link FlightRecorderEventType#begin()}. Set its
+ * fields as the work progresses and {@link #commit()} it when the work is done; the event is
+ * recorded if it took longer than its threshold. Not thread safe.
+ */
+public class FlightRecorderEvent {
+
+  static final FlightRecorderEvent NO_OP = new FlightRecorderEvent(null, null);
+
+  @Nullable private final FlightRecorderEventType type;
+  @Nullable private final Object event;
+
+  FlightRecorderEvent(@Nullable FlightRecorderEventType type, @Nullable Object event) {
+    this.type = type;
+    this.event = event;
+  }
+
+  /** Returns false if this event will not be recorded, so costly field values can be skipped. */
+  public boolean isRecording() {
+    return event != null;
+  }
+
+  /** Sets a numeric field declared with {@link FlightRecorderEventType.Builder#addLongField}. */
+  public FlightRecorderEvent set(String field, long value) {
+    if (type != null && event != null) {
+      type.set(event, field, value);
+    }
+    return this;
+  }
+
+  /** Sets a text field declared with {@link FlightRecorderEventType.Builder#addStringField}. */
+  public FlightRecorderEvent set(String field, @Nullable String value) {
+    if (type != null && event != null) {
+      type.set(event, field, value);
+    }
+    return this;
+  }
+
+  /** Ends the event and records it if it exceeded the threshold of its type. */
+  public void commit() {
+    if (type != null && event != null) {
+      type.commit(event);
+    }
+  }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.jfr;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * A Java Flight Recorder event type, defined at runtime with {@code jdk.jfr.EventFactory}. The JFR
+ * API is only accessed reflectively, so on JVMs without it (Java 8 before 8u262) every event is a
+ * no-op and this library keeps running on them.
+ *
+ * <pre>{@code
+ * static final FlightRecorderEventType DOWNLOAD =
+ *     FlightRecorderEventType.builder("com.google.cloud.tools.Download")
+ *         .setLabel("Download")
+ *         .setThreshold(Duration.ofMillis(20))
+ *         .addLongField("bytes", "Bytes Transferred")
+ *         .build();
+ *
+ * FlightRecorderEvent event = DOWNLOAD.begin();
+ * ...
+ * event.set("bytes", total).commit();
+ * }</pre>
+ */
+public class FlightRecorderEventType {
+
+  private static final Logger logger = Logger.getLogger(FlightRecorderEventType.class.getName());
+
+  private static final String CATEGORY = "Google Cloud Tools";
+
+  @Nullable private static final Jfr JFR = Jfr.load();
+
+  @Nullable private final Object eventFactory;
+  private final ImmutableList<String> fieldNames;
+
+  private FlightRecorderEventType(@Nullable Object eventFactory, ImmutableList<String> fieldNames) {
+    this.eventFactory = eventFactory;
+    this.fieldNames = fieldNames;
+  }
+
+  /** Returns true if the running JVM supports Java Flight Recorder events. */
+  public static boolean isSupported() {
+    return JFR != null;
+  }
+
+  /**
+   * Starts timing a new event. The returned event is a no-op if JFR is not supported or the event
+   * type is not enabled in any running recording.
+   */
+  public FlightRecorderEvent begin() {
+    Jfr jfr = JFR;
+    Object factory = eventFactory;
+    if (jfr == null || factory == null) {
+      return FlightRecorderEvent.NO_OP;
+    }
+    try {
+      Object event = jfr.newEvent.invoke(factory);
+      if (!(Boolean) jfr.isEnabled.invoke(event)) {
+        return FlightRecorderEvent.NO_OP;
+      }
+      jfr.begin.invoke(event);
+      return new FlightRecorderEvent(this, event);
+    } catch (ReflectiveOperationException | RuntimeException ex) {
+      logger.log(Level.FINE, "Unable to create flight recorder event", ex);
+      return FlightRecorderEvent.NO_OP;
+    }
+  }
+
+  int indexOf(String field) {
+    int index = fieldNames.indexOf(field);
+    Preconditions.checkArgument(index >= 0, "Unknown event field: %s", field);
+    return index;
+  }
+
+  void set(Object event, String field, @Nullable Object value) {
+    Jfr jfr = JFR;
+    if (jfr == null) {
+      return;
+    }
+    try {
+      jfr.set.invoke(event, indexOf(field), value);
+    } catch (ReflectiveOperationException ex) {
+      logger.log(Level.FINE, "Unable to set flight recorder event field " + field, ex);
+    }
+  }
+
+  void commit(Object event) {
+    Jfr jfr = JFR;
+    if (jfr == null) {
+      return;
+    }
+    try {
+      jfr.end.invoke(event);
+      if ((Boolean) jfr.shouldCommit.invoke(event)) {
+        jfr.commit.invoke(event);
+      }
+    } catch (ReflectiveOperationException | RuntimeException ex) {
+      logger.log(Level.FINE, "Unable to commit flight recorder event", ex);
+    }
+  }
+
+  public static Builder builder(String name) {
+    return new Builder(name);
+  }
+
+  public static class Builder {
+    private final String name;
+    @Nullable private String label;
+    @Nullable private String description;
+    private Duration threshold = Duration.ZERO;
+    private final List<String> fieldNames = new ArrayList<>();
+    private final List<Class<?>> fieldTypes = new ArrayList<>();
+    private final List<String> fieldLabels = new ArrayList<>();
+
+    private Builder(String name) {
+      this.name = Preconditions.checkNotNull(name);
+    }
+
+    /** The human readable name shown in JDK Mission Control. */
+    public Builder setLabel(String label) {
+      this.label = label;
+      return this;
+    }
+
+    public Builder setDescription(String description) {
+      this.description = description;
+      return this;
+    }
+
+    /**
+     * Events that take less than the threshold are not recorded, unless the recording settings
+     * override it. Defaults to zero, record everything.
+     */
+    public Builder setThreshold(Duration threshold) {
+      this.threshold = threshold;
+      return this;
+    }
+
+    /** Adds a numeric field, e.g. a byte or file count. */
+    public Builder addLongField(String fieldName, String fieldLabel) {
+      return addField(fieldName, long.class, fieldLabel);
+    }
+
+    /** Adds a text field, e.g. a path. */
+    public Builder addStringField(String fieldName, String fieldLabel) {
+      return addField(fieldName, String.class, fieldLabel);
+    }
+
+    private Builder addField(String fieldName, Class<?> type, String fieldLabel) {
+      Preconditions.checkArgument(!fieldNames.contains(fieldName), "Duplicate field " + fieldName);
+      fieldNames.add(fieldName);
+      fieldTypes.add(type);
+      fieldLabels.add(fieldLabel);
+      return this;
+    }
+
+    /** Defines the event type, this never fails: without JFR support it only creates no-ops. */
+    public FlightRecorderEventType build() {
+      ImmutableList<String> names = ImmutableList.copyOf(fieldNames);
+      Jfr jfr = JFR;
+      if (jfr == null) {
+        return new FlightRecorderEventType(null, names);
+      }
+      try {
+        List<Object> annotations = new ArrayList<>();
+        annotations.add(jfr.annotation(jfr.name, name));
+        annotations.add(jfr.annotation(jfr.label, label == null ? name : label));
+        if (description != null) {
+          annotations.add(jfr.annotation(jfr.description, description));
+        }
+        annotations.add(jfr.annotation(jfr.category, new String[] {CATEGORY}));
+        annotations.add(jfr.annotation(jfr.threshold, threshold.toMillis() + " ms"));
+
+        List<Object> fields = new ArrayList<>();
+        for (int i = 0; i < fieldNames.size(); i++) {
+          List<Object> fieldAnnotations = new ArrayList<>();
+          fieldAnnotations.add(jfr.annotation(jfr.label, fieldLabels.get(i)));
+          fields.add(
+              jfr.valueDescriptor.newInstance(
+                  fieldTypes.get(i), fieldNames.get(i), fieldAnnotations));
+        }
+        return new FlightRecorderEventType(jfr.create.invoke(null, annotations, fields), names);
+      } catch (ReflectiveOperationException | RuntimeException ex) {
+        logger.log(Level.FINE, "Unable to define flight recorder event " + name, ex);
+        return new FlightRecorderEventType(null, names);
+      }
+    }
+  }
+
+  /** The reflectively loaded JFR API. */
+  private static class Jfr {
+    private final Constructor<?> annotationElement;
+    private final Constructor<?> valueDescriptor;
+    private final Method create;
+    private final Method newEvent;
+    private final Method isEnabled;
+    private final Method begin;
+    private final Method end;
+    private final Method shouldCommit;
+    private final Method commit;
+    private final Method set;
+    private final Class<?> name;
+    private final Class<?> label;
+    private final Class<?> description;
+    private final Class<?> category;
+    private final Class<?> threshold;
+
+    private Jfr() throws ReflectiveOperationException {
+      annotationElement =
+          Class.forName("jdk.jfr.AnnotationElement").getConstructor(Class.class, Object.class);
+      valueDescriptor =
+          Class.forName("jdk.jfr.ValueDescriptor")
+              .getConstructor(Class.class, String.class, List.class);
+      Class<?> eventFactory = Class.forName("jdk.jfr.EventFactory");
+      create = eventFactory.getMethod("create", List.class, List.class);
+      newEvent = eventFactory.getMethod("newEvent");
+      Class<?> event = Class.forName("jdk.jfr.Event");
+      isEnabled = event.getMethod("isEnabled");
+      begin = event.getMethod("begin");
+      end = event.getMethod("end");
+      shouldCommit = event.getMethod("shouldCommit");
+      commit = event.getMethod("commit");
+      set = event.getMethod("set", int.class, Object.class);
+      name = Class.forName("jdk.jfr.Name");
+      label = Class.forName("jdk.jfr.Label");
+      description = Class.forName("jdk.jfr.Description");
+      category = Class.forName("jdk.jfr.Category");
+      threshold = Class.forName("jdk.jfr.Threshold");
+    }
+
+    @Nullable
+    private static Jfr load() {
+      try {
+        return new Jfr();
+      } catch (ReflectiveOperationException | LinkageError | RuntimeException ex) {
+        // Java 8 without the JFR backport, events are no-ops
+        logger.log(Level.FINE, "Java Flight Recorder events are not supported", ex);
+        return null;
+      }
+    }
+
+    private Object annotation(Class<?> annotationType, Object value)
+        throws ReflectiveOperationException {
+      return annotationElement.newInstance(annotationType.asSubclass(Annotation.class), value);
+    }
+  }
+}
@@ -18,6 +18,7 @@ package com.google.cloud.tools.managedcloudsdk;
 
 import static com.google.cloud.tools.managedcloudsdk.OsInfo.Name.WINDOWS;
 
+import com.google.cloud.tools.appengine.operations.cloudsdk.GcloudResultCache;
 import com.google.cloud.tools.appengine.operations.cloudsdk.serialization.CloudSdkComponent;
 import com.google.cloud.tools.appengine.operations.cloudsdk.serialization.CloudSdkComponent.State;
 import com.google.cloud.tools.managedcloudsdk.command.CommandCaller;
@@ -51,12 +52,38 @@ public class ManagedCloudSdk {
   private final Version version;
   private final Path managedSdkDirectory;
   private final OsInfo osInfo;
+  @Nullable private final GcloudResultCache resultCache;
 
   /** Instantiated with {@link ManagedCloudSdk#newManagedSdk}. */
   ManagedCloudSdk(Version version, Path managedSdkDirectory, OsInfo osInfo) {
+    this(version, managedSdkDirectory, osInfo, null);
+  }
+
+  private ManagedCloudSdk(
+      Version version,
+      Path managedSdkDirectory,
+      OsInfo osInfo,
+      @Nullable GcloudResultCache resultCache) {
     this.version = version;
     this.managedSdkDirectory = managedSdkDirectory;
     this.osInfo = osInfo;
+    this.resultCache = resultCache;
+  }
+
+  /**
+   * Returns a copy of this managed SDK that memoizes the output of the read-only gcloud queries
+   * made by {@link #hasComponent} and {@link #isUpToDate} in {@code resultCache}.
+   *
+   * <p>{@link #isUpToDate} asks the server for the latest release. With a result cache, it does not
+   * see a release published after its answer was cached until the cache's TTL expires, or until
+   * this library updates or installs components, which invalidates the cache.
+   */
+  public ManagedCloudSdk withResultCache(GcloudResultCache resultCache) {
+    return new ManagedCloudSdk(version, managedSdkDirectory, osInfo, resultCache);
+  }
+
+  private CommandCaller newCommandCaller() {
+    return resultCache == null ? CommandCaller.newCaller() : CommandCaller.newCaller(resultCache);
   }
 
   public Path getSdkHome() {
@@ -122,7 +149,7 @@ public class ManagedCloudSdk {
             "--filter=id:" + component);
 
     try {
-      String result = CommandCaller.newCaller().call(listComponentCommand, null, null);
+      String result = newCommandCaller().call(listComponentCommand, null, null);
       List<CloudSdkComponent> components = CloudSdkComponent.fromJsonList(result);
       if (components.size() > 1) {
         // not a unique component id
@@ -153,7 +180,7 @@ public class ManagedCloudSdk {
             "--filter=state.name:Update Available");
 
     try {
-      String result = CommandCaller.newCaller().call(updateAvailableCommand, null, null);
+      String result = newCommandCaller().call(updateAvailableCommand, null, null);
       for (CloudSdkComponent component : CloudSdkComponent.fromJsonList(result)) {
         State state = component.getState();
         if (state != null) {
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.managedcloudsdk;
+
+import com.google.cloud.tools.trace.TraceRecorder;
+import com.google.cloud.tools.trace.TraceSpan;
+import com.google.common.base.Preconditions;
+
+/**
+ * Wraps a {@link ProgressListener} tree and records every task as a span of a {@link
+ * TraceRecorder}, from {@code start} to {@code done}. Progress messages are recorded as instants
+ * within the span. Wrap the listener passed to {@link
+ * com.google.cloud.tools.managedcloudsdk.install.SdkInstaller#install}, {@link
+ * com.google.cloud.tools.managedcloudsdk.components.SdkComponentInstaller#installComponent} or
+ * {@link com.google.cloud.tools.managedcloudsdk.components.SdkUpdater#update} to get a timeline of
+ * the install phases.
+ *
+ * <pre>{@code
+ * TraceRecorder trace = TraceRecorder.create();
+ * managedCloudSdk.newInstaller().install(new TracingProgressListener(listener, trace), console);
+ * trace.writeTo(Paths.get("install-trace.json"));
+ * }</pre>
+ */
+public class TracingProgressListener implements ProgressListener {
+
+  private static final String CATEGORY = "progress";
+
+  private final ProgressListener delegate;
+  private final TraceRecorder trace;
+  private TraceSpan span = TraceSpan.NO_OP;
+  private long workDone = 0;
+
+  /**
+   * Create a tracing listener.
+   *
+   * @param delegate the listener that receives all progress, unchanged
+   * @param trace the recorder to add spans to
+   */
+  public TracingProgressListener(ProgressListener delegate, TraceRecorder trace) {
+    this.delegate = Preconditions.checkNotNull(delegate);
+    this.trace = Preconditions.checkNotNull(trace);
+  }
+
+  @Override
+  public void start(String message, long totalWork) {
+    span = trace.startSpan(message, CATEGORY);
+    if (totalWork != UNKNOWN) {
+      span.setArg("totalWork", totalWork);
+    }
+    delegate.start(message, totalWork);
+  }
+
+  @Override
+  public void update(long workDone) {
+    this.workDone += workDone;
+    delegate.update(workDone);
+  }
+
+  @Override
+  public void update(String message) {
+    span.instant(message);
+    delegate.update(message);
+  }
+
+  @Override
+  public void done() {
+    span.setArg("workDone", workDone);
+    span.end();
+    delegate.done();
+  }
+
+  @Override
+  public ProgressListener newChild(long allocation) {
+    return new TracingProgressListener(delegate.newChild(allocation), trace);
+  }
+}
@@ -16,36 +16,78 @@
 
 package com.google.cloud.tools.managedcloudsdk.command;
 
+import com.google.cloud.tools.appengine.operations.cloudsdk.GcloudResultCache;
 import com.google.cloud.tools.managedcloudsdk.process.ProcessExecutor;
+import com.google.cloud.tools.managedcloudsdk.process.ProcessTimeout;
 import com.google.common.annotations.VisibleForTesting;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
 import java.util.function.Supplier;
 import javax.annotation.Nullable;
 
-/** Execute a command synchronously and save and return stdout. */
+/** Execute a command and save and return stdout. */
 public class CommandCaller {
   private final Supplier<ProcessExecutor> processExecutorSupplier;
   private final AsyncStreamSaverFactory streamSaverFactory;
+  @Nullable private final GcloudResultCache resultCache;
 
   @VisibleForTesting
   CommandCaller(
       Supplier<ProcessExecutor> processExecutorSupplier,
-      AsyncStreamSaverFactory streamSaverFactory) {
+      AsyncStreamSaverFactory streamSaverFactory,
+      @Nullable GcloudResultCache resultCache) {
 
     this.processExecutorSupplier = processExecutorSupplier;
     this.streamSaverFactory = streamSaverFactory;
+    this.resultCache = resultCache;
   }
 
-  /** Runs the command and returns process's stdout stream as a string. */
+  /**
+   * Runs the command and returns process's stdout stream as a string. If this caller has a {@link
+   * GcloudResultCache} and the command is a read-only gcloud command, the output may come from the
+   * cache.
+   */
   public String call(
       List<String> command,
       @Nullable Path workingDirectory,
       @Nullable Map<String, String> environment)
       throws CommandExitException, CommandExecutionException, InterruptedException {
+    List<String> gcloudArgs = command.isEmpty() ? command : command.subList(1, command.size());
+    GcloudResultCache cache = resultCache;
+    GcloudResultCache.Key key = null;
+    if (cache != null && GcloudResultCache.isReadOnly(gcloudArgs)) {
+      key = cache.newKey(command, environment);
+      Optional<String> cached = cache.get(key);
+      if (cached.isPresent()) {
+        return cached.get();
+      }
+    }
+
+    try {
+      String result = execute(command, workingDirectory, environment);
+      if (cache != null && key != null) {
+        cache.put(key, result);
+      }
+      return result;
+    } finally {
+      if (GcloudResultCache.invalidates(gcloudArgs)) {
+        GcloudResultCache.invalidateAll();
+      }
+    }
+  }
+
+  private String execute(
+      List<String> command,
+      @Nullable Path workingDirectory,
+      @Nullable Map<String, String> environment)
+      throws CommandExitException, CommandExecutionException, InterruptedException {
     ProcessExecutor processExecutor = processExecutorSupplier.get();
 
     AsyncStreamSaver stdOutSaver = streamSaverFactory.newSaver();
@@ -87,7 +129,91 @@ public class CommandCaller {
     }
   }
 
+  /**
+   * Runs the command without blocking. The returned future completes with the process's stdout
+   * stream as a string, or exceptionally with a {@link CommandExitException} on a non-zero exit or
+   * a {@link CommandExecutionException} if the process could not be run or timed out. Cancelling
+   * the future terminates the process.
+   */
+  public CompletableFuture<String> callAsync(
+      List<String> command,
+      @Nullable Path workingDirectory,
+      @Nullable Map<String, String> environment,
+      ProcessTimeout timeout) {
+    ProcessExecutor processExecutor = processExecutorSupplier.get();
+
+    AsyncStreamSaver stdOutSaver = streamSaverFactory.newSaver();
+    AsyncStreamSaver stdErrSaver = streamSaverFactory.newSaver();
+
+    CompletableFuture<Integer> exitCodeFuture;
+    try {
+      exitCodeFuture =
+          processExecutor.runAsync(
+              command, workingDirectory, environment, stdOutSaver, stdErrSaver, timeout);
+    } catch (IOException ex) {
+      CompletableFuture<String> result = new CompletableFuture<>();
+      result.completeExceptionally(
+          new CommandExecutionException(collectOutput(stdOutSaver, stdErrSaver), ex));
+      return result;
+    }
+
+    CompletableFuture<String> result =
+        exitCodeFuture.handle(
+            (exitCode, ex) -> {
+              if (!command.isEmpty()
+                  && GcloudResultCache.invalidates(command.subList(1, command.size()))) {
+                GcloudResultCache.invalidateAll();
+              }
+              if (ex != null) {
+                throw new CompletionException(
+                    new CommandExecutionException(collectOutput(stdOutSaver, stdErrSaver), ex));
+              } else if (exitCode != 0) {
+                throw new CompletionException(
+                    new CommandExitException(exitCode, collectOutput(stdOutSaver, stdErrSaver)));
+              }
+              try {
+                return stdOutSaver.getResult().get();
+              } catch (ExecutionException executionEx) {
+                throw new CompletionException(
+                    new CommandExecutionException(
+                        collectOutput(stdOutSaver, stdErrSaver), executionEx));
+              } catch (InterruptedException interruptedEx) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(interruptedEx);
+              }
+            });
+    result.exceptionally(
+        ex -> {
+          if (ex instanceof CancellationException) {
+            exitCodeFuture.cancel(true);
+          }
+          return null;
+        });
+    return result;
+  }
+
+  private static String collectOutput(AsyncStreamSaver stdOutSaver, AsyncStreamSaver stdErrSaver) {
+    String stdOut;
+    String stdErr;
+    try {
+      stdOut = stdOutSaver.getResult().get();
+    } catch (InterruptedException | ExecutionException ignored) {
+      stdOut = "stdout collection interrupted";
+    }
+    try {
+      stdErr = stdErrSaver.getResult().get();
+    } catch (InterruptedException | ExecutionException ignored) {
+      stdErr = "stderr collection interrupted";
+    }
+    return stdOut + "\n" + stdErr;
+  }
+
   public static CommandCaller newCaller() {
-    return new CommandCaller(ProcessExecutor::new, new AsyncStreamSaverFactory());
+    return new CommandCaller(ProcessExecutor::new, new AsyncStreamSaverFactory(), null);
+  }
+
+  /** Returns a caller that memoizes the output of read-only gcloud commands in {@code cache}. */
+  public static CommandCaller newCaller(GcloudResultCache resultCache) {
+    return new CommandCaller(ProcessExecutor::new, new AsyncStreamSaverFactory(), resultCache);
   }
 }
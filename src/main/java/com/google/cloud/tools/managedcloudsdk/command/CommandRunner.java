@@ -16,13 +16,18 @@
 
 package com.google.cloud.tools.managedcloudsdk.command;
 
+import com.google.cloud.tools.appengine.operations.cloudsdk.GcloudResultCache;
 import com.google.cloud.tools.managedcloudsdk.ConsoleListener;
 import com.google.cloud.tools.managedcloudsdk.process.ProcessExecutor;
+import com.google.cloud.tools.managedcloudsdk.process.ProcessTimeout;
 import com.google.common.annotations.VisibleForTesting;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.function.Supplier;
 import javax.annotation.Nullable;
 
@@ -60,9 +65,68 @@ public class CommandRunner {
       }
     } catch (IOException ex) {
       throw new CommandExecutionException(ex);
+    } finally {
+      invalidateResultCaches(command);
     }
   }
 
+  private static void invalidateResultCaches(List<String> command) {
+    if (!command.isEmpty() && GcloudResultCache.invalidates(command.subList(1, command.size()))) {
+      GcloudResultCache.invalidateAll();
+    }
+  }
+
+  /**
+   * Run the command without blocking. The returned future completes when the process exits, or
+   * exceptionally with a {@link CommandExitException} on a non-zero exit or a {@link
+   * CommandExecutionException} if the process could not be run or timed out. Cancelling the future
+   * terminates the process.
+   */
+  public CompletableFuture<Void> runAsync(
+      List<String> command,
+      @Nullable Path workingDirectory,
+      @Nullable Map<String, String> environment,
+      ConsoleListener consoleListener,
+      ProcessTimeout timeout) {
+    ProcessExecutor processExecutor = processExecutorSupplier.get();
+
+    CompletableFuture<Integer> exitCodeFuture;
+    try {
+      exitCodeFuture =
+          processExecutor.runAsync(
+              command,
+              workingDirectory,
+              environment,
+              streamHandlerFactory.newHandler(consoleListener),
+              streamHandlerFactory.newHandler(consoleListener),
+              timeout);
+    } catch (IOException ex) {
+      CompletableFuture<Void> result = new CompletableFuture<>();
+      result.completeExceptionally(new CommandExecutionException(ex));
+      return result;
+    }
+
+    CompletableFuture<Void> result =
+        exitCodeFuture.handle(
+            (exitCode, ex) -> {
+              invalidateResultCaches(command);
+              if (ex != null) {
+                throw new CompletionException(new CommandExecutionException(ex));
+              } else if (exitCode != 0) {
+                throw new CompletionException(new CommandExitException(exitCode));
+              }
+              return null;
+            });
+    result.exceptionally(
+        ex -> {
+          if (ex instanceof CancellationException) {
+            exitCodeFuture.cancel(true);
+          }
+          return null;
+        });
+    return result;
+  }
+
   public static CommandRunner newRunner() {
     return new CommandRunner(ProcessExecutor::new, new AsyncStreamHandlerFactory());
   }
@@ -16,6 +16,7 @@
 
 package com.google.cloud.tools.managedcloudsdk.components;
 
+import com.google.cloud.tools.appengine.operations.cloudsdk.process.ProcessRegistry;
 import com.google.cloud.tools.managedcloudsdk.command.CommandCaller;
 import com.google.cloud.tools.managedcloudsdk.command.CommandExecutionException;
 import com.google.cloud.tools.managedcloudsdk.command.CommandExitException;
@@ -55,7 +56,7 @@ public class WindowsBundledPythonCopier implements BundledPythonCopier {
     String pythonExePath = commandCaller.call(copyPythonCommand, null, null).trim();
 
     if (isUnderTempDirectory(pythonExePath, System.getenv())) {
-      Runtime.getRuntime().addShutdownHook(new Thread(() -> deleteCopiedPython(pythonExePath)));
+      ProcessRegistry.getInstance().addShutdownTask(() -> deleteCopiedPython(pythonExePath));
     }
 
     return ImmutableMap.of("CLOUDSDK_PYTHON", pythonExePath);
@@ -16,6 +16,8 @@
 
 package com.google.cloud.tools.managedcloudsdk.install;
 
+import com.google.cloud.tools.jfr.FlightRecorderEvent;
+import com.google.cloud.tools.jfr.FlightRecorderEventType;
 import com.google.cloud.tools.managedcloudsdk.ProgressListener;
 import java.io.BufferedOutputStream;
 import java.io.IOException;
@@ -26,6 +28,7 @@ import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.util.Locale;
 import java.util.logging.Logger;
 
@@ -35,6 +38,16 @@ final class Downloader {
   private static final Logger logger = Logger.getLogger(Downloader.class.getName());
 
   static final int BUFFER_SIZE = 8 * 1024;
+
+  private static final FlightRecorderEventType DOWNLOAD_EVENT =
+      FlightRecorderEventType.builder("com.google.cloud.tools.managedcloudsdk.Download")
+          .setLabel("Cloud SDK Download")
+          .setThreshold(Duration.ofMillis(20))
+          .addStringField("url", "URL")
+          .addLongField("contentLength", "Content Length")
+          .addLongField("bytes", "Bytes Transferred")
+          .build();
+
   private final URL address;
   private final Path destinationFile;
   private final String userAgentString;
@@ -58,12 +71,15 @@ final class Downloader {
     if (Files.exists(destinationFile)) {
       throw new FileAlreadyExistsException(destinationFile.toString());
     }
+    FlightRecorderEvent event = DOWNLOAD_EVENT.begin().set("url", address.toString());
+    long bytesTransferred = 0;
     URLConnection connection = address.openConnection();
     connection.setRequestProperty("User-Agent", userAgentString);
 
     try (InputStream in = connection.getInputStream()) {
       // note : contentLength can potentially be -1 if it is unknown.
       long contentLength = connection.getContentLengthLong();
+      event.set("contentLength", contentLength);
 
       logger.info("Downloading " + address + " to " + destinationFile);
 
@@ -85,9 +101,12 @@ final class Downloader {
           }
 
           out.write(buffer, 0, bytesRead);
+          bytesTransferred += bytesRead;
           progressListener.update(bytesRead);
         }
       }
+    } finally {
+      event.set("bytes", bytesTransferred).commit();
     }
     progressListener.done();
   }
@@ -16,6 +16,8 @@
 
 package com.google.cloud.tools.managedcloudsdk.install;
 
+import com.google.cloud.tools.jfr.FlightRecorderEvent;
+import com.google.cloud.tools.jfr.FlightRecorderEventType;
 import com.google.cloud.tools.managedcloudsdk.ProgressListener;
 import java.io.BufferedOutputStream;
 import java.io.File;
@@ -24,6 +26,7 @@ import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.PosixFileAttributeView;
+import java.time.Duration;
 import java.util.logging.Logger;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
@@ -40,6 +43,15 @@ final class TarGzExtractorProvider implements ExtractorProvider {
 
   private static final Logger logger = Logger.getLogger(TarGzExtractorProvider.class.getName());
 
+  private static final FlightRecorderEventType EXTRACT_EVENT =
+      FlightRecorderEventType.builder("com.google.cloud.tools.managedcloudsdk.ExtractTarGz")
+          .setLabel("Cloud SDK tar.gz Extraction")
+          .setThreshold(Duration.ofMillis(20))
+          .addStringField("archive", "Archive")
+          .addLongField("entries", "Entries Processed")
+          .addLongField("bytes", "Bytes Extracted")
+          .build();
+
   /** Only instantiated in {@link ExtractorFactory}. */
   TarGzExtractorProvider() {}
 
@@ -51,6 +63,9 @@ final class TarGzExtractorProvider implements ExtractorProvider {
         "Extracting archive: " + archive.getFileName(), ProgressListener.UNKNOWN);
 
     String canonicalDestination = destination.toFile().getCanonicalPath();
+    FlightRecorderEvent event = EXTRACT_EVENT.begin().set("archive", archive.toString());
+    long entries = 0;
+    long bytes = 0;
 
     GzipCompressorInputStream gzipIn = new GzipCompressorInputStream(Files.newInputStream(archive));
     try (TarArchiveInputStream in = new TarArchiveInputStream(gzipIn)) {
@@ -64,6 +79,7 @@ final class TarGzExtractorProvider implements ExtractorProvider {
         }
 
         progressListener.update(1);
+        entries++;
         logger.fine(entryTarget.toString());
 
         if (entry.isDirectory()) {
@@ -75,7 +91,7 @@ final class TarGzExtractorProvider implements ExtractorProvider {
             Files.createDirectories(entryTarget.getParent());
           }
           try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(entryTarget))) {
-            IOUtils.copy(in, out);
+            bytes += IOUtils.copy(in, out);
             PosixFileAttributeView attributeView =
                 Files.getFileAttributeView(entryTarget, PosixFileAttributeView.class);
             if (attributeView != null) {
@@ -88,6 +104,8 @@ final class TarGzExtractorProvider implements ExtractorProvider {
         }
       }
       progressListener.done();
+    } finally {
+      event.set("entries", entries).set("bytes", bytes).commit();
     }
   }
 }
@@ -16,6 +16,8 @@
 
 package com.google.cloud.tools.managedcloudsdk.install;
 
+import com.google.cloud.tools.jfr.FlightRecorderEvent;
+import com.google.cloud.tools.jfr.FlightRecorderEventType;
 import com.google.cloud.tools.managedcloudsdk.ProgressListener;
 import com.google.common.annotations.VisibleForTesting;
 import java.io.BufferedOutputStream;
@@ -26,6 +28,7 @@ import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.PosixFileAttributeView;
+import java.time.Duration;
 import java.util.Enumeration;
 import java.util.logging.Logger;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
@@ -42,6 +45,15 @@ final class ZipExtractorProvider implements ExtractorProvider {
 
   private static final Logger logger = Logger.getLogger(ZipExtractorProvider.class.getName());
 
+  private static final FlightRecorderEventType EXTRACT_EVENT =
+      FlightRecorderEventType.builder("com.google.cloud.tools.managedcloudsdk.ExtractZip")
+          .setLabel("Cloud SDK zip Extraction")
+          .setThreshold(Duration.ofMillis(20))
+          .addStringField("archive", "Archive")
+          .addLongField("entries", "Entries Processed")
+          .addLongField("bytes", "Bytes Extracted")
+          .build();
+
   /** Only instantiated in {@link ExtractorFactory}. */
   @VisibleForTesting
   ZipExtractorProvider() {}
@@ -54,6 +66,9 @@ final class ZipExtractorProvider implements ExtractorProvider {
         "Extracting archive: " + archive.getFileName(), ProgressListener.UNKNOWN);
 
     String canonicalDestination = destination.toFile().getCanonicalPath();
+    FlightRecorderEvent event = EXTRACT_EVENT.begin().set("archive", archive.toString());
+    long entries = 0;
+    long bytes = 0;
 
     // Use ZipFile instead of ZipArchiveInputStream so that we can obtain file permissions
     // on unix-like systems via getUnixMode(). ZipArchiveInputStream doesn't have access to
@@ -71,6 +86,7 @@ final class ZipExtractorProvider implements ExtractorProvider {
         }
 
         progressListener.update(1);
+        entries++;
         logger.fine(entryTarget.toString());
 
         if (entry.isDirectory()) {
@@ -83,7 +99,7 @@ final class ZipExtractorProvider implements ExtractorProvider {
           }
           try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(entryTarget))) {
             try (InputStream in = zipFile.getInputStream(entry)) {
-              IOUtils.copy(in, out);
+              bytes += IOUtils.copy(in, out);
               PosixFileAttributeView attributeView =
                   Files.getFileAttributeView(entryTarget, PosixFileAttributeView.class);
               if (attributeView != null) {
@@ -94,6 +110,8 @@ final class ZipExtractorProvider implements ExtractorProvider {
           }
         }
       }
+    } finally {
+      event.set("entries", entries).set("bytes", bytes).commit();
     }
     progressListener.done();
   }
@@ -16,11 +16,27 @@
 
 package com.google.cloud.tools.managedcloudsdk.process;
 
+import com.google.cloud.tools.appengine.operations.cloudsdk.process.ProcessCommandInfo;
+import com.google.cloud.tools.appengine.operations.cloudsdk.process.ProcessMetrics;
+import com.google.cloud.tools.jfr.FlightRecorderEvent;
+import com.google.cloud.tools.jfr.FlightRecorderEventType;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.annotation.Nullable;
 
@@ -29,7 +45,21 @@ public class ProcessExecutor {
 
   private static final Logger logger = Logger.getLogger(ProcessExecutor.class.getName());
 
+  private static final FlightRecorderEventType PROCESS_EVENT =
+      FlightRecorderEventType.builder("com.google.cloud.tools.managedcloudsdk.ProcessRun")
+          .setLabel("Managed Cloud SDK Process")
+          .setThreshold(Duration.ofMillis(10))
+          .addStringField("command", "Command")
+          .addLongField("exitCode", "Exit Code")
+          .build();
+
+  // shared by all executors, threads only block in Process.waitFor
+  private static final ExecutorService WAITER_EXECUTOR =
+      Executors.newCachedThreadPool(
+          new ThreadFactoryBuilder().setDaemon(true).setNameFormat("process-waiter-%d").build());
+
   private ProcessBuilderFactory processBuilderFactory = new ProcessBuilderFactory();
+  private ExecutorService waiterExecutor = WAITER_EXECUTOR;
 
   @VisibleForTesting
   ProcessExecutor setProcessBuilderFactory(ProcessBuilderFactory processBuilderFactory) {
@@ -37,6 +67,12 @@ public class ProcessExecutor {
     return this;
   }
 
+  @VisibleForTesting
+  ProcessExecutor setWaiterExecutor(ExecutorService waiterExecutor) {
+    this.waiterExecutor = waiterExecutor;
+    return this;
+  }
+
   @VisibleForTesting
   static class ProcessBuilderFactory {
     ProcessBuilder createProcessBuilder() {
@@ -61,6 +97,132 @@ public class ProcessExecutor {
       AsyncStreamHandler stdout,
       AsyncStreamHandler stderr)
       throws IOException, InterruptedException {
+    FlightRecorderEvent event = PROCESS_EVENT.begin();
+    if (event.isRecording()) {
+      // only the subcommand path, arguments may contain secrets
+      event.set(
+          "command",
+          ProcessCommandInfo.of(toolName(command), command.subList(1, command.size())).getName());
+      // overwritten once the process exits
+      event.set("exitCode", -1);
+    }
+    try {
+      Process process = start(command, workingDirectory, environment);
+
+      stdout.handleStream(process.getInputStream());
+      stderr.handleStream(process.getErrorStream());
+
+      try {
+        int exitCode = process.waitFor();
+        event.set("exitCode", exitCode);
+        return exitCode;
+      } catch (InterruptedException ex) {
+        process.destroy();
+        throw ex; // rethrow after cleanup
+      }
+    } finally {
+      event.commit();
+    }
+  }
+
+  /**
+   * Runs the command without blocking. The returned future completes with the process exit code, or
+   * exceptionally with a {@link TimeoutException} if the process did not exit within {@code
+   * timeout}. Cancelling the future terminates the process and closes its streams, which stops the
+   * stream handlers.
+   *
+   * @param command list of command line tokens
+   * @param workingDirectory the working directory to run the command from
+   * @param environment a map of environment variables
+   * @param stdout a stdout stream handler that must run on a separate thread
+   * @param stderr a stderr stream handler that must run on a separate thread
+   * @param timeout the timeout and kill grace settings for this process
+   * @return a future of the exit code from the process
+   * @throws IOException if the process could not be started
+   */
+  public CompletableFuture<Integer> runAsync(
+      List<String> command,
+      @Nullable Path workingDirectory,
+      @Nullable Map<String, String> environment,
+      AsyncStreamHandler stdout,
+      AsyncStreamHandler stderr,
+      ProcessTimeout timeout)
+      throws IOException {
+
+    Process process = start(command, workingDirectory, environment);
+
+    stdout.handleStream(process.getInputStream());
+    stderr.handleStream(process.getErrorStream());
+
+    CompletableFuture<Integer> result = new CompletableFuture<>();
+    // set by whoever tears down the process: the waiter, or a cancellation before it started
+    AtomicBoolean claimed = new AtomicBoolean();
+    Future<?> waiter =
+        waiterExecutor.submit(
+            () -> {
+              if (claimed.compareAndSet(false, true)) {
+                waitFor(process, timeout, result);
+              }
+            });
+    result.exceptionally(
+        ex -> {
+          if (ex instanceof CancellationException) {
+            if (claimed.compareAndSet(false, true)) {
+              // the waiter never ran, e.g. a busy executor, so it cannot clean up
+              waiter.cancel(false);
+              terminateNow(process);
+            } else {
+              // interrupts the waiter, which terminates the process
+              waiter.cancel(true);
+            }
+          }
+          return null;
+        });
+    return result;
+  }
+
+  private static void terminateNow(Process process) {
+    try {
+      // no grace period, the cancelling thread must not block
+      ProcessTerminator.terminate(process, Duration.ZERO);
+    } catch (InterruptedException ex) {
+      process.destroyForcibly();
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static void waitFor(
+      Process process, ProcessTimeout timeout, CompletableFuture<Integer> result) {
+    try {
+      Optional<Duration> limit = timeout.getTimeout();
+      if (!limit.isPresent()) {
+        result.complete(process.waitFor());
+      } else if (process.waitFor(limit.get().toMillis(), TimeUnit.MILLISECONDS)) {
+        result.complete(process.exitValue());
+      } else {
+        ProcessTerminator.terminate(process, timeout.getKillGrace());
+        result.completeExceptionally(
+            new TimeoutException("Process timed out after " + limit.get().toMillis() + "ms"));
+      }
+    } catch (InterruptedException ex) {
+      try {
+        ProcessTerminator.terminate(process, timeout.getKillGrace());
+      } catch (InterruptedException terminateEx) {
+        logger.log(Level.FINE, "Interrupted while terminating process", terminateEx);
+        process.destroyForcibly();
+      }
+      // no-op if the future was cancelled
+      result.completeExceptionally(ex);
+    } catch (RuntimeException ex) {
+      result.completeExceptionally(ex);
+    }
+  }
+
+  private Process start(
+      List<String> command,
+      @Nullable Path workingDirectory,
+      @Nullable Map<String, String> environment)
+      throws IOException {
 
     logger.fine("Running command : " + command);
     if (workingDirectory != null) {
@@ -79,16 +241,17 @@ public class ProcessExecutor {
     if (environment != null) {
       processBuilder.environment().putAll(environment);
     }
-    Process process = processBuilder.start();
-
-    stdout.handleStream(process.getInputStream());
-    stderr.handleStream(process.getErrorStream());
+    return ProcessMetrics.getInstance()
+        .start(processBuilder, toolName(command), command.subList(1, command.size()));
+  }
 
-    try {
-      return process.waitFor();
-    } catch (InterruptedException ex) {
-      process.destroy();
-      throw ex; // rethrow after cleanup
-    }
+  /** Returns the executable's file name without extension, e.g. 'gcloud' for 'bin/gcloud.cmd'. */
+  private static String toolName(List<String> command) {
+    String executable = command.get(0);
+    String fileName =
+        executable.substring(
+            Math.max(executable.lastIndexOf('/'), executable.lastIndexOf('\\')) + 1);
+    int extension = fileName.lastIndexOf('.');
+    return extension > 0 ? fileName.substring(0, extension) : fileName;
   }
 }
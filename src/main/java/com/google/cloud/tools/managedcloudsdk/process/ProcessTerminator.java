@@ -0,0 +1,137 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.managedcloudsdk.process;
+
+import com.google.cloud.tools.appengine.operations.cloudsdk.internal.process.MeteredProcess;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
+
+/**
+ * Tears down a process: destroy, wait for a grace period, then destroy forcibly. Descendant
+ * processes are destroyed too when running on Java 9 or newer ({@code ProcessHandle} is looked up
+ * reflectively so that Java 8 consumers are unaffected).
+ */
+public class ProcessTerminator {
+
+  private static final Logger logger = Logger.getLogger(ProcessTerminator.class.getName());
+
+  @Nullable private static final Method TO_HANDLE;
+  @Nullable private static final Method DESCENDANTS;
+  @Nullable private static final Method DESTROY_FORCIBLY;
+
+  static {
+    Method toHandle = null;
+    Method descendants = null;
+    Method destroyForcibly = null;
+    try {
+      Class<?> processHandle = Class.forName("java.lang.ProcessHandle");
+      toHandle = Process.class.getMethod("toHandle");
+      descendants = processHandle.getMethod("descendants");
+      destroyForcibly = processHandle.getMethod("destroyForcibly");
+    } catch (ReflectiveOperationException ex) {
+      // Java 8, descendants cannot be enumerated
+    }
+    TO_HANDLE = toHandle;
+    DESCENDANTS = descendants;
+    DESTROY_FORCIBLY = destroyForcibly;
+  }
+
+  private ProcessTerminator() {}
+
+  /**
+   * Terminates the process and closes its streams so that any threads pumping them see
+   * end-of-stream.
+   *
+   * @param process the process to terminate
+   * @param killGrace time to wait after {@link Process#destroy()} before destroying forcibly
+   */
+  public static void terminate(Process process, Duration killGrace) throws InterruptedException {
+    // capture descendants before the parent dies, they are re-parented afterwards
+    List<Object> descendants = descendantsOf(process);
+    try {
+      process.destroy();
+      if (killGrace.isZero() || !process.waitFor(killGrace.toMillis(), TimeUnit.MILLISECONDS)) {
+        process.destroyForcibly();
+      }
+    } finally {
+      for (Object descendant : descendants) {
+        destroyForcibly(descendant);
+      }
+      closeQuietly(process.getOutputStream());
+      closeQuietly(process.getInputStream());
+      closeQuietly(process.getErrorStream());
+    }
+  }
+
+  private static List<Object> descendantsOf(Process process) {
+    if (TO_HANDLE == null || DESCENDANTS == null) {
+      return Collections.emptyList();
+    }
+    Process target = process;
+    while (target instanceof MeteredProcess) {
+      // the wrapper has no handle of its own
+      target = ((MeteredProcess) target).getDelegate();
+    }
+    try {
+      Object handle = TO_HANDLE.invoke(target);
+      if (handle == null) {
+        return Collections.emptyList();
+      }
+      Stream<?> stream = (Stream<?>) DESCENDANTS.invoke(handle);
+      if (stream == null) {
+        return Collections.emptyList();
+      }
+      return stream.collect(Collectors.toList());
+    } catch (ReflectiveOperationException | RuntimeException ex) {
+      // custom Process implementations may not support handles
+      logger.log(Level.FINE, "Unable to enumerate process descendants", ex);
+      return Collections.emptyList();
+    }
+  }
+
+  private static void destroyForcibly(Object processHandle) {
+    if (DESTROY_FORCIBLY == null) {
+      return;
+    }
+    try {
+      DESTROY_FORCIBLY.invoke(processHandle);
+    } catch (ReflectiveOperationException | RuntimeException ex) {
+      logger.log(Level.FINE, "Unable to destroy descendant process " + processHandle, ex);
+    }
+  }
+
+  private static void closeQuietly(@Nullable Closeable closeable) {
+    if (closeable == null) {
+      return;
+    }
+    try {
+      closeable.close();
+    } catch (IOException ex) {
+      // the stream is being abandoned anyway
+    }
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.managedcloudsdk.process;
+
+import com.google.common.base.Preconditions;
+import java.time.Duration;
+import java.util.Optional;
+import javax.annotation.Nullable;
+
+/**
+ * Timeout settings for an asynchronously executed process. When the timeout elapses the process is
+ * asked to terminate, and if it is still alive after the kill grace period it (and its descendants,
+ * where the JVM supports it) is forcibly destroyed.
+ */
+public class ProcessTimeout {
+
+  private static final Duration DEFAULT_KILL_GRACE = Duration.ofSeconds(5);
+
+  @Nullable private final Duration timeout;
+  private final Duration killGrace;
+
+  private ProcessTimeout(@Nullable Duration timeout, Duration killGrace) {
+    this.timeout = timeout;
+    this.killGrace = killGrace;
+  }
+
+  /** Returns settings that wait for the process indefinitely. */
+  public static ProcessTimeout none() {
+    return new ProcessTimeout(null, DEFAULT_KILL_GRACE);
+  }
+
+  /**
+   * Returns settings that terminate the process once {@code timeout} has elapsed.
+   *
+   * @param timeout the maximum time to wait for the process to exit, must be positive
+   */
+  public static ProcessTimeout of(Duration timeout) {
+    Preconditions.checkArgument(
+        !timeout.isNegative() && !timeout.isZero(), "timeout must be positive");
+    return new ProcessTimeout(timeout, DEFAULT_KILL_GRACE);
+  }
+
+  /**
+   * Returns a copy of these settings with a different kill grace period.
+   *
+   * @param killGrace time between the polite {@link Process#destroy()} and {@link
+   *     Process#destroyForcibly()}, can be zero to skip straight to forcible destruction
+   */
+  public ProcessTimeout withKillGrace(Duration killGrace) {
+    Preconditions.checkArgument(!killGrace.isNegative(), "killGrace must not be negative");
+    return new ProcessTimeout(timeout, killGrace);
+  }
+
+  /** The maximum time to wait for the process, or empty if there is no limit. */
+  public Optional<Duration> getTimeout() {
+    return Optional.ofNullable(timeout);
+  }
+
+  public Duration getKillGrace() {
+    return killGrace;
+  }
+
+  @Override
+  public String toString() {
+    return "ProcessTimeout{timeout=" + timeout + ", killGrace=" + killGrace + "}";
+  }
+}
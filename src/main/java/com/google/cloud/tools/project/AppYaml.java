@@ -118,7 +118,10 @@ public class AppYaml {
     return serviceId;
   }
 
-  /** Return the content of the {@code env_variables} field, which defines environment variables. */
+  /**
+   * Return the content of the {@code env_variables} field, which defines environment variables. The
+   * map is unmodifiable, parsed files may be shared through a {@code DescriptorCache}.
+   */
   @Nullable
   public Map<String, ?> getEnvironmentVariables() {
     return getStringMap(ENVIRONMENT_VARIABLES_KEY);
@@ -134,6 +137,7 @@ public class AppYaml {
   @SuppressWarnings("unchecked")
   private Map<String, ?> getStringMap(String key) {
     Object value = yamlMap.get(key);
-    return value instanceof Map<?, ?> ? (Map<String, ?>) value : null;
+    // unmodifiable, parsed files are shared
+    return value instanceof Map<?, ?> ? Collections.unmodifiableMap((Map<String, ?>) value) : null;
   }
 }
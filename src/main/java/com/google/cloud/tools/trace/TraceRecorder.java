@@ -0,0 +1,188 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.trace;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Records a timeline of {@link TraceSpan}s and exports it in the Chrome Trace Event format, which
+ * can be opened in Perfetto or {@code chrome://tracing}. Spans are laid out on the thread that
+ * started them, nested by time. Thread safe.
+ *
+ * <pre>{@code
+ * TraceRecorder trace = TraceRecorder.create();
+ * try (TraceSpan span = trace.startSpan("Install", "install")) {
+ *   ...
+ * }
+ * trace.writeTo(Paths.get("build/trace.json"));
+ * }</pre>
+ */
+public class TraceRecorder {
+
+  /** A recorder that records nothing, for callers that do not trace. */
+  public static final TraceRecorder NO_OP = new TraceRecorder(Ticker.systemTicker(), false);
+
+  // the trace has a single process, Chrome requires one
+  private static final int PID = 1;
+
+  private final Ticker ticker;
+  private final boolean enabled;
+  private final long originNanos;
+  private final ConcurrentLinkedQueue<TraceSpan> spans = new ConcurrentLinkedQueue<>();
+  private final ConcurrentLinkedQueue<Map<String, Object>> events = new ConcurrentLinkedQueue<>();
+  private final Map<Long, String> threadNames = new ConcurrentHashMap<>();
+
+  @VisibleForTesting
+  TraceRecorder(Ticker ticker, boolean enabled) {
+    this.ticker = ticker;
+    this.enabled = enabled;
+    this.originNanos = ticker.read();
+  }
+
+  /** Creates a new recorder, timestamps are relative to its creation. */
+  public static TraceRecorder create() {
+    return new TraceRecorder(Ticker.systemTicker(), true);
+  }
+
+  /** Returns false if this recorder discards everything, so costly span names can be skipped. */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Starts a span on the current thread. It ends with {@link TraceSpan#end()}; spans that are not
+   * ended when the trace is exported are reported up to the export time.
+   *
+   * @param name the name shown on the timeline
+   * @param category a category to filter spans by, e.g. {@code install} or {@code staging}
+   */
+  public TraceSpan startSpan(String name, String category) {
+    if (!enabled) {
+      return TraceSpan.NO_OP;
+    }
+    Thread thread = Thread.currentThread();
+    threadNames.putIfAbsent(thread.getId(), thread.getName());
+    TraceSpan span = new TraceSpan(this, name, category, thread.getId(), nowMicros());
+    spans.add(span);
+    return span;
+  }
+
+  void instant(String name, String category, long threadId) {
+    Map<String, Object> event = newEvent(name, category, "i", nowMicros(), threadId);
+    event.put("s", "t");
+    events.add(event);
+  }
+
+  long nowMicros() {
+    return (ticker.read() - originNanos) / 1000;
+  }
+
+  private static Map<String, Object> newEvent(
+      String name, String category, String phase, long timestampMicros, long threadId) {
+    Map<String, Object> event = new LinkedHashMap<>();
+    event.put("name", name);
+    event.put("cat", category);
+    event.put("ph", phase);
+    event.put("ts", timestampMicros);
+    event.put("pid", PID);
+    event.put("tid", threadId);
+    return event;
+  }
+
+  /** Returns the recorded trace events, ordered by timestamp. */
+  @VisibleForTesting
+  List<Map<String, Object>> getTraceEvents() {
+    long exportMicros = nowMicros();
+    List<Map<String, Object>> traceEvents = new ArrayList<>();
+    for (TraceSpan span : spans) {
+      Map<String, Object> event =
+          newEvent(span.getName(), span.getCategory(), "X", span.getStartMicros(), span.threadId);
+      long endMicros = span.getEndMicros();
+      Map<String, Object> args = new LinkedHashMap<>(span.getArgs());
+      if (endMicros < 0) {
+        endMicros = exportMicros;
+        args.put("unfinished", true);
+      }
+      event.put("dur", endMicros - span.getStartMicros());
+      if (!args.isEmpty()) {
+        event.put("args", args);
+      }
+      traceEvents.add(event);
+    }
+    traceEvents.addAll(events);
+    // stable sort, so spans that start together keep their start order and nest properly
+    traceEvents.sort(
+        Comparator.comparingLong(event -> ((Number) event.getOrDefault("ts", 0L)).longValue()));
+
+    for (Map.Entry<Long, String> thread : threadNames.entrySet()) {
+      Map<String, Object> metadata = newEvent("thread_name", "__metadata", "M", 0, thread.getKey());
+      Map<String, Object> args = new LinkedHashMap<>();
+      args.put("name", thread.getValue());
+      metadata.put("args", args);
+      traceEvents.add(0, metadata);
+    }
+    return traceEvents;
+  }
+
+  /** Returns the trace in the Chrome Trace Event JSON object format. */
+  public String toJson() {
+    return newGson().toJson(toTraceObject());
+  }
+
+  /** Writes the trace in the Chrome Trace Event JSON object format. */
+  public void writeTo(Writer writer) throws IOException {
+    newGson().toJson(toTraceObject(), writer);
+    writer.flush();
+  }
+
+  /** Writes the trace to a file, replacing it if it exists. */
+  public void writeTo(Path file) throws IOException {
+    Path parent = file.toAbsolutePath().getParent();
+    if (parent != null) {
+      Files.createDirectories(parent);
+    }
+    try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      writeTo(writer);
+    }
+  }
+
+  private Map<String, Object> toTraceObject() {
+    Map<String, Object> trace = new LinkedHashMap<>();
+    trace.put("traceEvents", getTraceEvents());
+    trace.put("displayTimeUnit", "ms");
+    return trace;
+  }
+
+  private static Gson newGson() {
+    return new GsonBuilder().disableHtmlEscaping().create();
+  }
+}
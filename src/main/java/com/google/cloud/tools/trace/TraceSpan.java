@@ -0,0 +1,112 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.trace;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * A timed operation of a {@link TraceRecorder}, exported as a complete ({@code "X"}) event. Ending
+ * a span more than once has no effect.
+ */
+public class TraceSpan implements AutoCloseable {
+
+  /** A span that records nothing. */
+  public static final TraceSpan NO_OP = new TraceSpan(null, "", "", 0, 0);
+
+  @Nullable private final TraceRecorder recorder;
+  private final String name;
+  private final String category;
+  final long threadId;
+  private final long startMicros;
+  private volatile long endMicros = -1;
+  private final Map<String, Object> args = Collections.synchronizedMap(new LinkedHashMap<>());
+
+  TraceSpan(
+      @Nullable TraceRecorder recorder,
+      String name,
+      String category,
+      long threadId,
+      long startMicros) {
+    this.recorder = recorder;
+    this.name = name;
+    this.category = category;
+    this.threadId = threadId;
+    this.startMicros = startMicros;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getCategory() {
+    return category;
+  }
+
+  long getStartMicros() {
+    return startMicros;
+  }
+
+  /** The end timestamp, or -1 if the span has not ended. */
+  long getEndMicros() {
+    return endMicros;
+  }
+
+  Map<String, Object> getArgs() {
+    synchronized (args) {
+      return new LinkedHashMap<>(args);
+    }
+  }
+
+  /** Attaches a numeric value shown in the details of the span. */
+  public TraceSpan setArg(String key, long value) {
+    if (recorder != null) {
+      args.put(key, value);
+    }
+    return this;
+  }
+
+  /** Attaches a text value shown in the details of the span. */
+  public TraceSpan setArg(String key, String value) {
+    if (recorder != null) {
+      args.put(key, value);
+    }
+    return this;
+  }
+
+  /** Marks a point in time within this span, e.g. a progress message. */
+  public void instant(String message) {
+    if (recorder != null) {
+      recorder.instant(message, category, threadId);
+    }
+  }
+
+  /** Ends the span. */
+  public void end() {
+    TraceRecorder traceRecorder = recorder;
+    if (traceRecorder != null && endMicros < 0) {
+      endMicros = traceRecorder.nowMicros();
+    }
+  }
+
+  @Override
+  public void close() {
+    end();
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.appengine.operations.cloudsdk.internal.process;
+
+import com.google.common.base.Ticker;
+import java.util.stream.Stream;
+
+/**
+ * A {@link MeteredProcess} that also forwards the Java 9 {@link ProcessHandle} methods, whose
+ * defaults throw {@link UnsupportedOperationException}. Only compiled on JDK 9 and newer, and
+ * created reflectively by {@link MeteredProcess#wrap}.
+ */
+class Java9MeteredProcess extends MeteredProcess {
+
+  Java9MeteredProcess(Process delegate, Ticker ticker, long startNanos, Events events) {
+    super(delegate, ticker, startNanos, events);
+  }
+
+  @Override
+  public ProcessHandle toHandle() {
+    return getDelegate().toHandle();
+  }
+
+  @Override
+  public ProcessHandle.Info info() {
+    return getDelegate().info();
+  }
+
+  @Override
+  public long pid() {
+    return getDelegate().pid();
+  }
+
+  @Override
+  public Stream<ProcessHandle> children() {
+    return getDelegate().children();
+  }
+
+  @Override
+  public Stream<ProcessHandle> descendants() {
+    return getDelegate().descendants();
+  }
+
+  @Override
+  public boolean supportsNormalTermination() {
+    return getDelegate().supportsNormalTermination();
+  }
+}
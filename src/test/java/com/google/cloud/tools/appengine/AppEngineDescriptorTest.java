@@ -25,13 +25,19 @@ import com.google.common.collect.ImmutableMap;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Map;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.xml.sax.SAXException;
 
 public class AppEngineDescriptorTest {
 
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
   private static final String TEST_VERSION = "fooVersion";
   private static final String TEST_ID = "fooId";
   private static final String RUNTIME_ID = "java8";
@@ -219,6 +225,93 @@ public class AppEngineDescriptorTest {
     assertEquals(expectedEnvironment, environment);
   }
 
+  @Test
+  public void testParse_firstElementWins() throws AppEngineException, IOException, SAXException {
+    AppEngineDescriptor descriptor =
+        parse(
+            ROOT_START_TAG
+                + "<runtime>java8</runtime><runtime>java7</runtime>"
+                + ENVIRONMENT
+                + "<env-variables><env-var name='other' value='x' /></env-variables>"
+                + ROOT_END_TAG);
+
+    assertEquals("java8", descriptor.getRuntime());
+    assertEquals(3, descriptor.getEnvironment().size());
+  }
+
+  @Test
+  public void testParse_textOfDescendants() throws AppEngineException, IOException, SAXException {
+    AppEngineDescriptor descriptor =
+        parse(
+            ROOT_START_TAG
+                + "<application>foo<![CDATA[<Id>]]><b>bar</b></application>"
+                + ROOT_END_TAG);
+
+    assertEquals("foo<Id>bar", descriptor.getProjectId());
+  }
+
+  @Test
+  public void testParse_onlyChildrenOfRoot() throws AppEngineException, IOException, SAXException {
+    AppEngineDescriptor descriptor =
+        parse(
+            "<wrapper><runtime>java6</runtime>"
+                + ROOT_START_TAG
+                + "<system-properties><service>nested</service></system-properties>"
+                + MODULE
+                + ROOT_END_TAG
+                + "</wrapper>");
+
+    assertEquals("java7", descriptor.getRuntime());
+    assertTrue(descriptor.isSandboxEnforced());
+    assertEquals(TEST_ID, descriptor.getServiceId());
+  }
+
+  @Test
+  public void testParse_malformedXml() throws IOException {
+    try {
+      parse(ROOT_START_TAG + PROJECT_ID);
+      Assert.fail();
+    } catch (SAXException ex) {
+      assertEquals("Cannot parse appengine-web.xml", ex.getMessage());
+    }
+  }
+
+  @Test
+  public void testParse_externalEntitiesNotResolved() throws Exception {
+    Path secret = temporaryFolder.newFile("secret.txt").toPath();
+    Files.write(secret, "secret".getBytes(StandardCharsets.UTF_8));
+    String xml =
+        "<!DOCTYPE appengine-web-app [<!ENTITY id SYSTEM '"
+            + secret.toUri()
+            + "'>]>"
+            + ROOT_START_TAG
+            + "<application>&id;</application>"
+            + ROOT_END_TAG;
+    try {
+      AppEngineDescriptor descriptor = parse(xml);
+      assertFalse(String.valueOf(descriptor.getProjectId()).contains("secret"));
+    } catch (SAXException ex) {
+      // rejecting the entity is fine too
+    }
+  }
+
+  @Test
+  public void testGetEnvironment_missingValue() throws IOException, SAXException {
+    AppEngineDescriptor descriptor =
+        parse(
+            ROOT_START_TAG
+                + "<env-variables><env-var name='key' /></env-variables>"
+                + RUNTIME
+                + ROOT_END_TAG);
+
+    try {
+      descriptor.getEnvironment();
+      Assert.fail();
+    } catch (AppEngineException ex) {
+      assertEquals("Environment variable key has no value", ex.getMessage());
+    }
+  }
+
   private static AppEngineDescriptor parse(String xmlString) throws IOException, SAXException {
     return AppEngineDescriptor.parse(
         new ByteArrayInputStream(xmlString.getBytes(StandardCharsets.UTF_8)));
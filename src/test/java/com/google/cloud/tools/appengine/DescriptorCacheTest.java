@@ -0,0 +1,186 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.appengine;
+
+import com.google.cloud.tools.project.AppYaml;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DescriptorCacheTest {
+
+  private static final FileTime MODIFIED = FileTime.fromMillis(1_000_000);
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final DescriptorCache cache = new DescriptorCache(2);
+
+  private Path write(String name, String content) throws IOException {
+    Path file = temporaryFolder.getRoot().toPath().resolve(name);
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    Files.setLastModifiedTime(file, MODIFIED);
+    return file;
+  }
+
+  private static String appEngineWebXml(String runtime) {
+    return "<appengine-web-app xmlns='http://appengine.google.com/ns/1.0'><runtime>"
+        + runtime
+        + "</runtime></appengine-web-app>";
+  }
+
+  private void assertStats(long hits, long misses, long evictions, int size) {
+    DescriptorCache.Stats stats = cache.getStats();
+    Assert.assertEquals(
+        "hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + ", size=" + size,
+        stats.toString());
+  }
+
+  @Test
+  public void testGetAppEngineDescriptor_cachedUntilFileChanges() throws Exception {
+    Path file = write("appengine-web.xml", appEngineWebXml("java8"));
+
+    AppEngineDescriptor first = cache.getAppEngineDescriptor(file);
+    Assert.assertSame(first, cache.getAppEngineDescriptor(file));
+    assertStats(1, 1, 0, 1);
+
+    write("appengine-web.xml", appEngineWebXml("java11"));
+    Assert.assertEquals("java11", cache.getAppEngineDescriptor(file).getRuntime());
+    assertStats(1, 2, 0, 1);
+  }
+
+  @Test
+  public void testGetAppYaml_cachedUntilFileChanges() throws Exception {
+    Path file = write("app.yaml", "runtime: java11\n");
+
+    AppYaml first = cache.getAppYaml(file);
+    Assert.assertSame(first, cache.getAppYaml(file));
+
+    Files.setLastModifiedTime(file, FileTime.fromMillis(2_000_000));
+    Assert.assertNotSame(first, cache.getAppYaml(file));
+    assertStats(1, 2, 0, 1);
+  }
+
+  @Test
+  public void testGetAppEngineDescriptor_replacedFile() throws Exception {
+    Path file = write("appengine-web.xml", appEngineWebXml("java8"));
+    cache.getAppEngineDescriptor(file);
+
+    // same size and modification time, but a new file
+    Path replacement = write("replacement.xml", appEngineWebXml("java7"));
+    Files.move(replacement, file, StandardCopyOption.REPLACE_EXISTING);
+    Files.setLastModifiedTime(file, MODIFIED);
+
+    Assert.assertEquals("java7", cache.getAppEngineDescriptor(file).getRuntime());
+  }
+
+  @Test
+  public void testEviction_leastRecentlyUsed() throws Exception {
+    Path a = write("a.yaml", "runtime: a\n");
+    Path b = write("b.yaml", "runtime: b\n");
+    Path c = write("c.yaml", "runtime: c\n");
+
+    cache.getAppYaml(a);
+    cache.getAppYaml(b);
+    cache.getAppYaml(a);
+    cache.getAppYaml(c);
+    assertStats(1, 3, 1, 2);
+
+    cache.getAppYaml(a);
+    cache.getAppYaml(b);
+    assertStats(2, 4, 2, 2);
+  }
+
+  @Test
+  public void testFailuresNotCached() throws Exception {
+    Path file = write("app.yaml", "runtime: [java11\n");
+    for (int i = 0; i < 2; i++) {
+      try {
+        cache.getAppYaml(file);
+        Assert.fail();
+      } catch (AppEngineException ex) {
+        Assert.assertEquals("Malformed 'app.yaml'.", ex.getMessage());
+      }
+    }
+    assertStats(0, 2, 0, 0);
+  }
+
+  @Test
+  public void testRecentlyModifiedFilesNotCached() throws Exception {
+    Path file = write("appengine-web.xml", appEngineWebXml("java8"));
+    Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+
+    AppEngineDescriptor first = cache.getAppEngineDescriptor(file);
+    Assert.assertNotSame(first, cache.getAppEngineDescriptor(file));
+    assertStats(0, 2, 0, 0);
+
+    Files.setLastModifiedTime(file, MODIFIED);
+    Assert.assertSame(cache.getAppEngineDescriptor(file), cache.getAppEngineDescriptor(file));
+  }
+
+  @Test
+  public void testInvalidate() throws Exception {
+    Path file = write("app.yaml", "runtime: java11\n");
+    AppYaml first = cache.getAppYaml(file);
+
+    cache.invalidate(file);
+    Assert.assertNotSame(first, cache.getAppYaml(file));
+    cache.invalidateAll();
+    assertStats(0, 2, 0, 0);
+  }
+
+  @Test
+  public void testConcurrentAccess() throws Exception {
+    Path file = write("appengine-web.xml", appEngineWebXml("java8"));
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<AppEngineDescriptor>> results = new ArrayList<>();
+      for (int i = 0; i < 100; i++) {
+        results.add(executor.submit(() -> cache.getAppEngineDescriptor(file)));
+      }
+      for (Future<AppEngineDescriptor> result : results) {
+        Assert.assertEquals("java8", result.get().getRuntime());
+      }
+    } finally {
+      executor.shutdown();
+    }
+    DescriptorCache.Stats stats = cache.getStats();
+    Assert.assertEquals(100, stats.getHits() + stats.getMisses());
+    Assert.assertEquals(1, stats.getSize());
+  }
+
+  @Test
+  public void testConstructor_invalidSize() {
+    try {
+      new DescriptorCache(0);
+      Assert.fail();
+    } catch (IllegalArgumentException ex) {
+      Assert.assertEquals("maxEntries must be positive", ex.getMessage());
+    }
+  }
+}
@@ -16,6 +16,7 @@
 
 package com.google.cloud.tools.appengine.operations;
 
+import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.when;
 
 import com.google.cloud.tools.appengine.operations.cloudsdk.AppEngineJavaComponentsNotInstalledException;
@@ -46,6 +47,7 @@ public class AppCfgRunnerTest {
   @Mock private ProcessBuilder processBuilder;
   @Mock private ProcessHandler processHandler;
   @Mock private Process process;
+  @Mock private InProcessAppCfg inProcessAppCfg;
   private Path javaExecutablePath;
   private Path appengineToolsJar;
   private Path appengineJavaSdkPath;
@@ -55,12 +57,13 @@ public class AppCfgRunnerTest {
     javaExecutablePath = testFolder.getRoot().toPath().resolve("java.fake");
     appengineToolsJar = testFolder.getRoot().toPath().resolve("appengine.tools");
     appengineJavaSdkPath = testFolder.getRoot().toPath().resolve("appengine-sdk-root");
-    when(sdk.getJavaExecutablePath()).thenReturn(javaExecutablePath);
+    lenient().when(sdk.getJavaExecutablePath()).thenReturn(javaExecutablePath);
     when(sdk.getAppEngineToolsJar()).thenReturn(appengineToolsJar);
     when(sdk.getAppEngineSdkForJavaPath()).thenReturn(appengineJavaSdkPath);
 
-    when(processBuilderFactory.newProcessBuilder()).thenReturn(processBuilder);
-    when(processBuilder.start()).thenReturn(process);
+    // unused when appcfg runs in process
+    lenient().when(processBuilderFactory.newProcessBuilder()).thenReturn(processBuilder);
+    lenient().when(processBuilder.start()).thenReturn(process);
   }
 
   @Test
@@ -76,6 +79,7 @@ public class AppCfgRunnerTest {
         .command(
             ImmutableList.of(
                 javaExecutablePath.toString(),
+                "-Dappengine.sdk.root=" + appengineJavaSdkPath,
                 "-cp",
                 appengineToolsJar.toString(),
                 "com.google.appengine.tools.admin.AppCfg",
@@ -85,6 +89,34 @@ public class AppCfgRunnerTest {
     Mockito.verifyNoMoreInteractions(processBuilder);
 
     Mockito.verify(processHandler).handleProcess(process);
-    Assert.assertEquals(appengineJavaSdkPath.toString(), System.getProperty("appengine.sdk.root"));
+    Assert.assertNotEquals(
+        appengineJavaSdkPath.toString(), System.getProperty("appengine.sdk.root"));
+  }
+
+  @Test
+  public void testRun_inProcess() throws Exception {
+    Process inProcess = Mockito.mock(Process.class);
+    when(inProcessAppCfg.run(appengineToolsJar, appengineJavaSdkPath, ImmutableList.of("stage")))
+        .thenReturn(inProcess);
+    AppCfgRunner appCfgRunner =
+        new AppCfgRunner(sdk, processBuilderFactory, processHandler, inProcessAppCfg);
+
+    appCfgRunner.run(ImmutableList.of("stage"));
+
+    Mockito.verify(processHandler).handleProcess(inProcess);
+    Mockito.verifyNoInteractions(processBuilder);
+  }
+
+  @Test
+  public void testRun_inProcessUnsupported() throws Exception {
+    when(inProcessAppCfg.run(appengineToolsJar, appengineJavaSdkPath, ImmutableList.of("stage")))
+        .thenReturn(null);
+    AppCfgRunner appCfgRunner =
+        new AppCfgRunner(sdk, processBuilderFactory, processHandler, inProcessAppCfg);
+
+    appCfgRunner.run(ImmutableList.of("stage"));
+
+    Mockito.verify(processBuilder).start();
+    Mockito.verify(processHandler).handleProcess(process);
   }
 }
@@ -35,4 +35,15 @@ public class AppCfgTest {
     new AppCfg.Builder(sdk, appCfgRunnerFactory).build().getRunner(processHandler);
     Mockito.verify(appCfgRunnerFactory).newRunner(sdk, processHandler);
   }
+
+  @Test
+  public void testBuild_inProcess() {
+    AppCfgRunner.Factory inProcessFactory = Mockito.mock(AppCfgRunner.Factory.class);
+    Mockito.when(appCfgRunnerFactory.inProcess()).thenReturn(inProcessFactory);
+
+    new AppCfg.Builder(sdk, appCfgRunnerFactory).inProcess(true).build().getRunner(processHandler);
+
+    Mockito.verify(inProcessFactory).newRunner(sdk, processHandler);
+    Mockito.verify(appCfgRunnerFactory, Mockito.never()).newRunner(sdk, processHandler);
+  }
 }
@@ -19,6 +19,7 @@ package com.google.cloud.tools.appengine.operations;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.doCallRealMethod;
@@ -29,15 +30,22 @@ import static org.mockito.Mockito.verifyNoMoreInteractions;
 
 import com.google.cloud.tools.appengine.AppEngineException;
 import com.google.cloud.tools.appengine.configuration.AppYamlProjectStageConfiguration;
+import com.google.cloud.tools.appengine.configuration.StagingStrategy;
+import com.google.cloud.tools.io.ExclusionMatcher;
 import com.google.cloud.tools.test.utils.LogStoringHandler;
+import com.google.cloud.tools.trace.TraceRecorder;
 import com.google.common.collect.ImmutableList;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
 import org.junit.Assert;
@@ -143,6 +151,32 @@ public class AppYamlProjectStagingTest {
     verify(mock).stageStandardBinary(config);
   }
 
+  @Test
+  public void testStageArchive_recordsTrace() throws IOException, AppEngineException {
+    Files.write(
+        appEngineDirectory.resolve("app.yaml"),
+        "runtime: java11\n".getBytes(StandardCharsets.UTF_8),
+        StandardOpenOption.CREATE_NEW);
+    config =
+        AppYamlProjectStageConfiguration.builder()
+            .appEngineDirectory(appEngineDirectory)
+            .artifact(Paths.get("src/test/resources/jars/complexLib.jar"))
+            .stagingDirectory(stagingDirectory)
+            .extraFilesDirectories(extraFilesDirectories)
+            .build();
+    TraceRecorder trace = TraceRecorder.create();
+
+    new AppYamlProjectStaging(trace).stageArchive(config);
+
+    String json = trace.toJson();
+    assertTrue(json.contains("\"name\":\"Stage standard jar app\""));
+    assertTrue(json.contains("\"name\":\"Copy extra files\""));
+    assertTrue(json.contains("\"name\":\"Copy App Engine context\""));
+    assertTrue(json.contains("\"name\":\"Copy artifact\""));
+    assertTrue(json.contains("\"name\":\"Copy Class-Path jars\""));
+    assertFalse(json.contains("unfinished"));
+  }
+
   @Test
   public void testStageArchive_java11BinaryWithoutEntrypoint() throws IOException {
     Path nonJarArtifact = temporaryFolder.newFile("myscript.sh").toPath();
@@ -269,7 +303,7 @@ public class AppYamlProjectStagingTest {
 
     List<LogRecord> logs = handler.getLogs();
     assertEquals(0, logs.size());
-    verify(copyService).copyDirectory(dockerDirectory, stagingDirectory);
+    verify(copyService).copyDirectory(dockerDirectory, stagingDirectory, ExclusionMatcher.NONE);
   }
 
   @Test
@@ -299,7 +333,7 @@ public class AppYamlProjectStagingTest {
     List<LogRecord> logs = handler.getLogs();
     assertEquals(0, logs.size());
 
-    verify(copyService).copyDirectory(dockerDirectory, stagingDirectory);
+    verify(copyService).copyDirectory(dockerDirectory, stagingDirectory, ExclusionMatcher.NONE);
   }
 
   @Test
@@ -365,8 +399,10 @@ public class AppYamlProjectStagingTest {
   @Test
   public void testCopyExtraFiles_doCopy() throws IOException, AppEngineException {
     AppYamlProjectStaging.copyExtraFiles(config, copyService);
-    verify(copyService).copyDirectory(extraFilesDirectories.get(0), stagingDirectory);
-    verify(copyService).copyDirectory(extraFilesDirectories.get(1), stagingDirectory);
+    verify(copyService)
+        .copyDirectory(extraFilesDirectories.get(0), stagingDirectory, ExclusionMatcher.NONE);
+    verify(copyService)
+        .copyDirectory(extraFilesDirectories.get(1), stagingDirectory, ExclusionMatcher.NONE);
     verifyNoMoreInteractions(copyService);
   }
 
@@ -550,6 +586,27 @@ public class AppYamlProjectStagingTest {
         logs.get(0).getMessage());
   }
 
+  @Test
+  public void testCopyArtifactJarClasspath_concurrently() throws IOException {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      AppYamlProjectStaging.copyArtifactJarClasspath(
+          AppYamlProjectStageConfiguration.builder()
+              .appEngineDirectory(appEngineDirectory)
+              .artifact(Paths.get("src/test/resources/jars/complexLib.jar"))
+              .stagingDirectory(stagingDirectory)
+              .build(),
+          new AppYamlProjectStaging.CopyService(),
+          executor);
+    } finally {
+      executor.shutdown();
+    }
+
+    assertArrayEquals(
+        Files.readAllBytes(Paths.get("src/test/resources/jars/libs/simpleLib.jar")),
+        Files.readAllBytes(stagingDirectory.resolve("libs/simpleLib.jar")));
+  }
+
   @Test
   public void testCopyService_copiesToExistingFile() throws IOException {
     AppYamlProjectStaging.CopyService copier = new AppYamlProjectStaging.CopyService();
@@ -595,4 +652,300 @@ public class AppYamlProjectStagingTest {
 
     assertArrayEquals(Files.readAllBytes(srcFile), Files.readAllBytes(destFile));
   }
+
+  private static void write(Path file, String content, long lastModifiedSeconds)
+      throws IOException {
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    Files.setLastModifiedTime(file, FileTime.fromMillis(lastModifiedSeconds * 1000));
+  }
+
+  private String lastLogMessage() {
+    List<LogRecord> logs = handler.getLogs();
+    return logs.get(logs.size() - 1).getMessage();
+  }
+
+  private AppYamlProjectStaging.IncrementalCopyService incrementalCopyService(
+      Path manifest, boolean compareContentHashes) {
+    return new AppYamlProjectStaging.IncrementalCopyService(
+        new StagingFileTransfer(StagingStrategy.COPY),
+        stagingDirectory,
+        manifest,
+        compareContentHashes);
+  }
+
+  @Test
+  public void testStageArchive_incremental() throws IOException, AppEngineException {
+    Files.write(
+        appEngineDirectory.resolve("app.yaml"),
+        "env: flex\nruntime: custom\n".getBytes(StandardCharsets.UTF_8),
+        StandardOpenOption.CREATE_NEW);
+    Path extraFiles = extraFilesDirectories.get(0);
+    write(extraFiles.resolve("a.txt"), "a", 1000);
+    write(extraFiles.resolve("sub/b.txt"), "b", 1000);
+    config =
+        AppYamlProjectStageConfiguration.builder()
+            .appEngineDirectory(appEngineDirectory)
+            .artifact(artifact)
+            .stagingDirectory(stagingDirectory)
+            .dockerDirectory(dockerDirectory)
+            .extraFilesDirectories(extraFilesDirectories)
+            .incremental(true)
+            .build();
+    AppYamlProjectStaging staging = new AppYamlProjectStaging();
+
+    staging.stageArchive(config);
+    assertEquals(
+        "Staged 5 files, skipped 0 unchanged files, deleted 0 files in "
+            + stagingDirectory.toAbsolutePath(),
+        lastLogMessage());
+
+    staging.stageArchive(config);
+    assertTrue(lastLogMessage().startsWith("Staged 0 files, skipped 5 unchanged files"));
+
+    write(extraFiles.resolve("a.txt"), "changed", 2000);
+    Files.delete(extraFiles.resolve("sub/b.txt"));
+    staging.stageArchive(config);
+    assertTrue(
+        lastLogMessage().startsWith("Staged 1 files, skipped 3 unchanged files, deleted 1 files"));
+
+    assertEquals(
+        "changed",
+        new String(Files.readAllBytes(stagingDirectory.resolve("a.txt")), StandardCharsets.UTF_8));
+    assertFalse(Files.exists(stagingDirectory.resolve("sub")));
+    assertTrue(Files.exists(stagingDirectory.resolve("Dockerfile")));
+    // the manifest isn't deployed
+    assertFalse(Files.exists(stagingDirectory.resolve(".staging-manifest.json")));
+    assertTrue(Files.exists(AppYamlProjectStaging.getManifestFile(stagingDirectory)));
+  }
+
+  @Test
+  public void testNewCopyService() {
+    assertEquals(
+        AppYamlProjectStaging.CopyService.class,
+        AppYamlProjectStaging.newCopyService(config).getClass());
+  }
+
+  @Test
+  public void testGetManifestFile() {
+    Path staging = Paths.get("build", "staged-app").toAbsolutePath();
+    assertEquals(
+        staging.resolveSibling("staged-app.staging-manifest.json"),
+        AppYamlProjectStaging.getManifestFile(staging));
+  }
+
+  @Test
+  public void testIncrementalCopyService_recopiesChangedFiles() throws IOException {
+    Path source = temporaryFolder.newFolder().toPath();
+    Path manifest = temporaryFolder.getRoot().toPath().resolve("manifest.json");
+    write(source.resolve("same.txt"), "same", 1000);
+    write(source.resolve("resized.txt"), "old", 1000);
+    write(source.resolve("touched.txt"), "old", 1000);
+    AppYamlProjectStaging.IncrementalCopyService first = incrementalCopyService(manifest, false);
+    first.copyDirectory(source, stagingDirectory);
+    first.finish();
+
+    write(source.resolve("resized.txt"), "longer", 1000);
+    write(source.resolve("touched.txt"), "new", 2000);
+    AppYamlProjectStaging.IncrementalCopyService second = incrementalCopyService(manifest, false);
+    second.copyDirectory(source, stagingDirectory);
+    second.finish();
+
+    assertEquals(2, second.getStaged());
+    assertEquals(1, second.getSkipped());
+    assertEquals(
+        "longer",
+        new String(
+            Files.readAllBytes(stagingDirectory.resolve("resized.txt")), StandardCharsets.UTF_8));
+    assertEquals(
+        "new",
+        new String(
+            Files.readAllBytes(stagingDirectory.resolve("touched.txt")), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testIncrementalCopyService_compareContentHashes() throws IOException {
+    Path source = temporaryFolder.newFolder().toPath();
+    Path manifest = temporaryFolder.getRoot().toPath().resolve("manifest.json");
+    write(source.resolve("rebuilt.txt"), "content", 1000);
+    write(source.resolve("changed.txt"), "content", 1000);
+    AppYamlProjectStaging.IncrementalCopyService first = incrementalCopyService(manifest, true);
+    first.copyDirectory(source, stagingDirectory);
+    first.finish();
+
+    write(source.resolve("rebuilt.txt"), "content", 2000);
+    write(source.resolve("changed.txt"), "CONTENT", 2000);
+    AppYamlProjectStaging.IncrementalCopyService second = incrementalCopyService(manifest, true);
+    second.copyDirectory(source, stagingDirectory);
+    second.finish();
+
+    assertEquals(1, second.getStaged());
+    assertEquals(1, second.getSkipped());
+    assertEquals(
+        "CONTENT",
+        new String(
+            Files.readAllBytes(stagingDirectory.resolve("changed.txt")), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testIncrementalCopyService_doesNotOverwriteFileStagedInSameRun() throws IOException {
+    Path manifest = temporaryFolder.getRoot().toPath().resolve("manifest.json");
+    write(extraFilesDirectories.get(0).resolve("file.txt"), "first", 1000);
+    write(extraFilesDirectories.get(1).resolve("file.txt"), "second", 1000);
+    AppYamlProjectStaging.IncrementalCopyService copier = incrementalCopyService(manifest, false);
+    copier.copyDirectory(extraFilesDirectories.get(0), stagingDirectory);
+    try {
+      copier.copyDirectory(extraFilesDirectories.get(1), stagingDirectory);
+      fail();
+    } catch (FileAlreadyExistsException ex) {
+      assertEquals(stagingDirectory.resolve("file.txt").toString(), ex.getMessage());
+    }
+  }
+
+  @Test
+  public void testIncrementalCopyService_repairsEditedStagedFiles() throws IOException {
+    Path source = temporaryFolder.newFolder().toPath();
+    Path manifest = temporaryFolder.getRoot().toPath().resolve("manifest.json");
+    write(source.resolve("file.txt"), "source", 1000);
+    AppYamlProjectStaging.IncrementalCopyService first = incrementalCopyService(manifest, false);
+    first.copyDirectory(source, stagingDirectory);
+    first.finish();
+
+    // same size as the source
+    write(stagingDirectory.resolve("file.txt"), "edited", 2000);
+    AppYamlProjectStaging.IncrementalCopyService second = incrementalCopyService(manifest, false);
+    second.copyDirectory(source, stagingDirectory);
+    second.finish();
+
+    assertEquals(1, second.getStaged());
+    assertEquals(
+        "source",
+        new String(
+            Files.readAllBytes(stagingDirectory.resolve("file.txt")), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testIncrementalCopyService_doesNotOverwriteUnmanagedFiles() throws IOException {
+    Path source = temporaryFolder.newFolder().toPath();
+    Path manifest = temporaryFolder.getRoot().toPath().resolve("manifest.json");
+    write(source.resolve("file.txt"), "source", 1000);
+    write(stagingDirectory.resolve("file.txt"), "mine", 1000);
+    AppYamlProjectStaging.IncrementalCopyService copier = incrementalCopyService(manifest, false);
+    try {
+      copier.copyDirectory(source, stagingDirectory);
+      fail();
+    } catch (FileAlreadyExistsException ex) {
+      assertEquals(stagingDirectory.resolve("file.txt").toString(), ex.getMessage());
+    }
+    assertEquals(
+        "mine",
+        new String(
+            Files.readAllBytes(stagingDirectory.resolve("file.txt")), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testIncrementalCopyService_keepsUnmanagedFiles() throws IOException {
+    Path source = temporaryFolder.newFolder().toPath();
+    Path manifest = temporaryFolder.getRoot().toPath().resolve("manifest.json");
+    write(source.resolve("staged.txt"), "staged", 1000);
+    write(stagingDirectory.resolve("unmanaged.txt"), "mine", 1000);
+    AppYamlProjectStaging.IncrementalCopyService first = incrementalCopyService(manifest, false);
+    first.copyDirectory(source, stagingDirectory);
+    first.finish();
+
+    Files.delete(source.resolve("staged.txt"));
+    AppYamlProjectStaging.IncrementalCopyService second = incrementalCopyService(manifest, false);
+    second.copyDirectory(source, stagingDirectory);
+    second.finish();
+
+    assertEquals(1, second.getDeleted());
+    assertFalse(Files.exists(stagingDirectory.resolve("staged.txt")));
+    assertTrue(Files.exists(stagingDirectory.resolve("unmanaged.txt")));
+  }
+
+  @Test
+  public void testStageArchive_hardLinks() throws IOException, AppEngineException {
+    Files.write(
+        appEngineDirectory.resolve("app.yaml"),
+        "env: flex\nruntime: custom\n".getBytes(StandardCharsets.UTF_8),
+        StandardOpenOption.CREATE_NEW);
+    Path extraFile = extraFilesDirectories.get(0).resolve("sub/extra.txt");
+    write(extraFile, "extra", 1000);
+    config =
+        AppYamlProjectStageConfiguration.builder()
+            .appEngineDirectory(appEngineDirectory)
+            .artifact(artifact)
+            .stagingDirectory(stagingDirectory)
+            .dockerDirectory(dockerDirectory)
+            .extraFilesDirectories(extraFilesDirectories)
+            .stagingStrategy(StagingStrategy.HARDLINK)
+            .build();
+
+    new AppYamlProjectStaging().stageArchive(config);
+
+    assertTrue(Files.isSameFile(extraFile, stagingDirectory.resolve("sub/extra.txt")));
+    assertTrue(Files.isSameFile(artifact, stagingDirectory.resolve("artifact.jar")));
+    assertTrue(Files.isSameFile(dockerFile, stagingDirectory.resolve("Dockerfile")));
+    assertTrue(
+        Files.isSameFile(
+            appEngineDirectory.resolve("app.yaml"), stagingDirectory.resolve("app.yaml")));
+  }
+
+  @Test
+  public void testCopyService_hardLinkDoesNotOverwrite() throws IOException {
+    AppYamlProjectStaging.CopyService copier =
+        new AppYamlProjectStaging.CopyService(new StagingFileTransfer(StagingStrategy.HARDLINK));
+    write(extraFilesDirectories.get(0).resolve("file.txt"), "first", 1000);
+    write(stagingDirectory.resolve("file.txt"), "existing", 1000);
+
+    try {
+      copier.copyDirectory(extraFilesDirectories.get(0), stagingDirectory);
+      fail();
+    } catch (FileAlreadyExistsException ex) {
+      assertEquals(stagingDirectory.resolve("file.txt").toString(), ex.getMessage());
+    }
+  }
+
+  @Test
+  public void testStageArchive_gcloudIgnore() throws IOException, AppEngineException {
+    Files.write(
+        appEngineDirectory.resolve("app.yaml"),
+        "env: flex\nruntime: custom\n".getBytes(StandardCharsets.UTF_8),
+        StandardOpenOption.CREATE_NEW);
+    write(appEngineDirectory.resolve(".gcloudignore"), "*.log\n", 1000);
+    Path extraFiles = extraFilesDirectories.get(0);
+    write(extraFiles.resolve(".gcloudignore"), "build/\n!keep.log\n", 1000);
+    write(extraFiles.resolve("static/index.html"), "index", 1000);
+    write(extraFiles.resolve("static/debug.log"), "debug", 1000);
+    write(extraFiles.resolve("keep.log"), "keep", 1000);
+    write(extraFiles.resolve("build/output.txt"), "output", 1000);
+    write(dockerDirectory.resolve("docker.log"), "docker", 1000);
+    config =
+        AppYamlProjectStageConfiguration.builder()
+            .appEngineDirectory(appEngineDirectory)
+            .artifact(artifact)
+            .stagingDirectory(stagingDirectory)
+            .dockerDirectory(dockerDirectory)
+            .extraFilesDirectories(extraFilesDirectories)
+            .gcloudIgnore(true)
+            .build();
+
+    new AppYamlProjectStaging().stageArchive(config);
+
+    assertTrue(Files.exists(stagingDirectory.resolve("static/index.html")));
+    assertTrue(Files.exists(stagingDirectory.resolve("keep.log")));
+    assertTrue(Files.exists(stagingDirectory.resolve("Dockerfile")));
+    assertFalse(Files.exists(stagingDirectory.resolve("static/debug.log")));
+    assertFalse(Files.exists(stagingDirectory.resolve("build")));
+    assertFalse(Files.exists(stagingDirectory.resolve("docker.log")));
+  }
+
+  @Test
+  public void testGetIgnoreRules_disabled() throws IOException {
+    write(appEngineDirectory.resolve(".gcloudignore"), "*.log\n", 1000);
+
+    assertSame(
+        ExclusionMatcher.NONE,
+        AppYamlProjectStaging.getIgnoreRules(config, extraFilesDirectories.get(0)));
+  }
 }
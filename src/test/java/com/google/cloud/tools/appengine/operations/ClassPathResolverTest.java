@@ -0,0 +1,161 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.appengine.operations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ClassPathResolverTest {
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path root;
+  private Path target;
+
+  @Before
+  public void setUp() throws IOException {
+    ClassPathResolver.clearCache();
+    root = temporaryFolder.newFolder("app").toPath();
+    target = temporaryFolder.newFolder("staging").toPath();
+  }
+
+  /** Writes a jar whose manifest has {@code classPath}, or no Class-Path if null. */
+  private Path jar(String name, @Nullable String classPath) throws IOException {
+    Path jar = root.resolve(name);
+    Files.createDirectories(jar.getParent());
+    Manifest manifest = new Manifest();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    if (classPath != null) {
+      manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, classPath);
+    }
+    try (OutputStream output = Files.newOutputStream(jar);
+        JarOutputStream ignored = new JarOutputStream(output, manifest)) {
+      // only the manifest
+    }
+    return jar;
+  }
+
+  private List<Path> targets(ClassPathResolver.Result result) {
+    return result
+        .getJars()
+        .stream()
+        .map(jar -> target.relativize(jar.getTarget().normalize()))
+        .collect(Collectors.toList());
+  }
+
+  private ClassPathResolver.Result resolve(Path artifact) throws IOException {
+    return ClassPathResolver.resolve(artifact, target.resolve(artifact.getFileName()));
+  }
+
+  @Test
+  public void testResolve_transitive() throws IOException {
+    Path artifact = jar("app.jar", "libs/a.jar libs/b.jar");
+    jar("libs/a.jar", "c.jar nested/d.jar");
+    jar("libs/b.jar", null);
+    jar("libs/c.jar", null);
+    jar("libs/nested/d.jar", "../../other/e.jar");
+    jar("other/e.jar", null);
+
+    ClassPathResolver.Result result = resolve(artifact);
+
+    assertEquals(
+        ImmutableList.of(
+            target.getFileSystem().getPath("libs/a.jar"),
+            target.getFileSystem().getPath("libs/b.jar"),
+            target.getFileSystem().getPath("libs/c.jar"),
+            target.getFileSystem().getPath("libs/nested/d.jar"),
+            target.getFileSystem().getPath("other/e.jar")),
+        targets(result));
+    assertEquals(
+        root.resolve("libs/nested/../../other/e.jar"), result.getJars().get(4).getSource());
+    assertTrue(result.getMissing().isEmpty());
+  }
+
+  @Test
+  public void testResolve_cycle() throws IOException {
+    Path artifact = jar("app.jar", "libs/a.jar");
+    jar("libs/a.jar", "b.jar ../app.jar");
+    jar("libs/b.jar", "a.jar ./b.jar");
+
+    ClassPathResolver.Result result = resolve(artifact);
+
+    assertEquals(
+        ImmutableList.of(
+            target.getFileSystem().getPath("libs/a.jar"),
+            target.getFileSystem().getPath("libs/b.jar")),
+        targets(result));
+  }
+
+  @Test
+  public void testResolve_missingAndNonJarEntries() throws IOException {
+    Path artifact = jar("app.jar", "libs/missing.jar libs/a.jar libs/missing.jar classes/");
+    Files.createDirectories(root.resolve("classes"));
+    Path notAJar = root.resolve("libs/a.jar");
+    Files.createDirectories(notAJar.getParent());
+    Files.write(notAJar, new byte[] {1, 2, 3});
+
+    ClassPathResolver.Result result = resolve(artifact);
+
+    assertEquals(ImmutableList.of(target.getFileSystem().getPath("libs/a.jar")), targets(result));
+    assertEquals(
+        ImmutableList.of(root.resolve("libs/missing.jar"), root.resolve("classes/")),
+        result.getMissing());
+  }
+
+  @Test
+  public void testReadClassPath_cachedUntilJarChanges() throws IOException {
+    Path jar = jar("app.jar", "a.jar");
+    Files.setLastModifiedTime(jar, FileTime.fromMillis(1000_000));
+    assertEquals(ImmutableList.of("a.jar"), ClassPathResolver.readClassPath(jar));
+
+    // same size and time, the cached entries are returned
+    jar("app.jar", "b.jar");
+    Files.setLastModifiedTime(jar, FileTime.fromMillis(1000_000));
+    assertEquals(ImmutableList.of("a.jar"), ClassPathResolver.readClassPath(jar));
+
+    Files.setLastModifiedTime(jar, FileTime.fromMillis(2000_000));
+    assertEquals(ImmutableList.of("b.jar"), ClassPathResolver.readClassPath(jar));
+  }
+
+  @Test
+  public void testReadClassPath_noManifest() throws IOException {
+    Path jar = root.resolve("empty.jar");
+    try (OutputStream output = Files.newOutputStream(jar);
+        JarOutputStream ignored = new JarOutputStream(output)) {
+      // no entries
+    }
+
+    assertTrue(ClassPathResolver.readClassPath(jar).isEmpty());
+  }
+}
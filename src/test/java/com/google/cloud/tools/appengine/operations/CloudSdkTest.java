@@ -29,6 +29,7 @@ import static org.mockito.Mockito.when;
 import com.google.cloud.tools.appengine.operations.cloudsdk.AppEngineJavaComponentsNotInstalledException;
 import com.google.cloud.tools.appengine.operations.cloudsdk.CloudSdkNotFoundException;
 import com.google.cloud.tools.appengine.operations.cloudsdk.CloudSdkOutOfDateException;
+import com.google.cloud.tools.appengine.operations.cloudsdk.CloudSdkRegistry;
 import com.google.cloud.tools.appengine.operations.cloudsdk.CloudSdkResolver;
 import com.google.cloud.tools.appengine.operations.cloudsdk.CloudSdkVersionFileException;
 import com.google.cloud.tools.appengine.operations.cloudsdk.serialization.CloudSdkVersion;
@@ -39,6 +40,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -123,6 +125,28 @@ public class CloudSdkTest {
     sdk.validateCloudSdk();
   }
 
+  @Test
+  public void testValidateCloudSdk_cachedUntilRefresh() throws Exception {
+    writeVersionFile("300.0.0");
+    root.resolve("bin").toFile().mkdir();
+    root.resolve("bin/gcloud").toFile().createNewFile();
+    root.resolve("bin/gcloud.cmd").toFile().createNewFile(); // for Windows
+    root.resolve("bin/dev_appserver.py").toFile().createNewFile();
+    sdk.validateCloudSdk();
+
+    // the registry only watches the VERSION file
+    root.resolve("bin/dev_appserver.py").toFile().delete();
+    sdk.validateCloudSdk();
+
+    CloudSdkRegistry.getInstance().refresh(root);
+    try {
+      sdk.validateCloudSdk();
+      fail();
+    } catch (CloudSdkNotFoundException ex) {
+      assertThat(ex.getMessage(), endsWith("' is not a file."));
+    }
+  }
+
   @Test
   public void testGetVersion_fileContentValid() throws IOException, CloudSdkVersionFileException {
     String version = "136.0.0";
@@ -195,6 +219,42 @@ public class CloudSdkTest {
     assertEquals("r1 should not resolve", r2.getCloudSdkPath(), sdk.getPath());
   }
 
+  @Test
+  public void testParallelDiscovery() throws CloudSdkNotFoundException {
+    CloudSdkResolver r1 = mock(CloudSdkResolver.class, "r1");
+    when(r1.getRank()).thenReturn(0);
+    when(r1.getCloudSdkPath()).thenReturn(null);
+    CloudSdkResolver r2 = mock(CloudSdkResolver.class, "r2");
+    when(r2.getRank()).thenReturn(10);
+    when(r2.getCloudSdkPath()).thenReturn(Paths.get("/r2"));
+    CloudSdkResolver r3 = mock(CloudSdkResolver.class, "r3");
+    when(r3.getRank()).thenReturn(100);
+    when(r3.getCloudSdkPath()).thenReturn(Paths.get("/r3"));
+
+    CloudSdk sdk =
+        new CloudSdk.Builder()
+            .resolvers(Arrays.asList(r3, r1, r2))
+            .parallelDiscovery(10, TimeUnit.SECONDS)
+            .build();
+    assertEquals(Paths.get("/r2"), sdk.getPath());
+  }
+
+  @Test
+  public void testParallelDiscovery_notFound() {
+    CloudSdkResolver r1 = mock(CloudSdkResolver.class, "r1");
+    when(r1.getCloudSdkPath()).thenReturn(null);
+
+    try {
+      new CloudSdk.Builder()
+          .resolvers(Arrays.asList(r1))
+          .parallelDiscovery(10, TimeUnit.SECONDS)
+          .build();
+      fail();
+    } catch (CloudSdkNotFoundException ex) {
+      assertThat(ex.getMessage(), endsWith("no path was provided."));
+    }
+  }
+
   @Test
   public void testGetJavaBinary() throws CloudSdkNotFoundException {
     CloudSdk sdk = new CloudSdk.Builder().javaHome(Paths.get("java", "path")).build();
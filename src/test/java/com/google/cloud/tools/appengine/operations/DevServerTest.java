@@ -21,6 +21,7 @@ import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
+import com.google.cloud.tools.appengine.AppEngineDescriptor;
 import com.google.cloud.tools.appengine.AppEngineException;
 import com.google.cloud.tools.appengine.configuration.RunConfiguration;
 import com.google.cloud.tools.appengine.configuration.StopConfiguration;
@@ -30,8 +31,12 @@ import com.google.cloud.tools.test.utils.SpyVerifier;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -320,34 +325,119 @@ public class DevServerTest {
 
   @Test
   public void testPrepareCommand_multipleServicesDuplicateAppEngineWebXmlEnvironmentVariables()
-      throws AppEngineException, ProcessHandlerException, IOException {
+      throws Exception {
     RunConfiguration configuration =
         RunConfiguration.builder(ImmutableList.of(java8Service1EnvVars, java8Service2EnvVars))
             .build();
 
-    List<String> expectedFlags =
-        ImmutableList.of(
-            "--allow_remote_shutdown",
-            "--disable_update_check",
-            "--no_java_agent",
-            java8Service1EnvVars.toString(),
-            java8Service2EnvVars.toString());
+    try {
+      devServer.run(configuration);
+      Assert.fail();
+    } catch (AppEngineException ex) {
+      Assert.assertEquals(
+          "Services define environment variables with different values in appengine-web.xml:\n"
+              + "  key2: 'val2' in "
+              + java8Service1EnvVars
+              + ", 'duplicated-key' in "
+              + java8Service2EnvVars,
+          ex.getMessage());
+    }
+    verify(devAppServerRunner, times(0)).run(any(), any(), any(), any());
+  }
 
-    List<String> expectedJvmArgs =
-        ImmutableList.of("-Duse_jetty9_runtime=true", "-D--enable_all_permissions=true");
+  @Test
+  public void testPrepareCommand_multipleServicesConflictsReportedTogether() throws IOException {
+    Path service1 = newService("service1", "java8", "a", "1", "b", "1", "c", "1");
+    Path service2 = newService("service2", "java8", "b", "2", "c", "1");
+    Path service3 = newService("service3", "java8", "a", "3", "b", "3");
+
+    try {
+      devServer.run(
+          RunConfiguration.builder(ImmutableList.of(service1, service2, service3)).build());
+      Assert.fail();
+    } catch (AppEngineException ex) {
+      Assert.assertEquals(
+          "Services define environment variables with different values in appengine-web.xml:\n"
+              + "  b: '1' in "
+              + service1
+              + ", '2' in "
+              + service2
+              + ", '3' in "
+              + service3
+              + "\n  a: '1' in "
+              + service1
+              + ", '3' in "
+              + service3,
+          ex.getMessage());
+    }
+  }
+
+  @Test
+  public void testPrepareCommand_multipleServicesSameEnvironmentVariableValue()
+      throws AppEngineException, ProcessHandlerException, IOException {
+    Path service1 = newService("service1", "java8", "shared", "same", "key1", "val1");
+    Path service2 = newService("service2", "java8", "key2", "val2", "shared", "same");
+
+    devServer.run(RunConfiguration.builder(ImmutableList.of(service1, service2)).build());
 
-    Map<String, String> expectedConfigurationEnvironment =
-        ImmutableMap.of("key1", "val1", "keya", "vala", "key2", "duplicated-key", "keyc", "valc");
     Map<String, String> expectedEnvironment =
         ImmutableMap.<String, String>builder()
-            .putAll(expectedConfigurationEnvironment)
+            .put("shared", "same")
+            .put("key1", "val1")
+            .put("key2", "val2")
             .putAll(expectedJava8Environment)
             .build();
+    verify(devAppServerRunner, times(1))
+        .run(any(), any(), eq(expectedEnvironment), eq(null) /* workingDirectory */);
+  }
 
-    devServer.run(configuration);
+  @Test
+  public void testLoadDescriptors_serviceOrder() throws Exception {
+    List<Path> services = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      services.add(newService("service" + i, "java8", "index", Integer.toString(i)));
+    }
 
-    verify(devAppServerRunner, times(1))
-        .run(expectedJvmArgs, expectedFlags, expectedEnvironment, null /* workingDirectory */);
+    List<AppEngineDescriptor> descriptors = devServer.loadDescriptors(services);
+
+    Assert.assertEquals(20, descriptors.size());
+    for (int i = 0; i < 20; i++) {
+      Assert.assertEquals(Integer.toString(i), descriptors.get(i).getEnvironment().get("index"));
+    }
+  }
+
+  @Test
+  public void testLoadDescriptors_failure() throws IOException {
+    Path service = newService("service", "java8");
+    Path missing = temporaryFolder.getRoot().toPath().resolve("missing");
+
+    try {
+      devServer.loadDescriptors(ImmutableList.of(service, missing));
+      Assert.fail();
+    } catch (AppEngineException ex) {
+      Assert.assertTrue(ex.getCause() instanceof NoSuchFileException);
+    }
+  }
+
+  private Path newService(String name, String runtime, String... environment) throws IOException {
+    StringBuilder xml =
+        new StringBuilder("<appengine-web-app xmlns='http://appengine.google.com/ns/1.0'>")
+            .append("<runtime>")
+            .append(runtime)
+            .append("</runtime><env-variables>");
+    for (int i = 0; i < environment.length; i += 2) {
+      xml.append("<env-var name='")
+          .append(environment[i])
+          .append("' value='")
+          .append(environment[i + 1])
+          .append("'/>");
+    }
+    xml.append("</env-variables></appengine-web-app>");
+    Path service = temporaryFolder.newFolder(name).toPath();
+    Path webInf = Files.createDirectory(service.resolve("WEB-INF"));
+    Files.write(
+        webInf.resolve("appengine-web.xml"), xml.toString().getBytes(StandardCharsets.UTF_8));
+    return service;
   }
 
   @Test
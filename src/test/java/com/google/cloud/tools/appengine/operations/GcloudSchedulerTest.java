@@ -0,0 +1,367 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.appengine.operations;
+
+import com.google.cloud.tools.appengine.operations.GcloudScheduler.Priority;
+import com.google.common.base.Ticker;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class GcloudSchedulerTest {
+
+  @Mock private Gcloud gcloud;
+
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+  private final AtomicLong nanos = new AtomicLong();
+  private final Ticker ticker =
+      new Ticker() {
+        @Override
+        public long read() {
+          return nanos.get();
+        }
+      };
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  private GcloudScheduler newScheduler(int maxConcurrency, int maxConcurrencyPerProject) {
+    return new GcloudScheduler(maxConcurrency, maxConcurrencyPerProject, executor, ticker);
+  }
+
+  private static <T> T get(CompletableFuture<T> future) throws Exception {
+    return future.get(10, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void testSubmit_globalLimit() throws Exception {
+    GcloudScheduler scheduler = newScheduler(2, Integer.MAX_VALUE);
+    AtomicInteger current = new AtomicInteger();
+    AtomicInteger peak = new AtomicInteger();
+    List<CompletableFuture<Void>> futures = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      futures.add(
+          scheduler.submit(
+              "project-" + i,
+              Priority.NORMAL,
+              () -> {
+                peak.accumulateAndGet(current.incrementAndGet(), Math::max);
+                Thread.sleep(20);
+                current.decrementAndGet();
+                return null;
+              }));
+    }
+    for (CompletableFuture<Void> future : futures) {
+      get(future);
+    }
+    Assert.assertEquals(2, peak.get());
+  }
+
+  @Test
+  public void testSubmit_perProjectLimit() throws Exception {
+    GcloudScheduler scheduler = newScheduler(4, 1);
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch firstStarted = new CountDownLatch(1);
+    CountDownLatch otherProjectStarted = new CountDownLatch(1);
+    AtomicInteger sameProjectStarted = new AtomicInteger();
+
+    CompletableFuture<Void> first =
+        scheduler.submit(
+            "p1",
+            Priority.NORMAL,
+            () -> {
+              sameProjectStarted.incrementAndGet();
+              firstStarted.countDown();
+              release.await();
+              return null;
+            });
+    CompletableFuture<Void> second =
+        scheduler.submit(
+            "p1",
+            Priority.NORMAL,
+            () -> {
+              sameProjectStarted.incrementAndGet();
+              return null;
+            });
+    CompletableFuture<Void> other =
+        scheduler.submit(
+            "p2",
+            Priority.LOW,
+            () -> {
+              otherProjectStarted.countDown();
+              return null;
+            });
+
+    // a saturated project doesn't block work for other projects
+    Assert.assertTrue(firstStarted.await(10, TimeUnit.SECONDS));
+    Assert.assertTrue(otherProjectStarted.await(10, TimeUnit.SECONDS));
+    get(other);
+    Assert.assertEquals(1, sameProjectStarted.get());
+    Assert.assertFalse(second.isDone());
+
+    release.countDown();
+    get(first);
+    get(second);
+    Assert.assertEquals(2, sameProjectStarted.get());
+  }
+
+  @Test
+  public void testSubmit_priorityOrder() throws Exception {
+    GcloudScheduler scheduler = newScheduler(1, Integer.MAX_VALUE);
+    CountDownLatch release = new CountDownLatch(1);
+    List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+    CompletableFuture<Void> blocker =
+        scheduler.submit(
+            null,
+            Priority.NORMAL,
+            () -> {
+              release.await();
+              return null;
+            });
+    CompletableFuture<Boolean> low = scheduler.submit(null, Priority.LOW, () -> order.add("low"));
+    CompletableFuture<Boolean> normal =
+        scheduler.submit(null, Priority.NORMAL, () -> order.add("normal"));
+    CompletableFuture<Boolean> high =
+        scheduler.submit(null, Priority.HIGH, () -> order.add("high"));
+    CompletableFuture<Boolean> high2 =
+        scheduler.submit(null, Priority.HIGH, () -> order.add("high2"));
+
+    release.countDown();
+    get(blocker);
+    get(low);
+    get(normal);
+    get(high);
+    get(high2);
+    Assert.assertEquals(Arrays.asList("high", "high2", "normal", "low"), order);
+  }
+
+  @Test
+  public void testSubmit_cancelQueued() throws Exception {
+    GcloudScheduler scheduler = newScheduler(1, Integer.MAX_VALUE);
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger ran = new AtomicInteger();
+
+    CompletableFuture<Void> blocker =
+        scheduler.submit(
+            null,
+            Priority.NORMAL,
+            () -> {
+              release.await();
+              return null;
+            });
+    CompletableFuture<Integer> cancelled =
+        scheduler.submit(null, Priority.NORMAL, ran::incrementAndGet);
+    Assert.assertEquals(1, scheduler.getMetrics().getQueuedCount());
+    cancelled.cancel(false);
+    Assert.assertEquals(0, scheduler.getMetrics().getQueuedCount());
+
+    release.countDown();
+    get(blocker);
+    get(scheduler.submit(null, Priority.NORMAL, () -> null));
+    Assert.assertEquals(0, ran.get());
+  }
+
+  @Test
+  public void testSubmit_failure() throws Exception {
+    GcloudScheduler scheduler = newScheduler(1, 1);
+    IllegalStateException failure = new IllegalStateException("boom");
+    CompletableFuture<Void> future =
+        scheduler.submit(
+            null,
+            Priority.NORMAL,
+            () -> {
+              throw failure;
+            });
+    try {
+      get(future);
+      Assert.fail();
+    } catch (ExecutionException ex) {
+      Assert.assertSame(failure, ex.getCause());
+    }
+    Assert.assertEquals(1, scheduler.getMetrics().getFailedCount());
+    Assert.assertEquals(0, scheduler.getMetrics().getRunningCount());
+  }
+
+  @Test
+  public void testRunCommand_coalescesReads() throws Exception {
+    GcloudScheduler scheduler = newScheduler(4, 4);
+    CountDownLatch release = new CountDownLatch(1);
+    List<String> args = Arrays.asList("app", "versions", "list", "--project=p1");
+    Mockito.when(gcloud.runCommand(args))
+        .thenAnswer(
+            invocation -> {
+              release.await();
+              return "versions";
+            });
+
+    CompletableFuture<String> first = scheduler.runCommand(gcloud, args, Priority.NORMAL);
+    CompletableFuture<String> second =
+        scheduler.runCommand(gcloud, new ArrayList<>(args), Priority.NORMAL);
+    release.countDown();
+
+    Assert.assertEquals("versions", get(first));
+    Assert.assertEquals("versions", get(second));
+    Mockito.verify(gcloud).runCommand(args);
+    GcloudScheduler.Metrics metrics = scheduler.getMetrics();
+    Assert.assertEquals(1, metrics.getSubmittedCount());
+    Assert.assertEquals(1, metrics.getCoalescedCount());
+  }
+
+  @Test
+  public void testRunCommand_cancelCoalescedRead() throws Exception {
+    GcloudScheduler scheduler = newScheduler(1, Integer.MAX_VALUE);
+    CountDownLatch release = new CountDownLatch(1);
+    CompletableFuture<Void> blocker =
+        scheduler.submit(
+            null,
+            Priority.NORMAL,
+            () -> {
+              release.await();
+              return null;
+            });
+    List<String> args = Arrays.asList("app", "versions", "list");
+
+    CompletableFuture<String> first = scheduler.runCommand(gcloud, args, Priority.NORMAL);
+    CompletableFuture<String> second = scheduler.runCommand(gcloud, args, Priority.NORMAL);
+    first.cancel(false);
+    // still wanted by the second caller
+    Assert.assertEquals(1, scheduler.getMetrics().getQueuedCount());
+    second.cancel(false);
+    Assert.assertEquals(0, scheduler.getMetrics().getQueuedCount());
+
+    release.countDown();
+    get(blocker);
+    Mockito.when(gcloud.runCommand(args)).thenReturn("versions");
+    Assert.assertEquals("versions", get(scheduler.runCommand(gcloud, args, Priority.NORMAL)));
+    Mockito.verify(gcloud).runCommand(args);
+  }
+
+  @Test
+  public void testRunCommand_doesNotCoalesceWrites() throws Exception {
+    GcloudScheduler scheduler = newScheduler(4, 4);
+    List<String> args = Arrays.asList("app", "versions", "stop", "v1");
+    Mockito.when(gcloud.runCommand(args)).thenReturn("");
+
+    get(scheduler.runCommand(gcloud, args, Priority.NORMAL));
+    get(scheduler.runCommand(gcloud, args, Priority.NORMAL));
+
+    Mockito.verify(gcloud, Mockito.times(2)).runCommand(args);
+    Assert.assertEquals(0, scheduler.getMetrics().getCoalescedCount());
+  }
+
+  @Test
+  public void testRunCommand_rerunsReadAfterCompletion() throws Exception {
+    GcloudScheduler scheduler = newScheduler(4, 4);
+    List<String> args = Arrays.asList("config", "list");
+    Mockito.when(gcloud.runCommand(args)).thenReturn("a", "b");
+
+    Assert.assertEquals("a", get(scheduler.runCommand(gcloud, args, Priority.NORMAL)));
+    Assert.assertEquals("b", get(scheduler.runCommand(gcloud, args, Priority.NORMAL)));
+  }
+
+  @Test
+  public void testGetMetrics_timings() throws Exception {
+    GcloudScheduler scheduler = newScheduler(1, 1);
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+
+    CompletableFuture<Void> first =
+        scheduler.submit(
+            null,
+            Priority.NORMAL,
+            () -> {
+              started.countDown();
+              release.await();
+              nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(300));
+              return null;
+            });
+    Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+    CompletableFuture<Void> second = scheduler.submit(null, Priority.NORMAL, () -> null);
+    release.countDown();
+    get(first);
+    get(second);
+
+    GcloudScheduler.Metrics metrics = scheduler.getMetrics();
+    Assert.assertEquals(2, metrics.getSucceededCount());
+    Assert.assertEquals(300, metrics.getMaxRunTime().toMillis());
+    Assert.assertEquals(300, metrics.getTotalRunTime().toMillis());
+    Assert.assertEquals(300, metrics.getMaxQueueWait().toMillis());
+    Assert.assertEquals(0, metrics.getQueuedCount());
+  }
+
+  @Test
+  public void testGetProjectFlag() {
+    Assert.assertEquals(
+        "p1", GcloudScheduler.getProjectFlag(Arrays.asList("app", "deploy", "--project=p1")));
+    Assert.assertEquals(
+        "p2", GcloudScheduler.getProjectFlag(Arrays.asList("app", "deploy", "--project", "p2")));
+    Assert.assertNull(GcloudScheduler.getProjectFlag(Arrays.asList("app", "deploy")));
+  }
+
+  @Test
+  public void testIsReadCommand() {
+    Assert.assertTrue(GcloudScheduler.isReadCommand(Arrays.asList("components", "list")));
+    Assert.assertTrue(
+        GcloudScheduler.isReadCommand(Arrays.asList("app", "services", "describe", "default")));
+    Assert.assertFalse(GcloudScheduler.isReadCommand(Arrays.asList("app", "deploy")));
+    // a service named like a read verb
+    Assert.assertFalse(
+        GcloudScheduler.isReadCommand(Arrays.asList("app", "services", "delete", "describe")));
+    Assert.assertFalse(
+        GcloudScheduler.isReadCommand(Arrays.asList("app", "versions", "stop", "v1", "list")));
+  }
+
+  @Test
+  public void testSubmit_errorCompletesFuture() throws Exception {
+    GcloudScheduler scheduler = newScheduler(1, 1);
+    CompletableFuture<Void> failing =
+        scheduler.submit(
+            "p1",
+            Priority.NORMAL,
+            () -> {
+              throw new AssertionError("broken");
+            });
+    try {
+      get(failing);
+      Assert.fail();
+    } catch (ExecutionException ex) {
+      Assert.assertEquals("broken", ex.getCause().getMessage());
+    }
+    // the slot was released
+    Assert.assertEquals("next", get(scheduler.submit("p1", Priority.NORMAL, () -> "next")));
+  }
+}
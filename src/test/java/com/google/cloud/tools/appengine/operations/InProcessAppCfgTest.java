@@ -0,0 +1,192 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.appengine.operations;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class InProcessAppCfgTest {
+
+  // prints its state and exits or fails when asked to
+  private static final String FAKE_APPCFG =
+      "package com.google.appengine.tools.admin;\n"
+          + "public class AppCfg {\n"
+          + "  private static int runs;\n"
+          + "  private static Thread leftover;\n"
+          + "  private static boolean released;\n"
+          + "  public static void main(String[] args) {\n"
+          + "    runs++;\n"
+          + "    System.out.println(\"runs \" + runs);\n"
+          + "    System.out.println(\"sdk \" + System.getProperty(\"appengine.sdk.root\"));\n"
+          + "    System.out.println(\"isolated \" + (AppCfg.class.getClassLoader().getParent()\n"
+          + "        == ClassLoader.getSystemClassLoader().getParent()));\n"
+          + "    System.err.println(\"args \" + String.join(\" \", args));\n"
+          + "    if (args[0].equals(\"exit\")) {\n"
+          + "      System.exit(Integer.parseInt(args[1]));\n"
+          + "    }\n"
+          + "    if (args[0].equals(\"fail\")) {\n"
+          + "      throw new IllegalStateException(\"appcfg failed\");\n"
+          + "    }\n"
+          + "    if (args[0].equals(\"leave-thread\")) {\n"
+          + "      leftover = new Thread(() -> {\n"
+          + "        synchronized (AppCfg.class) {\n"
+          + "          while (!released) {\n"
+          + "            try {\n"
+          + "              AppCfg.class.wait();\n"
+          + "            } catch (InterruptedException ex) {\n"
+          + "              return;\n"
+          + "            }\n"
+          + "          }\n"
+          + "        }\n"
+          + "        System.out.println(\"leftover\");\n"
+          + "      });\n"
+          + "      leftover.setDaemon(true);\n"
+          + "      leftover.start();\n"
+          + "    }\n"
+          + "    if (args[0].equals(\"release-thread\")) {\n"
+          + "      synchronized (AppCfg.class) {\n"
+          + "        released = true;\n"
+          + "        AppCfg.class.notifyAll();\n"
+          + "      }\n"
+          + "      try {\n"
+          + "        leftover.join();\n"
+          + "      } catch (InterruptedException ex) {\n"
+          + "        throw new IllegalStateException(ex);\n"
+          + "      }\n"
+          + "    }\n"
+          + "  }\n"
+          + "}\n";
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final InProcessAppCfg inProcessAppCfg = new InProcessAppCfg();
+  private Path toolsJar;
+  private Path sdkRoot;
+
+  @Before
+  public void setUp() throws IOException {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    Assume.assumeNotNull(compiler);
+    Assume.assumeTrue(System.getSecurityManager() == null);
+
+    Path sources = temporaryFolder.newFolder("src").toPath();
+    Path source = sources.resolve("AppCfg.java");
+    Files.write(source, FAKE_APPCFG.getBytes(StandardCharsets.UTF_8));
+    Assert.assertEquals(
+        0, compiler.run(null, null, null, "-d", sources.toString(), source.toString()));
+
+    sdkRoot = temporaryFolder.newFolder("appengine-java-sdk").toPath();
+    toolsJar = temporaryFolder.getRoot().toPath().resolve("appengine-tools-api.jar");
+    String entryName = InProcessAppCfg.APPCFG_CLASS.replace('.', '/') + ".class";
+    try (JarOutputStream jar = new JarOutputStream(Files.newOutputStream(toolsJar))) {
+      jar.putNextEntry(new JarEntry(entryName));
+      Files.copy(sources.resolve(entryName), jar);
+    }
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    inProcessAppCfg.clearCache();
+  }
+
+  private static List<String> lines(InputStream stream) throws IOException {
+    return ImmutableList.copyOf(
+        new String(ByteStreams.toByteArray(stream), StandardCharsets.UTF_8).split("\\R"));
+  }
+
+  @Test
+  public void testRun_capturesOutput() throws Exception {
+    String sdkRootProperty = System.getProperty("appengine.sdk.root");
+    PrintStream systemOut = System.out;
+
+    Process process = inProcessAppCfg.run(toolsJar, sdkRoot, ImmutableList.of("stage", "app"));
+
+    Assert.assertNotNull(process);
+    Assert.assertEquals(0, process.waitFor());
+    Assert.assertEquals(
+        ImmutableList.of("runs 1", "sdk " + sdkRoot, "isolated true"),
+        lines(process.getInputStream()));
+    Assert.assertEquals(ImmutableList.of("args stage app"), lines(process.getErrorStream()));
+    Assert.assertEquals(sdkRootProperty, System.getProperty("appengine.sdk.root"));
+    Assert.assertSame(systemOut, System.out);
+    Assert.assertNull(System.getSecurityManager());
+  }
+
+  @Test
+  public void testRun_trapsExit() throws Exception {
+    Process process = inProcessAppCfg.run(toolsJar, sdkRoot, ImmutableList.of("exit", "3"));
+
+    Assert.assertNotNull(process);
+    Assert.assertEquals(3, process.exitValue());
+    Assert.assertEquals(ImmutableList.of("args exit 3"), lines(process.getErrorStream()));
+    Assert.assertNull(System.getSecurityManager());
+  }
+
+  @Test
+  public void testRun_exception() throws Exception {
+    Process process = inProcessAppCfg.run(toolsJar, sdkRoot, ImmutableList.of("fail"));
+
+    Assert.assertNotNull(process);
+    Assert.assertEquals(1, process.exitValue());
+    List<String> stdErr = lines(process.getErrorStream());
+    Assert.assertEquals("args fail", stdErr.get(0));
+    Assert.assertEquals("java.lang.IllegalStateException: appcfg failed", stdErr.get(1));
+  }
+
+  @Test
+  public void testRun_threadsOfEarlierRunsAreNotCaptured() throws Exception {
+    inProcessAppCfg.run(toolsJar, sdkRoot, ImmutableList.of("leave-thread"));
+    // the thread left by the first run prints while the second run captures output
+    Process second = inProcessAppCfg.run(toolsJar, sdkRoot, ImmutableList.of("release-thread"));
+
+    Assert.assertNotNull(second);
+    Assert.assertEquals(0, second.exitValue());
+    Assert.assertFalse(lines(second.getInputStream()).contains("leftover"));
+  }
+
+  @Test
+  public void testRun_reusesClassLoaderUntilJarChanges() throws Exception {
+    inProcessAppCfg.run(toolsJar, sdkRoot, ImmutableList.of("stage"));
+    Process second = inProcessAppCfg.run(toolsJar, sdkRoot, ImmutableList.of("stage"));
+    Assert.assertNotNull(second);
+    Assert.assertEquals("runs 2", lines(second.getInputStream()).get(0));
+
+    Files.setLastModifiedTime(toolsJar, FileTime.fromMillis(1000));
+    Process reloaded = inProcessAppCfg.run(toolsJar, sdkRoot, ImmutableList.of("stage"));
+    Assert.assertNotNull(reloaded);
+    Assert.assertEquals("runs 1", lines(reloaded.getInputStream()).get(0));
+  }
+}
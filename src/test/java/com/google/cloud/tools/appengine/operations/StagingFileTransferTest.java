@@ -0,0 +1,163 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.appengine.operations;
+
+import com.google.cloud.tools.appengine.configuration.StagingStrategy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StagingFileTransferTest {
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path source;
+  private Path largeSource;
+  private Path destination;
+  private final AtomicInteger reflinks = new AtomicInteger();
+
+  @Before
+  public void setUp() throws IOException {
+    source = temporaryFolder.newFile("source.txt").toPath();
+    Files.write(source, "content".getBytes(StandardCharsets.UTF_8));
+    Files.setLastModifiedTime(source, FileTime.fromMillis(1000_000));
+    largeSource = temporaryFolder.newFile("large.jar").toPath();
+    Files.write(largeSource, new byte[(int) StagingFileTransfer.MIN_REFLINK_SIZE]);
+    destination = temporaryFolder.getRoot().toPath().resolve("destination.txt");
+  }
+
+  private StagingFileTransfer failingLinks(StagingStrategy strategy) {
+    return new StagingFileTransfer(
+        strategy,
+        (link, target) -> {
+          throw new FileSystemException(link.toString(), target.toString(), "cross-device link");
+        },
+        (src, dest, copyAttributes) -> {
+          reflinks.incrementAndGet();
+          return false;
+        });
+  }
+
+  @Test
+  public void testTransfer_copy() throws IOException {
+    StagingFileTransfer transfer = new StagingFileTransfer(StagingStrategy.COPY);
+    Assert.assertTrue(transfer.isCopy());
+
+    transfer.transfer(source, destination, false, true);
+
+    Assert.assertFalse(Files.isSameFile(source, destination));
+    Assert.assertEquals(
+        "content", new String(Files.readAllBytes(destination), StandardCharsets.UTF_8));
+    Assert.assertEquals(FileTime.fromMillis(1000_000), Files.getLastModifiedTime(destination));
+  }
+
+  @Test
+  public void testTransfer_doesNotReplace() throws IOException {
+    Files.write(destination, "existing".getBytes(StandardCharsets.UTF_8));
+    for (StagingStrategy strategy : StagingStrategy.values()) {
+      try {
+        new StagingFileTransfer(strategy).transfer(source, destination, false, false);
+        Assert.fail(strategy.toString());
+      } catch (FileAlreadyExistsException ex) {
+        Assert.assertEquals(
+            "existing", new String(Files.readAllBytes(destination), StandardCharsets.UTF_8));
+      }
+    }
+  }
+
+  @Test
+  public void testTransfer_hardLink() throws IOException {
+    StagingFileTransfer transfer = new StagingFileTransfer(StagingStrategy.HARDLINK);
+    Assert.assertFalse(transfer.isCopy());
+
+    transfer.transfer(source, destination, false, false);
+
+    Assert.assertTrue(Files.isSameFile(source, destination));
+  }
+
+  @Test
+  public void testTransfer_hardLinkReplaces() throws IOException {
+    Files.write(destination, "existing".getBytes(StandardCharsets.UTF_8));
+
+    new StagingFileTransfer(StagingStrategy.HARDLINK).transfer(source, destination, true, false);
+
+    Assert.assertTrue(Files.isSameFile(source, destination));
+  }
+
+  @Test
+  public void testTransfer_hardLinkFallsBackToCopy() throws IOException {
+    failingLinks(StagingStrategy.HARDLINK).transfer(source, destination, false, true);
+
+    Assert.assertFalse(Files.isSameFile(source, destination));
+    Assert.assertEquals(
+        "content", new String(Files.readAllBytes(destination), StandardCharsets.UTF_8));
+    Assert.assertEquals(FileTime.fromMillis(1000_000), Files.getLastModifiedTime(destination));
+  }
+
+  @Test
+  public void testTransfer_reflinkFallsBackToCopyAndStopsTrying() throws IOException {
+    StagingFileTransfer transfer = failingLinks(StagingStrategy.REFLINK);
+
+    transfer.transfer(largeSource, destination, false, false);
+    transfer.transfer(largeSource, destination, true, false);
+
+    Assert.assertEquals(Files.size(largeSource), Files.size(destination));
+    Assert.assertFalse(Files.isSameFile(largeSource, destination));
+    Assert.assertTrue(reflinks.get() <= 1);
+    Assert.assertTrue(transfer.isCopy());
+  }
+
+  @Test
+  public void testTransfer_reflink() throws IOException {
+    StagingFileTransfer transfer =
+        new StagingFileTransfer(
+            StagingStrategy.REFLINK,
+            (link, target) -> Assert.fail(),
+            (src, dest, copyAttributes) -> {
+              reflinks.incrementAndGet();
+              Files.copy(src, dest);
+              return true;
+            });
+
+    transfer.transfer(largeSource, destination, false, false);
+    Files.delete(destination);
+    // small files are copied without trying
+    transfer.transfer(source, destination, false, false);
+
+    Assert.assertEquals(System.getProperty("os.name").startsWith("Linux") ? 1 : 0, reflinks.get());
+  }
+
+  @Test
+  public void testTransfer_reflinkWithCp() throws IOException {
+    // whether or not the file system supports reflinks, the file is staged
+    new StagingFileTransfer(StagingStrategy.REFLINK)
+        .transfer(largeSource, destination, false, true);
+
+    Assert.assertEquals(Files.size(largeSource), Files.size(destination));
+    Assert.assertFalse(Files.isSameFile(largeSource, destination));
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.appengine.operations;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StagingManifestTest {
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path manifestFile;
+
+  @Before
+  public void setUp() {
+    manifestFile = temporaryFolder.getRoot().toPath().resolve("dir/app.staging-manifest.json");
+  }
+
+  @Test
+  public void testSaveAndLoad() throws IOException {
+    StagingManifest manifest = new StagingManifest();
+    manifest.put(
+        "WEB-INF/lib/a.jar", new StagingManifest.Entry("/src/a.jar", 10, 1000, 1000, null));
+    manifest.put("app.yaml", new StagingManifest.Entry("/src/app.yaml", 20, 2000, 3000, "abcd"));
+    manifest.save(manifestFile);
+
+    StagingManifest loaded = StagingManifest.load(manifestFile);
+    Assert.assertEquals(ImmutableSet.of("WEB-INF/lib/a.jar", "app.yaml"), loaded.getPaths());
+    StagingManifest.Entry entry = Preconditions.checkNotNull(loaded.get("app.yaml"));
+    Assert.assertEquals("/src/app.yaml", entry.getSource());
+    Assert.assertEquals(20, entry.getSize());
+    Assert.assertEquals(2000, entry.getLastModified());
+    Assert.assertEquals(3000, entry.getStagedLastModified());
+    Assert.assertEquals("abcd", entry.getSha256());
+    Assert.assertNull(Preconditions.checkNotNull(loaded.get("WEB-INF/lib/a.jar")).getSha256());
+  }
+
+  @Test
+  public void testLoad_missingFile() {
+    Assert.assertTrue(StagingManifest.load(manifestFile).getPaths().isEmpty());
+  }
+
+  @Test
+  public void testLoad_unreadableFile() throws IOException {
+    Files.createDirectories(manifestFile.getParent());
+    Files.write(manifestFile, "{not json".getBytes(StandardCharsets.UTF_8));
+    Assert.assertTrue(StagingManifest.load(manifestFile).getPaths().isEmpty());
+  }
+
+  @Test
+  public void testLoad_otherFormatVersion() throws IOException {
+    Files.createDirectories(manifestFile.getParent());
+    Files.write(
+        manifestFile,
+        "{\"version\":1,\"files\":{\"a\":{\"source\":\"/a\"}}}".getBytes(StandardCharsets.UTF_8));
+    Assert.assertTrue(StagingManifest.load(manifestFile).getPaths().isEmpty());
+  }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.appengine.operations;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.cloud.tools.appengine.AppEngineException;
+import com.google.cloud.tools.appengine.configuration.AppYamlProjectStageConfiguration;
+import com.google.cloud.tools.io.ArchiveWriter;
+import com.google.cloud.tools.test.utils.LogStoringHandler;
+import com.google.common.collect.ImmutableList;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StagingPlanTest {
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path appEngineDirectory;
+  private Path dockerDirectory;
+  private Path extraFilesDirectory;
+  private Path stagingDirectory;
+  private Path artifact;
+
+  @Before
+  public void setUp() throws IOException {
+    appEngineDirectory = temporaryFolder.newFolder("appengine").toPath();
+    dockerDirectory = temporaryFolder.newFolder("docker").toPath();
+    extraFilesDirectory = temporaryFolder.newFolder("extra").toPath();
+    stagingDirectory = temporaryFolder.newFolder("staging").toPath();
+    artifact = temporaryFolder.getRoot().toPath().resolve("artifact.jar");
+    Files.copy(Paths.get("src/test/resources/jars/libs/simpleLib.jar"), artifact);
+    write(dockerDirectory.resolve("Dockerfile"), "FROM scratch");
+  }
+
+  private static void write(Path file, String content) throws IOException {
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void assertEmpty(Path directory) throws IOException {
+    try (Stream<Path> children = Files.list(directory)) {
+      assertFalse(children.findAny().isPresent());
+    }
+  }
+
+  private AppYamlProjectStageConfiguration.Builder config(String appYaml) throws IOException {
+    write(appEngineDirectory.resolve("app.yaml"), appYaml);
+    return AppYamlProjectStageConfiguration.builder()
+        .appEngineDirectory(appEngineDirectory)
+        .artifact(artifact)
+        .stagingDirectory(stagingDirectory)
+        .dockerDirectory(dockerDirectory)
+        .extraFilesDirectories(ImmutableList.of(extraFilesDirectory));
+  }
+
+  private List<Path> destinations(StagingPlan plan) {
+    return plan.getFiles()
+        .stream()
+        .map(file -> stagingDirectory.toAbsolutePath().relativize(file.getDestination()))
+        .collect(Collectors.toList());
+  }
+
+  @Test
+  public void testPlan_flexible() throws Exception {
+    write(extraFilesDirectory.resolve("static/index.html"), "index");
+    StagingPlan plan =
+        new AppYamlProjectStaging().plan(config("env: flex\nruntime: custom\n").build());
+
+    assertEquals(StagingPlan.Mode.FLEXIBLE, plan.getMode());
+    assertEquals(
+        ImmutableList.of(
+            Paths.get("Dockerfile"),
+            Paths.get("static/index.html"),
+            Paths.get("app.yaml"),
+            Paths.get("artifact.jar")),
+        destinations(plan));
+    assertEquals(1, plan.getDirectories().size());
+    assertEquals(extraFilesDirectory.resolve("static"), plan.getDirectories().get(0).getSource());
+    assertEquals(12 + 5 + 26 + Files.size(artifact), plan.getTotalBytes());
+    // planning doesn't touch the staging directory
+    assertEmpty(stagingDirectory);
+  }
+
+  @Test
+  public void testPlan_standardJarWithClassPath() throws Exception {
+    Path jar = Paths.get("src/test/resources/jars/complexLib.jar");
+    StagingPlan plan =
+        new AppYamlProjectStaging().plan(config("runtime: java11\n").artifact(jar).build());
+
+    assertEquals(StagingPlan.Mode.STANDARD_JAR, plan.getMode());
+    assertEquals(
+        ImmutableList.of(
+            Paths.get("app.yaml"), Paths.get("complexLib.jar"), Paths.get("libs/simpleLib.jar")),
+        destinations(plan));
+    assertEquals(1, plan.getDirectories().size());
+    assertNull(plan.getDirectories().get(0).getSource());
+    assertEquals(
+        stagingDirectory.toAbsolutePath().resolve("libs"),
+        plan.getDirectories().get(0).getDestination());
+  }
+
+  @Test
+  public void testPlan_laterReplacingCopyWins() throws Exception {
+    write(extraFilesDirectory.resolve("app.yaml"), "runtime: stale\n");
+    StagingPlan plan = new AppYamlProjectStaging().plan(config("runtime: java11\n").build());
+
+    List<StagingPlan.FileCopy> appYamls =
+        plan.getFiles()
+            .stream()
+            .filter(file -> file.getDestination().endsWith("app.yaml"))
+            .collect(Collectors.toList());
+    assertEquals(1, appYamls.size());
+    assertEquals(appEngineDirectory.resolve("app.yaml"), appYamls.get(0).getSource());
+    assertTrue(appYamls.get(0).isReplace());
+  }
+
+  @Test
+  public void testPlan_directoryConflict() throws Exception {
+    Path otherExtraFiles = temporaryFolder.newFolder("other").toPath();
+    write(extraFilesDirectory.resolve("conflict.txt"), "first");
+    write(otherExtraFiles.resolve("conflict.txt"), "second");
+    AppYamlProjectStageConfiguration config =
+        config("runtime: java11\n")
+            .extraFilesDirectories(ImmutableList.of(extraFilesDirectory, otherExtraFiles))
+            .build();
+
+    try {
+      new AppYamlProjectStaging().plan(config);
+      fail();
+    } catch (AppEngineException ex) {
+      assertTrue(ex.getCause() instanceof FileAlreadyExistsException);
+    }
+  }
+
+  @Test
+  public void testPlan_unsupportedRuntime() throws Exception {
+    try {
+      new AppYamlProjectStaging().plan(config("runtime: python\nenv: standard\n").build());
+      fail();
+    } catch (AppEngineException ex) {
+      assertEquals(
+          "Cannot process application with runtime: python and env: standard", ex.getMessage());
+    }
+  }
+
+  @Test
+  public void testDryRun() throws Exception {
+    LogStoringHandler handler = LogStoringHandler.getForLogger(StagingPlan.class.getName());
+    write(extraFilesDirectory.resolve("static/index.html"), "index");
+    StagingPlan plan = new AppYamlProjectStaging().plan(config("runtime: java11\n").build());
+
+    StagingPlan.Totals totals = plan.dryRun();
+
+    assertEquals(3, totals.getFiles());
+    assertEquals(1, totals.getDirectories());
+    assertEquals(plan.getTotalBytes(), totals.getBytes());
+    assertEquals(5, handler.getLogs().size());
+    assertEmpty(stagingDirectory);
+  }
+
+  @Test
+  public void testExecute() throws Exception {
+    for (int i = 0; i < 100; i++) {
+      write(extraFilesDirectory.resolve("dir" + (i % 5)).resolve("file" + i), "file " + i);
+    }
+    StagingPlan plan =
+        new AppYamlProjectStaging().plan(config("env: flex\nruntime: custom\n").build());
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    StagingPlan.Totals totals;
+    try {
+      totals = plan.execute(executor);
+    } finally {
+      executor.shutdown();
+    }
+
+    assertEquals(103, totals.getFiles());
+    assertEquals(5, totals.getDirectories());
+    for (int i = 0; i < 100; i++) {
+      Path staged = stagingDirectory.resolve("dir" + (i % 5)).resolve("file" + i);
+      assertEquals("file " + i, new String(Files.readAllBytes(staged), StandardCharsets.UTF_8));
+    }
+    assertTrue(Files.exists(stagingDirectory.resolve("Dockerfile")));
+    assertTrue(Files.exists(stagingDirectory.resolve("app.yaml")));
+    assertTrue(Files.exists(stagingDirectory.resolve("artifact.jar")));
+  }
+
+  @Test
+  public void testExecute_doesNotOverwriteStagedFiles() throws Exception {
+    write(extraFilesDirectory.resolve("existing.txt"), "new");
+    write(stagingDirectory.resolve("existing.txt"), "old");
+    StagingPlan plan = new AppYamlProjectStaging().plan(config("runtime: java11\n").build());
+
+    try {
+      plan.execute(Runnable::run);
+      fail();
+    } catch (AppEngineException ex) {
+      assertTrue(ex.getCause() instanceof FileAlreadyExistsException);
+    }
+  }
+
+  @Test
+  public void testExecute_incremental() throws Exception {
+    write(extraFilesDirectory.resolve("static/index.html"), "index");
+    AppYamlProjectStaging staging = new AppYamlProjectStaging();
+    AppYamlProjectStageConfiguration config = config("runtime: java11\n").incremental(true).build();
+
+    staging.plan(config).execute(Runnable::run);
+    Files.delete(extraFilesDirectory.resolve("static/index.html"));
+    staging.plan(config).execute(Runnable::run);
+
+    assertFalse(Files.exists(stagingDirectory.resolve("static/index.html")));
+    assertTrue(Files.exists(stagingDirectory.resolve("app.yaml")));
+  }
+
+  @Test
+  public void testStageToArchive() throws Exception {
+    write(extraFilesDirectory.resolve("static/index.html"), "index");
+    Files.delete(stagingDirectory);
+    AppYamlProjectStageConfiguration config = config("runtime: java11\n").build();
+
+    ByteArrayOutputStream first = new ByteArrayOutputStream();
+    new AppYamlProjectStaging().stageToArchive(config, first, ArchiveWriter.Format.ZIP);
+    ByteArrayOutputStream second = new ByteArrayOutputStream();
+    new AppYamlProjectStaging().stageToArchive(config, second, ArchiveWriter.Format.ZIP);
+
+    assertArrayEquals(first.toByteArray(), second.toByteArray());
+    List<String> names = new ArrayList<>();
+    try (ZipInputStream input = new ZipInputStream(new ByteArrayInputStream(first.toByteArray()))) {
+      for (ZipEntry entry = input.getNextEntry(); entry != null; entry = input.getNextEntry()) {
+        names.add(entry.getName());
+      }
+    }
+    assertEquals(
+        ImmutableList.of("app.yaml", "artifact.jar", "static/", "static/index.html"), names);
+    assertFalse(Files.exists(stagingDirectory));
+  }
+
+  @Test
+  public void testWriteArchive_outsideStagingDirectory() throws Exception {
+    Path artifact = temporaryFolder.getRoot().toPath().resolve("app/app.jar");
+    Files.createDirectories(artifact.getParent());
+    try (OutputStream output = Files.newOutputStream(artifact)) {
+      Manifest manifest = new Manifest();
+      manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+      manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, "../extra/static/index.html");
+      new JarOutputStream(output, manifest).close();
+    }
+    write(extraFilesDirectory.resolve("static/index.html"), "index");
+    StagingPlan plan =
+        new AppYamlProjectStaging().plan(config("runtime: java11\n").artifact(artifact).build());
+
+    try {
+      plan.writeArchive(new ByteArrayOutputStream(), ArchiveWriter.Format.TAR_GZ);
+      fail();
+    } catch (AppEngineException ex) {
+      assertEquals(
+          "Cannot archive "
+              + artifact.getParent().resolve("../extra/static/index.html")
+              + ", it is staged outside the staging directory.",
+          ex.getMessage());
+    }
+  }
+}
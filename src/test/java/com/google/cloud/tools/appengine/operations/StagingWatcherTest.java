@@ -0,0 +1,196 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.appengine.operations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.cloud.tools.appengine.AppEngineException;
+import com.google.cloud.tools.appengine.configuration.AppYamlProjectStageConfiguration;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StagingWatcherTest {
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final BlockingQueue<StagingWatcher.Update> updates = new LinkedBlockingQueue<>();
+  private final BlockingQueue<AppEngineException> failures = new LinkedBlockingQueue<>();
+
+  private Path extraFilesDirectory;
+  private Path stagingDirectory;
+  private Path artifact;
+  private StagingWatcher watcher;
+
+  @Before
+  public void setUp() throws IOException {
+    Path appEngineDirectory = temporaryFolder.newFolder("appengine").toPath();
+    extraFilesDirectory = temporaryFolder.newFolder("extra").toPath();
+    stagingDirectory = temporaryFolder.newFolder("staging").toPath().toAbsolutePath();
+    artifact = temporaryFolder.getRoot().toPath().resolve("artifact.jar");
+    Files.copy(Paths.get("src/test/resources/jars/libs/simpleLib.jar"), artifact);
+    write(appEngineDirectory.resolve("app.yaml"), "runtime: java11\n");
+    write(extraFilesDirectory.resolve("index.html"), "index");
+
+    AppYamlProjectStageConfiguration config =
+        AppYamlProjectStageConfiguration.builder()
+            .appEngineDirectory(appEngineDirectory)
+            .artifact(artifact)
+            .stagingDirectory(stagingDirectory)
+            .extraFilesDirectories(ImmutableList.of(extraFilesDirectory))
+            .build();
+    watcher =
+        StagingWatcher.builder(config)
+            .setDebounce(Duration.ofMillis(50))
+            .addListener(
+                new StagingWatcher.Listener() {
+                  @Override
+                  public void staged(StagingWatcher.Update update) {
+                    updates.add(update);
+                  }
+
+                  @Override
+                  public void failed(AppEngineException ex) {
+                    failures.add(ex);
+                  }
+                })
+            .build();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    watcher.close();
+  }
+
+  private static void write(Path file, String content) throws IOException {
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String read(Path file) throws IOException {
+    return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+  }
+
+  /** Waits for an update that matches, updates of earlier events may come first. */
+  private StagingWatcher.Update awaitUpdate(Predicate<StagingWatcher.Update> matches)
+      throws InterruptedException {
+    while (true) {
+      StagingWatcher.Update update = updates.poll(10, TimeUnit.SECONDS);
+      assertNotNull("no update", update);
+      if (matches.test(update)) {
+        return update;
+      }
+    }
+  }
+
+  @Test
+  public void testStart() throws Exception {
+    watcher.start();
+
+    StagingWatcher.Update update = updates.take();
+    assertTrue(update.isInitial());
+    assertEquals(
+        ImmutableList.of(
+            stagingDirectory.resolve("index.html"),
+            stagingDirectory.resolve("app.yaml"),
+            stagingDirectory.resolve("artifact.jar")),
+        update.getCopied());
+    assertEquals("index", read(stagingDirectory.resolve("index.html")));
+    assertTrue(Files.exists(stagingDirectory.resolve("artifact.jar")));
+  }
+
+  @Test
+  public void testStart_twice() throws Exception {
+    watcher.start();
+    try {
+      watcher.start();
+      fail();
+    } catch (IllegalStateException ex) {
+      assertEquals("watcher was already started", ex.getMessage());
+    }
+  }
+
+  @Test
+  public void testWatch_copiesOnlyChangedFiles() throws Exception {
+    watcher.start();
+    updates.take();
+
+    write(extraFilesDirectory.resolve("index.html"), "changed index");
+
+    StagingWatcher.Update update = awaitUpdate(u -> !u.getCopied().isEmpty());
+    assertFalse(update.isInitial());
+    assertEquals(ImmutableList.of(stagingDirectory.resolve("index.html")), update.getCopied());
+    assertEquals("changed index", read(stagingDirectory.resolve("index.html")));
+  }
+
+  @Test
+  public void testWatch_newDirectoryAndDeletedFiles() throws Exception {
+    watcher.start();
+    updates.take();
+
+    Path style = extraFilesDirectory.resolve("css/style.css");
+    write(style, "body {}");
+    awaitUpdate(u -> u.getCopied().contains(stagingDirectory.resolve("css/style.css")));
+    assertEquals("body {}", read(stagingDirectory.resolve("css/style.css")));
+
+    // the new directory is watched too
+    write(style, "body { margin: 0 }");
+    awaitUpdate(u -> u.getCopied().contains(stagingDirectory.resolve("css/style.css")));
+    assertEquals("body { margin: 0 }", read(stagingDirectory.resolve("css/style.css")));
+
+    Files.delete(style);
+    Files.delete(style.getParent());
+    awaitUpdate(u -> u.getDeleted().contains(stagingDirectory.resolve("css")));
+    assertFalse(Files.exists(stagingDirectory.resolve("css")));
+  }
+
+  @Test
+  public void testWatch_retriesFailedUpdate() throws Exception {
+    watcher.start();
+    updates.take();
+
+    Path rebuilt = temporaryFolder.newFile("rebuilt.jar").toPath();
+    Files.copy(artifact, rebuilt, StandardCopyOption.REPLACE_EXISTING);
+    Files.delete(artifact);
+    AppEngineException failure = failures.poll(10, TimeUnit.SECONDS);
+    assertNotNull(failure);
+    assertEquals("Artifact doesn't exist at '" + artifact + "'.", failure.getMessage());
+
+    Files.move(rebuilt, artifact);
+    Files.setLastModifiedTime(artifact, FileTime.fromMillis(1000));
+    awaitUpdate(u -> u.getCopied().contains(stagingDirectory.resolve("artifact.jar")));
+  }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.appengine.operations.cloudsdk;
+
+import com.google.cloud.tools.appengine.operations.cloudsdk.serialization.CloudSdkVersion;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CloudSdkRegistryTest {
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final CloudSdkRegistry registry = new CloudSdkRegistry();
+  private final AtomicInteger loads = new AtomicInteger();
+  private final AtomicInteger validations = new AtomicInteger();
+  private Path sdkRoot;
+
+  @Before
+  public void setUp() throws IOException {
+    sdkRoot = temporaryFolder.newFolder("google-cloud-sdk").toPath();
+    writeVersion("300.0.0", 1000);
+  }
+
+  private void writeVersion(String version, long lastModifiedSeconds) throws IOException {
+    Path versionFile = sdkRoot.resolve("VERSION");
+    Files.write(versionFile, version.getBytes(StandardCharsets.UTF_8));
+    Files.setLastModifiedTime(versionFile, FileTime.fromMillis(lastModifiedSeconds * 1000));
+  }
+
+  private CloudSdkVersion load() throws CloudSdkVersionFileException {
+    loads.incrementAndGet();
+    try {
+      return new CloudSdkVersion(
+          new String(Files.readAllBytes(sdkRoot.resolve("VERSION")), StandardCharsets.UTF_8));
+    } catch (IOException ex) {
+      throw new CloudSdkVersionFileException(ex);
+    }
+  }
+
+  private void validate() {
+    validations.incrementAndGet();
+  }
+
+  @Test
+  public void testGetVersion_cachedUntilVersionFileChanges() throws Exception {
+    Assert.assertEquals("300.0.0", registry.getVersion(sdkRoot, this::load).toString());
+    Assert.assertEquals("300.0.0", registry.getVersion(sdkRoot, this::load).toString());
+    Assert.assertEquals(1, loads.get());
+
+    writeVersion("301.0.0", 2000);
+    Assert.assertEquals("301.0.0", registry.getVersion(sdkRoot, this::load).toString());
+    Assert.assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void testGetVersion_sizeChangeWithSameModificationTime() throws Exception {
+    registry.getVersion(sdkRoot, this::load);
+    writeVersion("1000.0.0", 1000);
+
+    Assert.assertEquals("1000.0.0", registry.getVersion(sdkRoot, this::load).toString());
+    Assert.assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void testGetVersion_missingVersionFileNotCached() throws Exception {
+    Files.delete(sdkRoot.resolve("VERSION"));
+    CloudSdkRegistry.VersionLoader failing =
+        () -> {
+          loads.incrementAndGet();
+          throw new CloudSdkVersionFileNotFoundException("not found");
+        };
+
+    for (int i = 0; i < 2; i++) {
+      try {
+        registry.getVersion(sdkRoot, failing);
+        Assert.fail();
+      } catch (CloudSdkVersionFileNotFoundException ex) {
+        // expected
+      }
+    }
+    Assert.assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void testValidate_cachedUntilVersionFileChanges() throws Exception {
+    registry.validate(sdkRoot, this::validate);
+    registry.validate(sdkRoot, this::validate);
+    Assert.assertEquals(1, validations.get());
+
+    writeVersion("301.0.0", 2000);
+    registry.validate(sdkRoot, this::validate);
+    Assert.assertEquals(2, validations.get());
+  }
+
+  @Test
+  public void testValidate_failuresNotCached() throws Exception {
+    CloudSdkRegistry.Validator failing =
+        () -> {
+          validations.incrementAndGet();
+          throw new CloudSdkNotFoundException("gcloud missing");
+        };
+    for (int i = 0; i < 2; i++) {
+      try {
+        registry.validate(sdkRoot, failing);
+        Assert.fail();
+      } catch (CloudSdkNotFoundException ex) {
+        Assert.assertEquals("gcloud missing", ex.getMessage());
+      }
+    }
+    Assert.assertEquals(2, validations.get());
+
+    registry.validate(sdkRoot, this::validate);
+    Assert.assertEquals(3, validations.get());
+  }
+
+  @Test
+  public void testValidate_keepsCachedVersion() throws Exception {
+    registry.getVersion(sdkRoot, this::load);
+    registry.validate(sdkRoot, this::validate);
+    registry.getVersion(sdkRoot, this::load);
+    registry.validate(sdkRoot, this::validate);
+
+    Assert.assertEquals(1, loads.get());
+    Assert.assertEquals(1, validations.get());
+  }
+
+  @Test
+  public void testRefresh() throws Exception {
+    registry.getVersion(sdkRoot, this::load);
+    registry.validate(sdkRoot, this::validate);
+
+    registry.refresh(sdkRoot);
+    registry.getVersion(sdkRoot, this::load);
+    registry.validate(sdkRoot, this::validate);
+    registry.refresh();
+    registry.getVersion(sdkRoot, this::load);
+    registry.validate(sdkRoot, this::validate);
+
+    Assert.assertEquals(3, loads.get());
+    Assert.assertEquals(3, validations.get());
+  }
+
+  @Test
+  public void testDiscoverSdkPath() throws Exception {
+    AtomicInteger discoveries = new AtomicInteger();
+    CloudSdkRegistry.Discovery discovery =
+        () -> {
+          discoveries.incrementAndGet();
+          return sdkRoot;
+        };
+
+    Assert.assertEquals(sdkRoot, registry.discoverSdkPath("key", discovery));
+    Assert.assertEquals(sdkRoot, registry.discoverSdkPath("key", discovery));
+    Assert.assertEquals(1, discoveries.get());
+
+    Assert.assertEquals(sdkRoot, registry.discoverSdkPath("other key", discovery));
+    Assert.assertEquals(2, discoveries.get());
+  }
+
+  @Test
+  public void testDiscoverSdkPath_rediscoversDeletedSdk() throws Exception {
+    Path otherRoot = temporaryFolder.newFolder("other-sdk").toPath();
+    registry.discoverSdkPath("key", () -> otherRoot);
+    Files.delete(otherRoot);
+
+    Assert.assertEquals(sdkRoot, registry.discoverSdkPath("key", () -> sdkRoot));
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.appengine.operations.cloudsdk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GcloudResultCacheTest {
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final Clock clock = Clock.fixed(Instant.ofEpochSecond(1000), ZoneOffset.UTC);
+  private Path sdkRoot;
+  private List<String> command;
+  private Map<String, String> systemEnvironment;
+
+  @Before
+  public void setUp() throws IOException {
+    sdkRoot = temporaryFolder.newFolder("google-cloud-sdk").toPath();
+    Files.createDirectories(sdkRoot.resolve("bin"));
+    Files.write(sdkRoot.resolve("VERSION"), "300.0.0".getBytes(StandardCharsets.UTF_8));
+    command =
+        Arrays.asList(
+            sdkRoot.resolve("bin").resolve("gcloud").toString(),
+            "components",
+            "list",
+            "--format=json");
+    systemEnvironment =
+        ImmutableMap.of(
+            "CLOUDSDK_CONFIG", temporaryFolder.newFolder("config").toString(), "PATH", "/bin");
+  }
+
+  private GcloudResultCache newCache(Clock clock) {
+    return new GcloudResultCache(Duration.ofMinutes(5), null, clock, systemEnvironment);
+  }
+
+  @Test
+  public void testIsReadOnly() {
+    assertTrue(GcloudResultCache.isReadOnly(Arrays.asList("components", "list", "--quiet")));
+    assertTrue(GcloudResultCache.isReadOnly(Arrays.asList("config", "get-value", "project")));
+    assertTrue(GcloudResultCache.isReadOnly(Arrays.asList("version")));
+    assertFalse(GcloudResultCache.isReadOnly(Arrays.asList("components", "install", "beta")));
+    assertFalse(GcloudResultCache.isReadOnly(Arrays.asList("app", "deploy")));
+    assertFalse(GcloudResultCache.isReadOnly(Arrays.asList("--verbosity", "info")));
+  }
+
+  @Test
+  public void testInvalidates() {
+    assertTrue(GcloudResultCache.invalidates(Arrays.asList("components", "update")));
+    assertTrue(GcloudResultCache.invalidates(Arrays.asList("config", "set", "project", "p")));
+    assertTrue(GcloudResultCache.invalidates(Arrays.asList("auth", "login")));
+    assertFalse(GcloudResultCache.invalidates(Arrays.asList("config", "list")));
+    assertFalse(GcloudResultCache.invalidates(Arrays.asList("app", "deploy")));
+  }
+
+  @Test
+  public void testGet_hit() {
+    GcloudResultCache cache = newCache(clock);
+    cache.put(cache.newKey(command, null), "result");
+    assertEquals(Optional.of("result"), cache.get(cache.newKey(command, null)));
+  }
+
+  @Test
+  public void testNewKey_differsByArguments() {
+    GcloudResultCache cache = newCache(clock);
+    List<String> other = Arrays.asList(command.get(0), "components", "list", "--format=text");
+    assertNotEquals(cache.newKey(command, null).toString(), cache.newKey(other, null).toString());
+  }
+
+  @Test
+  public void testNewKey_differsByCloudSdkEnvironment() {
+    GcloudResultCache cache = newCache(clock);
+    assertNotEquals(
+        cache.newKey(command, null).toString(),
+        cache.newKey(command, ImmutableMap.of("CLOUDSDK_CORE_PROJECT", "p")).toString());
+  }
+
+  @Test
+  public void testNewKey_ignoresOtherEnvironment() {
+    GcloudResultCache cache = newCache(clock);
+    assertEquals(
+        cache.newKey(command, null).toString(),
+        cache.newKey(command, ImmutableMap.of("FOO", "bar")).toString());
+  }
+
+  @Test
+  public void testNewKey_changesWhenSdkIsUpdated() throws IOException {
+    GcloudResultCache cache = newCache(clock);
+    GcloudResultCache.Key before = cache.newKey(command, null);
+    Path versionFile = sdkRoot.resolve("VERSION");
+    Files.write(versionFile, "301.0.0".getBytes(StandardCharsets.UTF_8));
+    Files.setLastModifiedTime(versionFile, FileTime.fromMillis(0));
+    assertNotEquals(before.toString(), cache.newKey(command, null).toString());
+  }
+
+  @Test
+  public void testGet_expired() {
+    Clock[] now = {clock};
+    Clock mutableClock =
+        new Clock() {
+          @Override
+          public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+          }
+
+          @Override
+          public Clock withZone(ZoneId zone) {
+            return this;
+          }
+
+          @Override
+          public Instant instant() {
+            return now[0].instant();
+          }
+        };
+    GcloudResultCache cache = newCache(mutableClock);
+    cache.put(cache.newKey(command, null), "result");
+
+    now[0] = Clock.offset(clock, Duration.ofMinutes(4));
+    assertEquals(Optional.of("result"), cache.get(cache.newKey(command, null)));
+    now[0] = Clock.offset(clock, Duration.ofMinutes(5));
+    assertEquals(Optional.empty(), cache.get(cache.newKey(command, null)));
+  }
+
+  @Test
+  public void testInvalidateAll() {
+    GcloudResultCache cache = newCache(clock);
+    cache.put(cache.newKey(command, null), "result");
+    GcloudResultCache.invalidateAll();
+    assertEquals(Optional.empty(), cache.get(cache.newKey(command, null)));
+  }
+
+  @Test
+  public void testPut_skippedIfInvalidatedWhileRunning() {
+    GcloudResultCache cache = newCache(clock);
+    GcloudResultCache.Key key = cache.newKey(command, null);
+    GcloudResultCache.invalidateAll();
+    cache.put(key, "stale");
+    assertEquals(Optional.empty(), cache.get(cache.newKey(command, null)));
+  }
+
+  @Test
+  public void testPersistent_roundTrip() throws IOException {
+    Path file = temporaryFolder.getRoot().toPath().resolve("cache").resolve("gcloud.json");
+    GcloudResultCache cache =
+        new GcloudResultCache(Duration.ofMinutes(5), file, clock, systemEnvironment);
+    cache.put(cache.newKey(command, null), "result");
+    assertTrue(Files.isRegularFile(file));
+
+    GcloudResultCache reloaded =
+        new GcloudResultCache(Duration.ofMinutes(5), file, clock, systemEnvironment);
+    assertEquals(Optional.of("result"), reloaded.get(reloaded.newKey(command, null)));
+  }
+
+  @Test
+  public void testPersistent_ignoresCorruptFile() throws IOException {
+    Path file = temporaryFolder.newFile("gcloud.json").toPath();
+    Files.write(file, "{not json".getBytes(StandardCharsets.UTF_8));
+    GcloudResultCache cache =
+        new GcloudResultCache(Duration.ofMinutes(5), file, clock, systemEnvironment);
+    assertEquals(Optional.empty(), cache.get(cache.newKey(command, null)));
+  }
+
+  @Test
+  public void testClear() {
+    GcloudResultCache cache = newCache(clock);
+    cache.put(cache.newKey(command, null), "result");
+    cache.clear();
+    assertEquals(Optional.empty(), cache.get(cache.newKey(command, null)));
+  }
+}
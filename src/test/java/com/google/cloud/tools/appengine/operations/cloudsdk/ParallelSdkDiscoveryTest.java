@@ -0,0 +1,172 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.appengine.operations.cloudsdk;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ParallelSdkDiscoveryTest {
+
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+  // holds resolvers that are meant to stall until the test ends
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  @After
+  public void tearDown() {
+    release.countDown();
+    executor.shutdownNow();
+  }
+
+  private static CloudSdkResolver resolver(@Nullable String path) {
+    return new TestResolver(() -> path == null ? null : Paths.get(path));
+  }
+
+  private CloudSdkResolver stalledResolver(String path) {
+    return new TestResolver(
+        () -> {
+          release.await();
+          return Paths.get(path);
+        });
+  }
+
+  @Test
+  public void testDiscover_prefersBetterRankedResolver() {
+    CountDownLatch secondDone = new CountDownLatch(1);
+    CloudSdkResolver slow =
+        new TestResolver(
+            () -> {
+              // answers only after the worse ranked resolver
+              secondDone.await();
+              return Paths.get("/first");
+            });
+    CloudSdkResolver fast =
+        new TestResolver(
+            () -> {
+              secondDone.countDown();
+              return Paths.get("/second");
+            });
+
+    ParallelSdkDiscovery discovery = new ParallelSdkDiscovery(executor, 10, TimeUnit.SECONDS);
+    Assert.assertEquals(Paths.get("/first"), discovery.discover(Arrays.asList(slow, fast)));
+  }
+
+  @Test
+  public void testDiscover_skipsResolverThatFoundNothing() {
+    ParallelSdkDiscovery discovery = new ParallelSdkDiscovery(executor, 10, TimeUnit.SECONDS);
+    Assert.assertEquals(
+        Paths.get("/second"),
+        discovery.discover(Arrays.asList(resolver(null), resolver("/second"), resolver("/third"))));
+  }
+
+  @Test
+  public void testDiscover_skipsResolverThatTimedOut() {
+    ParallelSdkDiscovery discovery = new ParallelSdkDiscovery(executor, 100, TimeUnit.MILLISECONDS);
+
+    long start = System.nanoTime();
+    Path path = discovery.discover(Arrays.asList(stalledResolver("/first"), resolver("/second")));
+
+    Assert.assertEquals(Paths.get("/second"), path);
+    Assert.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+  }
+
+  @Test
+  public void testDiscover_skipsResolverThatFailed() {
+    CloudSdkResolver failing =
+        new TestResolver(
+            () -> {
+              throw new IllegalStateException("bad settings");
+            });
+
+    ParallelSdkDiscovery discovery = new ParallelSdkDiscovery(executor, 10, TimeUnit.SECONDS);
+    Assert.assertEquals(
+        Paths.get("/second"), discovery.discover(Arrays.asList(failing, resolver("/second"))));
+  }
+
+  @Test
+  public void testDiscover_nothingFound() {
+    ParallelSdkDiscovery discovery = new ParallelSdkDiscovery(executor, 100, TimeUnit.MILLISECONDS);
+    Assert.assertNull(discovery.discover(Arrays.asList(resolver(null), stalledResolver("/x"))));
+    Assert.assertNull(discovery.discover(Collections.emptyList()));
+  }
+
+  @Test
+  public void testDiscover_cancelsRemainingResolvers() throws InterruptedException {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch interrupted = new CountDownLatch(1);
+    CloudSdkResolver stalled =
+        new TestResolver(
+            () -> {
+              started.countDown();
+              try {
+                release.await();
+              } catch (InterruptedException ex) {
+                interrupted.countDown();
+              }
+              return null;
+            });
+
+    ParallelSdkDiscovery discovery = new ParallelSdkDiscovery(executor, 10, TimeUnit.SECONDS);
+    CloudSdkResolver first =
+        new TestResolver(
+            () -> {
+              started.await();
+              return Paths.get("/first");
+            });
+    Assert.assertEquals(Paths.get("/first"), discovery.discover(Arrays.asList(first, stalled)));
+    Assert.assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+  }
+
+  private interface Search {
+    @Nullable
+    Path search() throws Exception;
+  }
+
+  private static class TestResolver implements CloudSdkResolver {
+    private final Search search;
+
+    private TestResolver(Search search) {
+      this.search = search;
+    }
+
+    @Nullable
+    @Override
+    public Path getCloudSdkPath() {
+      try {
+        return search.search();
+      } catch (RuntimeException ex) {
+        throw ex;
+      } catch (Exception ex) {
+        throw new IllegalStateException(ex);
+      }
+    }
+
+    @Override
+    public int getRank() {
+      return 0;
+    }
+  }
+}
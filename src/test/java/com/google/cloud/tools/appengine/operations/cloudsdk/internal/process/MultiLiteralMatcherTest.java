@@ -0,0 +1,54 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.tools.appengine.operations.cloudsdk.internal.process;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.util.BitSet;
+import org.junit.Test;
+
+public class MultiLiteralMatcherTest {
+
+  private final MultiLiteralMatcher matcher =
+      new MultiLiteralMatcher(
+          ImmutableList.of(
+              ImmutableSet.of("he", "she"),
+              ImmutableSet.of("his"),
+              ImmutableSet.of("hers"),
+              ImmutableSet.of()));
+
+  @Test
+  public void testMatch_none() {
+    assertEquals(new BitSet(), matcher.match("nothing to see"));
+  }
+
+  @Test
+  public void testMatch_overlapping() {
+    BitSet expected = new BitSet();
+    expected.set(0);
+    expected.set(2);
+    assertEquals(expected, matcher.match("ushers"));
+  }
+
+  @Test
+  public void testMatch_failureTransitions() {
+    BitSet expected = new BitSet();
+    expected.set(1);
+    assertEquals(expected, matcher.match("ahhhis"));
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.tools.appengine.operations.cloudsdk.internal.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableSet;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import org.junit.Test;
+
+public class RequiredLiteralsTest {
+
+  @Test
+  public void testOf_plainLiteral() {
+    assertEquals(
+        Optional.of(ImmutableSet.of("Address already in use")),
+        RequiredLiterals.of("Address already in use"));
+  }
+
+  @Test
+  public void testOf_devAppServerReadiness() {
+    assertEquals(
+        Optional.of(
+            ImmutableSet.of("Dev App Server is now running", "INFO:oejs.Server:main: Started")),
+        RequiredLiterals.of(
+            ".*(Dev App Server is now running|INFO:oejs\\.Server:main: Started).*"));
+  }
+
+  @Test
+  public void testOf_longestRunAroundMetacharacters() {
+    assertEquals(
+        Optional.of(ImmutableSet.of(" is bus")), RequiredLiterals.of("^port \\d+ is busy?$"));
+  }
+
+  @Test
+  public void testOf_optionalCharactersExcluded() {
+    assertEquals(Optional.of(ImmutableSet.of("colo")), RequiredLiterals.of("colou?r"));
+    assertEquals(Optional.of(ImmutableSet.of("ab")), RequiredLiterals.of("ab+c*"));
+  }
+
+  @Test
+  public void testOf_groupsBreakRuns() {
+    assertEquals(Optional.of(ImmutableSet.of("WARNING")), RequiredLiterals.of("(a|b)WARNING[0-9]"));
+  }
+
+  @Test
+  public void testOf_unanalyzable() {
+    assertFalse(RequiredLiterals.of(".*").isPresent());
+    assertFalse(RequiredLiterals.of("a|.*").isPresent());
+    assertFalse(RequiredLiterals.of("(?i)error").isPresent());
+    assertFalse(RequiredLiterals.of("\\Qa.b\\E").isPresent());
+    assertFalse(
+        RequiredLiterals.of(Pattern.compile("error", Pattern.CASE_INSENSITIVE)).isPresent());
+  }
+
+  @Test
+  public void testOf_quantifierBoundsAndEscapeArgumentsAreNotLiterals() {
+    assertEquals(Optional.of(ImmutableSet.of("port ")), RequiredLiterals.of("port \\d{3}"));
+    assertEquals(Optional.of(ImmutableSet.of("BC")), RequiredLiterals.of("\\x41BC"));
+    assertEquals(Optional.of(ImmutableSet.of(":")), RequiredLiterals.of("\\p{Alpha}+:"));
+  }
+
+  @Test
+  public void testOf_inlineFlagsAfterNonCapturingGroup() {
+    assertFalse(RequiredLiterals.of("(?:x)?(?i)bar").isPresent());
+    assertFalse(RequiredLiterals.of("(?:a)(?x) b").isPresent());
+  }
+
+  @Test
+  public void testOf_literalsOccurInEveryMatch() {
+    assertMustMatch("[0-9]{4}", "year 2020");
+    assertMustMatch("\\d{3}", "port 456");
+    assertMustMatch("a{2,3}b", "aab");
+    assertMustMatch("\\p{Alpha}+:", "key:");
+    assertMustMatch("\\pLx", "Ax");
+    assertMustMatch("\\P{Digit}x", "ax");
+    assertMustMatch("\\x41BC", "ABC");
+    assertMustMatch("\\x{41}BC", "ABC");
+    assertMustMatch("\\u0041BC", "ABC");
+    assertMustMatch("\\0101BC", "ABC");
+    assertMustMatch("\\cJx", "\nx");
+    assertMustMatch("(a)\\1b", "aab");
+    assertMustMatch("(?<n>a)\\k<n>b", "aab");
+    assertMustMatch("(?:x)?(?i)bar", "BAR");
+    assertMustMatch("[a[bc]d]x", "bx");
+    assertMustMatch("[[a]b|c]x", "|x");
+    assertMustMatch("[a-z&&[^e]]x", "fx");
+  }
+
+  /** Asserts that the regex matches the line and that the line passes the prefilter. */
+  private static void assertMustMatch(String regex, String line) {
+    assertTrue(regex, Pattern.compile(regex).matcher(line).find());
+    Optional<ImmutableSet<String>> literals = RequiredLiterals.of(regex);
+    if (literals.isPresent()) {
+      assertTrue(
+          regex + " requires one of " + literals.get(),
+          literals.get().stream().anyMatch(line::contains));
+    }
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.tools.appengine.operations.cloudsdk.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class GcloudStructuredLogLineListenerTest {
+
+  @Mock private ProcessOutputLineListener plainLineListener;
+
+  private final List<GcloudStructuredLogEvent> events = new ArrayList<>();
+  private GcloudStructuredLogLineListener listener;
+
+  @Before
+  public void setUp() {
+    listener = new GcloudStructuredLogLineListener(plainLineListener).subscribe(events::add);
+  }
+
+  @Test
+  public void testOnOutputLine_progress() {
+    listener.onOutputLine(
+        "{\"version\": \"0.0.1\", \"verbosity\": \"INFO\", \"message\": \"Uploading 3 files\"}");
+
+    assertEquals(1, events.size());
+    assertEquals(GcloudStructuredLogEvent.Type.PROGRESS, events.get(0).getType());
+    assertEquals("Uploading 3 files", events.get(0).getMessage());
+    assertNull(events.get(0).getStacktrace());
+    verifyNoMoreInteractions(plainLineListener);
+  }
+
+  @Test
+  public void testOnOutputLine_warning() {
+    listener.onOutputLine("{\"verbosity\": \"WARNING\", \"message\": \"deprecated\"}");
+
+    assertEquals(GcloudStructuredLogEvent.Type.WARNING, events.get(0).getType());
+  }
+
+  @Test
+  public void testOnOutputLine_errorWithStacktrace() {
+    listener.onOutputLine(
+        "{\"verbosity\": \"ERROR\", \"message\": \"(gcloud.app.deploy) failed\","
+            + " \"error\": {\"type\": \"HttpError\", \"stacktrace\": \"Traceback...\"}}");
+
+    assertEquals(GcloudStructuredLogEvent.Type.ERROR, events.get(0).getType());
+    assertEquals("Traceback...", events.get(0).getStacktrace());
+  }
+
+  @Test
+  public void testOnOutputLine_plainLine() {
+    listener.onOutputLine("Beginning deployment of service [default]...");
+    listener.onOutputLine("");
+
+    assertEquals(0, events.size());
+    verify(plainLineListener).onOutputLine("Beginning deployment of service [default]...");
+    verify(plainLineListener).onOutputLine("");
+  }
+
+  @Test
+  public void testOnOutputLine_malformedJsonForwarded() {
+    listener.onOutputLine("{not json");
+
+    assertEquals(0, events.size());
+    verify(plainLineListener).onOutputLine("{not json");
+  }
+
+  @Test
+  public void testUnsubscribe() {
+    GcloudStructuredLogEventListener subscriber = events::add;
+    listener = new GcloudStructuredLogLineListener().subscribe(subscriber);
+    listener.unsubscribe(subscriber);
+
+    listener.onOutputLine("{\"message\": \"hello\"}");
+
+    assertEquals(0, events.size());
+  }
+}
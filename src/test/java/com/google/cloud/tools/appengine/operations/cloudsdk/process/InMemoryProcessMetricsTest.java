@@ -0,0 +1,87 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.appengine.operations.cloudsdk.process;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class InMemoryProcessMetricsTest {
+
+  private final InMemoryProcessMetrics metrics = new InMemoryProcessMetrics();
+
+  private void run(ProcessCommandInfo command, long wallMillis, int exitCode) {
+    metrics.onStart(command, Duration.ofMillis(2));
+    metrics.onFirstOutput(command, Duration.ofMillis(100));
+    metrics.onBytesRead(command, 10, false);
+    metrics.onBytesRead(command, 4, true);
+    metrics.onExit(command, exitCode, Duration.ofMillis(wallMillis));
+  }
+
+  @Test
+  public void testGetStats_orderedByTotalWallTime() {
+    ProcessCommandInfo deploy = ProcessCommandInfo.of("gcloud", Arrays.asList("app", "deploy"));
+    ProcessCommandInfo list = ProcessCommandInfo.of("gcloud", Arrays.asList("components", "list"));
+    run(deploy, 60_000, 0);
+    run(list, 1_000, 0);
+    run(list, 2_000, 1);
+
+    List<InMemoryProcessMetrics.CommandStats> stats = metrics.getStats();
+    Assert.assertEquals(2, stats.size());
+    Assert.assertEquals("gcloud app deploy", stats.get(0).getName());
+
+    InMemoryProcessMetrics.CommandStats listStats = stats.get(1);
+    Assert.assertEquals("gcloud components list", listStats.getName());
+    Assert.assertEquals(2, listStats.getStartedCount());
+    Assert.assertEquals(1, listStats.getFailedCount());
+    Assert.assertEquals(20, listStats.getStdoutBytes());
+    Assert.assertEquals(8, listStats.getStderrBytes());
+    Assert.assertEquals(2, listStats.getWallTime().getCount());
+    Assert.assertEquals(Duration.ofSeconds(3), listStats.getWallTime().getTotal());
+    Assert.assertEquals(Duration.ofSeconds(2), listStats.getWallTime().getMax());
+    Assert.assertEquals(Duration.ofMillis(1_500), listStats.getWallTime().getMean());
+    Assert.assertEquals(2, listStats.getSpawnTime().getCount());
+    Assert.assertEquals(2, listStats.getFirstOutputTime().getCount());
+  }
+
+  @Test
+  public void testHistogram_percentiles() {
+    ProcessCommandInfo command = ProcessCommandInfo.of("gcloud", Arrays.asList("info"));
+    for (int i = 0; i < 9; i++) {
+      metrics.onExit(command, 0, Duration.ofMillis(10));
+    }
+    metrics.onExit(command, 0, Duration.ofSeconds(1));
+
+    InMemoryProcessMetrics.Histogram wallTime = metrics.getStats().get(0).getWallTime();
+    // 10ms falls in the [8, 16) bucket
+    Assert.assertEquals(Duration.ofMillis(16), wallTime.getPercentile(50));
+    Assert.assertEquals(Duration.ofMillis(16), wallTime.getPercentile(90));
+    // capped at the maximum rather than the bucket bound of 1024ms
+    Assert.assertEquals(Duration.ofSeconds(1), wallTime.getPercentile(100));
+  }
+
+  @Test
+  public void testReset() {
+    run(ProcessCommandInfo.of("gcloud", Arrays.asList("info")), 10, 0);
+    Assert.assertTrue(metrics.report().startsWith("gcloud info: started=1"));
+    metrics.reset();
+    Assert.assertTrue(metrics.getStats().isEmpty());
+    Assert.assertEquals("", metrics.report());
+  }
+}
@@ -18,7 +18,7 @@ package com.google.cloud.tools.appengine.operations.cloudsdk.process;
 
 import static org.junit.Assert.assertEquals;
 import static org.mockito.ArgumentMatchers.anyInt;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.lenient;
 
 import com.google.cloud.tools.appengine.operations.cloudsdk.internal.process.WaitingProcessOutputLineListener;
 import com.google.common.collect.ImmutableList;
@@ -39,6 +39,7 @@ public class LegacyProcessHandlerTest {
   @Mock private ProcessExitListener exit;
   @Mock private LegacyProcessHandler.Builder.DevAppServerAsyncOutputWatcherFactory watcherFactory;
   @Mock private WaitingProcessOutputLineListener watcher;
+  @Mock private Process process;
   private final List<ProcessOutputLineListener> stdOutListeners = new ArrayList<>();
   private final List<ProcessOutputLineListener> stdErrListeners = new ArrayList<>();
   private final List<ProcessStartListener> startListeners = new ArrayList<>();
@@ -46,7 +47,7 @@ public class LegacyProcessHandlerTest {
 
   @Before
   public void setUp() {
-    when(watcherFactory.newLineListener(anyInt())).thenReturn(watcher);
+    lenient().when(watcherFactory.newLineListener(anyInt())).thenReturn(watcher);
   }
 
   @Test
@@ -80,4 +81,41 @@ public class LegacyProcessHandlerTest {
     assertEquals(ImmutableList.of(start), startListeners);
     assertEquals(ImmutableList.of(exit), exitListeners);
   }
+
+  @Test
+  public void testBuilder_outputWatcher() {
+    OutputWatcher outputWatcher = OutputWatcher.builder().watch("ready", "ready").build();
+    new LegacyProcessHandler.Builder(
+            stdOutListeners, stdErrListeners, startListeners, exitListeners, watcherFactory)
+        .addOutputWatcher(outputWatcher)
+        .setExitListener(exit)
+        .build();
+
+    assertEquals(ImmutableList.of(outputWatcher), stdOutListeners);
+    assertEquals(ImmutableList.of(outputWatcher), stdErrListeners);
+    assertEquals(ImmutableList.of(exit, outputWatcher), exitListeners);
+  }
+
+  @Test
+  public void testBuilder_outputWatcherBuiltTwice() {
+    OutputWatcher outputWatcher = OutputWatcher.builder().watch("ready", "ready").build();
+    LegacyProcessHandler.Builder builder =
+        new LegacyProcessHandler.Builder(
+                stdOutListeners, stdErrListeners, startListeners, exitListeners, watcherFactory)
+            .addOutputWatcher(outputWatcher);
+    builder.build();
+    builder.build();
+
+    assertEquals(ImmutableList.of(outputWatcher), exitListeners);
+  }
+
+  @Test
+  public void testHandleProcess_syncDeregistersExitedProcess() throws Exception {
+    lenient().when(process.isAlive()).thenReturn(true);
+    int liveProcesses = ProcessRegistry.getInstance().getLiveProcessCount();
+
+    LegacyProcessHandler.builder().setExitListener(exit).build().handleProcess(process);
+
+    assertEquals(liveProcesses, ProcessRegistry.getInstance().getLiveProcessCount());
+  }
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.tools.appengine.operations.cloudsdk.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import org.junit.Test;
+
+public class OutputWatcherTest {
+
+  @Test
+  public void testFirstMatch() throws Exception {
+    OutputWatcher watcher =
+        OutputWatcher.builder()
+            .watch("ready", "Dev App Server is now running")
+            .watch("port", "port (\\d+) already in use")
+            .build();
+
+    watcher.onOutputLine("starting");
+    watcher.onOutputLine("port 8080 already in use");
+
+    assertFalse(watcher.firstMatch("ready").isDone());
+    OutputMatch match = watcher.firstMatch("port").get();
+    assertEquals("port", match.getName());
+    assertEquals("port 8080 already in use", match.getLine());
+    assertEquals("8080", match.getMatchResult().group(1));
+  }
+
+  @Test
+  public void testListener_calledForEveryMatch() {
+    List<String> lines = new ArrayList<>();
+    OutputWatcher watcher =
+        OutputWatcher.builder()
+            .watch("deprecation", "WARNING: .* is deprecated", match -> lines.add(match.getLine()))
+            .build();
+
+    watcher.onOutputLine("WARNING: flag --a is deprecated");
+    watcher.onOutputLine("INFO: fine");
+    watcher.onOutputLine("WARNING: flag --b is deprecated");
+
+    assertEquals(2, lines.size());
+  }
+
+  @Test
+  public void testUnfilteredPattern() throws Exception {
+    OutputWatcher watcher = OutputWatcher.builder().watch("digits", "^\\d+$").build();
+
+    watcher.onOutputLine("12345");
+
+    assertEquals("12345", watcher.firstMatch("digits").get().getLine());
+  }
+
+  @Test
+  public void testQuantifiedPattern() throws Exception {
+    OutputWatcher watcher = OutputWatcher.builder().watch("port", "\\d{3}").build();
+
+    watcher.onOutputLine("port 456");
+
+    assertEquals("port 456", watcher.firstMatch("port").get().getLine());
+  }
+
+  @Test
+  public void testOnExit_failsUnmatched() throws Exception {
+    OutputWatcher watcher =
+        OutputWatcher.builder().watch("ready", "ready").watch("error", "error").build();
+
+    watcher.onOutputLine("ready");
+    watcher.onExit(1);
+
+    assertEquals("ready", watcher.firstMatch("ready").get().getLine());
+    try {
+      watcher.firstMatch("error").get();
+      fail();
+    } catch (ExecutionException ex) {
+      assertTrue(ex.getCause() instanceof ProcessHandlerException);
+      assertEquals(
+          "Process exited with code 1 before output matched 'error'", ex.getCause().getMessage());
+    }
+  }
+
+  @Test
+  public void testFirstMatch_unknownName() {
+    try {
+      OutputWatcher.builder().build().firstMatch("nope");
+      fail();
+    } catch (IllegalArgumentException ex) {
+      assertEquals("No pattern registered as 'nope'", ex.getMessage());
+    }
+  }
+
+  @Test
+  public void testWatch_duplicateName() {
+    try {
+      OutputWatcher.builder().watch("a", "a").watch("a", "b");
+      fail();
+    } catch (IllegalArgumentException ex) {
+      assertEquals("Pattern 'a' is already registered", ex.getMessage());
+    }
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.appengine.operations.cloudsdk.process;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ProcessCommandInfoTest {
+
+  @Test
+  public void testOf_stopsAtFlags() {
+    ProcessCommandInfo command =
+        ProcessCommandInfo.of(
+            "gcloud", Arrays.asList("auth", "activate-service-account", "--key-file=/secret.json"));
+    Assert.assertEquals(Arrays.asList("auth", "activate-service-account"), command.getSubcommand());
+    Assert.assertEquals("gcloud auth activate-service-account", command.getName());
+  }
+
+  @Test
+  public void testOf_stopsAtNonWords() {
+    ProcessCommandInfo command =
+        ProcessCommandInfo.of(
+            "gcloud", Arrays.asList("config", "set", "core/account", "someone@example.com"));
+    Assert.assertEquals(Arrays.asList("config", "set"), command.getSubcommand());
+
+    command = ProcessCommandInfo.of("gcloud", Arrays.asList("app", "deploy", "/tmp/app.yaml"));
+    Assert.assertEquals(Arrays.asList("app", "deploy"), command.getSubcommand());
+  }
+
+  @Test
+  public void testOf_limitsDepth() {
+    ProcessCommandInfo command =
+        ProcessCommandInfo.of("gcloud", Arrays.asList("a", "b", "c", "d", "e", "f"));
+    Assert.assertEquals(Arrays.asList("a", "b", "c", "d"), command.getSubcommand());
+  }
+
+  @Test
+  public void testOf_noSubcommand() {
+    ProcessCommandInfo command = ProcessCommandInfo.of("devappserver", Collections.emptyList());
+    Assert.assertEquals("devappserver", command.getName());
+  }
+
+  @Test
+  public void testGetId_unique() {
+    Assert.assertNotEquals(
+        ProcessCommandInfo.of("gcloud", Collections.emptyList()).getId(),
+        ProcessCommandInfo.of("gcloud", Collections.emptyList()).getId());
+  }
+}
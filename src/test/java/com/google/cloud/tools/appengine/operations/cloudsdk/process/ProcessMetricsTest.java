@@ -0,0 +1,150 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.appengine.operations.cloudsdk.process;
+
+import com.google.common.base.Ticker;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ProcessMetricsTest {
+
+  @Mock private ProcessBuilder processBuilder;
+  @Mock private Process process;
+  @Mock private ProcessMetricsListener listener;
+
+  private final AtomicLong nanos = new AtomicLong();
+  private final Ticker ticker =
+      new Ticker() {
+        @Override
+        public long read() {
+          return nanos.get();
+        }
+      };
+  private ProcessMetrics processMetrics;
+
+  @Before
+  public void setUp() throws IOException {
+    processMetrics = new ProcessMetrics(ticker);
+    Mockito.when(processBuilder.start())
+        .thenAnswer(
+            invocation -> {
+              nanos.addAndGet(Duration.ofMillis(5).toNanos());
+              return process;
+            });
+  }
+
+  @Test
+  public void testStart_noListeners() throws IOException {
+    Assert.assertSame(process, processMetrics.start(processBuilder, "gcloud", Arrays.asList()));
+  }
+
+  @Test
+  public void testStart_reportsEvents() throws IOException, InterruptedException {
+    processMetrics.addListener(listener);
+    Mockito.when(process.getInputStream())
+        .thenReturn(new ByteArrayInputStream("hello\n".getBytes(StandardCharsets.UTF_8)));
+    Mockito.when(process.getErrorStream())
+        .thenReturn(new ByteArrayInputStream("err".getBytes(StandardCharsets.UTF_8)));
+    Mockito.when(process.waitFor()).thenReturn(3);
+
+    Process metered =
+        processMetrics.start(
+            processBuilder, "gcloud", Arrays.asList("app", "deploy", "--project=secret"));
+
+    ArgumentCaptor<ProcessCommandInfo> command = ArgumentCaptor.forClass(ProcessCommandInfo.class);
+    Mockito.verify(listener).onStart(command.capture(), Mockito.eq(Duration.ofMillis(5)));
+    Assert.assertEquals("gcloud app deploy", command.getValue().getName());
+
+    nanos.addAndGet(Duration.ofMillis(10).toNanos());
+    InputStream stdout = metered.getInputStream();
+    byte[] buffer = new byte[100];
+    Assert.assertEquals(6, stdout.read(buffer));
+    Assert.assertEquals(-1, stdout.read(buffer));
+    Assert.assertEquals('e', metered.getErrorStream().read());
+
+    nanos.addAndGet(Duration.ofMillis(20).toNanos());
+    Assert.assertEquals(3, metered.waitFor());
+    Assert.assertEquals(3, metered.waitFor());
+
+    Mockito.verify(listener).onFirstOutput(command.getValue(), Duration.ofMillis(15));
+    Mockito.verify(listener).onBytesRead(command.getValue(), 6, false);
+    Mockito.verify(listener).onBytesRead(command.getValue(), 1, true);
+    Mockito.verify(listener).onExit(command.getValue(), 3, Duration.ofMillis(35));
+    Mockito.verifyNoMoreInteractions(listener);
+  }
+
+  @Test
+  public void testStart_forwardsProcessHandleMethods() throws Exception {
+    Method toHandle;
+    try {
+      toHandle = Process.class.getMethod("toHandle");
+    } catch (NoSuchMethodException ex) {
+      Assume.assumeNoException("ProcessHandle requires Java 9+", ex);
+      return;
+    }
+    Method pid = Process.class.getMethod("pid");
+    Object handle = Class.forName("java.lang.ProcessHandle").getMethod("current").invoke(null);
+    Mockito.when(toHandle.invoke(process)).thenReturn(handle);
+    Mockito.when(pid.invoke(process)).thenReturn(42L);
+    processMetrics.addListener(listener);
+
+    Process metered = processMetrics.start(processBuilder, "gcloud", Arrays.asList());
+
+    Assert.assertNotSame(process, metered);
+    Assert.assertSame(handle, toHandle.invoke(metered));
+    Assert.assertEquals(42L, pid.invoke(metered));
+  }
+
+  @Test
+  public void testStart_listenerFailureIgnored() throws IOException {
+    Mockito.doThrow(new IllegalStateException("broken"))
+        .when(listener)
+        .onStart(Mockito.any(), Mockito.any());
+    processMetrics.addListener(listener);
+    ProcessMetricsListener second = Mockito.mock(ProcessMetricsListener.class);
+    processMetrics.addListener(second);
+
+    processMetrics.start(processBuilder, "gcloud", Arrays.asList());
+    Mockito.verify(second).onStart(Mockito.any(), Mockito.any());
+  }
+
+  @Test
+  public void testGetListener() {
+    InMemoryProcessMetrics inMemory = new InMemoryProcessMetrics();
+    processMetrics.addListener(listener);
+    processMetrics.addListener(inMemory);
+    Assert.assertSame(inMemory, processMetrics.getListener(InMemoryProcessMetrics.class).get());
+    processMetrics.removeListener(inMemory);
+    Assert.assertFalse(processMetrics.getListener(InMemoryProcessMetrics.class).isPresent());
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.appengine.operations.cloudsdk.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ProcessRegistryTest {
+
+  @Mock private Process process1;
+  @Mock private Process process2;
+  @Mock private Runnable task;
+
+  private final List<Thread> hooks = new ArrayList<>();
+  private ProcessRegistry registry;
+
+  @Before
+  public void setUp() {
+    registry = new ProcessRegistry(hooks::add);
+  }
+
+  @Test
+  public void testRegister_installsSingleHook() {
+    registry.register(process1);
+    registry.register(process2);
+    registry.addShutdownTask(task);
+
+    assertEquals(1, hooks.size());
+  }
+
+  @Test
+  public void testGetLiveProcessCount() {
+    when(process1.isAlive()).thenReturn(true);
+    when(process2.isAlive()).thenReturn(false);
+    registry.register(process1);
+    registry.register(process2);
+
+    assertEquals(1, registry.getLiveProcessCount());
+  }
+
+  @Test
+  public void testDeregister() {
+    registry.register(process1);
+    registry.deregister(process1);
+
+    assertEquals(0, registry.getLiveProcessCount());
+    registry.shutdown();
+    verify(process1, never()).destroy();
+  }
+
+  @Test
+  public void testShutdown() {
+    registry.register(process1);
+    registry.register(process2);
+    registry.addShutdownTask(task);
+
+    hooks.get(0).run();
+
+    verify(process1).destroy();
+    verify(process2).destroy();
+    verify(task).run();
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.appengine.operations.cloudsdk.serialization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CloudSdkVersionRangeTest {
+
+  private static boolean contains(String range, String version) {
+    return new CloudSdkVersionRange(range).contains(new CloudSdkVersion(version));
+  }
+
+  @Test
+  public void testContains_bounds() {
+    assertTrue(contains(">=186.0.0 <300", "186.0.0"));
+    assertTrue(contains(">=186.0.0 <300", "299.9.9"));
+    assertFalse(contains(">=186.0.0 <300", "185.9.9"));
+    assertFalse(contains(">=186.0.0 <300", "300.0.0"));
+    assertTrue(contains(">186 <=186.1", "186.1.0"));
+    assertFalse(contains(">186 <=186.1", "186.0.0"));
+  }
+
+  @Test
+  public void testContains_equal() {
+    assertTrue(contains("=186.0.0", "186.0.0"));
+    assertTrue(contains("186.0.0", "186.0.0+build"));
+    assertFalse(contains("186", "186.0.1"));
+  }
+
+  @Test
+  public void testContains_spaceAfterOperator() {
+    assertTrue(contains(">= 186.0.0  < 300", "200.0.0"));
+    assertFalse(contains(">= 186.0.0  < 300", "300.0.0"));
+  }
+
+  @Test
+  public void testContains_alternatives() {
+    CloudSdkVersionRange range = new CloudSdkVersionRange("<100 || >=200 <250 || HEAD");
+    assertTrue(range.contains(new CloudSdkVersion("99.0.0")));
+    assertFalse(range.contains(new CloudSdkVersion("150.0.0")));
+    assertTrue(range.contains(new CloudSdkVersion("249.0.0")));
+    assertFalse(range.contains(new CloudSdkVersion("250.0.0")));
+    assertTrue(range.contains(new CloudSdkVersion("HEAD")));
+  }
+
+  @Test
+  public void testContains_preReleases() {
+    assertTrue(contains("<300", "300.0.0-rc.1"));
+    assertFalse(contains(">=300.0.0-rc.2", "300.0.0-rc.1"));
+    assertTrue(contains(">=300.0.0-rc.2", "300.0.0"));
+  }
+
+  @Test
+  public void testContains_any() {
+    assertTrue(contains("*", "0.0.1"));
+    assertTrue(contains("*", "HEAD"));
+  }
+
+  @Test
+  public void testFilter() {
+    List<CloudSdkVersion> versions =
+        ImmutableList.of("185.0.0", "186.0.0", "250.1.0", "300.0.0")
+            .stream()
+            .map(CloudSdkVersion::of)
+            .filter(new CloudSdkVersionRange(">=186.0.0 <300"))
+            .collect(Collectors.toList());
+    assertEquals(
+        ImmutableList.of(CloudSdkVersion.of("186.0.0"), CloudSdkVersion.of("250.1.0")), versions);
+  }
+
+  @Test
+  public void testToString() {
+    assertEquals(">=186.0.0 <300", new CloudSdkVersionRange(">=186.0.0 <300").toString());
+  }
+
+  @Test
+  public void testConstructor_invalid() {
+    for (String range : ImmutableList.of("", ">=", ">=1.0.0 ||", "~1.0", ">=1.0.0.0", "1.x")) {
+      try {
+        new CloudSdkVersionRange(range);
+        Assert.fail(range);
+      } catch (IllegalArgumentException ex) {
+        assertEquals("\"" + range + "\" is not a valid CloudSdkVersion range.", ex.getMessage());
+      }
+    }
+  }
+}
@@ -19,6 +19,7 @@ package com.google.cloud.tools.appengine.operations.cloudsdk.serialization;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import com.google.common.collect.ImmutableList;
@@ -309,4 +310,68 @@ public class CloudSdkVersionTest {
   public void testHashCode_headAndNonHead() {
     assertNotEquals(new CloudSdkVersion("HEAD"), new CloudSdkVersion("1.23.98"));
   }
+
+  @Test
+  public void testConstructor_leadingZeros() {
+    for (String version : ImmutableList.of("01.0.0", "1.00.0", "1.0.0-rc.01")) {
+      try {
+        new CloudSdkVersion(version);
+        Assert.fail(version);
+      } catch (IllegalArgumentException ex) {
+        assertEquals(
+            "Pattern \"" + version + "\" is not a valid CloudSdkVersion.", ex.getMessage());
+      }
+    }
+    assertEquals("01", new CloudSdkVersion("1.0.0+01").getBuildIdentifier());
+    assertEquals("rc-01", new CloudSdkVersion("1.0.0-rc-01").getPreRelease().toString());
+  }
+
+  @Test
+  public void testConstructor_versionTooLarge() {
+    try {
+      new CloudSdkVersion("2147483648.0.0");
+      Assert.fail();
+    } catch (IllegalArgumentException ex) {
+      Assert.assertNotNull(ex.getMessage());
+    }
+  }
+
+  @Test
+  public void testCompareTo_largeComponents() {
+    // components that don't fit the packed representation
+    CloudSdkVersion large = new CloudSdkVersion("2147483647.0.0");
+    CloudSdkVersion largeMinor = new CloudSdkVersion("1.3000000.0");
+    assertTrue(large.compareTo(new CloudSdkVersion("318.0.0")) > 0);
+    assertTrue(largeMinor.compareTo(new CloudSdkVersion("1.2999999.5")) > 0);
+    assertTrue(largeMinor.compareTo(new CloudSdkVersion("2.0.0")) < 0);
+    assertTrue(large.compareTo(new CloudSdkVersion("HEAD")) < 0);
+  }
+
+  @Test
+  public void testCompareTo_largeNumericPreRelease() {
+    assertTrue(
+        new CloudSdkVersion("1.0.0-99999999999999999999")
+                .compareTo(new CloudSdkVersion("1.0.0-100000000000000000000"))
+            < 0);
+    assertTrue(
+        new CloudSdkVersion("1.0.0-99999999999999999999").compareTo(new CloudSdkVersion("1.0.0-9"))
+            > 0);
+  }
+
+  @Test
+  public void testOf_interned() {
+    CloudSdkVersion version = CloudSdkVersion.of("318.0.0-rc.1");
+    assertSame(version, CloudSdkVersion.of("318.0.0-rc.1"));
+    assertEquals(new CloudSdkVersion("318.0.0-rc.1"), version);
+  }
+
+  @Test
+  public void testOf_invalid() {
+    try {
+      CloudSdkVersion.of("1.0");
+      Assert.fail();
+    } catch (IllegalArgumentException ex) {
+      Assert.assertNotNull(ex.getMessage());
+    }
+  }
 }
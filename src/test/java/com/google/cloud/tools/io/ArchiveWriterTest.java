@@ -0,0 +1,211 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.io;
+
+import static org.junit.Assume.assumeTrue;
+
+import com.google.common.collect.ImmutableList;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.utils.IOUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ArchiveWriterTest {
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path source;
+
+  @Before
+  public void setUp() throws IOException {
+    source = temporaryFolder.newFolder("source").toPath();
+  }
+
+  private Path write(String name, String content, long lastModified) throws IOException {
+    Path file = source.resolve(name);
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    Files.setLastModifiedTime(file, FileTime.fromMillis(lastModified));
+    return file;
+  }
+
+  private byte[] archive(ArchiveWriter.Format format) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    try (ArchiveWriter archive = new ArchiveWriter(output, format)) {
+      // added out of order
+      archive.addFile("web/z.html", source.resolve("z.html"), false);
+      archive.addFile("a.txt", source.resolve("a.txt"), false);
+      archive.addDirectory("empty");
+      archive.addFile("web/static/b.css", source.resolve("b.css"), false);
+    }
+    return output.toByteArray();
+  }
+
+  /** Returns the entry names and contents, directories have null contents. */
+  private static Map<String, String> read(byte[] archive, ArchiveWriter.Format format)
+      throws IOException {
+    Map<String, String> entries = new LinkedHashMap<>();
+    try (ArchiveInputStream input =
+        format == ArchiveWriter.Format.ZIP
+            ? new ZipArchiveInputStream(new ByteArrayInputStream(archive))
+            : new TarArchiveInputStream(new GZIPInputStream(new ByteArrayInputStream(archive)))) {
+      ArchiveEntry entry;
+      while ((entry = input.getNextEntry()) != null) {
+        entries.put(
+            entry.getName(),
+            entry.isDirectory()
+                ? null
+                : new String(IOUtils.toByteArray(input), StandardCharsets.UTF_8));
+      }
+    }
+    return entries;
+  }
+
+  private void writeSources(long lastModified) throws IOException {
+    write("z.html", "<html/>", lastModified);
+    write("a.txt", "a", lastModified);
+    write("b.css", "body {}", lastModified);
+  }
+
+  @Test
+  public void testZip_sortedWithParents() throws IOException {
+    writeSources(1000);
+    Map<String, String> entries = read(archive(ArchiveWriter.Format.ZIP), ArchiveWriter.Format.ZIP);
+
+    Assert.assertEquals(
+        ImmutableList.of(
+            "a.txt", "empty/", "web/", "web/static/", "web/static/b.css", "web/z.html"),
+        new ArrayList<>(entries.keySet()));
+    Assert.assertEquals("<html/>", entries.get("web/z.html"));
+    Assert.assertNull(entries.get("web/"));
+  }
+
+  @Test
+  public void testTarGz_sortedWithParents() throws IOException {
+    writeSources(1000);
+    Map<String, String> entries =
+        read(archive(ArchiveWriter.Format.TAR_GZ), ArchiveWriter.Format.TAR_GZ);
+
+    Assert.assertEquals(
+        ImmutableList.of(
+            "a.txt", "empty/", "web/", "web/static/", "web/static/b.css", "web/z.html"),
+        new ArrayList<>(entries.keySet()));
+    Assert.assertEquals("body {}", entries.get("web/static/b.css"));
+  }
+
+  @Test
+  public void testReproducible() throws IOException {
+    for (ArchiveWriter.Format format : ArchiveWriter.Format.values()) {
+      writeSources(1000);
+      byte[] first = archive(format);
+      writeSources(99_000_000);
+      byte[] second = archive(format);
+
+      Assert.assertArrayEquals(format.toString(), first, second);
+    }
+  }
+
+  @Test
+  public void testTarGz_normalizedMetadata() throws IOException {
+    assumeTrue(!System.getProperty("os.name").startsWith("Windows"));
+    writeSources(1000);
+    Files.setPosixFilePermissions(
+        source.resolve("a.txt"), PosixFilePermissions.fromString("rwx------"));
+
+    List<TarArchiveEntry> entries = new ArrayList<>();
+    try (TarArchiveInputStream input =
+        new TarArchiveInputStream(
+            new GZIPInputStream(new ByteArrayInputStream(archive(ArchiveWriter.Format.TAR_GZ))))) {
+      TarArchiveEntry entry;
+      while ((entry = input.getNextTarEntry()) != null) {
+        entries.add(entry);
+      }
+    }
+
+    Assert.assertEquals(0100755, entries.get(0).getMode());
+    Assert.assertEquals(040755, entries.get(1).getMode());
+    Assert.assertEquals(0100644, entries.get(4).getMode());
+    for (TarArchiveEntry entry : entries) {
+      Assert.assertEquals(315532800000L, entry.getModTime().getTime());
+      Assert.assertEquals("", entry.getUserName());
+      Assert.assertEquals(0, entry.getLongUserId());
+    }
+  }
+
+  @Test
+  public void testAddFile_conflicts() throws IOException {
+    Path file = write("a.txt", "a", 1000);
+    Path other = write("b.txt", "b", 1000);
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    try (ArchiveWriter archive = new ArchiveWriter(output, ArchiveWriter.Format.ZIP)) {
+      archive.addFile("dir/a.txt", file, false);
+      try {
+        archive.addFile("dir/a.txt", other, false);
+        Assert.fail();
+      } catch (FileAlreadyExistsException ex) {
+        Assert.assertEquals("dir/a.txt", ex.getMessage());
+      }
+      try {
+        archive.addFile("dir", other, true);
+        Assert.fail();
+      } catch (FileAlreadyExistsException ex) {
+        Assert.assertEquals("dir", ex.getMessage());
+      }
+      archive.addFile("dir/a.txt", other, true);
+    }
+
+    Map<String, String> entries = read(output.toByteArray(), ArchiveWriter.Format.ZIP);
+    Assert.assertEquals("b", entries.get("dir/a.txt"));
+  }
+
+  @Test
+  public void testAddFile_invalidName() throws IOException {
+    Path file = write("a.txt", "a", 1000);
+    try (ArchiveWriter archive =
+        new ArchiveWriter(new ByteArrayOutputStream(), ArchiveWriter.Format.ZIP)) {
+      for (String name : ImmutableList.of("", "/", "../a.txt", "a/./b.txt", "a//b.txt")) {
+        try {
+          archive.addFile(name, file, false);
+          Assert.fail(name);
+        } catch (IllegalArgumentException ex) {
+          // expected
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.io;
+
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ExclusionMatcherTest {
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final Path base = Paths.get("/app");
+
+  private ExclusionMatcher matcher(String... patterns) {
+    return ExclusionMatcher.builder(base).addPatterns(ImmutableList.copyOf(patterns)).build();
+  }
+
+  private boolean excludesFile(ExclusionMatcher matcher, String path) {
+    return matcher.isExcluded(base.resolve(path), false);
+  }
+
+  private boolean excludesDirectory(ExclusionMatcher matcher, String path) {
+    return matcher.isExcluded(base.resolve(path), true);
+  }
+
+  @Test
+  public void testOf_exactPaths() {
+    ExclusionMatcher matcher = ExclusionMatcher.of(ImmutableList.of(base.resolve("a/b.txt")));
+
+    Assert.assertTrue(excludesFile(matcher, "a/b.txt"));
+    Assert.assertFalse(excludesFile(matcher, "a/b.txt2"));
+    Assert.assertFalse(excludesFile(matcher, "b.txt"));
+  }
+
+  @Test
+  public void testNone() {
+    Assert.assertFalse(ExclusionMatcher.NONE.isExcluded(base.resolve("a"), true));
+  }
+
+  @Test
+  public void testName_matchesAtAnyDepth() {
+    ExclusionMatcher matcher = matcher("node_modules");
+
+    Assert.assertTrue(excludesDirectory(matcher, "node_modules"));
+    Assert.assertTrue(excludesDirectory(matcher, "web/node_modules"));
+    Assert.assertTrue(excludesFile(matcher, "web/node_modules"));
+    Assert.assertFalse(excludesDirectory(matcher, "node_modules2"));
+  }
+
+  @Test
+  public void testGlob() {
+    ExclusionMatcher matcher = matcher("*.log", "file?.txt", "[abc]x.bin", "[!0-9]y.bin");
+
+    Assert.assertTrue(excludesFile(matcher, "debug.log"));
+    Assert.assertTrue(excludesFile(matcher, "deep/down/debug.log"));
+    Assert.assertFalse(excludesFile(matcher, "debug.log.txt"));
+    Assert.assertTrue(excludesFile(matcher, "file1.txt"));
+    Assert.assertFalse(excludesFile(matcher, "file12.txt"));
+    Assert.assertTrue(excludesFile(matcher, "bx.bin"));
+    Assert.assertFalse(excludesFile(matcher, "dx.bin"));
+    Assert.assertTrue(excludesFile(matcher, "zy.bin"));
+    Assert.assertFalse(excludesFile(matcher, "1y.bin"));
+  }
+
+  @Test
+  public void testAnchored() {
+    ExclusionMatcher matcher = matcher("/build", "doc/*.html");
+
+    Assert.assertTrue(excludesDirectory(matcher, "build"));
+    Assert.assertFalse(excludesDirectory(matcher, "sub/build"));
+    Assert.assertTrue(excludesFile(matcher, "doc/index.html"));
+    Assert.assertFalse(excludesFile(matcher, "doc/api/index.html"));
+    Assert.assertFalse(excludesFile(matcher, "sub/doc/index.html"));
+  }
+
+  @Test
+  public void testDirectoryOnly() {
+    ExclusionMatcher matcher = matcher("out/");
+
+    Assert.assertTrue(excludesDirectory(matcher, "out"));
+    Assert.assertTrue(excludesDirectory(matcher, "sub/out"));
+    Assert.assertFalse(excludesFile(matcher, "out"));
+  }
+
+  @Test
+  public void testAnyDirectories() {
+    ExclusionMatcher matcher = matcher("**/cache", "logs/**", "a/**/z");
+
+    Assert.assertTrue(excludesDirectory(matcher, "cache"));
+    Assert.assertTrue(excludesDirectory(matcher, "x/y/cache"));
+    Assert.assertFalse(excludesDirectory(matcher, "logs"));
+    Assert.assertTrue(excludesFile(matcher, "logs/today.log"));
+    Assert.assertTrue(excludesFile(matcher, "logs/old/today.log"));
+    Assert.assertTrue(excludesFile(matcher, "a/z"));
+    Assert.assertTrue(excludesFile(matcher, "a/b/c/z"));
+    Assert.assertFalse(excludesFile(matcher, "b/a/z"));
+  }
+
+  @Test
+  public void testNegation_lastMatchWins() {
+    ExclusionMatcher matcher = matcher("*.log", "!important.log", "/important.log");
+
+    Assert.assertTrue(excludesFile(matcher, "debug.log"));
+    Assert.assertFalse(excludesFile(matcher, "sub/important.log"));
+    Assert.assertTrue(excludesFile(matcher, "important.log"));
+  }
+
+  @Test
+  public void testCommentsBlankLinesAndEscapes() {
+    ExclusionMatcher matcher = matcher("# comment", "", "\\#hash", "\\!bang", "trailing   ");
+
+    Assert.assertFalse(excludesFile(matcher, "# comment"));
+    Assert.assertTrue(excludesFile(matcher, "#hash"));
+    Assert.assertTrue(excludesFile(matcher, "!bang"));
+    Assert.assertTrue(excludesFile(matcher, "trailing"));
+  }
+
+  @Test
+  public void testOutsideBaseDirectory() {
+    ExclusionMatcher matcher = matcher("*");
+
+    Assert.assertFalse(matcher.isExcluded(Paths.get("/other/file"), false));
+    Assert.assertFalse(matcher.isExcluded(base, true));
+  }
+
+  @Test
+  public void testAddIgnoreFile_include() throws IOException {
+    Path directory = temporaryFolder.getRoot().toPath();
+    Files.write(
+        directory.resolve(".gcloudignore"),
+        "#!include:.gitignore\n!keep.class\n".getBytes(StandardCharsets.UTF_8));
+    Files.write(directory.resolve(".gitignore"), "*.class\n".getBytes(StandardCharsets.UTF_8));
+
+    ExclusionMatcher matcher =
+        ExclusionMatcher.builder(directory)
+            .addIgnoreFile(directory.resolve(".gcloudignore"))
+            .build();
+
+    Assert.assertTrue(matcher.isExcluded(directory.resolve("A.class"), false));
+    Assert.assertFalse(matcher.isExcluded(directory.resolve("keep.class"), false));
+  }
+
+  @Test
+  public void testAddIgnoreFile_includeCycle() throws IOException {
+    Path directory = temporaryFolder.getRoot().toPath();
+    Path ignoreFile = directory.resolve(".gcloudignore");
+    Files.write(ignoreFile, "#!include:.gcloudignore\n".getBytes(StandardCharsets.UTF_8));
+
+    try {
+      ExclusionMatcher.builder(directory).addIgnoreFile(ignoreFile);
+      Assert.fail();
+    } catch (IOException ex) {
+      Assert.assertEquals("Ignore file includes itself: " + ignoreFile, ex.getMessage());
+    }
+  }
+
+  @Test
+  public void testAddPattern_withoutBaseDirectory() {
+    try {
+      ExclusionMatcher.builder(null).addPattern("*.log");
+      Assert.fail();
+    } catch (IllegalStateException ex) {
+      Assert.assertEquals("patterns need a base directory", ex.getMessage());
+    }
+  }
+}
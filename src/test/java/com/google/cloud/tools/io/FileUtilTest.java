@@ -17,19 +17,36 @@
 package com.google.cloud.tools.io;
 
 import static org.junit.Assume.assumeTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
+import com.google.cloud.tools.managedcloudsdk.ProgressListener;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Sets;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
 import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 import org.junit.Assert;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
 
 /** Test for {@link FileUtil} */
 public class FileUtilTest {
@@ -176,4 +193,150 @@ public class FileUtilTest {
     Assert.assertFalse(Files.exists(destExcludes.resolve(src.relativize(excludedSubDir))));
     Assert.assertFalse(Files.exists(destExcludes.resolve(src.relativize(autoExcludedSubFile))));
   }
+
+  @Test
+  public void testCopyDirectory_excludePatterns() throws IOException {
+    Path src = testDir.newFolder("src").toPath();
+    Path dest = testDir.newFolder("dest").toPath();
+
+    Path keptFile = Files.createFile(src.resolve("kept.txt"));
+    Path logFile = Files.createFile(src.resolve("debug.log"));
+    Path buildDir = Files.createDirectories(src.resolve("sub/build"));
+    Path buildFile = Files.createFile(buildDir.resolve("output.txt"));
+    Path keptLog = Files.createFile(src.resolve("sub/keep.log"));
+
+    ExclusionMatcher excludes =
+        ExclusionMatcher.builder(src)
+            .addPatterns(ImmutableList.of("*.log", "build/", "!sub/keep.log"))
+            .build();
+    FileUtil.copyDirectory(src, dest, excludes);
+
+    Assert.assertTrue(Files.isRegularFile(dest.resolve(src.relativize(keptFile))));
+    Assert.assertTrue(Files.isRegularFile(dest.resolve(src.relativize(keptLog))));
+    Assert.assertFalse(Files.exists(dest.resolve(src.relativize(logFile))));
+    Assert.assertFalse(Files.exists(dest.resolve(src.relativize(buildDir))));
+    Assert.assertFalse(Files.exists(dest.resolve(src.relativize(buildFile))));
+  }
+
+  @Test
+  public void testArchiveDirectory() throws IOException {
+    Path src = testDir.newFolder("src").toPath();
+    Files.createDirectories(src.resolve("sub/empty"));
+    Files.write(src.resolve("sub/file.txt"), "file".getBytes(StandardCharsets.UTF_8));
+    Files.write(src.resolve("excluded.txt"), "excluded".getBytes(StandardCharsets.UTF_8));
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    try (ArchiveWriter archive = new ArchiveWriter(output, ArchiveWriter.Format.ZIP)) {
+      FileUtil.archiveDirectory(
+          src, archive, ExclusionMatcher.of(ImmutableList.of(src.resolve("excluded.txt"))));
+    }
+
+    List<String> names = new ArrayList<>();
+    try (ZipInputStream input =
+        new ZipInputStream(new ByteArrayInputStream(output.toByteArray()))) {
+      for (ZipEntry entry = input.getNextEntry(); entry != null; entry = input.getNextEntry()) {
+        names.add(entry.getName());
+      }
+    }
+    Assert.assertEquals(ImmutableList.of("sub/", "sub/empty/", "sub/file.txt"), names);
+  }
+
+  @Test
+  public void testCopyDirectoryParallel_nested() throws IOException {
+    Path src = testDir.newFolder("src").toPath();
+    Path dest = testDir.newFolder("dest").toPath();
+    long totalBytes = 0;
+    for (int i = 0; i < 100; i++) {
+      Path dir = Files.createDirectories(src.resolve("dir" + (i % 7)).resolve("sub" + (i % 3)));
+      byte[] content = ("file " + i).getBytes(StandardCharsets.UTF_8);
+      Files.write(dir.resolve("file" + i), content);
+      totalBytes += content.length;
+    }
+    Files.createDirectory(src.resolve("empty"));
+    ProgressListener progressListener = mock(ProgressListener.class);
+
+    FileUtil.copyDirectoryParallel(src, dest, ImmutableList.of(), progressListener);
+
+    for (int i = 0; i < 100; i++) {
+      Path file = Paths.get("dir" + (i % 7), "sub" + (i % 3), "file" + i);
+      Assert.assertArrayEquals(
+          Files.readAllBytes(src.resolve(file)), Files.readAllBytes(dest.resolve(file)));
+    }
+    Assert.assertTrue(Files.isDirectory(dest.resolve("empty")));
+    verify(progressListener).start(anyString(), eq(totalBytes));
+    ArgumentCaptor<Long> updates = ArgumentCaptor.forClass(Long.class);
+    verify(progressListener, times(100)).update(updates.capture());
+    Assert.assertEquals(totalBytes, updates.getAllValues().stream().mapToLong(x -> x).sum());
+    verify(progressListener).done();
+  }
+
+  @Test
+  public void testCopyDirectoryParallel_copiesAttributes() throws IOException {
+    Path src = testDir.newFolder("src").toPath();
+    Path dest = testDir.newFolder("dest").toPath();
+    Path file = Files.createFile(src.resolve("file"));
+    Files.setLastModifiedTime(file, FileTime.fromMillis(1000_000));
+
+    FileUtil.copyDirectoryParallel(
+        src, dest, ImmutableList.of(), Runnable::run, mock(ProgressListener.class));
+
+    Assert.assertEquals(
+        FileTime.fromMillis(1000_000), Files.getLastModifiedTime(dest.resolve("file")));
+  }
+
+  @Test
+  public void testCopyDirectoryParallel_excludes() throws IOException {
+    Path src = testDir.newFolder("src").toPath();
+    Path dest = testDir.newFolder("dest").toPath();
+    Path rootFile = Files.createFile(src.resolve("root.file"));
+    Path excludedFile = Files.createFile(src.resolve("excluded.file"));
+    Path excludedSubDir = Files.createDirectory(src.resolve("excluded"));
+    Files.createFile(excludedSubDir.resolve("auto.excluded.file"));
+
+    FileUtil.copyDirectoryParallel(
+        src,
+        dest,
+        ImmutableList.of(excludedSubDir, excludedFile),
+        Runnable::run,
+        mock(ProgressListener.class));
+
+    Assert.assertTrue(Files.isRegularFile(dest.resolve(src.relativize(rootFile))));
+    Assert.assertFalse(Files.exists(dest.resolve(src.relativize(excludedFile))));
+    Assert.assertFalse(Files.exists(dest.resolve(src.relativize(excludedSubDir))));
+  }
+
+  @Test
+  public void testCopyDirectoryParallel_doesNotOverwrite() throws IOException {
+    Path src = testDir.newFolder("src").toPath();
+    Path dest = testDir.newFolder("dest").toPath();
+    for (int i = 0; i < 100; i++) {
+      Files.createFile(src.resolve("file" + i));
+    }
+    Files.write(dest.resolve("file50"), "existing".getBytes(StandardCharsets.UTF_8));
+    ProgressListener progressListener = mock(ProgressListener.class);
+
+    try {
+      FileUtil.copyDirectoryParallel(src, dest, ImmutableList.of(), progressListener);
+      Assert.fail();
+    } catch (FileAlreadyExistsException ex) {
+      Assert.assertEquals(dest.resolve("file50").toString(), ex.getMessage());
+    }
+    Assert.assertArrayEquals(
+        "existing".getBytes(StandardCharsets.UTF_8), Files.readAllBytes(dest.resolve("file50")));
+    verify(progressListener, never()).done();
+  }
+
+  @Test
+  public void testCopyDirectoryParallel_badArgs() throws IOException {
+    Path dir = testDir.newFolder().toPath();
+    Path file = testDir.newFile().toPath();
+
+    try {
+      FileUtil.copyDirectoryParallel(
+          dir, file, ImmutableList.of(), Runnable::run, mock(ProgressListener.class));
+      Assert.fail();
+    } catch (IllegalArgumentException ex) {
+      Assert.assertNotNull(ex.getMessage());
+    }
+  }
 }
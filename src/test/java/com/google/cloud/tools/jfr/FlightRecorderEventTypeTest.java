@@ -0,0 +1,94 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.jfr;
+
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FlightRecorderEventTypeTest {
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private static FlightRecorderEventType newEventType(String name, Duration threshold) {
+    return FlightRecorderEventType.builder(name)
+        .setLabel("Test Event")
+        .setDescription("An event for tests")
+        .setThreshold(threshold)
+        .addStringField("path", "Path")
+        .addLongField("bytes", "Bytes")
+        .build();
+  }
+
+  @Test
+  public void testBegin_notRecording() {
+    FlightRecorderEvent event =
+        newEventType("com.google.cloud.tools.test.NotRecording", Duration.ZERO).begin();
+    // no recording is running, so the event is disabled
+    Assert.assertFalse(event.isRecording());
+    event.set("path", "a").set("bytes", 1).commit();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBuilder_duplicateField() {
+    FlightRecorderEventType.builder("com.google.cloud.tools.test.Duplicate")
+        .addLongField("bytes", "Bytes")
+        .addStringField("bytes", "Bytes");
+  }
+
+  @Test
+  public void testCommit_recorded() throws Exception {
+    Assume.assumeTrue(FlightRecorderEventType.isSupported());
+    FlightRecorderEventType type =
+        newEventType("com.google.cloud.tools.test.Recorded", Duration.ZERO);
+    Path dump = temporaryFolder.getRoot().toPath().resolve("test.jfr");
+
+    // the JFR API is only used reflectively so this test compiles on Java 8
+    Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+    Object recording = recordingClass.getConstructor().newInstance();
+    recordingClass
+        .getMethod("enable", String.class)
+        .invoke(recording, "com.google.cloud.tools.test.Recorded");
+    recordingClass.getMethod("start").invoke(recording);
+    try {
+      FlightRecorderEvent event = type.begin();
+      Assert.assertTrue(event.isRecording());
+      event.set("path", "/tmp/x").set("bytes", 42).commit();
+    } finally {
+      recordingClass.getMethod("stop").invoke(recording);
+      recordingClass.getMethod("dump", Path.class).invoke(recording, dump);
+      recordingClass.getMethod("close").invoke(recording);
+    }
+
+    List<?> events =
+        (List<?>)
+            Class.forName("jdk.jfr.consumer.RecordingFile")
+                .getMethod("readAllEvents", Path.class)
+                .invoke(null, dump);
+    Assert.assertEquals(1, events.size());
+    Object recorded = events.get(0);
+    Method getValue = recorded.getClass().getMethod("getValue", String.class);
+    Assert.assertEquals("/tmp/x", getValue.invoke(recorded, "path"));
+    Assert.assertEquals(42L, getValue.invoke(recorded, "bytes"));
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.managedcloudsdk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.cloud.tools.trace.TraceRecorder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TracingProgressListenerTest {
+
+  @Mock private ProgressListener delegate;
+  @Mock private ProgressListener delegateChild;
+
+  private TraceRecorder trace;
+  private TracingProgressListener listener;
+
+  @Before
+  public void setUp() {
+    trace = TraceRecorder.create();
+    listener = new TracingProgressListener(delegate, trace);
+  }
+
+  private List<JsonObject> getEvents(String phase) {
+    JsonArray events =
+        JsonParser.parseString(trace.toJson()).getAsJsonObject().getAsJsonArray("traceEvents");
+    List<JsonObject> matching = new ArrayList<>();
+    for (int i = 0; i < events.size(); i++) {
+      JsonObject event = events.get(i).getAsJsonObject();
+      if (phase.equals(event.get("ph").getAsString())) {
+        matching.add(event);
+      }
+    }
+    return matching;
+  }
+
+  @Test
+  public void testDelegates() {
+    Mockito.when(delegate.newChild(50)).thenReturn(delegateChild);
+
+    listener.start("Installing", 100);
+    listener.update(10);
+    listener.update("Halfway");
+    ProgressListener child = listener.newChild(50);
+    child.start("Extracting", ProgressListener.UNKNOWN);
+    child.done();
+    listener.done();
+
+    Mockito.verify(delegate).start("Installing", 100);
+    Mockito.verify(delegate).update(10);
+    Mockito.verify(delegate).update("Halfway");
+    Mockito.verify(delegate).done();
+    Mockito.verify(delegateChild).start("Extracting", ProgressListener.UNKNOWN);
+    Mockito.verify(delegateChild).done();
+  }
+
+  @Test
+  public void testRecordsSpanTree() {
+    Mockito.when(delegate.newChild(Mockito.anyLong())).thenReturn(delegateChild);
+
+    listener.start("Installing Cloud SDK", 200);
+    ProgressListener download = listener.newChild(100);
+    download.start("Downloading", 1000);
+    download.update(400);
+    download.update(600);
+    download.done();
+    ProgressListener extract = listener.newChild(100);
+    extract.start("Extracting", ProgressListener.UNKNOWN);
+    extract.update("Extracting bin/gcloud");
+    extract.done();
+    listener.update(200);
+    listener.done();
+
+    List<JsonObject> spans = getEvents("X");
+    assertEquals(3, spans.size());
+    assertEquals("Installing Cloud SDK", spans.get(0).get("name").getAsString());
+    assertEquals(200, spans.get(0).getAsJsonObject("args").get("totalWork").getAsLong());
+    assertEquals(200, spans.get(0).getAsJsonObject("args").get("workDone").getAsLong());
+    assertEquals("Downloading", spans.get(1).get("name").getAsString());
+    assertEquals(1000, spans.get(1).getAsJsonObject("args").get("workDone").getAsLong());
+    assertEquals("Extracting", spans.get(2).get("name").getAsString());
+    assertFalse(spans.get(2).getAsJsonObject("args").has("totalWork"));
+
+    JsonObject root = spans.get(0);
+    for (JsonObject span : spans) {
+      long start = span.get("ts").getAsLong();
+      long end = start + span.get("dur").getAsLong();
+      assertTrue(start >= root.get("ts").getAsLong());
+      assertTrue(end <= root.get("ts").getAsLong() + root.get("dur").getAsLong());
+    }
+
+    List<JsonObject> instants = getEvents("i");
+    assertEquals(1, instants.size());
+    assertEquals("Extracting bin/gcloud", instants.get(0).get("name").getAsString());
+  }
+
+  @Test
+  public void testUnfinishedSpan() {
+    listener.start("Installing", ProgressListener.UNKNOWN);
+
+    List<JsonObject> spans = getEvents("X");
+    assertEquals(1, spans.size());
+    assertEquals(true, spans.get(0).getAsJsonObject("args").get("unfinished").getAsBoolean());
+  }
+}
@@ -16,15 +16,21 @@
 
 package com.google.cloud.tools.managedcloudsdk.command;
 
+import com.google.cloud.tools.appengine.operations.cloudsdk.GcloudResultCache;
 import com.google.cloud.tools.managedcloudsdk.process.ProcessExecutor;
+import com.google.cloud.tools.managedcloudsdk.process.ProcessTimeout;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.util.concurrent.AbstractFuture;
 import com.google.common.util.concurrent.SettableFuture;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Rule;
@@ -77,7 +83,7 @@ public class CommandCallerTest {
     mockStdout.set("stdout");
     mockStderr.set("stderr");
 
-    testCommandCaller = new CommandCaller(() -> mockProcessExecutor, mockStreamSaverFactory);
+    testCommandCaller = new CommandCaller(() -> mockProcessExecutor, mockStreamSaverFactory, null);
   }
 
   private void verifyCommandExecution() throws IOException, InterruptedException {
@@ -94,6 +100,31 @@ public class CommandCallerTest {
     verifyCommandExecution();
   }
 
+  @Test
+  public void testCall_cachedReadOnlyCommand()
+      throws IOException, InterruptedException, CommandExecutionException, CommandExitException {
+    fakeCommand = Arrays.asList("gcloud", "components", "list");
+    Mockito.when(
+            mockProcessExecutor.run(
+                fakeCommand,
+                fakeWorkingDirectory,
+                fakeEnvironment,
+                mockStdoutSaver,
+                mockStderrSaver))
+        .thenReturn(0);
+    testCommandCaller =
+        new CommandCaller(
+            () -> mockProcessExecutor,
+            mockStreamSaverFactory,
+            GcloudResultCache.inMemory(Duration.ofMinutes(1)));
+
+    Assert.assertEquals(
+        "stdout", testCommandCaller.call(fakeCommand, fakeWorkingDirectory, fakeEnvironment));
+    Assert.assertEquals(
+        "stdout", testCommandCaller.call(fakeCommand, fakeWorkingDirectory, fakeEnvironment));
+    verifyCommandExecution();
+  }
+
   @Test
   public void testCall_nonZeroExit()
       throws IOException, InterruptedException, CommandExecutionException {
@@ -162,4 +193,97 @@ public class CommandCallerTest {
 
     verifyCommandExecution();
   }
+
+  @Test
+  public void testCallAsync() throws Exception {
+    ProcessTimeout timeout = ProcessTimeout.none();
+    Mockito.when(
+            mockProcessExecutor.runAsync(
+                fakeCommand,
+                fakeWorkingDirectory,
+                fakeEnvironment,
+                mockStdoutSaver,
+                mockStderrSaver,
+                timeout))
+        .thenReturn(CompletableFuture.completedFuture(0));
+
+    Assert.assertEquals(
+        "stdout",
+        testCommandCaller
+            .callAsync(fakeCommand, fakeWorkingDirectory, fakeEnvironment, timeout)
+            .get());
+  }
+
+  @Test
+  public void testCallAsync_nonZeroExit() throws Exception {
+    ProcessTimeout timeout = ProcessTimeout.none();
+    Mockito.when(
+            mockProcessExecutor.runAsync(
+                fakeCommand,
+                fakeWorkingDirectory,
+                fakeEnvironment,
+                mockStdoutSaver,
+                mockStderrSaver,
+                timeout))
+        .thenReturn(CompletableFuture.completedFuture(10));
+
+    try {
+      testCommandCaller
+          .callAsync(fakeCommand, fakeWorkingDirectory, fakeEnvironment, timeout)
+          .get();
+      Assert.fail("ExecutionException expected but not found.");
+    } catch (ExecutionException ex) {
+      CommandExitException cause = (CommandExitException) ex.getCause();
+      Assert.assertEquals(10, cause.getExitCode());
+      Assert.assertEquals("stdout\nstderr", cause.getErrorLog());
+    }
+  }
+
+  @Test
+  public void testCallAsync_timeout() throws Exception {
+    ProcessTimeout timeout = ProcessTimeout.none();
+    CompletableFuture<Integer> exitCode = new CompletableFuture<>();
+    exitCode.completeExceptionally(new TimeoutException("timed out"));
+    Mockito.when(
+            mockProcessExecutor.runAsync(
+                fakeCommand,
+                fakeWorkingDirectory,
+                fakeEnvironment,
+                mockStdoutSaver,
+                mockStderrSaver,
+                timeout))
+        .thenReturn(exitCode);
+
+    try {
+      testCommandCaller
+          .callAsync(fakeCommand, fakeWorkingDirectory, fakeEnvironment, timeout)
+          .get();
+      Assert.fail("ExecutionException expected but not found.");
+    } catch (ExecutionException ex) {
+      Assert.assertTrue(ex.getCause() instanceof CommandExecutionException);
+      Assert.assertTrue(ex.getCause().getCause() instanceof TimeoutException);
+      Assert.assertEquals("stdout\nstderr", ex.getCause().getMessage());
+    }
+  }
+
+  @Test
+  public void testCallAsync_cancelPropagates() throws Exception {
+    ProcessTimeout timeout = ProcessTimeout.none();
+    CompletableFuture<Integer> exitCode = new CompletableFuture<>();
+    Mockito.when(
+            mockProcessExecutor.runAsync(
+                fakeCommand,
+                fakeWorkingDirectory,
+                fakeEnvironment,
+                mockStdoutSaver,
+                mockStderrSaver,
+                timeout))
+        .thenReturn(exitCode);
+
+    testCommandCaller
+        .callAsync(fakeCommand, fakeWorkingDirectory, fakeEnvironment, timeout)
+        .cancel(true);
+
+    Assert.assertTrue(exitCode.isCancelled());
+  }
 }
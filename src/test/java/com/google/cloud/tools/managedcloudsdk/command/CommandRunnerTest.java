@@ -19,12 +19,15 @@ package com.google.cloud.tools.managedcloudsdk.command;
 import com.google.cloud.tools.managedcloudsdk.ConsoleListener;
 import com.google.cloud.tools.managedcloudsdk.process.AsyncStreamHandler;
 import com.google.cloud.tools.managedcloudsdk.process.ProcessExecutor;
+import com.google.cloud.tools.managedcloudsdk.process.ProcessTimeout;
 import com.google.common.collect.ImmutableMap;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Rule;
@@ -112,4 +115,46 @@ public class CommandRunnerTest {
     }
     verifyCommandExecution();
   }
+
+  @Test
+  public void testRunAsync() throws Exception {
+    ProcessTimeout timeout = ProcessTimeout.none();
+    Mockito.when(
+            mockProcessExecutor.runAsync(
+                fakeCommand,
+                fakeWorkingDirectory,
+                fakeEnvironment,
+                mockStreamHandler,
+                mockStreamHandler,
+                timeout))
+        .thenReturn(CompletableFuture.completedFuture(0));
+
+    testCommandRunner
+        .runAsync(fakeCommand, fakeWorkingDirectory, fakeEnvironment, mockConsoleListener, timeout)
+        .get();
+  }
+
+  @Test
+  public void testRunAsync_nonZeroExit() throws Exception {
+    ProcessTimeout timeout = ProcessTimeout.none();
+    Mockito.when(
+            mockProcessExecutor.runAsync(
+                fakeCommand,
+                fakeWorkingDirectory,
+                fakeEnvironment,
+                mockStreamHandler,
+                mockStreamHandler,
+                timeout))
+        .thenReturn(CompletableFuture.completedFuture(10));
+
+    try {
+      testCommandRunner
+          .runAsync(
+              fakeCommand, fakeWorkingDirectory, fakeEnvironment, mockConsoleListener, timeout)
+          .get();
+      Assert.fail("ExecutionException expected but not found.");
+    } catch (ExecutionException ex) {
+      Assert.assertEquals(10, ((CommandExitException) ex.getCause()).getExitCode());
+    }
+  }
 }
@@ -20,10 +20,19 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -109,6 +118,109 @@ public class ProcessExecutorTest {
     Mockito.verify(mockProcess).destroy();
   }
 
+  @Test
+  public void testRunAsync() throws Exception {
+    CompletableFuture<Integer> exitCode =
+        new ProcessExecutor()
+            .setProcessBuilderFactory(mockProcessBuilderFactory)
+            .runAsync(
+                command, null, null, mockStreamHandler, mockStreamHandler, ProcessTimeout.none());
+
+    Assert.assertEquals(0, exitCode.get(5, TimeUnit.SECONDS).intValue());
+    verifyProcessBuilding(command);
+    Mockito.verify(mockStreamHandler).handleStream(mockStdOut);
+    Mockito.verify(mockStreamHandler).handleStream(mockStdErr);
+  }
+
+  @Test
+  public void testRunAsync_timeout() throws Exception {
+    Mockito.when(mockProcess.waitFor(Mockito.anyLong(), Mockito.any(TimeUnit.class)))
+        .thenReturn(false);
+
+    CompletableFuture<Integer> exitCode =
+        new ProcessExecutor()
+            .setProcessBuilderFactory(mockProcessBuilderFactory)
+            .runAsync(
+                command,
+                null,
+                null,
+                mockStreamHandler,
+                mockStreamHandler,
+                ProcessTimeout.of(Duration.ofMillis(10)).withKillGrace(Duration.ofMillis(10)));
+
+    try {
+      exitCode.get(5, TimeUnit.SECONDS);
+      Assert.fail("ExecutionException expected but not thrown.");
+    } catch (ExecutionException ex) {
+      Assert.assertTrue(ex.getCause() instanceof TimeoutException);
+    }
+    Mockito.verify(mockProcess).destroy();
+    Mockito.verify(mockProcess).destroyForcibly();
+    Mockito.verify(mockStdOut).close();
+    Mockito.verify(mockStdErr).close();
+  }
+
+  @Test
+  public void testRunAsync_cancelTerminatesProcess() throws Exception {
+    CountDownLatch waiting = new CountDownLatch(1);
+    Mockito.when(mockProcess.waitFor())
+        .thenAnswer(
+            invocation -> {
+              waiting.countDown();
+              Thread.sleep(Long.MAX_VALUE);
+              return 0;
+            });
+    Mockito.when(mockProcess.waitFor(Mockito.anyLong(), Mockito.any(TimeUnit.class)))
+        .thenReturn(true);
+
+    CompletableFuture<Integer> exitCode =
+        new ProcessExecutor()
+            .setProcessBuilderFactory(mockProcessBuilderFactory)
+            .runAsync(
+                command, null, null, mockStreamHandler, mockStreamHandler, ProcessTimeout.none());
+    Assert.assertTrue(waiting.await(5, TimeUnit.SECONDS));
+    exitCode.cancel(true);
+
+    Mockito.verify(mockProcess, Mockito.timeout(5000)).destroy();
+    Mockito.verify(mockStdOut, Mockito.timeout(5000)).close();
+    Mockito.verify(mockProcess, Mockito.never()).destroyForcibly();
+  }
+
+  @Test
+  public void testRunAsync_cancelBeforeWaiterStartsTerminatesProcess() throws Exception {
+    ExecutorService busyExecutor = Executors.newSingleThreadExecutor();
+    CountDownLatch release = new CountDownLatch(1);
+    try {
+      Future<?> blocker =
+          busyExecutor.submit(
+              () -> {
+                release.await();
+                return null;
+              });
+      CompletableFuture<Integer> exitCode =
+          new ProcessExecutor()
+              .setProcessBuilderFactory(mockProcessBuilderFactory)
+              .setWaiterExecutor(busyExecutor)
+              .runAsync(
+                  command, null, null, mockStreamHandler, mockStreamHandler, ProcessTimeout.none());
+      exitCode.cancel(true);
+
+      Mockito.verify(mockProcess).destroy();
+      Mockito.verify(mockProcess).destroyForcibly();
+      Mockito.verify(mockStdOut).close();
+      Mockito.verify(mockStdErr).close();
+
+      release.countDown();
+      blocker.get(5, TimeUnit.SECONDS);
+      busyExecutor.shutdown();
+      Assert.assertTrue(busyExecutor.awaitTermination(5, TimeUnit.SECONDS));
+      Mockito.verify(mockProcess, Mockito.never()).waitFor();
+    } finally {
+      release.countDown();
+      busyExecutor.shutdownNow();
+    }
+  }
+
   private void verifyProcessBuilding(List<String> command) throws IOException {
     Mockito.verify(mockProcessBuilder).command(command);
     Mockito.verify(mockProcessBuilder).start();
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.managedcloudsdk.process;
+
+import com.google.cloud.tools.appengine.operations.cloudsdk.internal.process.MeteredProcess;
+import com.google.common.base.Ticker;
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ProcessTerminatorTest {
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private static final MeteredProcess.Events NO_EVENTS =
+      new MeteredProcess.Events() {
+        @Override
+        public void onFirstOutput(Duration sinceStart) {}
+
+        @Override
+        public void onBytesRead(long bytes, boolean stderr) {}
+
+        @Override
+        public void onExit(int exitCode, Duration wallTime) {}
+      };
+
+  @Before
+  public void setUp() {
+    Assume.assumeFalse(System.getProperty("os.name").contains("Windows"));
+    boolean hasProcessHandle;
+    try {
+      Class.forName("java.lang.ProcessHandle");
+      hasProcessHandle = true;
+    } catch (ClassNotFoundException ex) {
+      hasProcessHandle = false;
+    }
+    Assume.assumeTrue("descendants are only killed on Java 9+", hasProcessHandle);
+  }
+
+  @Test
+  public void testTerminate_killsDescendantsOfMeteredProcess() throws Exception {
+    Path pidFile = temporaryFolder.getRoot().toPath().resolve("child.pid");
+    Process shell =
+        new ProcessBuilder("sh", "-c", "sleep 60 & echo $! > '" + pidFile + "'; wait").start();
+    Process metered = new MeteredProcess(shell, Ticker.systemTicker(), 0, NO_EVENTS);
+    String childPid = awaitPid(pidFile);
+    Assert.assertTrue(isAlive(childPid));
+
+    ProcessTerminator.terminate(metered, Duration.ZERO);
+
+    Assert.assertTrue(shell.waitFor(10, TimeUnit.SECONDS));
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (isAlive(childPid) && System.nanoTime() < deadline) {
+      Thread.sleep(50);
+    }
+    Assert.assertFalse("descendant " + childPid + " survived", isAlive(childPid));
+  }
+
+  private static String awaitPid(Path pidFile) throws IOException, InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (System.nanoTime() < deadline) {
+      if (Files.exists(pidFile)) {
+        String pid = new String(Files.readAllBytes(pidFile), StandardCharsets.UTF_8).trim();
+        if (!pid.isEmpty()) {
+          return pid;
+        }
+      }
+      Thread.sleep(50);
+    }
+    throw new AssertionError("child process did not start");
+  }
+
+  /** Returns true if the process exists and is not a zombie waiting to be reaped. */
+  private static boolean isAlive(String pid) throws IOException, InterruptedException {
+    Process ps = new ProcessBuilder("ps", "-o", "stat=", "-p", pid).start();
+    String state;
+    try (InputStream output = ps.getInputStream()) {
+      state = new String(ByteStreams.toByteArray(output), StandardCharsets.UTF_8).trim();
+    }
+    return ps.waitFor() == 0 && !state.isEmpty() && !state.startsWith("Z");
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2020 Google LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.tools.trace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Ticker;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TraceRecorderTest {
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final AtomicLong nanos = new AtomicLong();
+  private TraceRecorder trace;
+
+  @Before
+  public void setUp() {
+    Ticker ticker =
+        new Ticker() {
+          @Override
+          public long read() {
+            return nanos.get();
+          }
+        };
+    trace = new TraceRecorder(ticker, true);
+  }
+
+  private void advanceMicros(long micros) {
+    nanos.addAndGet(micros * 1000);
+  }
+
+  @Test
+  public void testSpans_completeEvents() {
+    advanceMicros(10);
+    TraceSpan parent = trace.startSpan("parent", "install");
+    advanceMicros(5);
+    try (TraceSpan child = trace.startSpan("child", "install")) {
+      child.setArg("bytes", 42);
+      advanceMicros(20);
+    }
+    advanceMicros(5);
+    parent.end();
+
+    List<Map<String, Object>> events = trace.getTraceEvents();
+    assertEquals(3, events.size());
+    assertEquals("M", events.get(0).get("ph"));
+    assertEquals(
+        Thread.currentThread().getName(), ((Map<?, ?>) events.get(0).get("args")).get("name"));
+
+    Map<String, Object> parentEvent = events.get(1);
+    assertEquals("parent", parentEvent.get("name"));
+    assertEquals("X", parentEvent.get("ph"));
+    assertEquals(10L, parentEvent.get("ts"));
+    assertEquals(30L, parentEvent.get("dur"));
+    assertEquals(Thread.currentThread().getId(), parentEvent.get("tid"));
+
+    Map<String, Object> childEvent = events.get(2);
+    assertEquals("child", childEvent.get("name"));
+    assertEquals(15L, childEvent.get("ts"));
+    assertEquals(20L, childEvent.get("dur"));
+    assertEquals(42L, ((Map<?, ?>) childEvent.get("args")).get("bytes"));
+  }
+
+  @Test
+  public void testSpan_endTwice() {
+    TraceSpan span = trace.startSpan("span", "test");
+    advanceMicros(5);
+    span.end();
+    advanceMicros(5);
+    span.end();
+
+    assertEquals(5L, trace.getTraceEvents().get(1).get("dur"));
+  }
+
+  @Test
+  public void testSpan_unfinishedAtExport() {
+    trace.startSpan("span", "test");
+    advanceMicros(7);
+
+    Map<String, Object> event = trace.getTraceEvents().get(1);
+    assertEquals(7L, event.get("dur"));
+    assertEquals(true, ((Map<?, ?>) event.get("args")).get("unfinished"));
+  }
+
+  @Test
+  public void testInstant() {
+    TraceSpan span = trace.startSpan("span", "test");
+    advanceMicros(3);
+    span.instant("halfway");
+    span.end();
+
+    Map<String, Object> event = trace.getTraceEvents().get(2);
+    assertEquals("halfway", event.get("name"));
+    assertEquals("i", event.get("ph"));
+    assertEquals("t", event.get("s"));
+    assertEquals(3L, event.get("ts"));
+  }
+
+  @Test
+  public void testNoOp() {
+    TraceSpan span = TraceRecorder.NO_OP.startSpan("span", "test");
+    span.setArg("key", "value").instant("message");
+    span.end();
+
+    assertFalse(TraceRecorder.NO_OP.isEnabled());
+    assertTrue(TraceRecorder.NO_OP.getTraceEvents().isEmpty());
+  }
+
+  @Test
+  public void testWriteTo() throws IOException {
+    try (TraceSpan span = trace.startSpan("Installing \"Cloud SDK\"", "install")) {
+      advanceMicros(1000);
+    }
+    Path file = temporaryFolder.getRoot().toPath().resolve("traces/trace.json");
+
+    trace.writeTo(file);
+
+    String json = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    JsonObject root = JsonParser.parseString(json).getAsJsonObject();
+    assertEquals("ms", root.get("displayTimeUnit").getAsString());
+    JsonArray events = root.getAsJsonArray("traceEvents");
+    assertEquals(2, events.size());
+    JsonObject span = events.get(1).getAsJsonObject();
+    assertEquals("Installing \"Cloud SDK\"", span.get("name").getAsString());
+    assertEquals(1000, span.get("dur").getAsLong());
+    assertEquals(1, span.get("pid").getAsInt());
+  }
+}